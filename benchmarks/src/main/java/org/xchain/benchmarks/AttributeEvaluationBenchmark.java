@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xchain.namespaces.core.VariableCommand;
+
+/**
+ * Measures the attribute getters that the engineering framework generates, outside of command execution.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AttributeEvaluationBenchmark
+{
+  private VariableCommand command = null;
+  private JXPathContext context = null;
+
+  @Setup(Level.Trial) public void setUp( LifecycleState lifecycle )
+    throws Exception
+  {
+    command = (VariableCommand)lifecycle.catalog.getCommand(LifecycleState.VARIABLE_COMMAND);
+    context = JXPathContext.newContext(new Object());
+    context.getVariables().declareVariable("count", Integer.valueOf(41));
+  }
+
+  /**
+   * Evaluates a JXPath value attribute.
+   */
+  @Benchmark public Object jxpathValue()
+  {
+    return command.getSelect(context);
+  }
+
+  /**
+   * Evaluates a qname attribute.
+   */
+  @Benchmark public QName qName()
+  {
+    return command.getName(context);
+  }
+}
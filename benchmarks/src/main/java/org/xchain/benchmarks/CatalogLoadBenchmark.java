@@ -0,0 +1,66 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xchain.Catalog;
+import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.net.DependencyTracker;
+import org.xchain.framework.strategy.CatalogConsumerStrategy;
+import org.xchain.framework.strategy.InputSourceSourceStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading the benchmark catalog.  The parse benchmark parses the catalog every time and builds its commands from the
+ * command classes that were engineered when the lifecycle started, so it does not measure engineering.  The cached benchmark
+ * measures the lookup that requests pay once the catalog is in the catalog factory's cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CatalogLoadBenchmark
+{
+  private final CatalogConsumerStrategy consumerStrategy = new CatalogConsumerStrategy();
+  private final InputSourceSourceStrategy sourceStrategy = new InputSourceSourceStrategy();
+
+  @Benchmark public Catalog parseCatalog( LifecycleState lifecycle )
+    throws Exception
+  {
+    DependencyTracker tracker = DependencyTracker.getInstance();
+    tracker.startTracking();
+    try {
+      return consumerStrategy.consume(LifecycleState.CATALOG_URI, sourceStrategy, tracker);
+    }
+    finally {
+      tracker.stopTracking();
+    }
+  }
+
+  @Benchmark public Catalog cachedCatalog( LifecycleState lifecycle )
+    throws Exception
+  {
+    return CatalogFactory.getInstance().getCatalog(LifecycleState.CATALOG_URI);
+  }
+}
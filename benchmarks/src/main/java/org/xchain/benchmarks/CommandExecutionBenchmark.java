@@ -0,0 +1,117 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures executing engineered commands from the benchmark catalog.  Each invocation executes the command against a new
+ * context, so the cost of creating the context is included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandExecutionBenchmark
+{
+  private List<Integer> list = null;
+
+  @Setup(Level.Trial) public void createList()
+  {
+    list = new ArrayList<Integer>();
+    for( int i = 0; i < 20; i++ ) {
+      list.add(Integer.valueOf(i));
+    }
+  }
+
+  /**
+   * Creates the context for one execution, the way a request would.
+   */
+  private JXPathContext createContext()
+  {
+    return createContext(0);
+  }
+
+  /**
+   * Creates the context for one execution, with the given starting value for $count.
+   */
+  private JXPathContext createContext( int count )
+  {
+    JXPathContext context = JXPathContext.newContext(new Object());
+    context.getVariables().declareVariable("count", Integer.valueOf(count));
+    context.getVariables().declareVariable("list", list);
+    context.getVariables().declareVariable("result", null);
+    return context;
+  }
+
+  @Benchmark public JXPathContext chain( LifecycleState lifecycle )
+    throws Exception
+  {
+    JXPathContext context = createContext();
+    lifecycle.catalog.getCommand(LifecycleState.CHAIN_COMMAND).execute(context);
+    return context;
+  }
+
+  @Benchmark public JXPathContext variable( LifecycleState lifecycle )
+    throws Exception
+  {
+    JXPathContext context = createContext();
+    lifecycle.catalog.getCommand(LifecycleState.VARIABLE_COMMAND).execute(context);
+    return context;
+  }
+
+  @Benchmark public JXPathContext forEach( LifecycleState lifecycle )
+    throws Exception
+  {
+    JXPathContext context = createContext();
+    lifecycle.catalog.getCommand(LifecycleState.FOR_EACH_COMMAND).execute(context);
+    return context;
+  }
+
+  @Benchmark public JXPathContext iterate( LifecycleState lifecycle )
+    throws Exception
+  {
+    JXPathContext context = createContext();
+    lifecycle.catalog.getCommand(LifecycleState.ITERATE_COMMAND).execute(context);
+    return context;
+  }
+
+  @Benchmark public JXPathContext choose( LifecycleState lifecycle )
+    throws Exception
+  {
+    // a positive count makes the choose fall through to its otherwise branch.
+    JXPathContext context = createContext(1);
+    lifecycle.catalog.getCommand(LifecycleState.CHOOSE_COMMAND).execute(context);
+    return context;
+  }
+}
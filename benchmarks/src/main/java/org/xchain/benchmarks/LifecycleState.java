@@ -0,0 +1,60 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.benchmarks;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.xchain.Catalog;
+import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.lifecycle.Lifecycle;
+
+/**
+ * Starts the xchain lifecycle once for each benchmark run and loads the benchmark catalog.
+ */
+@State(Scope.Benchmark)
+public class LifecycleState
+{
+  public static final String CATALOG_URI = "resource://context-class-loader/org/xchain/benchmarks/benchmark.xchain";
+  public static final String XCHAIN_NAMESPACE_URI = "http://www.xchain.org/core/1.0";
+
+  public static final QName CHAIN_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "chain");
+  public static final QName VARIABLE_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "variable");
+  public static final QName FOR_EACH_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "for-each");
+  public static final QName ITERATE_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "iterate");
+  public static final QName CHOOSE_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "choose");
+  public static final QName PIPELINE_COMMAND = new QName(XCHAIN_NAMESPACE_URI, "pipeline");
+
+  public Catalog catalog = null;
+
+  @Setup(Level.Trial) public void startLifecycle()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+    catalog = CatalogFactory.getInstance().getCatalog(CATALOG_URI);
+  }
+
+  @TearDown(Level.Trial) public void stopLifecycle()
+    throws Exception
+  {
+    catalog = null;
+    Lifecycle.stopLifecycle();
+  }
+}
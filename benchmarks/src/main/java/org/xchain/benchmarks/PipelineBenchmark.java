@@ -0,0 +1,68 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a sax pipeline that parses a small document and serializes it.  The serialized characters are counted and discarded,
+ * so the benchmark does not measure buffering the output.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark
+{
+  private final CountingWriter writer = new CountingWriter();
+
+  @Benchmark public long serialize( LifecycleState lifecycle )
+    throws Exception
+  {
+    JXPathContext context = JXPathContext.newContext(new Object());
+    context.getVariables().declareVariable("result", writer);
+    lifecycle.catalog.getCommand(LifecycleState.PIPELINE_COMMAND).execute(context);
+    return writer.count;
+  }
+
+  /**
+   * A writer that only counts the characters written to it.
+   */
+  private static class CountingWriter
+    extends Writer
+  {
+    long count = 0;
+
+    public void write( char[] buffer, int offset, int length ) { count += length; }
+    public void flush() throws IOException {}
+    public void close() throws IOException {}
+  }
+}
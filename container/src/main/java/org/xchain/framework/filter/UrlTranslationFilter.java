@@ -15,6 +15,8 @@
  */
 package org.xchain.framework.filter;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -22,7 +24,11 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.UnknownServiceException;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -43,6 +49,7 @@ import org.apache.commons.digester.RuleSetBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xchain.framework.net.UrlFactory;
+import org.xchain.framework.util.ConcurrentLruCache;
 import org.xml.sax.Attributes;
 
 /**
@@ -95,6 +102,12 @@ import org.xml.sax.Attributes;
  * &lt;/config:config&gt;
  * </pre>
  *
+ * <p>Entries are tested in the order that they are defined and the first matching entry is used.  Only the entries whose pattern
+ * starts with literal text that the request path also starts with are tested, and the url that each request path translates to is
+ * cached.  When the translated url is a file url, the file is read directly instead of through a url connection and the response
+ * carries ETag and Last-Modified headers, so that conditional requests for files that have not changed are answered with 304 Not
+ * Modified.</p>
+ *
  * @author Devon Tackett
  * @author Mike Moulton
  * @author Christian Trimble
@@ -110,8 +123,19 @@ public class UrlTranslationFilter
   public static String CONFIG_RESOURCE_URL_PARAM_NAME = "config-resource-url";
   public static String ENABLED_PARAM_NAME = "enabled";
 
+  /** The number of request paths that the resolved url cache holds. */
+  public static int RESOLVED_URL_CACHE_SIZE = 1000;
+
+  /** The size of the blocks used to copy urls that are not files. */
+  private static final int COPY_BUFFER_SIZE = 8192;
+
+  /** The resolution cached for request paths that do not match an entry. */
+  private static final Resolution NO_MATCH = new Resolution(null);
+
   private boolean enabled = true;
-  private Map<Pattern, String>translationMap = new LinkedHashMap<Pattern, String>();
+  private List<Translation> translationList = new ArrayList<Translation>();
+  private PrefixNode prefixTrie = new PrefixNode();
+  private ConcurrentLruCache<String, Resolution> resolutionCache = new ConcurrentLruCache<String, Resolution>(RESOLVED_URL_CACHE_SIZE);
   private ServletContext servletContext;
 
   public void init( FilterConfig filterConfig )
@@ -214,13 +238,45 @@ public class UrlTranslationFilter
   }
   
   /**
-   * Add a translation for the filter.
+   * Add a translation for the filter.  Translations are tested in the order that they are added.
    * 
    * @param regEx The pattern to match on.
    * @param location The location to translate to.
    */
-  private void addTranslation(Pattern regEx, String location) {
-    translationMap.put(regEx, location);
+  void addTranslation(Pattern regEx, String location) {
+    Translation translation = new Translation(translationList.size(), regEx, location);
+    translationList.add(translation);
+    prefixTrie.add(translation.getPrefix(), translation);
+    resolutionCache.clear();
+  }
+
+  /**
+   * Returns the location that the path translates to, or null if no translation matches the path.
+   */
+  String translate(String path) {
+    List<Translation> candidateList = prefixTrie.candidates(path);
+    for (Translation translation : candidateList) {
+      String location = translation.translate(path);
+      if (location != null) {
+        return location;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the resolution of the path, translating the path and creating its url if the path is not in the cache.
+   */
+  private Resolution resolve(String path)
+    throws MalformedURLException
+  {
+    Resolution resolution = resolutionCache.get(path);
+    if (resolution == null) {
+      String location = translate(path);
+      resolution = location == null ? NO_MATCH : new Resolution(UrlFactory.getInstance().newUrl(location));
+      resolutionCache.putIfAbsent(path, resolution);
+    }
+    return resolution;
   }
   
   /**
@@ -254,88 +310,177 @@ public class UrlTranslationFilter
       HttpServletRequest httpRequest = (HttpServletRequest)request;
       HttpServletResponse httpResponse = (HttpServletResponse)response;
 
-      URL url = null;
-      URLConnection connection = null;
-      InputStream in = null;
-      OutputStream out = null;
       String path = httpRequest.getServletPath();
-      boolean matchFound = false;
+      Resolution resolution = null;
 
       try {
-        // Check the incoming path against the registered patterns.
-        for (Pattern pattern : translationMap.keySet()) {
-          Matcher match = pattern.matcher(path);
-          if (match.matches()) {
-            // Match found.  Get the URI the pattern translates to.
-            String uri = translationMap.get(pattern);
-            
-            // Perform group substitution.
-            for(int group = 1; group <= match.groupCount(); group++) {
-              uri = uri.replaceAll("\\$[{]" + group + "[}]", match.group(group));
-            }
-            
-            // Create a new URL from the translated uri.
-            url = UrlFactory.getInstance().newUrl(uri);
-            matchFound = true;
-            break;
-          }
-        }        
-        
-        if (!matchFound) {
-          // No match found.  Let the request go through.
-          chain.doFilter(request, response);
-          return;
-        }
+        resolution = resolve(path);
+      }
+      catch( MalformedURLException mue ) {
+        throw new ServletException(mue);
+      }
 
-        if (log.isDebugEnabled()) {
-          log.debug("doFilter: redirecting " + path + " to " + url);
-        }
+      if (resolution == NO_MATCH) {
+        // No match found.  Let the request go through.
+        chain.doFilter(request, response);
+        return;
+      }
 
-        // get a connection to the url.
-        connection = url.openConnection();
+      if (log.isDebugEnabled()) {
+        log.debug("doFilter: redirecting " + path + " to " + resolution.url);
+      }
 
-        // set the headers.
-        httpResponse.setContentLength(connection.getContentLength());
-        // try to set the content type header defined in the container.
-        String servletContentType = servletContext.getMimeType(path);
-        if( servletContentType != null ) {
-          httpResponse.setContentType(servletContentType);
-        }
-  
-        // get the streams.
-        in = connection.getInputStream();
-        out = response.getOutputStream();
-  
-        // create buffer and length for coping.
-        byte[] buffer = new byte[1024];
-        int length = 0;
-  
-        // transfer the bytes.
-        while( (length = in.read(buffer)) > 0 ) {
-          out.write( buffer, 0, length );
-        }
+      if (resolution.file != null) {
+        sendFile(httpRequest, httpResponse, path, resolution.file);
       }
-      catch( MalformedURLException mue ) {
-        throw new ServletException(mue);
+      else {
+        sendUrl(httpResponse, path, resolution.url);
       }
-      catch( UnknownServiceException use ) {
-        throw new ServletException("The protocol '"+url.getProtocol()+"' does not support input.", use);
+    }
+    else
+      chain.doFilter(request, response);
+
+  }
+
+  /**
+   * Copies the content of the url to the response.
+   */
+  private void sendUrl(HttpServletResponse httpResponse, String path, URL url)
+    throws IOException, ServletException
+  {
+    InputStream in = null;
+    OutputStream out = null;
+
+    try {
+      // get a connection to the url.
+      URLConnection connection = url.openConnection();
+
+      // set the headers.
+      httpResponse.setContentLength(connection.getContentLength());
+      setContentType(httpResponse, path);
+
+      // get the streams.
+      in = connection.getInputStream();
+      out = httpResponse.getOutputStream();
+
+      // create buffer and length for coping.
+      byte[] buffer = new byte[COPY_BUFFER_SIZE];
+      int length = 0;
+
+      // transfer the bytes.
+      while( (length = in.read(buffer)) > 0 ) {
+        out.write( buffer, 0, length );
       }
-      finally {
-        // close the streams.
-        if( in != null ) {
-          try { in.close(); }
-          catch( IOException ioe ) { }
+    }
+    catch( UnknownServiceException use ) {
+      throw new ServletException("The protocol '"+url.getProtocol()+"' does not support input.", use);
+    }
+    finally {
+      // close the streams.
+      close(in);
+      close(out);
+    }
+  }
+
+  /**
+   * Sends a file to the response, or sends 304 Not Modified if the request is conditional and the file has not changed.  The file is
+   * copied through a buffer, since the servlet output stream is not a channel that the file could be transferred to directly.
+   */
+  private void sendFile(HttpServletRequest httpRequest, HttpServletResponse httpResponse, String path, File file)
+    throws IOException
+  {
+    if (!file.isFile()) {
+      httpResponse.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    long length = file.length();
+    long lastModified = file.lastModified();
+    String entityTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+    httpResponse.setHeader("ETag", entityTag);
+    httpResponse.setDateHeader("Last-Modified", lastModified);
+
+    if (isNotModified(httpRequest, entityTag, lastModified)) {
+      httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    if (length <= Integer.MAX_VALUE) {
+      httpResponse.setContentLength((int)length);
+    }
+    else {
+      httpResponse.setHeader("Content-Length", Long.toString(length));
+    }
+    setContentType(httpResponse, path);
+
+    FileInputStream in = null;
+    OutputStream out = null;
+    try {
+      in = new FileInputStream(file);
+      out = httpResponse.getOutputStream();
+
+      // transfer the bytes.
+      byte[] buffer = new byte[COPY_BUFFER_SIZE];
+      int read = 0;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+    }
+    finally {
+      close(in);
+      close(out);
+    }
+  }
+
+  /**
+   * Returns true if the request has an If-None-Match header that matches the entity tag or, when there is no If-None-Match header,
+   * an If-Modified-Since header that is not older than the last modification of the file.
+   */
+  static boolean isNotModified(HttpServletRequest httpRequest, String entityTag, long lastModified)
+  {
+    String ifNoneMatch = httpRequest.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
         }
-        if( out != null ) {
-          try { out.close(); }
-          catch( IOException ioe ) { }
+        if ("*".equals(tag) || entityTag.equals(tag)) {
+          return true;
         }
       }
+      return false;
     }
-    else
-      chain.doFilter(request, response);
 
+    long ifModifiedSince = -1;
+    try {
+      ifModifiedSince = httpRequest.getDateHeader("If-Modified-Since");
+    }
+    catch (IllegalArgumentException iae) {
+      // the header is not a date, so the request is not conditional.
+    }
+    // http dates only hold whole seconds.
+    return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /**
+   * Sets the content type defined in the container for the path, if there is one.
+   */
+  private void setContentType(HttpServletResponse httpResponse, String path)
+  {
+    String servletContentType = servletContext.getMimeType(path);
+    if( servletContentType != null ) {
+      httpResponse.setContentType(servletContentType);
+    }
+  }
+
+  private static void close(java.io.Closeable closeable)
+  {
+    if( closeable != null ) {
+      try { closeable.close(); }
+      catch( IOException ioe ) { }
+    }
   }
   
   /**
@@ -349,4 +494,191 @@ public class UrlTranslationFilter
   {
     // There is no need to clean anything up.
   }
+
+  /**
+   * A compiled entry of the configuration.  The location is split into literal text and group references when the entry is added,
+   * so translating a path does not scan the location for markers.
+   */
+  static class Translation
+  {
+    private static Pattern GROUP_MARKER = Pattern.compile("\\$\\{(\\d+)\\}");
+
+    private int order;
+    private Pattern pattern;
+    private String prefix;
+    /** The parts of the location, either a String of literal text or an Integer group number. */
+    private List<Object> partList = new ArrayList<Object>();
+
+    public Translation(int order, Pattern pattern, String location)
+    {
+      this.order = order;
+      this.pattern = pattern;
+      this.prefix = literalPrefix(pattern.pattern());
+
+      int groupCount = pattern.matcher("").groupCount();
+      Matcher marker = GROUP_MARKER.matcher(location);
+      int start = 0;
+      while (marker.find()) {
+        int group;
+        try {
+          group = Integer.parseInt(marker.group(1));
+        }
+        catch (NumberFormatException nfe) {
+          continue;
+        }
+        // markers for groups that the pattern does not have are left in the location.
+        if (group < 1 || group > groupCount) {
+          continue;
+        }
+        if (marker.start() > start) {
+          partList.add(location.substring(start, marker.start()));
+        }
+        partList.add(Integer.valueOf(group));
+        start = marker.end();
+      }
+      if (start < location.length()) {
+        partList.add(location.substring(start));
+      }
+    }
+
+    public int getOrder() { return order; }
+    public String getPrefix() { return prefix; }
+
+    /**
+     * Returns the location for the path, or null if the pattern does not match the path.
+     */
+    public String translate(String path)
+    {
+      Matcher match = pattern.matcher(path);
+      if (!match.matches()) {
+        return null;
+      }
+      StringBuilder location = new StringBuilder();
+      for (Object part : partList) {
+        if (part instanceof Integer) {
+          String value = match.group(((Integer)part).intValue());
+          if (value != null) {
+            location.append(value);
+          }
+        }
+        else {
+          location.append((String)part);
+        }
+      }
+      return location.toString();
+    }
+
+    /**
+     * Returns the literal text that every string matching the pattern starts with.  The text ends at the first character that has a
+     * meaning in the pattern, and the last literal character is dropped if it is made optional.  Patterns that contain an alternation
+     * have no prefix.
+     */
+    static String literalPrefix(String regEx)
+    {
+      if (regEx.indexOf('|') != -1) {
+        return "";
+      }
+      int i = 0;
+      if (regEx.startsWith("\\A")) {
+        i = 2;
+      }
+      else if (regEx.startsWith("^")) {
+        i = 1;
+      }
+      StringBuilder prefix = new StringBuilder();
+      while (i < regEx.length()) {
+        char c = regEx.charAt(i);
+        if (c == '\\' && i + 1 < regEx.length() && !Character.isLetterOrDigit(regEx.charAt(i + 1))) {
+          prefix.append(regEx.charAt(i + 1));
+          i += 2;
+        }
+        else if ("\\.[]{}()*+?^$|".indexOf(c) == -1) {
+          prefix.append(c);
+          i++;
+        }
+        else {
+          if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+            prefix.setLength(prefix.length() - 1);
+          }
+          break;
+        }
+      }
+      return prefix.toString();
+    }
+  }
+
+  /**
+   * A node in the trie of literal prefixes.  Each translation is stored at the node for its prefix, so the translations that can match
+   * a path are the ones stored on the nodes along the path.
+   */
+  static class PrefixNode
+  {
+    private Map<Character, PrefixNode> childMap = new HashMap<Character, PrefixNode>();
+    private List<Translation> translationList = new ArrayList<Translation>();
+
+    public void add(String prefix, Translation translation)
+    {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        Character c = Character.valueOf(prefix.charAt(i));
+        PrefixNode child = node.childMap.get(c);
+        if (child == null) {
+          child = new PrefixNode();
+          node.childMap.put(c, child);
+        }
+        node = child;
+      }
+      node.translationList.add(translation);
+    }
+
+    /**
+     * Returns the translations with a prefix of the path, in the order that they were added.
+     */
+    public List<Translation> candidates(String path)
+    {
+      List<Translation> candidateList = new ArrayList<Translation>(translationList);
+      PrefixNode node = this;
+      for (int i = 0; i < path.length() && node != null; i++) {
+        node = node.childMap.get(Character.valueOf(path.charAt(i)));
+        if (node != null) {
+          candidateList.addAll(node.translationList);
+        }
+      }
+      if (candidateList.size() > 1) {
+        Collections.sort(candidateList, ORDER_COMPARATOR);
+      }
+      return candidateList;
+    }
+  }
+
+  private static final Comparator<Translation> ORDER_COMPARATOR = new Comparator<Translation>() {
+    public int compare(Translation first, Translation second) {
+      return first.getOrder() < second.getOrder() ? -1 : (first.getOrder() == second.getOrder() ? 0 : 1);
+    }
+  };
+
+  /**
+   * The url that a request path translates to.  The file is set when the url is a file url.
+   */
+  private static class Resolution
+  {
+    private final URL url;
+    private final File file;
+
+    public Resolution(URL url)
+    {
+      this.url = url;
+      this.file = url != null && "file".equals(url.getProtocol()) ? toFile(url) : null;
+    }
+
+    private static File toFile(URL url)
+    {
+      try {
+        return new File(url.toURI());
+      }
+      catch (Exception e) {
+        return new File(url.getPath());
+      }
+    }
+  }
 }
@@ -29,6 +29,7 @@ import java.net.URL;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xchain.framework.net.DependencyTracker;
 import org.xchain.framework.net.UrlFactory;
 
 /**
@@ -60,6 +61,7 @@ public class BasicMergeStrategy implements IMergeStrategy {
 
       // get the url for the absolute system id.
       manifestUrl = UrlFactory.getInstance().newUrl(manifestSystemId);
+      DependencyTracker.getInstance().dependencyFound(manifestUrl);
 
       // create a reader that will allow us to track the line number of the system id we are working with.
       reader = new LineNumberReader(new InputStreamReader(manifestIn = manifestUrl.openStream()));
@@ -69,6 +71,7 @@ public class BasicMergeStrategy implements IMergeStrategy {
         servletWriter.append("//\n// Script System Id: ").append(absoluteJsSystemId).append("\n//\n").flush();
         try {
           jsUrl = UrlFactory.getInstance().newUrl(absoluteJsSystemId);
+          DependencyTracker.getInstance().dependencyFound(jsUrl);
           jsIn = jsUrl.openStream();
           copyStream(jsIn, servletOut, 2048);
         }
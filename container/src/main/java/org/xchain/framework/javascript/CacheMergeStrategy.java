@@ -17,27 +17,45 @@ package org.xchain.framework.javascript;
 
 import static org.xchain.framework.util.IoUtil.*;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xchain.framework.lifecycle.ContainerLifecycle;
-import org.xchain.framework.lifecycle.Execution;
+import org.xchain.framework.net.DependencyTracker;
+import org.xchain.framework.net.UrlUtil;
 
 /**
- * Decorator <code>IMergeStrategy</code> which caches the result of performing a merge based on the current catalog. 
- * This assumes that for all calls made to <code>merge(...)</code> will have the same result for whatever catalog is the
- * current catalog. 
+ * Decorator <code>IMergeStrategy</code> which caches the result of performing a merge for each manifest.  The merged script is
+ * written to the servlet container's temporary directory under a name that holds a hash of its content, along with a gzip compressed
+ * copy.  The manifest and the scripts that it lists are recorded through the <code>DependencyTracker</code> while the merge runs, and
+ * the merge is done again when any of them changes.  Merges for different manifests run concurrently, while threads asking for a
+ * manifest that is being merged wait for that merge to finish.  The files of a merge that has been replaced are kept for
+ * SUPERSEDED_RETENTION milliseconds, so that requests that are still sending them can finish, and are then removed.
  * 
  * @author John Trimble
  * @author Josh Kennedy
@@ -45,76 +63,261 @@ import org.xchain.framework.lifecycle.Execution;
 public class CacheMergeStrategy implements IMergeStrategy {
   private static Logger log = LoggerFactory.getLogger(CacheMergeStrategy.class);
   
-  private static final int BUFFER_SIZE = 2048;
+  private static final int BUFFER_SIZE = 8192;
   private static final String TEMP_DIR_ATTRIBUTE_NAME = "javax.servlet.context.tempdir";
-  // This is used to assist in making a prefix for temporary merged js files.
+  // This is used to assist in making a prefix for merged js files.
   private static final Pattern URL_FILE_NAME_PATTERN = Pattern.compile("\\A.*[/]([a-zA-Z0-9.-]+)([?].*)?\\Z");
+
+  /** The number of milliseconds between checks of the sources of a merged script. */
+  public static final long FRESHNESS_CHECK_INTERVAL = 2000;
+
+  /** The number of milliseconds that the files of a merged script are kept after a newer merge of its manifest replaces it. */
+  public static final long SUPERSEDED_RETENTION = 10L * 60L * 1000L;
   
-  // Mapping of catalog system-ids to compressed java script files.
-  private static final Map<String, URL> catalogCacheUrlMap = Collections.synchronizedMap(new HashMap<String, URL>());
-  
-  // Lock to ensure only on compressed js file created at a time.
-  private static final Object MERGE_LOCK = new Object();
+  // Mapping of manifest system-ids, qualified by the merge variant, to merged scripts.
+  private static final ConcurrentMap<String, FutureTask<MergedScript>> mergedScriptMap = new ConcurrentHashMap<String, FutureTask<MergedScript>>();
+  // Merged scripts that have been replaced by a newer merge, in the order they were replaced, waiting for their files to be removed.
+  private static final Queue<MergedScript> supersededQueue = new ConcurrentLinkedQueue<MergedScript>();
   
   private IMergeStrategy childMergeStrategy;
+  private String variant;
   
   public CacheMergeStrategy(IMergeStrategy strategy) {
+    this(strategy, strategy.getClass().getName());
+  }
+
+  /**
+   * @param strategy the strategy that does the merging.
+   * @param variant a name for the output of the strategy, such as the compression settings, so that merges of the same manifest with
+   * different settings are cached separately.
+   */
+  public CacheMergeStrategy(IMergeStrategy strategy, String variant) {
     this.childMergeStrategy = strategy;
+    this.variant = variant;
   }
   
   /**
-   * If this is the first time this method has been called for the current catalog, then, in a globally
-   * synchronized block, the merge is produced by delegating to the child <code>IMergeStrategy</code> instance.
-   * Otherwise, the cached result is written to the output stream.
+   * Writes the cached merge of the manifest to the output, merging the manifest with the child <code>IMergeStrategy</code> first if
+   * there is not a current merge of it.
    */
   public void merge(String manifestSystemId, OutputStream output) throws Exception {
-    String systemId = Execution.getSystemId();
-    URL compressedUrl = createOrGetMergeUrl(systemId, manifestSystemId);
+    MergedScript script = getMergedScript(manifestSystemId);
     InputStream in = null;
     try {
-      in = compressedUrl.openConnection().getInputStream();
+      in = new FileInputStream(script.getFile());
       copyStream(in, output, BUFFER_SIZE);
     } finally {
       close(in, log);
     }
   }
-  
-  private URL createOrGetMergeUrl(String systemId, String manifestSystemId) throws Exception {
-    URL compressedUrl = catalogCacheUrlMap.get(systemId);
-    if( compressedUrl == null ) {
-      synchronized(MERGE_LOCK) {
-        // Check to see if some other Thread did the work for us while we were waiting.
-        compressedUrl = catalogCacheUrlMap.get(systemId);
-        if( compressedUrl == null ) {
-          // Okay... lets compress these java script files.
-          File tempFile = createMergeCacheFile(systemId);
-          OutputStream out = null;
-          // compress
-          try {
-            out = new FileOutputStream(tempFile);
-            childMergeStrategy.merge(manifestSystemId, out);
-            compressedUrl = tempFile.toURL();
-          } catch(IOException e){
-            // Delete the temporary file if there is an exception... otherwise, we will end up creating a temporary file 
-            // each time this apparently broken execution path runs.
-            forceDeleteTempFile(tempFile);
-            throw e;
-          } catch( RuntimeException e) {
-            // Delete the temporary file if there is an exception... otherwise, we will end up creating a temporary file 
-            // each time this apparently broken execution path runs.
-            forceDeleteTempFile(tempFile);
-            throw e;
-          } finally {
-            close(out, log);
+
+  /**
+   * Sends the cached merge of the manifest as the response to the request.  The gzip copy is sent to clients that accept gzip
+   * encoding.  Each copy has its own strong entity tag, and a request with an If-None-Match header that matches the tag of the copy
+   * that would be sent is answered with 304 Not Modified.
+   *
+   * @param request the request, or null if the request headers are not available.
+   */
+  public void send(String manifestSystemId, HttpServletRequest request, HttpServletResponse response) throws Exception {
+    MergedScript script = getMergedScript(manifestSystemId);
+    boolean gzip = request != null && script.getGzipFile().length() < script.getFile().length() && acceptsGzip(request.getHeader("Accept-Encoding"));
+    String entityTag = gzip ? script.getGzipEntityTag() : script.getEntityTag();
+
+    response.setHeader("Vary", "Accept-Encoding");
+    response.setHeader("ETag", entityTag);
+    if( request != null && matchesEntityTag(request.getHeader("If-None-Match"), entityTag) ) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    File file = gzip ? script.getGzipFile() : script.getFile();
+    response.setStatus(HttpServletResponse.SC_OK);
+    if( gzip ) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
+    response.setContentLength((int)file.length());
+
+    FileInputStream in = null;
+    try {
+      in = new FileInputStream(file);
+      copyStream(in, response.getOutputStream(), BUFFER_SIZE);
+    } finally {
+      close(in, log);
+    }
+  }
+
+  /**
+   * Returns the current merge of the manifest, merging it if it has not been merged or if its sources have changed.
+   */
+  MergedScript getMergedScript(final String manifestSystemId) throws Exception {
+    if( !supersededQueue.isEmpty() ) {
+      removeSupersededScripts(System.currentTimeMillis());
+    }
+
+    String key = variant + " " + manifestSystemId;
+    MergedScript staleScript = null;
+    while( true ) {
+      FutureTask<MergedScript> task = mergedScriptMap.get(key);
+      if( task == null ) {
+        FutureTask<MergedScript> newTask = new FutureTask<MergedScript>(new Callable<MergedScript>() {
+          public MergedScript call() throws Exception {
+            return createMergedScript(manifestSystemId);
           }
-          catalogCacheUrlMap.put(systemId, compressedUrl);
+        });
+        task = mergedScriptMap.putIfAbsent(key, newTask);
+        if( task == null ) {
+          task = newTask;
+          newTask.run();
+        }
+      }
+
+      MergedScript script = null;
+      try {
+        script = task.get();
+      } catch( ExecutionException e ) {
+        // forget the failure, so that the next request tries the merge again.
+        mergedScriptMap.remove(key, task);
+        Throwable cause = e.getCause();
+        if( cause instanceof Exception ) {
+          throw (Exception)cause;
+        }
+        throw e;
+      }
+
+      if( script.isCurrent() ) {
+        if( staleScript != null && !staleScript.getEntityTag().equals(script.getEntityTag()) ) {
+          // other requests may still be sending the stale files, so they are removed later.
+          staleScript.supersede(System.currentTimeMillis());
+          supersededQueue.add(staleScript);
+        }
+        return script;
+      }
+
+      // only the thread that removes the stale merge schedules the removal of its files.
+      if( mergedScriptMap.remove(key, task) ) {
+        if( log.isDebugEnabled() ) {
+          log.debug("The sources of the merged script for '"+manifestSystemId+"' have changed.");
+        }
+        staleScript = script;
+      }
+    }
+  }
+
+  /**
+   * Removes the files of the merged scripts that were replaced more than SUPERSEDED_RETENTION milliseconds ago.  Files that belong
+   * to a current merge, because the sources were changed back to content that was merged before, are kept.
+   */
+  private static void removeSupersededScripts(long now) {
+    MergedScript superseded;
+    while( (superseded = supersededQueue.peek()) != null && now - superseded.getSupersededTime() >= SUPERSEDED_RETENTION ) {
+      // only the thread that takes the script off of the queue removes its files.
+      if( supersededQueue.remove(superseded) && !isMergedScriptFile(superseded.getFile()) ) {
+        if( log.isDebugEnabled() ) {
+          log.debug("Removing the superseded merged script '"+superseded.getFile().getAbsolutePath()+"'.");
         }
-      } // end synchronized block
+        superseded.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns true if the file belongs to a merged script that is in the cache.
+   */
+  private static boolean isMergedScriptFile(File file) {
+    for( FutureTask<MergedScript> task : mergedScriptMap.values() ) {
+      if( !task.isDone() ) {
+        continue;
+      }
+      try {
+        if( file.equals(task.get().getFile()) ) {
+          return true;
+        }
+      } catch( Exception e ) {
+        // a failed merge does not hold any files.
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Merges the manifest into a file named for the hash of its content and writes the gzip copy of the file.
+   */
+  private MergedScript createMergedScript(String manifestSystemId) throws Exception {
+    File directory = getCacheDirectory();
+    String prefix = filePrefix(manifestSystemId);
+    long mergeTime = System.currentTimeMillis();
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+    File tempFile = File.createTempFile(prefix, ".tmp", directory);
+    DependencyTracker tracker = DependencyTracker.getInstance();
+    Set<URL> dependencySet = null;
+    OutputStream out = null;
+    tracker.startTracking();
+    try {
+      out = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE), digest);
+      childMergeStrategy.merge(manifestSystemId, out);
+      out.close();
+      out = null;
+    } catch( Exception e ) {
+      // Delete the temporary file if there is an exception... otherwise, we will end up creating a temporary file 
+      // each time this apparently broken execution path runs.
+      close(out, log);
+      forceDeleteTempFile(tempFile);
+      throw e;
+    } finally {
+      dependencySet = tracker.stopTracking();
+    }
+
+    String hash = toHex(digest.digest());
+    File file = new File(directory, prefix + hash + ".js");
+    File gzipFile = new File(directory, prefix + hash + ".js.gz");
+    moveIntoPlace(tempFile, file);
+
+    if( !gzipFile.exists() ) {
+      File gzipTempFile = File.createTempFile(prefix, ".tmp", directory);
+      InputStream in = null;
+      GZIPOutputStream gzipOut = null;
+      try {
+        in = new FileInputStream(file);
+        gzipOut = new GZIPOutputStream(new FileOutputStream(gzipTempFile), BUFFER_SIZE) {{ def.setLevel(Deflater.BEST_COMPRESSION); }};
+        copyStream(in, gzipOut, BUFFER_SIZE);
+        gzipOut.close();
+        gzipOut = null;
+      } catch( IOException e ) {
+        close(gzipOut, log);
+        forceDeleteTempFile(gzipTempFile);
+        throw e;
+      } finally {
+        close(in, log);
+      }
+      moveIntoPlace(gzipTempFile, gzipFile);
+    }
+
+    if( log.isDebugEnabled() ) {
+      log.debug("Merged '"+manifestSystemId+"' into '"+file.getAbsolutePath()+"' ("+file.length()+" bytes, "+gzipFile.length()+" bytes compressed).");
+    }
+    return new MergedScript(file, gzipFile, hash, dependencySet, mergeTime);
+  }
+
+  /**
+   * Renames the temporary file to the file.  Files are named for their content, so if the file already exists it has the same
+   * content and the temporary file is removed.
+   */
+  private static void moveIntoPlace(File tempFile, File file) throws IOException {
+    if( file.exists() ) {
+      forceDeleteTempFile(tempFile);
+    }
+    else if( !tempFile.renameTo(file) && !file.exists() ) {
+      forceDeleteTempFile(tempFile);
+      throw new IOException("Could not rename '"+tempFile.getAbsolutePath()+"' to '"+file.getAbsolutePath()+"'.");
+    }
+    else if( tempFile.exists() ) {
+      // another thread moved the same content into place first.
+      forceDeleteTempFile(tempFile);
     }
-    return compressedUrl;
   }
   
-  private File createMergeCacheFile(String systemId) throws IOException {
+  private File getCacheDirectory() throws IOException {
     File tempDir = null;
     // We get the temporary directory from a servlet context attribute. If its a string, we create a File object for
     // that path. If its a File, then we are set. If we get null or the empty string, the we throw an IOException.
@@ -130,10 +333,15 @@ public class CacheMergeStrategy implements IMergeStrategy {
     if( tempDir == null ) {
       throw new IOException("Could not find temporary directory.");
     }
-    
-    // For the prefix, try to incorporate the name of the catalog if possible.
-    String prefix = "compressed-";
-    Matcher m = URL_FILE_NAME_PATTERN.matcher(systemId);
+    return tempDir;
+  }
+
+  /**
+   * Returns the prefix of the files for a manifest, which incorporates the name of the manifest if possible.
+   */
+  private String filePrefix(String manifestSystemId) {
+    String prefix = "merged-";
+    Matcher m = URL_FILE_NAME_PATTERN.matcher(manifestSystemId);
     if( m.matches() ) {
       String filename = m.group(1);
       if( filename != null ) {
@@ -141,9 +349,52 @@ public class CacheMergeStrategy implements IMergeStrategy {
         prefix += filename + "-";
       }
     }
-    
-    File tempFile = File.createTempFile(prefix, null, tempDir);
-    return tempFile;
+    return prefix;
+  }
+
+  /**
+   * Returns true if the Accept-Encoding header accepts gzip with a quality above zero.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if( acceptEncoding == null ) {
+      return false;
+    }
+    for( String coding : acceptEncoding.split(",") ) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase();
+      if( !"gzip".equals(name) && !"x-gzip".equals(name) && !"*".equals(name) ) {
+        continue;
+      }
+      boolean accepted = true;
+      for( int i = 1; i < parts.length; i++ ) {
+        String parameter = parts[i].trim();
+        if( parameter.startsWith("q=") ) {
+          try {
+            accepted = Float.parseFloat(parameter.substring(2).trim()) > 0f;
+          } catch( NumberFormatException e ) {
+            accepted = false;
+          }
+        }
+      }
+      return accepted;
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the If-None-Match header contains the entity tag or "*".
+   */
+  static boolean matchesEntityTag(String ifNoneMatch, String entityTag) {
+    if( ifNoneMatch == null ) {
+      return false;
+    }
+    for( String tag : ifNoneMatch.split(",") ) {
+      tag = tag.trim();
+      if( "*".equals(tag) || entityTag.equals(tag) ) {
+        return true;
+      }
+    }
+    return false;
   }
   
   private static boolean forceDeleteTempFile(File tempFile) {
@@ -162,4 +413,75 @@ public class CacheMergeStrategy implements IMergeStrategy {
     }
     return result;
   }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for( byte b : bytes ) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * A merged script, its gzip copy and the urls that it was merged from.
+   */
+  static class MergedScript {
+    private final File file;
+    private final File gzipFile;
+    private final String hash;
+    private final Set<URL> dependencySet;
+    private final long mergeTime;
+    private volatile long checkTime;
+    private volatile long supersededTime;
+
+    MergedScript(File file, File gzipFile, String hash, Set<URL> dependencySet, long mergeTime) {
+      this.file = file;
+      this.gzipFile = gzipFile;
+      this.hash = hash;
+      this.dependencySet = dependencySet;
+      this.mergeTime = mergeTime;
+      this.checkTime = System.currentTimeMillis();
+    }
+
+    public File getFile() { return file; }
+    public File getGzipFile() { return gzipFile; }
+    public String getEntityTag() { return "\"" + hash + "\""; }
+    public String getGzipEntityTag() { return "\"" + hash + "-gzip\""; }
+    public Set<URL> getDependencySet() { return dependencySet; }
+    public long getSupersededTime() { return supersededTime; }
+
+    /**
+     * Records when a newer merge of the manifest replaced this script.
+     */
+    void supersede(long time) {
+      this.supersededTime = time;
+    }
+
+    /**
+     * Returns false if the files have been removed or, at most once every FRESHNESS_CHECK_INTERVAL milliseconds, if one of the urls
+     * that the script was merged from has changed since the merge.
+     */
+    public boolean isCurrent() {
+      if( !file.exists() || !gzipFile.exists() ) {
+        return false;
+      }
+      long now = System.currentTimeMillis();
+      if( now - checkTime < FRESHNESS_CHECK_INTERVAL ) {
+        return true;
+      }
+      checkTime = now;
+      try {
+        return !UrlUtil.getInstance().lastModifiedAfter(dependencySet, mergeTime);
+      } catch( IOException e ) {
+        if( log.isDebugEnabled() )
+          log.debug("Could not check the sources of '"+file.getAbsolutePath()+"', merging them again.", e);
+        return false;
+      }
+    }
+
+    void delete() {
+      forceDeleteTempFile(file);
+      forceDeleteTempFile(gzipFile);
+    }
+  }
 }
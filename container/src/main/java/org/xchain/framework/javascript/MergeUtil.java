@@ -28,6 +28,7 @@ import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xchain.framework.net.DependencyTracker;
 import org.xchain.framework.net.UrlFactory;
 
 /**
@@ -44,12 +45,15 @@ public class MergeUtil {
     try {
       // get the url for the absolute system id.
       URL manifestUrl = UrlFactory.getInstance().newUrl(manifestSystemId);
+      DependencyTracker.getInstance().dependencyFound(manifestUrl);
       // create a reader that will allow us to track the line number of the system id we are working with.
       manifestReader = new LineNumberReader(new InputStreamReader(manifestIn = manifestUrl.openStream()));
       String jsSystemId;
       while( ( jsSystemId = manifestReader.readLine() ) != null ) {
         String absoluteJsSystemId = URI.create(manifestSystemId).resolve(jsSystemId).toString();
-        jsUrlList.add(UrlFactory.getInstance().newUrl(absoluteJsSystemId));
+        URL jsUrl = UrlFactory.getInstance().newUrl(absoluteJsSystemId);
+        DependencyTracker.getInstance().dependencyFound(jsUrl);
+        jsUrlList.add(jsUrl);
       }
     } finally {
       close(manifestReader, log);
@@ -131,7 +131,7 @@ public class CatalogServlet
       JXPathContext context = jXPathContext( request, response );
 
       // execute the command.
-      boolean result = CatalogFactory.getInstance().getCatalog(catalogName).getCommand(commandName).execute(context);
+      boolean result = CatalogFactory.getInstance().getCommandHandle(catalogName, commandName).getCommand().execute(context);
 //      boolean result = CommandUtil.execute(catalogName, commandName, context);
       
       if( response.isCommitted() == false && result == false ) {
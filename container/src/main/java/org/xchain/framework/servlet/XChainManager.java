@@ -148,6 +148,7 @@ public class XChainManager
 
     URL url = null;
     InputSource inputSource = null;
+    XMLReader reader = null;
 
     try {
       // get the url to copy out.
@@ -156,8 +157,8 @@ public class XChainManager
       // get the input source for the url.
       inputSource = UrlSourceUtil.createSaxInputSource( url );
 
-      // create the XMLReader.
-      XMLReader reader = XmlFactoryLifecycle.newXmlReader();
+      // borrow an XMLReader from the pool.
+      reader = XmlFactoryLifecycle.borrowXmlReader();
       reader.setErrorHandler( new FailingErrorHandler() );
 
       // set up the source filter.
@@ -179,6 +180,7 @@ public class XChainManager
       errorScreen(request, response, e);
     }
     finally {
+      XmlFactoryLifecycle.releaseXmlReader(reader);
       close(inputSource);
       close(response.getOutputStream());
     }
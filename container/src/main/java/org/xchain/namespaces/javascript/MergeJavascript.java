@@ -34,6 +34,7 @@ import org.xchain.namespaces.servlet.Constants;
 
 import org.apache.commons.jxpath.JXPathContext;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
@@ -41,7 +42,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A basic javascript merging command.
- * Will cache results for a merge of the compression flag is set.
+ * Will cache results for a merge of the compression flag is set.  Cached results are sent gzip encoded to clients that accept it and
+ * carry an ETag, so that conditional requests for an unchanged merge are answered with 304 Not Modified.
  *
  * @author Mike Moulton
  * @author John Trimble
@@ -64,6 +66,14 @@ public abstract class MergeJavascript
   )
   public abstract HttpServletResponse getResponse( JXPathContext context );
 
+  @Attribute(
+    localName="request",
+    type=AttributeType.JXPATH_VALUE,
+    defaultValue="$servlet:request",
+    defaultPrefixMappings={@PrefixMapping(uri=Constants.URI, prefix=Constants.DEFAULT_PREFIX)}
+  )
+  public abstract HttpServletRequest getRequest( JXPathContext context );
+
   @Attribute(localName="manifest", type=AttributeType.JXPATH_VALUE)
   public abstract String getManifest( JXPathContext context );
   
@@ -80,7 +90,7 @@ public abstract class MergeJavascript
     // We compress the files if either the compression flag is set and build monitoring is disabled, or the compression
     // and debug flags are both set.
     if( this.getCompress(context) && ( !Lifecycle.getLifecycleContext().getConfigContext().isMonitored() || getDebugChain(context) ) )
-      return new CacheMergeStrategy(new CompressJavaScriptMergeStrategy(this.getOptimizationLevel(context)));
+      return new CacheMergeStrategy(new CompressJavaScriptMergeStrategy(this.getOptimizationLevel(context)), "compressed-"+this.getOptimizationLevel(context));
     return BASIC_MERGE_STRATEGY;
   }
   
@@ -98,14 +108,19 @@ public abstract class MergeJavascript
     // resolve the system id into an absolute URL.
     String absoluteManifestSystemId = URI.create(Execution.getSystemId()).resolve(manifestSystemId).toString();
 
-    // set the status code to ok.
-    response.setStatus(HttpServletResponse.SC_OK);
-
     // leave the content type header, it will be set by the pipeline.
     response.setContentType("text/javascript");
 
     try {
-      mergeStrategy.merge(absoluteManifestSystemId, response.getOutputStream());
+      if( mergeStrategy instanceof CacheMergeStrategy ) {
+        // the cache sets the status code, since it may answer with not modified.
+        ((CacheMergeStrategy)mergeStrategy).send(absoluteManifestSystemId, getRequest(context), response);
+      }
+      else {
+        // set the status code to ok.
+        response.setStatus(HttpServletResponse.SC_OK);
+        mergeStrategy.merge(absoluteManifestSystemId, response.getOutputStream());
+      }
     } finally {
       close(response.getOutputStream(), log);
     }
@@ -17,11 +17,15 @@ package org.xchain.framework.filter;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.regex.Pattern;
 
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletContext;
@@ -154,5 +158,122 @@ public class UrlTranslationFilterTest {
     translationFilter.init(filterConfig);
     
     assertFalse(translationFilter.isEnabled());
-  }  
+  }
+
+  @Test
+  public void translationOrderTest()
+    throws Exception
+  {
+    UrlTranslationFilter translationFilter = new UrlTranslationFilter();
+    translationFilter.addTranslation(Pattern.compile("\\A/static/(.*)\\.css\\Z"), "http://css.example.com/${1}.css");
+    translationFilter.addTranslation(Pattern.compile(".*\\.css"), "http://other.example.com/style.css");
+    translationFilter.addTranslation(Pattern.compile("/static/(.*)/(optional)?(.*)"), "http://static.example.com/${1}/${2}${3}${4}");
+
+    // the first matching translation is used, even when a later translation has a longer literal prefix.
+    assertEquals("http://css.example.com/site.css", translationFilter.translate("/static/site.css"));
+    assertEquals("http://other.example.com/style.css", translationFilter.translate("/other/site.css"));
+
+    // unmatched groups are empty and markers for groups that do not exist are left alone.
+    assertEquals("http://static.example.com/images/logo.png${4}", translationFilter.translate("/static/images/logo.png"));
+
+    // group values are not treated as replacement patterns.
+    assertEquals("http://static.example.com/a/$1", translationFilter.translate("/static/a/$1"));
+
+    assertNull(translationFilter.translate("/dynamic/index.xchain"));
+  }
+
+  @Test
+  public void fileTest()
+    throws Exception
+  {
+    final File file = File.createTempFile("translation-filter", ".txt");
+    file.deleteOnExit();
+    FileOutputStream fileOut = new FileOutputStream(file);
+    fileOut.write("file content".getBytes("UTF-8"));
+    fileOut.close();
+
+    UrlTranslationFilter translationFilter = newFileFilter(file);
+
+    final HttpServletRequest request = filterMockery.mock(HttpServletRequest.class);
+    final HttpServletResponse response = filterMockery.mock(HttpServletResponse.class);
+    final SimpleServletOutputStream output = new SimpleServletOutputStream();
+    filterMockery.checking(new Expectations() {{
+      allowing(request).getServletPath();
+      will(returnValue("/file/content.txt"));
+
+      allowing(request).getHeader("If-None-Match");
+      will(returnValue(null));
+
+      allowing(request).getDateHeader("If-Modified-Since");
+      will(returnValue(-1L));
+
+      one(response).setHeader("ETag", "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"");
+      one(response).setDateHeader("Last-Modified", file.lastModified());
+      one(response).setContentLength((int)file.length());
+      allowing(response).setContentType(with(any(String.class)));
+
+      one(response).getOutputStream();
+      will(returnValue(output));
+    }});
+
+    translationFilter.doFilter(request, response, null);
+    assertEquals("file content", output.getOutput());
+  }
+
+  @Test
+  public void fileNotModifiedTest()
+    throws Exception
+  {
+    final File file = File.createTempFile("translation-filter", ".txt");
+    file.deleteOnExit();
+    final String entityTag = "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+
+    UrlTranslationFilter translationFilter = newFileFilter(file);
+
+    final HttpServletRequest request = filterMockery.mock(HttpServletRequest.class);
+    final HttpServletResponse response = filterMockery.mock(HttpServletResponse.class);
+    filterMockery.checking(new Expectations() {{
+      allowing(request).getServletPath();
+      will(returnValue("/file/content.txt"));
+
+      allowing(request).getHeader("If-None-Match");
+      will(returnValue("\"other\", " + entityTag));
+
+      allowing(response).setHeader("ETag", entityTag);
+      allowing(response).setDateHeader("Last-Modified", file.lastModified());
+
+      one(response).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }});
+
+    translationFilter.doFilter(request, response, null);
+  }
+
+  /**
+   * Creates an enabled filter that translates /file/* to the file.
+   */
+  private UrlTranslationFilter newFileFilter(File file)
+    throws Exception
+  {
+    UrlTranslationFilter translationFilter = new UrlTranslationFilter();
+
+    final ServletContext servletContext = filterMockery.mock(ServletContext.class);
+    filterConfig = filterMockery.mock(FilterConfig.class);
+    filterMockery.checking(new Expectations() {{
+      allowing(filterConfig).getServletContext();
+      will(returnValue(servletContext));
+
+      allowing(filterConfig).getInitParameter(UrlTranslationFilter.ENABLED_PARAM_NAME);
+      will(returnValue("true"));
+
+      one(filterConfig).getInitParameter(UrlTranslationFilter.CONFIG_RESOURCE_URL_PARAM_NAME);
+      will(returnValue("org/xchain/framework/filter/translation-filter-test.xml"));
+
+      allowing(servletContext).getMimeType(with(any(String.class)));
+      will(returnValue("text/plain"));
+    }});
+
+    translationFilter.init(filterConfig);
+    translationFilter.addTranslation(Pattern.compile("\\A/file/.*\\Z"), file.toURI().toURL().toExternalForm());
+    return translationFilter;
+  }
 }
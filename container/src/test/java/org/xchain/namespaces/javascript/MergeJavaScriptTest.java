@@ -17,14 +17,19 @@ package org.xchain.namespaces.javascript;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
@@ -94,16 +99,68 @@ public class MergeJavaScriptTest {
   
   @Test
   public void testJavaScriptMerge() throws Exception {
+    byte[] result = executeMerge(createHttpRequestMockery(null, null), HttpServletResponse.SC_OK);
+    assertTrue("The merged javascript is empty.", result.length > 0);
+  }
+
+  @Test
+  public void testGzipMerge() throws Exception {
+    byte[] result = executeMerge(createHttpRequestMockery(null, null), HttpServletResponse.SC_OK);
+    byte[] gzipResult = executeMerge(createHttpRequestMockery("deflate, gzip;q=0.8", null), HttpServletResponse.SC_OK);
+
+    ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipResult));
+    byte[] buffer = new byte[1024];
+    int read;
+    while( (read = in.read(buffer)) != -1 ) {
+      uncompressed.write(buffer, 0, read);
+    }
+    in.close();
+
+    assertTrue("The gzip encoded javascript is not smaller.", gzipResult.length < result.length);
+    assertEquals(new String(result, "UTF-8"), new String(uncompressed.toByteArray(), "UTF-8"));
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    byte[] result = executeMerge(createHttpRequestMockery(null, null), HttpServletResponse.SC_OK);
+    String entityTag = "\"" + sha1(result) + "\"";
+
+    byte[] notModifiedResult = executeMerge(createHttpRequestMockery(null, entityTag), HttpServletResponse.SC_NOT_MODIFIED);
+    assertEquals("A body was sent with a not modified response.", 0, notModifiedResult.length);
+
+    byte[] modifiedResult = executeMerge(createHttpRequestMockery(null, "\"other\""), HttpServletResponse.SC_OK);
+    assertEquals(new String(result, "UTF-8"), new String(modifiedResult, "UTF-8"));
+  }
+
+  /**
+   * Executes the compressing merge chain for the request and returns the body of the response.
+   */
+  protected byte[] executeMerge(HttpServletRequest request, int expectedStatus) throws Exception {
     JXPathContext context = org.xchain.framework.jxpath.JXPathContextFactoryImpl.newInstance().newContext(null, new Object());
-    HttpServletResponse response = createHttpResponseMockery();
+    HttpServletResponse response = createHttpResponseMockery(expectedStatus);
     ((ScopedQNameVariables)context.getVariables()).declareVariable( new QName(org.xchain.namespaces.servlet.Constants.URI, org.xchain.namespaces.servlet.Constants.RESPONSE), response );
+    ((ScopedQNameVariables)context.getVariables()).declareVariable( new QName(org.xchain.namespaces.servlet.Constants.URI, org.xchain.namespaces.servlet.Constants.REQUEST), request );
     
     Command command = CatalogFactory.getInstance().getCatalog(CATALOG_SYSTEM_ID).getCommand(COMPRESS_CHAIN_NAME);
     command.execute(context);
-    String result = ((ServletByteArrayOutputStream)response.getOutputStream()).getByteArrayOutputStream().toString();
+    return ((ServletByteArrayOutputStream)response.getOutputStream()).getByteArrayOutputStream().toByteArray();
+  }
+
+  protected HttpServletRequest createHttpRequestMockery(final String acceptEncoding, final String ifNoneMatch) {
+    Mockery requestMockery = new JUnit4Mockery();
+    final HttpServletRequest request = requestMockery.mock(HttpServletRequest.class);
+    requestMockery.checking(new Expectations() {{
+      allowing(request).getHeader("Accept-Encoding");
+      will(returnValue(acceptEncoding));
+
+      allowing(request).getHeader("If-None-Match");
+      will(returnValue(ifNoneMatch));
+    }});
+    return request;
   }
   
-  protected HttpServletResponse createHttpResponseMockery() throws IOException {
+  protected HttpServletResponse createHttpResponseMockery(final int expectedStatus) throws IOException {
     Mockery requestResponseMockery = new JUnit4Mockery();
     final HttpServletResponse response = requestResponseMockery.mock(HttpServletResponse.class);
     final ServletByteArrayOutputStream output = new ServletByteArrayOutputStream();
@@ -116,11 +173,21 @@ public class MergeJavaScriptTest {
       will(returnValue(true));
       
       allowing(response).setContentType(with(any(String.class)));
+      allowing(response).setContentLength(with(any(int.class)));
+      allowing(response).setHeader(with(any(String.class)), with(any(String.class)));
       
-      allowing(response).setStatus(200);
+      allowing(response).setStatus(expectedStatus);
     }});
     return response;
   }
+
+  private static String sha1(byte[] bytes) throws Exception {
+    StringBuilder builder = new StringBuilder();
+    for( byte b : MessageDigest.getInstance("SHA-1").digest(bytes) ) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
   
   static class ServletByteArrayOutputStream extends ServletOutputStream {
 
@@ -17,6 +17,7 @@ package org.xchain;
 
 import java.util.Map;
 import java.util.Set;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.xchain.annotations.AttributeType;
 
 import javax.xml.namespace.QName;
@@ -58,4 +59,13 @@ public interface EngineeredCommand
    * @return the mapping of attribute names to attribute details for this command.
    */
   public Map<QName, AttributeDetail> getAttributeDetailMap();
+
+  /**
+   * Returns the compiled JXPath expressions for this command's JXPath attributes.  The expressions are compiled when the
+   * command is loaded and are used by the engineered attribute methods in place of the attribute values.  Changing an attribute
+   * value through the attribute map drops the compiled expression for that attribute.
+   *
+   * @return the mapping of attribute names to compiled expressions for this command.
+   */
+  public Map<QName, CompiledExpression> getCompiledExpressionMap();
 }
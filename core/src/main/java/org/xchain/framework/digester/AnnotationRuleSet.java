@@ -40,6 +40,7 @@ import java.util.Map;
 import java.util.Set;
 
 import static org.xchain.framework.util.AnnotationUtil.*;
+import org.xchain.framework.util.EngineeringUtil;
 import org.xchain.framework.lifecycle.Lifecycle;
 import org.xchain.framework.lifecycle.LifecycleContext;
 import org.xchain.framework.lifecycle.LifecycleClassLoader;
@@ -115,7 +116,7 @@ public class AnnotationRuleSet
 
     WithDefaultsRulesWrapper defaults = new WithDefaultsRulesWrapper(digester.getRules());
     defaults.addDefault(new UnknownElementRule());
-    digester.setRules(defaults);
+    digester.setRules(new MatchCachingRules(defaults));
   }
 
   public static void addRulesForCatalog( Digester digester, Class classObject, LifecycleContext lifecycleContext )
@@ -342,6 +343,9 @@ public class AnnotationRuleSet
             throw new XChainParseException(getDigester().getDocumentLocator(), "The attribute "+entry.getKey()+" is required for element "+elementQName+".");
           }
         }
+
+        // compile the jxpath attributes, so that they are not parsed when the command executes.
+        EngineeringUtil.compileAttributes((EngineeredCommand)top);
       }
     }
   }
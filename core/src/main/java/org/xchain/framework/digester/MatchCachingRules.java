@@ -0,0 +1,88 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.digester;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.digester.Digester;
+import org.apache.commons.digester.Rule;
+import org.apache.commons.digester.Rules;
+
+/**
+ * A Rules implementation that remembers the rules matched for each namespace and pattern.  Matching a pattern against the wildcard
+ * patterns of the annotation rule set tests every registered pattern, and the same element paths are matched over and over while a
+ * catalog is parsed, so the result of the wrapped rules is kept until a rule is added or the rules are cleared.
+ */
+public class MatchCachingRules
+  implements Rules
+{
+  /** The rules that do the matching. */
+  private Rules wrapped;
+
+  /** The matched rules, keyed by namespace uri and pattern. */
+  private Map<String, List> matchCache = new HashMap<String, List>();
+
+  public MatchCachingRules( Rules wrapped )
+  {
+    this.wrapped = wrapped;
+  }
+
+  public Digester getDigester() { return wrapped.getDigester(); }
+  public void setDigester( Digester digester ) { wrapped.setDigester(digester); }
+  public String getNamespaceURI() { return wrapped.getNamespaceURI(); }
+  public void setNamespaceURI( String namespaceURI ) { wrapped.setNamespaceURI(namespaceURI); }
+
+  public void add( String pattern, Rule rule )
+  {
+    matchCache.clear();
+    wrapped.add(pattern, rule);
+  }
+
+  public void clear()
+  {
+    matchCache.clear();
+    wrapped.clear();
+  }
+
+  /**
+   * @deprecated Call match(namespaceURI, pattern) instead.
+   */
+  public List match( String pattern )
+  {
+    return match(null, pattern);
+  }
+
+  /**
+   * Returns the rules that match the namespace and pattern.  The returned list is shared between calls and must not be modified.
+   */
+  public List match( String namespaceURI, String pattern )
+  {
+    String key = namespaceURI == null ? pattern : namespaceURI+" "+pattern;
+    List matches = matchCache.get(key);
+    if( matches == null ) {
+      matches = wrapped.match(namespaceURI, pattern);
+      matchCache.put(key, matches);
+    }
+    return matches;
+  }
+
+  public List rules()
+  {
+    return wrapped.rules();
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.commons.digester.RuleSetBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.URL;
 
 import org.xml.sax.Attributes;
@@ -29,6 +30,7 @@ import org.xml.sax.Attributes;
 import org.xchain.framework.util.AttributesUtil;
 import org.xchain.framework.lifecycle.Lifecycle;
 import org.xchain.framework.lifecycle.ConfigContext;
+import org.xchain.framework.jsl.TemplateCompiler;
 
 /**
  * <config:config xmlns:xchain-config="http://xchain.org/config/1.0">
@@ -48,12 +50,19 @@ public class XChainConfigRuleSet
 
   public static final String CONFIG_TAG_NAME = "config";
   public static final String MONITOR_TAG_NAME = "monitor";
+  public static final String MONITOR_INTERVAL_TAG_NAME = "monitor-interval";
   public static final String CATALOG_CACHE_SIZE_TAG_NAME = "catalog-cache-size";
   public static final String TEMPLATES_CACHE_SIZE_TAG_NAME = "templates-cache-size";
+  public static final String TEMPLATE_COMPILER_THREADS_TAG_NAME = "template-compiler-threads";
+  public static final String TEMPLATE_COMPILER_TAG_NAME = "template-compiler";
+  public static final String BYTECODE_CACHE_DIRECTORY_TAG_NAME = "bytecode-cache-directory";
+  public static final String CATALOG_PRELOAD_THREADS_TAG_NAME = "catalog-preload-threads";
+  public static final String PRELOAD_CATALOG_TAG_NAME = "preload-catalog";
   public static final String RESOURCE_URL_TAG_NAME = "resource-base-url";
   public static final String SOURCE_URL_TAG_NAME = "source-base-url";
   public static final String WEBAPP_URL_TAG_NAME = "webapp-base-url";
   public static final String SYSTEM_ID_ATTRIBUTE = "system-id";
+  public static final String PATTERN_ATTRIBUTE = "pattern";
 
   public XChainConfigRuleSet()
   {
@@ -74,7 +83,13 @@ public class XChainConfigRuleSet
     digester.addRule( CONFIG_TAG_NAME, new ConfigLoadRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + CATALOG_CACHE_SIZE_TAG_NAME, new CatalogCacheSizeRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + TEMPLATES_CACHE_SIZE_TAG_NAME, new TemplatesCacheSizeRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + TEMPLATE_COMPILER_THREADS_TAG_NAME, new TemplateCompilerThreadsRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + TEMPLATE_COMPILER_TAG_NAME, new TemplateCompilerRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + BYTECODE_CACHE_DIRECTORY_TAG_NAME, new BytecodeCacheDirectoryRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + CATALOG_PRELOAD_THREADS_TAG_NAME, new CatalogPreloadThreadsRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + PRELOAD_CATALOG_TAG_NAME, new PreloadCatalogRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + MONITOR_TAG_NAME, new MonitorRule() );
+    digester.addRule( CONFIG_TAG_NAME + "/" + MONITOR_INTERVAL_TAG_NAME, new MonitorIntervalRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + RESOURCE_URL_TAG_NAME, new ResourceUrlRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + SOURCE_URL_TAG_NAME, new SourceUrlRule() );
     digester.addRule( CONFIG_TAG_NAME + "/" + WEBAPP_URL_TAG_NAME, new WebappUrlRule() );
@@ -106,6 +121,26 @@ public class XChainConfigRuleSet
     }
   }
 
+  public static class MonitorIntervalRule
+    extends Rule
+  {
+    public void body( String namespaceUri, String name, String body )
+      throws Exception
+    {
+      if( body != null && !"".equals( body ) ) {
+        ConfigContext context = Lifecycle.getLifecycleContext().getConfigContext();
+        try {
+          context.setMonitorInterval( Long.parseLong( body ) );
+        }
+        catch ( NumberFormatException e ) {
+          if( log.isWarnEnabled() ) {
+            log.warn("Unable to parse '" + MONITOR_INTERVAL_TAG_NAME + "' value of '" + body + "'", e);
+          }
+        }
+      }
+    }
+  }
+
   public static class CatalogCacheSizeRule
     extends Rule
   {
@@ -146,6 +181,99 @@ public class XChainConfigRuleSet
     }
   }
 
+  public static class TemplateCompilerThreadsRule
+    extends Rule
+  {
+    public void body( String namespaceUri, String name, String body )
+      throws Exception
+    {
+      if( body != null && !"".equals( body ) ) {
+        ConfigContext context = Lifecycle.getLifecycleContext().getConfigContext();
+        try {
+          context.setTemplateCompilerThreads( Integer.parseInt( body ) );
+        }
+        catch ( NumberFormatException e ) {
+          if( log.isWarnEnabled() ) {
+            log.warn("Unable to parse '" + TEMPLATE_COMPILER_THREADS_TAG_NAME + "' value of '" + body + "'", e);
+          }
+        }
+      }
+    }
+  }
+
+  public static class TemplateCompilerRule
+    extends Rule
+  {
+    public void body( String namespaceUri, String name, String body )
+      throws Exception
+    {
+      if( body != null && !"".equals( body.trim() ) ) {
+        String templateCompiler = body.trim();
+        if( TemplateCompiler.ECLIPSE_BACKEND.equals( templateCompiler ) || TemplateCompiler.JAVASSIST_BACKEND.equals( templateCompiler ) ) {
+          Lifecycle.getLifecycleContext().getConfigContext().setTemplateCompiler( templateCompiler );
+        }
+        else if( log.isWarnEnabled() ) {
+          log.warn("Unknown '" + TEMPLATE_COMPILER_TAG_NAME + "' value of '" + body + "'");
+        }
+      }
+    }
+  }
+
+  public static class BytecodeCacheDirectoryRule
+    extends Rule
+  {
+    public void body( String namespaceUri, String name, String body )
+      throws Exception
+    {
+      if( body != null && !"".equals( body.trim() ) ) {
+        ConfigContext context = Lifecycle.getLifecycleContext().getConfigContext();
+        context.setBytecodeCacheDirectory( new File( body.trim() ) );
+      }
+    }
+  }
+
+  public static class CatalogPreloadThreadsRule
+    extends Rule
+  {
+    public void body( String namespaceUri, String name, String body )
+      throws Exception
+    {
+      if( body != null && !"".equals( body ) ) {
+        ConfigContext context = Lifecycle.getLifecycleContext().getConfigContext();
+        try {
+          context.setCatalogPreloadThreads( Integer.parseInt( body ) );
+        }
+        catch ( NumberFormatException e ) {
+          if( log.isWarnEnabled() ) {
+            log.warn("Unable to parse '" + CATALOG_PRELOAD_THREADS_TAG_NAME + "' value of '" + body + "'", e);
+          }
+        }
+      }
+    }
+  }
+
+  public static class PreloadCatalogRule
+    extends Rule
+  {
+    public void begin( String namespaceUri, String name, Attributes attributes )
+      throws Exception
+    {
+      ConfigContext context = Lifecycle.getLifecycleContext().getConfigContext();
+      String systemId = AttributesUtil.getAttribute( attributes, NAMESPACE_URI, SYSTEM_ID_ATTRIBUTE );
+      if( systemId != null && !"".equals(systemId) ) {
+        context.getPreloadCatalogList().add(systemId);
+      }
+      String pattern = AttributesUtil.getAttribute( attributes, NAMESPACE_URI, PATTERN_ATTRIBUTE );
+      if( pattern != null && !"".equals(pattern) ) {
+        context.getPreloadCatalogPatternList().add(pattern);
+      }
+    }
+
+    public void end( String namespaceUri, String name )
+    {
+    }
+  }
+
   public static class ResourceUrlRule
     extends Rule
   {
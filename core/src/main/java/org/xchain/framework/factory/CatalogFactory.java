@@ -18,6 +18,8 @@ package org.xchain.framework.factory;
 import java.io.FileNotFoundException;
 import java.net.MalformedURLException;
 
+import javax.xml.namespace.QName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xchain.Catalog;
@@ -29,6 +31,7 @@ import org.xchain.framework.strategy.ConsumerStrategy;
 import org.xchain.framework.strategy.InputSourceSourceStrategy;
 import org.xchain.framework.strategy.LoadStrategy;
 import org.xchain.framework.strategy.SourceStrategy;
+import org.xchain.framework.util.ConcurrentLruCache;
 import org.xml.sax.InputSource;
 
 /**
@@ -43,6 +46,7 @@ public class CatalogFactory {
 	private final LoadStrategy<Catalog,InputSource> loadStrategy;
 	private SourceStrategy<InputSource> sourceStrategy = null;	
 	private ConsumerStrategy<Catalog, InputSource> consumerStrategy = null;
+	private final ConcurrentLruCache<String, CommandHandle> commandHandleCache = new ConcurrentLruCache<String, CommandHandle>(1000);
 	
 	public static Logger log = LoggerFactory.getLogger( CatalogFactory.class );
 	private static final CatalogFactory instance = new CatalogFactory();
@@ -100,5 +104,28 @@ public class CatalogFactory {
 		
 		return catalog;
 	}
-}
 
+	/**
+	 * Returns a handle for the command with the given name in the catalog with the given systemId.  Handles are cached, so callers that
+	 * dispatch to the same command many times get the same handle, which only looks the command up when its catalog changes.  The catalog
+	 * is not loaded until the command is requested from the handle.
+	 *
+	 * @param systemId The id of the catalog that contains the command.
+	 * @param name The name of the command.
+	 *
+	 * @return The handle for the command.
+	 */
+	public CommandHandle getCommandHandle(String systemId, QName name)
+	{
+		String key = systemId + " " + name;
+		CommandHandle handle = commandHandleCache.get(key);
+		if (handle == null) {
+			handle = new CommandHandle(systemId, name);
+			CommandHandle existing = commandHandleCache.putIfAbsent(key, handle);
+			if (existing != null) {
+				handle = existing;
+			}
+		}
+		return handle;
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.factory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xchain.framework.net.protocol.resource.ResourceUrlConnection;
+import org.xchain.framework.scanner.AbstractScanner;
+import org.xchain.framework.scanner.MarkerResourceLocator;
+import org.xchain.framework.scanner.ScanException;
+import org.xchain.framework.scanner.ScanNode;
+
+/**
+ * Loads catalogs into the catalog factory before they are requested, so that the first request for each catalog does not pay for
+ * parsing the catalog, engineering its commands and compiling its templates.  The catalogs to load are either listed by system id or
+ * found by matching the resource names under the xchain roots of the class loader against patterns.  Catalogs found by pattern are
+ * loaded with the context class loader authority of the resource protocol.
+ *
+ * The catalogs are loaded concurrently on a fixed number of threads.  A catalog that fails to load does not stop the other catalogs
+ * from loading, the failure is recorded in the result for that catalog.
+ */
+public class CatalogPreloader
+  extends AbstractScanner
+{
+  public static Logger log = LoggerFactory.getLogger( CatalogPreloader.class );
+
+  /** The system ids of the catalogs to load, in the order that they were added or found. */
+  private Set<String> systemIdSet = new LinkedHashSet<String>();
+
+  /** The patterns that resource names are matched against. */
+  private List<Pattern> patternList = new ArrayList<Pattern>();
+
+  public CatalogPreloader( ClassLoader classLoader )
+  {
+    super( new MarkerResourceLocator("META-INF/xchain.xml"), classLoader );
+  }
+
+  /**
+   * Adds the system id of a catalog to load.
+   */
+  public void addSystemId( String systemId )
+  {
+    systemIdSet.add(systemId);
+  }
+
+  /**
+   * Adds a pattern for the resource names of catalogs to load.  The pattern must match the whole resource name, for example
+   * ".*\.xchain" matches every file ending in .xchain under the xchain roots.
+   */
+  public void addPattern( Pattern pattern )
+  {
+    patternList.add(pattern);
+  }
+
+  /**
+   * Adds the system ids of the resources that match one of the patterns.
+   */
+  @Override
+  public void scanNode( ScanNode node )
+    throws ScanException
+  {
+    for( Pattern pattern : patternList ) {
+      if( pattern.matcher(node.getResourceName()).matches() ) {
+        systemIdSet.add("resource://"+ResourceUrlConnection.CONTEXT_CLASS_LOADER_ATHORITY+"/"+node.getResourceName());
+        return;
+      }
+    }
+  }
+
+  /**
+   * Finds the catalogs that match the patterns and loads all of the catalogs into the catalog factory.
+   *
+   * @param threadCount the maximum number of catalogs to load at the same time.
+   * @return the result of loading each catalog, in the order that the catalogs were added or found.
+   */
+  public List<Result> preload( int threadCount )
+    throws ScanException
+  {
+    if( !patternList.isEmpty() ) {
+      scan();
+    }
+
+    List<String> systemIdList = new ArrayList<String>(systemIdSet);
+    List<Result> resultList = new ArrayList<Result>(systemIdList.size());
+    if( systemIdList.isEmpty() ) {
+      return resultList;
+    }
+
+    threadCount = Math.max(1, Math.min(threadCount, systemIdList.size()));
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread(runnable, "xchain-catalog-preloader-"+threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setContextClassLoader(contextClassLoader);
+        return thread;
+      }
+    });
+    try {
+      List<Future<Result>> futureList = new ArrayList<Future<Result>>(systemIdList.size());
+      for( final String systemId : systemIdList ) {
+        futureList.add(executor.submit(new Callable<Result>() {
+          public Result call() {
+            return load(systemId);
+          }
+        }));
+      }
+      for( int i = 0; i < futureList.size(); i++ ) {
+        try {
+          resultList.add(futureList.get(i).get());
+        }
+        catch( ExecutionException ee ) {
+          resultList.add(new Result(systemIdList.get(i), 0, ee.getCause()));
+        }
+        catch( InterruptedException ie ) {
+          Thread.currentThread().interrupt();
+          throw new ScanException("Interrupted while preloading catalogs.", ie);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return resultList;
+  }
+
+  /**
+   * Loads a single catalog, recording how long the load took.
+   */
+  private static Result load( String systemId )
+  {
+    long start = System.currentTimeMillis();
+    try {
+      CatalogFactory.getInstance().getCatalog(systemId);
+      return new Result(systemId, System.currentTimeMillis()-start, null);
+    }
+    catch( Throwable t ) {
+      return new Result(systemId, System.currentTimeMillis()-start, t);
+    }
+  }
+
+  /**
+   * The outcome of loading one catalog.
+   */
+  public static class Result
+  {
+    private final String systemId;
+    private final long loadTime;
+    private final Throwable failure;
+
+    public Result( String systemId, long loadTime, Throwable failure )
+    {
+      this.systemId = systemId;
+      this.loadTime = loadTime;
+      this.failure = failure;
+    }
+
+    /**
+     * Returns the system id of the catalog.
+     */
+    public String getSystemId() { return this.systemId; }
+
+    /**
+     * Returns the time spent loading the catalog, in milliseconds.
+     */
+    public long getLoadTime() { return this.loadTime; }
+
+    /**
+     * Returns the exception that was thrown while loading the catalog, or null if the catalog loaded.
+     */
+    public Throwable getFailure() { return this.failure; }
+
+    /**
+     * Returns true if the catalog loaded.
+     */
+    public boolean isLoaded() { return this.failure == null; }
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.factory;
+
+import javax.xml.namespace.QName;
+
+import org.xchain.Catalog;
+import org.xchain.CatalogLoadException;
+import org.xchain.CatalogNotFoundException;
+import org.xchain.Command;
+import org.xchain.CommandNotFoundException;
+import org.xchain.namespaces.core.XChainCatalog;
+
+/**
+ * A reference to a command in a catalog that can be resolved once and then reused.  The handle remembers the catalog that the command
+ * was found in and only looks the command up again when the catalog factory returns a different catalog, because the catalog was
+ * reloaded, or when the commands of the catalog have changed.
+ *
+ * Handles are created by the catalog factory.
+ *
+ * @see CatalogFactory#getCommandHandle(String, QName)
+ */
+public class CommandHandle
+{
+  private final String systemId;
+  private final QName name;
+
+  /** The last resolution of this handle, or null if the handle has not been resolved. */
+  private volatile Resolution resolution = null;
+
+  CommandHandle( String systemId, QName name )
+  {
+    this.systemId = systemId;
+    this.name = name;
+  }
+
+  /**
+   * Returns the system id of the catalog that contains the command.
+   */
+  public String getSystemId() { return this.systemId; }
+
+  /**
+   * Returns the name of the command.
+   */
+  public QName getName() { return this.name; }
+
+  /**
+   * Returns the command for this handle.
+   *
+   * @throws CatalogNotFoundException if the catalog could not be found.
+   * @throws CatalogLoadException if the catalog could not be loaded.
+   * @throws CommandNotFoundException if the catalog does not contain the command.
+   */
+  public Command getCommand()
+    throws CatalogNotFoundException, CatalogLoadException, CommandNotFoundException
+  {
+    Catalog catalog = CatalogFactory.getInstance().getCatalog(systemId);
+    int version = catalog instanceof XChainCatalog ? ((XChainCatalog)catalog).getVersion() : 0;
+
+    Resolution current = resolution;
+    if( current == null || current.catalog != catalog || current.version != version ) {
+      current = new Resolution(catalog, version, catalog.getCommand(name));
+      resolution = current;
+    }
+    return current.command;
+  }
+
+  public String toString()
+  {
+    return name+" in "+systemId;
+  }
+
+  /**
+   * A command along with the catalog, and the version of the catalog, that it was found in.
+   */
+  private static class Resolution
+  {
+    private final Catalog catalog;
+    private final int version;
+    private final Command command;
+
+    public Resolution( Catalog catalog, int version, Command command )
+    {
+      this.catalog = catalog;
+      this.version = version;
+      this.command = command;
+    }
+  }
+}
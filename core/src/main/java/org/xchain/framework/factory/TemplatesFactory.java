@@ -15,6 +15,8 @@
  */
 package org.xchain.framework.factory;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
 
 import javax.xml.transform.Source;
@@ -23,13 +25,18 @@ import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.sax.TransformerHandler;
 
+import org.xchain.framework.lifecycle.ConfigContext;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.lifecycle.LifecycleContext;
+import org.xchain.framework.net.DependencyTracker;
 import org.xchain.framework.strategy.CachingLoadStrategy;
-import org.xchain.framework.strategy.LoadStrategy;
+import org.xchain.framework.strategy.ConsumerStrategy;
 import org.xchain.framework.strategy.SourceStrategy;
 import org.xchain.framework.strategy.TemplatesConsumerStrategy;
 import org.xchain.framework.strategy.InputSourceSourceStrategy;
 
 import org.xchain.framework.sax.SaxTemplates;
+import org.xchain.framework.util.ConcurrentLruCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +44,8 @@ import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
 
 /**
- * The TemplatesFactory is used to load Templates.  These templates are cached but not reloading.
+ * The TemplatesFactory is used to load Templates.  These templates are cached and reloaded by the templates cache.  Usage statistics are
+ * kept for each stylesheet.
  *
  * @author Devon Tackett
  * @author Christian Trimble
@@ -47,18 +55,35 @@ import org.xml.sax.InputSource;
 public class TemplatesFactory {
 	public static Logger log = LoggerFactory.getLogger( TemplatesFactory.class );	
 	private static final TemplatesFactory instance = new TemplatesFactory();
-	private final LoadStrategy<SaxTemplates,InputSource> loadStrategy;
+	private final CachingLoadStrategy<SaxTemplates,InputSource> loadStrategy;
+	// The templates handles by system id, so that each handle can hold on to its resolved templates.
+	private final ConcurrentLruCache<String, ReloadingSaxTemplates> templatesHandleCache;
+	// The usage statistics for the most recently used stylesheets, bounded like the templates cache.
+	private final ConcurrentLruCache<String, TemplatesStatistics> statisticsCache;
 	
 	public static final TemplatesFactory getInstance() {
 		return instance;
 	}
 	
 	private TemplatesFactory() {
-		loadStrategy = new CachingLoadStrategy<SaxTemplates, InputSource>(200);
+		int cacheSize = templatesCacheSize();
+		loadStrategy = new CachingLoadStrategy<SaxTemplates, InputSource>(cacheSize);
+		templatesHandleCache = new ConcurrentLruCache<String, ReloadingSaxTemplates>(cacheSize);
+		statisticsCache = new ConcurrentLruCache<String, TemplatesStatistics>(cacheSize);
+	}
+
+	/**
+	 * Returns the configured size of the templates cache, or the default size if the lifecycle is not running.
+	 */
+	private static int templatesCacheSize() {
+		LifecycleContext context = Lifecycle.getLifecycleContext();
+		return context != null ? context.getConfigContext().getTemplatesCacheSize() : new ConfigContext().getTemplatesCacheSize();
 	}
 	
 	/**
-	 * Retrieve the Templates for the given systemId.  The templates object will be wrapped with a reloading wrapper, if reloading is on.
+	 * Retrieve the Templates for the given systemId.  The same templates handle is returned for each request of a system id, so the
+	 * compiled templates are only looked up in the cache when their cache entry has changed.  Like the templates cache, handles are
+	 * kept by system id, so the strategies of the request that created the handle are used to load the templates.
 	 * 
 	 * @param systemId The id of the Templates to load. 
 	 * @param sourceStrategy The strategy to create sources to load the Templates from.
@@ -69,8 +94,15 @@ public class TemplatesFactory {
 	public SaxTemplates getTemplates(String systemId, SourceStrategy<InputSource> sourceStrategy, TemplatesConsumerStrategy consumerStrategy)
 		throws Exception
 	{
-                // the cached templates object.
-		return new ReloadingSaxTemplates(systemId, sourceStrategy, consumerStrategy);
+		ReloadingSaxTemplates templates = templatesHandleCache.get(systemId);
+		if( templates == null ) {
+			ReloadingSaxTemplates newTemplates = new ReloadingSaxTemplates(systemId, sourceStrategy, consumerStrategy);
+			templates = templatesHandleCache.putIfAbsent(systemId, newTemplates);
+			if( templates == null ) {
+				templates = newTemplates;
+			}
+		}
+		return templates;
 	}
 
         /**
@@ -79,28 +111,89 @@ public class TemplatesFactory {
         public SaxTemplates getTemplates(String systemId)
           throws Exception
         {
-          return new ReloadingSaxTemplates( systemId, new InputSourceSourceStrategy(), new TemplatesConsumerStrategy() );
+          SaxTemplates templates = templatesHandleCache.get(systemId);
+          if( templates == null ) {
+            templates = getTemplates( systemId, new InputSourceSourceStrategy(), new TemplatesConsumerStrategy() );
+          }
+          return templates;
         }
 
+  /**
+   * Returns the usage statistics for the stylesheet with the given system id, or null if the stylesheet has not been used recently.
+   */
+  public TemplatesStatistics getStatistics( String systemId )
+  {
+    return statisticsCache.get(systemId);
+  }
+
+  /**
+   * Returns the usage statistics for the most recently used stylesheets.  Statistics are kept for as many stylesheets as the templates
+   * cache holds, the statistics for the least recently used stylesheets are dropped.
+   */
+  public Collection<TemplatesStatistics> getStatistics()
+  {
+    return Collections.unmodifiableCollection(statisticsCache.values());
+  }
+
+  private TemplatesStatistics statisticsFor( String systemId )
+  {
+    TemplatesStatistics statistics = statisticsCache.get(systemId);
+    if( statistics == null ) {
+      TemplatesStatistics newStatistics = new TemplatesStatistics(systemId);
+      statistics = statisticsCache.putIfAbsent(systemId, newStatistics);
+      if( statistics == null ) {
+        statistics = newStatistics;
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * A templates handle that holds on to the compiled templates it resolved from the templates cache.  The handle only goes back
+   * to the cache when the cache reports that it has changed.
+   */
   private class ReloadingSaxTemplates
     implements SaxTemplates
   {
     private String systemId;
     private SourceStrategy<InputSource> sourceStrategy;
-    private TemplatesConsumerStrategy consumerStrategy;
+    private ConsumerStrategy<SaxTemplates, InputSource> consumerStrategy;
+    private volatile TemplatesStatistics statistics;
+    private volatile CachingLoadStrategy.CachedResult<SaxTemplates> resolved = null;
 
     public ReloadingSaxTemplates( String systemId, SourceStrategy<InputSource> sourceStrategy, TemplatesConsumerStrategy consumerStrategy )
     {
       this.systemId = systemId;
       this.sourceStrategy = sourceStrategy;
-      this.consumerStrategy = consumerStrategy;
+      this.consumerStrategy = new TimedConsumerStrategy(consumerStrategy);
+      this.statistics = statisticsFor(systemId);
+    }
+
+    /**
+     * Returns the compiled templates, asking the cache for them only if their cache entry has changed since they were resolved.
+     */
+    private SaxTemplates getResolvedTemplates()
+      throws Exception
+    {
+      CachingLoadStrategy.CachedResult<SaxTemplates> current = resolved;
+      if( current != null && loadStrategy.isCurrent(systemId, current.getGeneration()) ) {
+        statistics.hit();
+        return current.getObject();
+      }
+      // the statistics may have been dropped while the templates were not in use.
+      statistics = statisticsFor(systemId);
+      statistics.miss();
+
+      current = loadStrategy.getCachedResult(systemId, sourceStrategy, consumerStrategy);
+      resolved = current;
+      return current.getObject();
     }
 
     public Transformer newTransformer()
       throws TransformerConfigurationException
     {
       try {
-        return loadStrategy.getObject(systemId, sourceStrategy, consumerStrategy).newTransformer();
+        return getResolvedTemplates().newTransformer();
       }
       catch( TransformerConfigurationException tce ) {
         throw tce;
@@ -113,7 +206,7 @@ public class TemplatesFactory {
     public Properties getOutputProperties()
     {
       try {
-        return loadStrategy.getObject(systemId, sourceStrategy, consumerStrategy).getOutputProperties();
+        return getResolvedTemplates().getOutputProperties();
       }
       catch( Exception e )
       {
@@ -125,7 +218,7 @@ public class TemplatesFactory {
       throws TransformerConfigurationException
     {
       try {
-        return loadStrategy.getObject(systemId, sourceStrategy, consumerStrategy).newTransformerHandler();
+        return getResolvedTemplates().newTransformerHandler();
       }
       catch( TransformerConfigurationException tce ) {
         throw tce;
@@ -137,4 +230,34 @@ public class TemplatesFactory {
     }
   }
 
+  /**
+   * A consumer strategy that records how long the wrapped strategy takes to compile a stylesheet.
+   */
+  private class TimedConsumerStrategy
+    implements ConsumerStrategy<SaxTemplates, InputSource>
+  {
+    private TemplatesConsumerStrategy consumerStrategy;
+
+    public TimedConsumerStrategy( TemplatesConsumerStrategy consumerStrategy )
+    {
+      this.consumerStrategy = consumerStrategy;
+    }
+
+    public SaxTemplates consume( String systemId, SourceStrategy<InputSource> sourceStrategy, DependencyTracker tracker )
+      throws Exception
+    {
+      long start = System.currentTimeMillis();
+      try {
+        return consumerStrategy.consume(systemId, sourceStrategy, tracker);
+      }
+      finally {
+        long time = System.currentTimeMillis() - start;
+        statisticsFor(systemId).compiled(time);
+        if( log.isDebugEnabled() ) {
+          log.debug("Compiled templates for system id '"+systemId+"' in "+time+"ms.");
+        }
+      }
+    }
+  }
+
 }
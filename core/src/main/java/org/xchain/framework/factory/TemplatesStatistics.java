@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.factory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Usage statistics for the templates of one stylesheet.  A hit is a use of the templates that was served from the resolved templates
+ * held by the TemplatesFactory.  A miss is a use that had to ask the templates cache for the templates, either because they had not
+ * been resolved yet or because the cache had changed.  Compiles count the number of times the stylesheet was compiled.
+ */
+public class TemplatesStatistics
+{
+  private final String systemId;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong compileCount = new AtomicLong();
+  private final AtomicLong compileTime = new AtomicLong();
+
+  public TemplatesStatistics( String systemId )
+  {
+    this.systemId = systemId;
+  }
+
+  /**
+   * Returns the system id of the stylesheet.
+   */
+  public String getSystemId() { return this.systemId; }
+
+  /**
+   * Returns the number of uses served from the resolved templates.
+   */
+  public long getHitCount() { return this.hitCount.get(); }
+
+  /**
+   * Returns the number of uses that had to ask the templates cache for the templates.
+   */
+  public long getMissCount() { return this.missCount.get(); }
+
+  /**
+   * Returns the number of times the stylesheet has been compiled.
+   */
+  public long getCompileCount() { return this.compileCount.get(); }
+
+  /**
+   * Returns the total time spent compiling the stylesheet, in milliseconds.
+   */
+  public long getCompileTime() { return this.compileTime.get(); }
+
+  void hit() { hitCount.incrementAndGet(); }
+
+  void miss() { missCount.incrementAndGet(); }
+
+  void compiled( long time )
+  {
+    compileCount.incrementAndGet();
+    compileTime.addAndGet(time);
+  }
+
+  public String toString()
+  {
+    return systemId+" [hits="+getHitCount()+", misses="+getMissCount()+", compiles="+getCompileCount()+", compile time="+getCompileTime()+"ms]";
+  }
+}
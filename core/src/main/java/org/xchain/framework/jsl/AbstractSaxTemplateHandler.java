@@ -95,6 +95,9 @@ public abstract class AbstractSaxTemplateHandler
 
     sourceCompiler = new TemplateCompiler();
     sourceCompiler.init(context.getClassLoader());
+    sourceCompiler.setBackend(context.getConfigContext().getTemplateCompiler());
+    sourceCompiler.setThreadCount(context.getConfigContext().getTemplateCompilerThreads());
+    sourceCompiler.setBytecodeCache(context.getBytecodeCache());
     
     getContentHandler().startDocument();
   }
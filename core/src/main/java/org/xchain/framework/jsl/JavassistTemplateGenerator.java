@@ -0,0 +1,130 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.jsl;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xchain.framework.util.EngineeringUtil;
+import org.xchain.namespaces.jsl.AbstractTemplateCommand;
+import org.xml.sax.SAXException;
+
+/**
+ * Generates the bytecode for template classes in process, using the javassist compiler.  Instead of compiling the complete source
+ * file built by the TemplateSourceBuilder, each method of the template class is compiled on its own and added to a class that extends
+ * AbstractTemplateCommand.  The methods are added in the order of the method source list, which lists each method after the methods
+ * that it calls.
+ */
+public class JavassistTemplateGenerator
+{
+  private static Logger log = LoggerFactory.getLogger(JavassistTemplateGenerator.class);
+
+  /** The class pool used to generate template classes. */
+  private ClassPool classPool;
+
+  public JavassistTemplateGenerator( ClassLoader classLoader )
+  {
+    classPool = EngineeringUtil.createClassPool(classLoader);
+
+    // the packages imported by the generated template sources.
+    classPool.importPackage("org.apache.commons.jxpath");
+    classPool.importPackage("org.xchain.framework.sax");
+    classPool.importPackage(TemplateSourceBuilder.TEMPLATE_PACKAGE);
+    classPool.importPackage("org.xml.sax");
+    classPool.importPackage("org.xml.sax.helpers");
+    classPool.importPackage("javax.xml.namespace");
+  }
+
+  /**
+   * Generates the bytecode for the template class described by the source result.
+   *
+   * @throws SAXException if one of the methods of the template could not be compiled.
+   */
+  public byte[] generate( SourceResult result )
+    throws SAXException
+  {
+    String className = result.getClassName();
+    String simpleName = className.substring(className.lastIndexOf('.')+1);
+    CtClass templateClass = null;
+    String memberSource = null;
+    try {
+      templateClass = classPool.makeClass(className, classPool.get(AbstractTemplateCommand.class.getName()));
+
+      memberSource = "public "+simpleName+"() { super("+result.getElementCount()+"); }";
+      templateClass.addConstructor(CtNewConstructor.make(memberSource, templateClass));
+
+      for( String methodSource : result.getMethodSourceList() ) {
+        memberSource = unescapeUnicode(methodSource);
+        templateClass.addMethod(CtNewMethod.make(memberSource, templateClass));
+      }
+      memberSource = null;
+
+      return templateClass.toBytecode();
+    }
+    catch( Exception e ) {
+      if( log.isDebugEnabled() && memberSource != null ) {
+        log.debug("Member that would not compile:\n"+memberSource);
+      }
+      throw new SAXException("Could not generate the template class '"+className+"'.", e);
+    }
+    finally {
+      if( templateClass != null ) {
+        templateClass.detach();
+      }
+    }
+  }
+
+  /**
+   * Replaces the unicode escapes in the source with the characters that they stand for.  The javassist compiler does not read unicode
+   * escapes, which the TemplateSourceBuilder uses for all characters outside of 7 bit ascii.  A backslash followed by a 'u' is only
+   * a unicode escape if it is preceded by an even number of backslashes.
+   */
+  static String unescapeUnicode( String source )
+  {
+    if( source.indexOf("\\u") < 0 ) {
+      return source;
+    }
+
+    StringBuilder builder = new StringBuilder(source.length());
+    int backslashCount = 0;
+    int i = 0;
+    while( i < source.length() ) {
+      char c = source.charAt(i);
+      if( c == 'u' && backslashCount % 2 == 1 ) {
+        int end = i + 1;
+        // multiple u characters are allowed in a unicode escape.
+        while( end < source.length() && source.charAt(end) == 'u' ) {
+          end++;
+        }
+        if( end + 4 <= source.length() ) {
+          // replace the backslash that was already appended with the escaped character.
+          builder.setCharAt(builder.length()-1, (char)Integer.parseInt(source.substring(end, end+4), 16));
+          i = end + 4;
+          backslashCount = 0;
+          continue;
+        }
+      }
+      backslashCount = c == '\\' ? backslashCount + 1 : 0;
+      builder.append(c);
+      i++;
+    }
+    return builder.toString();
+  }
+}
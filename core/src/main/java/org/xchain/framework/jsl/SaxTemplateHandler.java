@@ -15,22 +15,30 @@
  */
 package org.xchain.framework.jsl;
 
+import org.xchain.Catalog;
+import org.xchain.Chain;
+import org.xchain.Command;
+import org.xchain.framework.sax.StaticMarkup;
 import org.xchain.namespaces.jsl.AbstractTemplateCommand;
 import org.xchain.namespaces.jsl.TemporaryCommand;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.LocatorImpl;
 
 import org.apache.commons.digester.Digester;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -84,8 +92,33 @@ public class SaxTemplateHandler
   /** The depth of jsl template elements in the current event stream. */
   protected int templateElementDepth = 0;
 
+  /** The templates in the current document that have not been compiled, in the order that they were closed. */
+  protected List<PendingTemplate> pendingTemplateList = new ArrayList<PendingTemplate>();
+
   public void setDigester( Digester digester ) { this.digester = digester; }
 
+  public void startDocument()
+    throws SAXException
+  {
+    pendingTemplateList.clear();
+    super.startDocument();
+  }
+
+  /**
+   * Compiles the templates found in the document before passing the end of the document to the digester.
+   */
+  public void endDocument()
+    throws SAXException
+  {
+    try {
+      replaceTemporaryCommands();
+    }
+    finally {
+      pendingTemplateList.clear();
+    }
+    super.endDocument();
+  }
+
   //
   // Handlers for JSL element events.
   //
@@ -199,30 +232,95 @@ public class SaxTemplateHandler
 
   }
 
+  /**
+   * Records a template source that needs to be compiled and passes the end of the temporary command to the digester.  The temporary
+   * command stays in the command tree until all of the templates in the document are compiled by replaceTemporaryCommands().
+   */
   private void handleSource( SourceResult templateSource )
     throws SAXException
   {
+      // the temporary command is on the top of the digester's stack, with the command it will be added to just below it.
+      TemporaryCommand temporaryCommand = (TemporaryCommand)digester.peek();
+      Object parent = digester.getCount() > 1 ? digester.peek(1) : null;
+
+      // the template is compiled at the end of the document, so keep its location for the errors raised by the compiler.
+      if( temporaryCommand.getLocator() != null ) {
+        templateSource.setLocator(temporaryCommand.getLocator());
+      }
+      else if( digester.getDocumentLocator() != null ) {
+        templateSource.setLocator(new LocatorImpl(digester.getDocumentLocator()));
+      }
+
+      pendingTemplateList.add(new PendingTemplate(templateSource, temporaryCommand, parent instanceof Chain ? (Chain)parent : null, findCatalogInStack()));
+
+      // pass the end element event to the digester.
+      getContentHandler().endElement( JSL_NAMESPACE, TEMPORARY_CHAIN_LOCAL_NAME, temporaryChainQName());
+  }
+
+  /**
+   * Compiles all of the templates found in the document in one batch and replaces each temporary command with an instance of its template.
+   * Templates are replaced in the order that they were closed, so nested templates are replaced before the templates that contain them.
+   */
+  private void replaceTemporaryCommands()
+    throws SAXException
+  {
+    List<SourceResult> sourceList = new ArrayList<SourceResult>(pendingTemplateList.size());
+    for( PendingTemplate pendingTemplate : pendingTemplateList ) {
+      sourceList.add(pendingTemplate.source);
+    }
+
+    List<Class> templateClassList = sourceCompiler.compileTemplates(sourceList);
+
+    for( int i = 0; i < pendingTemplateList.size(); i++ ) {
+      PendingTemplate pendingTemplate = pendingTemplateList.get(i);
+      TemporaryCommand temporaryCommand = pendingTemplate.temporaryCommand;
       AbstractTemplateCommand replacementCommand = null;
 
       try {
-        replacementCommand = (AbstractTemplateCommand)sourceCompiler.compileTemplate(templateSource).newInstance();
+        replacementCommand = (AbstractTemplateCommand)templateClassList.get(i).newInstance();
       }
       catch( Exception e ) {
+        if( pendingTemplate.source.getLocator() != null ) {
+          throw new SAXParseException("Could not instantiate template class.", pendingTemplate.source.getLocator(), e);
+        }
         throw new SAXException("Could not instantiate template class.", e);
       }
 
-      // remove the temporary command off of the digesters stack.
-      TemporaryCommand temporaryCommand = (TemporaryCommand)digester.pop();
-
       // add all of the temporary commands children to the replacement command.
       replacementCommand.getCommandList().addAll(temporaryCommand.getCommandList());
       replacementCommand.setLocator(temporaryCommand.getLocator());
+      replacementCommand.setStaticMarkup(pendingTemplate.source.getStaticMarkupList().toArray(new StaticMarkup[0]));
+
+      // replace the temporary command in its parent.
+      if( pendingTemplate.parent != null ) {
+        List<Command> commandList = pendingTemplate.parent.getCommandList();
+        for( int j = 0; j < commandList.size(); j++ ) {
+          if( commandList.get(j) == temporaryCommand ) {
+            commandList.set(j, replacementCommand);
+          }
+        }
+      }
 
-      // push the replacement command onto the stack.
-      digester.push(replacementCommand);
+      // replace the temporary command in the catalog, if it was registered.
+      if( temporaryCommand.getQName() != null && pendingTemplate.catalog != null ) {
+        replacementCommand.setQName(temporaryCommand.getQName());
+        replacementCommand.setSystemId(temporaryCommand.getSystemId());
+        pendingTemplate.catalog.addCommand(temporaryCommand.getQName(), replacementCommand);
+      }
+    }
+  }
 
-      // pass the end element event to the digester.
-      getContentHandler().endElement( JSL_NAMESPACE, TEMPORARY_CHAIN_LOCAL_NAME, temporaryChainQName());
+  /**
+   * Returns the inner most catalog on the digester's stack, or null if there is not a catalog on the stack.
+   */
+  private Catalog findCatalogInStack()
+  {
+    for( int i = 0; i < digester.getCount(); i++ ) {
+      if( digester.peek(i) instanceof Catalog ) {
+        return (Catalog)digester.peek(i);
+      }
+    }
+    return null;
   }
 
   private String temporaryChainQName()
@@ -663,4 +761,23 @@ public class SaxTemplateHandler
       charactersBuilder = new StringBuilder();
     }
   }
+
+  /**
+   * A template source along with the temporary command that stands in for it until it is compiled.
+   */
+  protected static class PendingTemplate
+  {
+    private final SourceResult source;
+    private final TemporaryCommand temporaryCommand;
+    private final Chain parent;
+    private final Catalog catalog;
+
+    public PendingTemplate( SourceResult source, TemporaryCommand temporaryCommand, Chain parent, Catalog catalog )
+    {
+      this.source = source;
+      this.temporaryCommand = temporaryCommand;
+      this.parent = parent;
+      this.catalog = catalog;
+    }
+  }
 }
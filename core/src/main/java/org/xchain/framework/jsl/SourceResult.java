@@ -15,6 +15,11 @@
  */
 package org.xchain.framework.jsl;
 
+import java.util.List;
+
+import org.xchain.framework.sax.StaticMarkup;
+import org.xml.sax.Locator;
+
 /**
  * @author Christian Trimble
  */
@@ -24,6 +29,10 @@ public class SourceResult
   private String className = null;
   private String classResourceName = null;
   private String sourceResourceName = null;
+  private int elementCount = 0;
+  private List<String> methodSourceList = null;
+  private List<StaticMarkup> staticMarkupList = null;
+  private Locator locator = null;
 
   public void setSource( String source ) { this.source = source; }
   public String getSource() { return this.source; }
@@ -36,4 +45,20 @@ public class SourceResult
 
   public void setClassResourceName( String classResourceName ) { this.classResourceName = classResourceName; }
   public String getClassResourceName() { return this.classResourceName; }
+
+  /** The number of elements output by the template, which is passed to the constructor of the template class. */
+  public void setElementCount( int elementCount ) { this.elementCount = elementCount; }
+  public int getElementCount() { return this.elementCount; }
+
+  /** The source of each method of the template class, listed after the methods that it calls. */
+  public void setMethodSourceList( List<String> methodSourceList ) { this.methodSourceList = methodSourceList; }
+  public List<String> getMethodSourceList() { return this.methodSourceList; }
+
+  /** The static markup blocks output by the template, in the order of the indices used by the template source. */
+  public void setStaticMarkupList( List<StaticMarkup> staticMarkupList ) { this.staticMarkupList = staticMarkupList; }
+  public List<StaticMarkup> getStaticMarkupList() { return this.staticMarkupList; }
+
+  /** The location of the template in its document, used to report errors in the template. */
+  public void setLocator( Locator locator ) { this.locator = locator; }
+  public Locator getLocator() { return this.locator; }
 }
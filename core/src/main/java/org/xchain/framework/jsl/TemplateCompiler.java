@@ -30,8 +30,22 @@ import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xchain.framework.util.BytecodeCache;
 
 /**
  * @author Christian Trimble
@@ -45,18 +59,38 @@ public class TemplateCompiler
   public static final String SOURCE_ENCODING = "UTF-8";
   public static final String TARGET_VERSION = "1.5";
 
+  /** The backend that compiles template sources with the eclipse java compiler. */
+  public static final String ECLIPSE_BACKEND = "eclipse";
+  /** The backend that compiles the methods of templates in process with javassist. */
+  public static final String JAVASSIST_BACKEND = "javassist";
+
+  /** The smallest number of templates that will be given to a compiler thread. */
+  public static final int MIN_BATCH_SIZE = 16;
+
   /** The class loader for the catalog. */
   private TemplateClassLoader templateClassLoader;
 
-  /** The compiler that we will use for creating classes. */
+  /** The compiler that we will use for creating classes, created the first time that the eclipse backend is used. */
   private JavaCompiler compiler;
 
+  /** The generator used by the javassist backend, created the first time that it is used. */
+  private JavassistTemplateGenerator javassistGenerator;
+
+  /** The backend used to create template classes. */
+  private String backend = ECLIPSE_BACKEND;
+
   /** The resource reader where source files will be stored. */
   private WrappedResourceReader resourceReader;
 
   /** The settings for the compiler. */
   private JavaCompilerSettings settings;
 
+  /** The number of threads used to compile a batch of templates. */
+  private int threadCount = 1;
+
+  /** The cache of compiled templates, or null if compiled templates are not cached. */
+  private BytecodeCache bytecodeCache = null;
+
   public void init(ClassLoader classLoader)
   {
     this.templateClassLoader = new TemplateClassLoader(classLoader);
@@ -67,9 +101,33 @@ public class TemplateCompiler
     settings.setSourceVersion(SOURCE_VERSION);
     settings.setSourceEncoding(SOURCE_ENCODING);
     settings.setTargetVersion(TARGET_VERSION);
+  }
 
-    compiler = new JavaCompilerFactory().createCompiler("eclipse");
+  /**
+   * Sets the backend used to create template classes, either ECLIPSE_BACKEND or JAVASSIST_BACKEND.  The javassist backend compiles
+   * the methods of each template in process, so the eclipse compiler is never loaded.
+   */
+  public void setBackend( String backend )
+  {
+    if( !ECLIPSE_BACKEND.equals(backend) && !JAVASSIST_BACKEND.equals(backend) ) {
+      throw new IllegalArgumentException("Unknown template compiler '"+backend+"'.");
+    }
+    this.backend = backend;
   }
+  public String getBackend() { return this.backend; }
+
+  /**
+   * Sets the number of threads used to compile a batch of templates.  Batches are only split when each thread would get at least
+   * MIN_BATCH_SIZE templates.
+   */
+  public void setThreadCount( int threadCount ) { this.threadCount = threadCount; }
+  public int getThreadCount() { return this.threadCount; }
+
+  /**
+   * Sets the cache that compiled templates are read from and written to.  If the cache is null, then templates are always compiled.
+   */
+  public void setBytecodeCache( BytecodeCache bytecodeCache ) { this.bytecodeCache = bytecodeCache; }
+  public BytecodeCache getBytecodeCache() { return this.bytecodeCache; }
 
   /**
    * Compiles the source result.
@@ -79,33 +137,228 @@ public class TemplateCompiler
   public Class compileTemplate( SourceResult result )
     throws SAXException
   {
-    // add the resource to the reader.
+    return compileTemplates(Collections.singletonList(result)).get(0);
+  }
+
+  /**
+   * Compiles all of the source results with one invocation of the compiler for each thread, then defines the generated classes.
+   * The classes are returned in the order of the source results.
+   *
+   * @throws SAXException if there is a compilation error in any of the source files.
+   */
+  public List<Class> compileTemplates( List<SourceResult> resultList )
+    throws SAXException
+  {
+    if( resultList.isEmpty() ) {
+      return Collections.emptyList();
+    }
+
+    long start = System.currentTimeMillis();
+
+    // read the classes that are in the bytecode cache, collecting the sources that need to be compiled.
+    byte[][] classBytes = new byte[resultList.size()][];
+    String[] cacheKeys = new String[resultList.size()];
+    List<SourceResult> compileList = new ArrayList<SourceResult>(resultList.size());
+    List<Integer> compileIndexList = new ArrayList<Integer>(resultList.size());
+    for( int i = 0; i < resultList.size(); i++ ) {
+      SourceResult result = resultList.get(i);
+      byte[] sourceBytes = null;
+      try {
+        sourceBytes = result.getSource().getBytes(SOURCE_ENCODING);
+      }
+      catch( UnsupportedEncodingException uee ) {
+        throw new SAXException("Could not build source in the encoding '"+SOURCE_ENCODING+"'.", uee);
+      }
+
+      if( bytecodeCache != null ) {
+        cacheKeys[i] = bytecodeCache.key("template-"+backend, result.getClassName(), sourceBytes);
+        Map<String, byte[]> cachedClassMap = bytecodeCache.get(cacheKeys[i]);
+        if( cachedClassMap != null && cachedClassMap.containsKey(result.getClassName()) ) {
+          classBytes[i] = cachedClassMap.get(result.getClassName());
+          continue;
+        }
+      }
+
+      // add the resource to the reader, the reader is only read while the compilers are running.
+      if( ECLIPSE_BACKEND.equals(backend) ) {
+        resourceReader.add(result.getSourceResourceName(), sourceBytes);
+      }
+      compileList.add(result);
+      compileIndexList.add(i);
+    }
+
+    // generate the classes in process, when using the javassist backend.
+    int batchCount = 0;
+    if( !compileList.isEmpty() && JAVASSIST_BACKEND.equals(backend) ) {
+      if( javassistGenerator == null ) {
+        javassistGenerator = new JavassistTemplateGenerator(templateClassLoader);
+      }
+      for( int i = 0; i < compileList.size(); i++ ) {
+        int resultIndex = compileIndexList.get(i);
+        classBytes[resultIndex] = javassistGenerator.generate(compileList.get(i));
+        if( bytecodeCache != null ) {
+          bytecodeCache.put(cacheKeys[resultIndex], Collections.singletonMap(compileList.get(i).getClassName(), classBytes[resultIndex]));
+        }
+      }
+    }
+
+    // split the sources into batches and compile them.
+    else if( !compileList.isEmpty() ) {
+      batchCount = Math.max(1, Math.min(threadCount, compileList.size() / MIN_BATCH_SIZE));
+      List<List<SourceResult>> batchList = new ArrayList<List<SourceResult>>(batchCount);
+      for( int i = 0; i < batchCount; i++ ) {
+        batchList.add(compileList.subList(i * compileList.size() / batchCount, (i + 1) * compileList.size() / batchCount));
+      }
+
+      List<ResourceStore> storeList = compileBatches(batchList);
+
+      int compileIndex = 0;
+      for( int i = 0; i < batchCount; i++ ) {
+        ResourceStore resourceStore = storeList.get(i);
+        for( SourceResult result : batchList.get(i) ) {
+          int resultIndex = compileIndexList.get(compileIndex++);
+          classBytes[resultIndex] = resourceStore.read(result.getClassResourceName());
+          if( bytecodeCache != null ) {
+            bytecodeCache.put(cacheKeys[resultIndex], Collections.singletonMap(result.getClassName(), classBytes[resultIndex]));
+          }
+        }
+      }
+    }
+
+    // define all of the classes, then load them.
+    for( int i = 0; i < resultList.size(); i++ ) {
+      templateClassLoader.publicDefineClass(resultList.get(i).getClassName(), classBytes[i], 0, classBytes[i].length);
+    }
+
+    List<Class> templateClassList = new ArrayList<Class>(resultList.size());
+    for( SourceResult result : resultList ) {
+      try {
+        templateClassList.add(templateClassLoader.loadClass(result.getClassName()));
+      }
+      catch( Exception e ) {
+        throw new SAXException("Could not load the class '"+result.getClassName()+"'.", e);
+      }
+    }
+
+    if( log.isDebugEnabled() ) {
+      log.debug("Loaded "+resultList.size()+" templates in "+(System.currentTimeMillis()-start)+"ms, compiling "+compileList.size()+" of them with the "+backend+" backend using "+batchCount+" compiler invocations.");
+    }
+
+    return templateClassList;
+  }
+
+  /**
+   * Compiles each batch of sources, using a thread for each batch when there is more than one.
+   */
+  private List<ResourceStore> compileBatches( List<List<SourceResult>> batchList )
+    throws SAXException
+  {
+    List<ResourceStore> storeList = new ArrayList<ResourceStore>(batchList.size());
+
+    if( batchList.size() == 1 ) {
+      if( compiler == null ) {
+        compiler = new JavaCompilerFactory().createCompiler("eclipse");
+      }
+      storeList.add(compileBatch(compiler, batchList.get(0)));
+      return storeList;
+    }
+
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    ExecutorService executor = Executors.newFixedThreadPool(batchList.size(), new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread(runnable, "xchain-template-compiler-"+threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setContextClassLoader(contextClassLoader);
+        return thread;
+      }
+    });
     try {
-      resourceReader.add(result.getSourceResourceName(), result.getSource().getBytes(SOURCE_ENCODING));
+      List<Future<ResourceStore>> futureList = new ArrayList<Future<ResourceStore>>(batchList.size());
+      for( final List<SourceResult> batch : batchList ) {
+        futureList.add(executor.submit(new Callable<ResourceStore>() {
+          public ResourceStore call() throws Exception {
+            // the compilers are not shared between threads.
+            return compileBatch(new JavaCompilerFactory().createCompiler("eclipse"), batch);
+          }
+        }));
+      }
+      for( Future<ResourceStore> future : futureList ) {
+        try {
+          storeList.add(future.get());
+        }
+        catch( ExecutionException ee ) {
+          if( ee.getCause() instanceof SAXException ) {
+            throw (SAXException)ee.getCause();
+          }
+          if( ee.getCause() instanceof Error ) {
+            throw (Error)ee.getCause();
+          }
+          throw new SAXException("Could not compile template sources.", (Exception)ee.getCause());
+        }
+        catch( InterruptedException ie ) {
+          Thread.currentThread().interrupt();
+          throw new SAXException("Interrupted while compiling template sources.", ie);
+        }
+      }
     }
-    catch( UnsupportedEncodingException uee ) {
-      throw new SAXException("Could not build source in the encoding '"+SOURCE_ENCODING+"'.", uee);
+    finally {
+      executor.shutdownNow();
+    }
+    return storeList;
+  }
+
+  /**
+   * Compiles a batch of sources with a single invocation of the compiler.
+   *
+   * @return the resource store holding the compiled classes.
+   * @throws SAXException if there is a compilation error in any of the source files.
+   */
+  private ResourceStore compileBatch( JavaCompiler batchCompiler, List<SourceResult> batch )
+    throws SAXException
+  {
+    String[] resourceNames = new String[batch.size()];
+    for( int i = 0; i < resourceNames.length; i++ ) {
+      resourceNames[i] = batch.get(i).getSourceResourceName();
     }
 
     // create the resource store.
     ResourceStore resourceStore = new MemoryResourceStore();
 
-    // compile the result.
-    CompilationResult compilationResult = compiler.compile(new String[] {result.getSourceResourceName()}, resourceReader, resourceStore, templateClassLoader, settings);
+    // compile the batch.
+    CompilationResult compilationResult = batchCompiler.compile(resourceNames, resourceReader, resourceStore, templateClassLoader, settings);
 
     // handle any errors.
     if( compilationResult.getErrors().length > 0 ) {
       if( log.isDebugEnabled() ) {
-        log.debug("Source that would not complile:\n"+result.getSource());
         for( CompilationProblem error : compilationResult.getErrors() ) {
-          log.debug("Error ("+error.getStartLine()+", "+error.getStartColumn()+"):"+error.getMessage());
+          log.debug("Error in "+error.getFileName()+" ("+error.getStartLine()+", "+error.getStartColumn()+"):"+error.getMessage());
+        }
+        for( SourceResult result : batch ) {
+          if( hasProblem(compilationResult.getErrors(), result) ) {
+            log.debug("Source that would not complile:\n"+result.getSource());
+          }
         }
       }
       // TODO: Make this message better.
       StringBuilder stringBuilder = new StringBuilder();
       stringBuilder.append("Could not compile template source. Errors:\n");
+      Locator locator = null;
       for( CompilationProblem error : compilationResult.getErrors() ) {
-        stringBuilder.append("("+error.getStartLine()+", "+error.getStartColumn()+"):"+error.getMessage()+"\n");
+        stringBuilder.append(error.getFileName()+" ("+error.getStartLine()+", "+error.getStartColumn()+"):"+error.getMessage());
+
+        // the templates are compiled after their document has been parsed, so name the template that the error is in.
+        Locator templateLocator = findLocator(batch, error);
+        if( templateLocator != null ) {
+          stringBuilder.append(" [template at "+templateLocator.getSystemId()+":"+templateLocator.getLineNumber()+":"+templateLocator.getColumnNumber()+"]");
+          if( locator == null ) {
+            locator = templateLocator;
+          }
+        }
+        stringBuilder.append("\n");
+      }
+      if( locator != null ) {
+        throw new SAXParseException(stringBuilder.toString(), locator);
       }
       throw new SAXException(stringBuilder.toString());
     }
@@ -113,23 +366,42 @@ public class TemplateCompiler
     // handle any errors.
     if( log.isDebugEnabled() ) {
       for( CompilationProblem warning : compilationResult.getWarnings() ) {
-        log.debug("Compilation warning("+warning.getStartLine()+", "+warning.getStartColumn()+"):"+warning.getMessage());
+        log.debug("Compilation warning in "+warning.getFileName()+" ("+warning.getStartLine()+", "+warning.getStartColumn()+"):"+warning.getMessage());
       }
     }
 
-    byte[] compiledBytes = resourceStore.read(result.getClassResourceName());
-
-    templateClassLoader.publicDefineClass(result.getClassName(), compiledBytes, 0, compiledBytes.length);
-    Class templateClass = null;
+    return resourceStore;
+  }
 
-    try {
-      templateClass = templateClassLoader.loadClass(result.getClassName());
+  /**
+   * Returns true if one of the problems was reported against the source result.
+   */
+  private static boolean hasProblem( CompilationProblem[] problems, SourceResult result )
+  {
+    for( CompilationProblem problem : problems ) {
+      if( isProblemIn(problem, result) ) {
+        return true;
+      }
     }
-    catch( Exception e ) {
-      throw new SAXException("Could not load the class '"+result.getClassName()+"'.", e);
+    return false;
+  }
+
+  private static boolean isProblemIn( CompilationProblem problem, SourceResult result )
+  {
+    return problem.getFileName() != null && problem.getFileName().endsWith(result.getSourceResourceName());
+  }
+
+  /**
+   * Returns the locator of the template in the batch that has the problem, or null if the template does not have a locator.
+   */
+  private static Locator findLocator( List<SourceResult> batch, CompilationProblem problem )
+  {
+    for( SourceResult result : batch ) {
+      if( isProblemIn(problem, result) ) {
+        return result.getLocator();
+      }
     }
-    
-    return templateClass;
+    return null;
   }
 
   private class TemplateClassLoader
@@ -29,7 +29,9 @@ import java.util.regex.Matcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.xchain.framework.sax.StaticMarkup;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * A utility class to build jsl template command classes.
@@ -139,57 +141,62 @@ public class TemplateSourceBuilder
     sourceBuilder.append("  {\n");
     sourceBuilder.append("    super(").append(context.getElementCount()).append(");\n");
     sourceBuilder.append("  }\n");
-    sourceBuilder.append("  public boolean executeTemplate(JXPathContext context)\n");
-    sourceBuilder.append("    throws Exception\n");
-    sourceBuilder.append("  {\n");
-    sourceBuilder.append("    boolean result = false;\n");
-    sourceBuilder.append("    Exception exception = null;\n");
-    sourceBuilder.append("    CommandHandler handler = getContentHandler();\n");
+
+    // build the execute template method.  This is the hook into the abstract template command.
+    StringBuilder executeBuilder = new StringBuilder();
+    executeBuilder.append("  public boolean executeTemplate(JXPathContext context)\n");
+    executeBuilder.append("    throws Exception\n");
+    executeBuilder.append("  {\n");
+    executeBuilder.append("    boolean result = false;\n");
+    executeBuilder.append("    Exception exception = null;\n");
+    executeBuilder.append("    CommandHandler handler = getContentHandler();\n");
 
     if( context.getExcludeResultPrefixBoundary() ) {
-      sourceBuilder.append("    handler.startExcludeResultPrefixContext();\n");
+      executeBuilder.append("    handler.startExcludeResultPrefixContext();\n");
     }
 
     // we need to initialize the context of the output document with all of the namespace
     // prefixes that occur above this commands first element. 
     for( Map.Entry<String, String> mapping : context.getTransitionPrefixMapping().entrySet() ) {
-      sourceBuilder.append("  handler.startPrefixMapping("+stringConstant(mapping.getKey())+", "+stringConstant(mapping.getValue())+");\n");
+      executeBuilder.append("  handler.startPrefixMapping("+stringConstant(mapping.getKey())+", "+stringConstant(mapping.getValue())+");\n");
     }
 
     for( String excludeResultPrefix : context.getTransitionExcludeResultPrefixSet() ) {
-      sourceBuilder.append("  handler.startExcludeResultPrefix(").append(stringConstant(excludeResultPrefix)).append(");\n");
+      executeBuilder.append("  handler.startExcludeResultPrefix(").append(stringConstant(excludeResultPrefix)).append(");\n");
     }
 
     // code to call the first virtual chain.
-    sourceBuilder.append("    try {\n");
-    sourceBuilder.append("      result = virtualChain0(context);\n");
-    sourceBuilder.append("    }\n");
-    sourceBuilder.append("    catch( Exception e ) {\n");
-    sourceBuilder.append("      exception = e;\n");
-    sourceBuilder.append("    }\n");
+    executeBuilder.append("    try {\n");
+    executeBuilder.append("      result = virtualChain0(context);\n");
+    executeBuilder.append("    }\n");
+    executeBuilder.append("    catch( Exception e ) {\n");
+    executeBuilder.append("      exception = e;\n");
+    executeBuilder.append("    }\n");
 
     // TODO: skip end prefix mappings if we are handling an error.
 
     for( String excludeResultPrefix : context.getTransitionExcludeResultPrefixSet() ) {
-      sourceBuilder.append("  handler.endExcludeResultPrefix(").append(stringConstant(excludeResultPrefix)).append(");\n");
+      executeBuilder.append("  handler.endExcludeResultPrefix(").append(stringConstant(excludeResultPrefix)).append(");\n");
     }
 
     // close all of the namespace prefixes that were set above this element.
     for( Map.Entry<String, String> mapping : context.getTransitionPrefixMapping().entrySet() ) {
-      sourceBuilder.append("  handler.endPrefixMapping("+stringConstant(mapping.getKey())+");\n");
+      executeBuilder.append("  handler.endPrefixMapping("+stringConstant(mapping.getKey())+");\n");
     }
 
     if( context.getExcludeResultPrefixBoundary() ) {
-      sourceBuilder.append("    handler.endExcludeResultPrefixContext();\n");
+      executeBuilder.append("    handler.endExcludeResultPrefixContext();\n");
     }
 
-    sourceBuilder.append("    if( exception != null ) {\n");
-    sourceBuilder.append("      throw exception;\n");
-    sourceBuilder.append("    }\n");
+    executeBuilder.append("    if( exception != null ) {\n");
+    executeBuilder.append("      throw exception;\n");
+    executeBuilder.append("    }\n");
 
     // close the execute template method.
-    sourceBuilder.append("    return result;\n");
-    sourceBuilder.append("  }\n");
+    executeBuilder.append("    return result;\n");
+    executeBuilder.append("  }\n");
+
+    sourceBuilder.append(executeBuilder);
 
     // if there has not been a virtual chain created, then we need to add one.
 
@@ -198,7 +205,14 @@ public class TemplateSourceBuilder
 
     sourceBuilder.append("}\n");
 
+    // the virtual chain methods are listed before the execute template method, so that every method is listed after the methods it calls.
+    List<String> methodSourceList = new ArrayList<String>(context.getMethodSourceList());
+    methodSourceList.add(executeBuilder.toString());
+
     SourceResult sourceResult = new SourceResult();
+    sourceResult.setElementCount(context.getElementCount());
+    sourceResult.setMethodSourceList(methodSourceList);
+    sourceResult.setStaticMarkupList(context.getStaticMarkupList());
     sourceResult.setSourceResourceName("org/xchain/namespaces/jsl/"+BASE_TEMPLATE_NAME+context.getCommandIndex()+".java");
     sourceResult.setClassResourceName("org/xchain/namespaces/jsl/"+BASE_TEMPLATE_NAME+context.getCommandIndex()+".class");
     sourceResult.setClassName("org.xchain.namespaces.jsl."+BASE_TEMPLATE_NAME+context.getCommandIndex());
@@ -249,7 +263,7 @@ public class TemplateSourceBuilder
     // remove the top virtual chain builder from the stack.
     VirtualChainContext virtualChainContext = contextStack.getFirst().getVirtualChainContextStack().removeFirst();
 
-    StringBuilder methodBuilder = contextStack.getFirst().getMethodBuilder();
+    StringBuilder methodBuilder = new StringBuilder();
 
     methodBuilder.append("private boolean ").append(virtualChainContext.getName()).append("(JXPathContext context)\n");
     methodBuilder.append("  throws Exception\n");
@@ -276,26 +290,12 @@ public class TemplateSourceBuilder
     methodBuilder.append("  // variables for processing comment elements.\n");
 
     // add the indexes of the children chains.
-    methodBuilder.append("  int[] commandChildrenIndecies = {");
-    Iterator<Integer> childrenIndexIterator = virtualChainContext.getCommandIndexList().iterator();
-    while( childrenIndexIterator.hasNext() ) {
-      methodBuilder.append(childrenIndexIterator.next());
-      if( childrenIndexIterator.hasNext() ) {
-        methodBuilder.append(", ");
-      }
-    }
-    methodBuilder.append("};\n");
+    methodBuilder.append("  int[] commandChildrenIndecies = ");
+    appendIntArray(methodBuilder, virtualChainContext.getCommandIndexList()).append(";\n");
 
     // add the indices of the children elements.
-    methodBuilder.append("  int[] elementChildrenIndecies = {");
-    Iterator<Integer> elementIndexIterator = virtualChainContext.getElementIndexList().iterator();
-    while( elementIndexIterator.hasNext() ) {
-      methodBuilder.append(elementIndexIterator.next());
-      if( elementIndexIterator.hasNext() ) {
-        methodBuilder.append(", ");
-      }
-    }
-    methodBuilder.append("};\n");
+    methodBuilder.append("  int[] elementChildrenIndecies = ");
+    appendIntArray(methodBuilder, virtualChainContext.getElementIndexList()).append(";\n");
 
     // add the body portion of the method, this contains all of the sax output code and command calls.
     methodBuilder.append(virtualChainContext.getBodyBuilder());
@@ -305,6 +305,29 @@ public class TemplateSourceBuilder
 
     // close the virtual chain.
     methodBuilder.append("}\n");
+
+    contextStack.getFirst().getMethodBuilder().append(methodBuilder);
+    contextStack.getFirst().getMethodSourceList().add(methodBuilder.toString());
+  }
+
+  /**
+   * Appends an int array creation expression for the values.  An explicit array creation is used, so that the generated code can
+   * also be compiled by javassist.
+   */
+  private static StringBuilder appendIntArray( StringBuilder builder, List<Integer> valueList )
+  {
+    if( valueList.isEmpty() ) {
+      return builder.append("new int[0]");
+    }
+    builder.append("new int[] {");
+    Iterator<Integer> valueIterator = valueList.iterator();
+    while( valueIterator.hasNext() ) {
+      builder.append(valueIterator.next());
+      if( valueIterator.hasNext() ) {
+        builder.append(", ");
+      }
+    }
+    return builder.append("}");
   }
 
   public void appendCommandCall()
@@ -316,6 +339,9 @@ public class TemplateSourceBuilder
     Integer commandIndex = context.getCommandCount();
     context.setCommandCount(commandIndex+1);
 
+    // the elements around a command are not static.
+    markDynamic();
+
     // if the virtual chain context has a depth greater than 1, then we need a virtual chain here.
     if( virtualChainContext.getElementDepth() > 0 ) {
       startVirtualChain();
@@ -346,6 +372,9 @@ public class TemplateSourceBuilder
 
     changeBodyMode(BodyMode.START_ELEMENT_EVENTS);
 
+    // track the state of the source before this element, so that the element can be replaced with static markup.
+    context.getStaticElementStack().addFirst(new StaticElement(virtualChainContext, context.getIndent(), elementIndex, virtualChainContext.getElementIndexList().size(), context.getStaticMarkupList().size()));
+
     // track the element indices that are in this virtual chain context.
     virtualChainContext.getElementIndexList().add(elementIndex);
     virtualChainContext.setElementDepth(virtualChainContext.getElementDepth()+1);
@@ -396,10 +425,52 @@ public class TemplateSourceBuilder
     indent(bodyBuilder).append("}\n");
 
     virtualChainContext.setElementDepth(virtualChainContext.getElementDepth()-1);
+
+    // if nothing in the element was dynamic, then replace the code for the element with static markup.
+    StaticElement staticElement = context.getStaticElementStack().removeFirst();
+    if( !staticElement.isDynamic() ) {
+      appendStaticMarkup(staticElement);
+    }
+  }
+
+  /**
+   * Replaces the code generated for a static element with a call that outputs the element as a single block of static markup.  The
+   * element indices and the nested static markup used by the element are released.
+   */
+  private void appendStaticMarkup( StaticElement staticElement )
+  {
+    Context context = contextStack.getFirst();
+    VirtualChainContext virtualChainContext = staticElement.getVirtualChainContext();
+
+    // restore the state of the source from before the element started.
+    virtualChainContext.getBodyBuilder().setLength(staticElement.getBodyOffset());
+    virtualChainContext.setBodyMode(BodyMode.START_ELEMENT_EVENTS);
+    context.setIndent(staticElement.getIndent());
+    context.setElementCount(staticElement.getElementCount());
+    List<Integer> elementIndexList = virtualChainContext.getElementIndexList();
+    elementIndexList.subList(staticElement.getElementIndexCount(), elementIndexList.size()).clear();
+    List<StaticMarkup> staticMarkupList = context.getStaticMarkupList();
+    staticMarkupList.subList(staticElement.getStaticMarkupCount(), staticMarkupList.size()).clear();
+
+    // output the element as static markup.
+    int staticMarkupIndex = staticMarkupList.size();
+    staticMarkupList.add(staticElement.getStaticMarkup());
+    indent(virtualChainContext.getBodyBuilder()).append("handler.staticMarkup(getStaticMarkup(").append(staticMarkupIndex).append("));\n");
+  }
+
+  /**
+   * Marks all of the elements that are currently open as dynamic, so that they are not replaced with static markup.
+   */
+  private void markDynamic()
+  {
+    for( StaticElement staticElement : contextStack.getFirst().getStaticElementStack() ) {
+      staticElement.setDynamic(true);
+    }
   }
 
   public void appendStartPrefixMapping( String prefix, String uri )
   {
+    markDynamic();
     changeBodyMode(BodyMode.START_ELEMENT_EVENTS);
     String escapedPrefix = stringConstant(prefix);
     String escapedUri = stringConstant(uri);
@@ -421,6 +492,7 @@ public class TemplateSourceBuilder
 
   public void appendStartExcludeResultPrefix( String prefix )
   {
+    markDynamic();
     changeBodyMode(BodyMode.START_ELEMENT_EVENTS);
     String escapedPrefix = stringConstant(prefix);
     StringBuilder bodyBuilder = contextStack.getFirst().getVirtualChainContextStack().getFirst().getBodyBuilder();
@@ -437,6 +509,7 @@ public class TemplateSourceBuilder
 
   public void appendContextStartPrefixMapping( String prefix, String uri )
   {
+    markDynamic();
     changeBodyMode(BodyMode.START_ELEMENT_EVENTS);
     String escapedPrefix = stringConstant(prefix);
     String escapedUri = stringConstant(uri);
@@ -466,8 +539,17 @@ public class TemplateSourceBuilder
     // get the string builder.
     StringBuilder bodyBuilder = contextStack.getFirst().getVirtualChainContextStack().getFirst().getBodyBuilder();
 
-    // parse the attribute value template and build code to create it.
-    Iterator<String> attributeValueIterator = parseAttributeValueTemplate(attributeValueTemplate).iterator();
+    // parse the attribute value template, the attribute is only static if it does not have any dynamic parts.
+    List<String> attributeValueList = parseAttributeValueTemplate(attributeValueTemplate);
+    if( attributeValueList.size() > 1 ) {
+      markDynamic();
+    }
+    else {
+      contextStack.getFirst().getStaticAttributes().addAttribute(uri, localName, qName, "CDATA", attributeValueList.isEmpty() ? "" : attributeValueList.get(0));
+    }
+
+    // build code to create the attribute value.
+    Iterator<String> attributeValueIterator = attributeValueList.iterator();
     while( attributeValueIterator.hasNext() ) {
       // add code for the fixed part.
       indent(bodyBuilder).append("attributeValueBuilder.append(").append(stringConstant(attributeValueIterator.next())).append(");\n");
@@ -509,6 +591,15 @@ public class TemplateSourceBuilder
     indent(bodyBuilder).append("trackStartElement(").append(elementIndex).append(");\n");
     indent(bodyBuilder).append("handler.startElement(").append(escapedUri).append(", ").append(escapedLocalName).append(", ").append(escapedQName).append(", attributes);\n");
     indent(bodyBuilder).append("attributes.clear();\n");
+
+    // record the element for the open static elements.
+    AttributesImpl staticAttributes = context.getStaticAttributes();
+    for( StaticElement staticElement : context.getStaticElementStack() ) {
+      if( !staticElement.isDynamic() && !staticElement.getStaticMarkup().startElement(uri, localName, qName, staticAttributes) ) {
+        staticElement.setDynamic(true);
+      }
+    }
+    staticAttributes.clear();
   }
 
   /**
@@ -539,6 +630,13 @@ public class TemplateSourceBuilder
     // TODO: track that the end element has been output.
     indent(bodyBuilder).append("trackEndElement(").append(elementIndex).append(");\n");
     indent(bodyBuilder).append("handler.endElement(").append(escapedUri).append(", ").append(escapedLocalName).append(", ").append(escapedQName).append(");\n");
+
+    // record the end of the element for the open static elements.
+    for( StaticElement staticElement : context.getStaticElementStack() ) {
+      if( !staticElement.isDynamic() ) {
+        staticElement.getStaticMarkup().endElement(uri, localName, qName);
+      }
+    }
   }
 
   /**
@@ -552,6 +650,13 @@ public class TemplateSourceBuilder
 
     StringBuilder bodyBuilder = contextStack.getFirst().getVirtualChainContextStack().getFirst().getBodyBuilder();
     indent(bodyBuilder).append("handler.characters(").append(escapedCharacters).append(".toCharArray(), 0, ").append(characters.length()).append(");\n");
+
+    // record the characters for the open static elements.
+    for( StaticElement staticElement : contextStack.getFirst().getStaticElementStack() ) {
+      if( !staticElement.isDynamic() ) {
+        staticElement.getStaticMarkup().characters(characters);
+      }
+    }
   }
 
   public void appendIgnorableWhitespace( String ignorableWhitespace )
@@ -562,6 +667,13 @@ public class TemplateSourceBuilder
 
     StringBuilder bodyBuilder = contextStack.getFirst().getVirtualChainContextStack().getFirst().getBodyBuilder();
     indent(bodyBuilder).append("handler.ignorableWhitespace(").append(escapedWhitespace).append(".toCharArray(), 0, ").append(ignorableWhitespace.length()).append(");\n");
+
+    // record the whitespace for the open static elements.
+    for( StaticElement staticElement : contextStack.getFirst().getStaticElementStack() ) {
+      if( !staticElement.isDynamic() ) {
+        staticElement.getStaticMarkup().ignorableWhitespace(ignorableWhitespace);
+      }
+    }
   }
 
   /**
@@ -571,6 +683,7 @@ public class TemplateSourceBuilder
    */
   public void appendValueOf( String jxpath )
   {
+    markDynamic();
     String escapedJXPath = stringConstant(jxpath);
 
     changeBodyMode(BodyMode.START_ELEMENT_EVENTS);
@@ -585,6 +698,8 @@ public class TemplateSourceBuilder
 
   public void appendStartComment()
   {
+    markDynamic();
+
     Context context = contextStack.getFirst();
 
     Integer elementIndex = context.getElementCount();
@@ -635,6 +750,8 @@ public class TemplateSourceBuilder
    */
   public void appendStartDynamicElement( String name, String namespace )
   {
+    markDynamic();
+
     Context context = contextStack.getFirst();
 
     Integer elementIndex = context.getElementIndexStack().getFirst();
@@ -677,7 +794,7 @@ public class TemplateSourceBuilder
 
     // TODO: track that the end element has been output.
     indent(bodyBuilder).append("trackEndElement(").append(elementIndex).append(");\n");
-    indent(bodyBuilder).append("qName = getDynamicElementStack().removeFirst();\n");
+    indent(bodyBuilder).append("qName = (QName)getDynamicElementStack().removeFirst();\n");
     indent(bodyBuilder).append("handler.endElement(qName.getNamespaceURI(), qName.getLocalPart(), toPrefixedQName(qName));\n");
 
     // this is counted in the endEndElement.
@@ -692,6 +809,8 @@ public class TemplateSourceBuilder
    */
   public void appendStartDynamicAttribute( String name, String namespace )
   {
+    markDynamic();
+
     Context context = contextStack.getFirst();
     VirtualChainContext virtualChainContext = context.getVirtualChainContextStack().getFirst();
     virtualChainContext.setElementDepth(virtualChainContext.getElementDepth()+1);
@@ -722,7 +841,7 @@ public class TemplateSourceBuilder
     StringBuilder bodyBuilder = context.getVirtualChainContextStack().getFirst().getBodyBuilder();
 
     // TODO: track that the end element has been output.
-    indent(bodyBuilder).append("qName = getDynamicElementStack().removeFirst();\n");
+    indent(bodyBuilder).append("qName = (QName)getDynamicElementStack().removeFirst();\n");
     indent(bodyBuilder).append("handler.endAttribute(qName.getNamespaceURI(), qName.getLocalPart(), toPrefixedQName(qName) );\n");
 
     virtualChainContext.setElementDepth(virtualChainContext.getElementDepth()-1);
@@ -740,16 +859,8 @@ public class TemplateSourceBuilder
       // stop the old mode.
       switch( virtualChainContext.getBodyMode() ) {
         case CHAIN:
-          indent(bodyBuilder).append("  result = executeChildren(context, new int[]{");
-          Iterator<Integer> toExecuteIndexIterator = virtualChainContext.getToExecuteIndexList().iterator();
-          while( toExecuteIndexIterator.hasNext() ) {
-            Integer toExecuteIndex = toExecuteIndexIterator.next();
-            bodyBuilder.append(toExecuteIndex);
-            if( toExecuteIndexIterator.hasNext() ) {
-              bodyBuilder.append(", ");
-            }
-          }
-          bodyBuilder.append("});\n");
+          indent(bodyBuilder).append("  result = executeChildren(context, ");
+          appendIntArray(bodyBuilder, virtualChainContext.getToExecuteIndexList()).append(");\n");
           virtualChainContext.getToExecuteIndexList().clear();
         case VIRTUAL_CHAIN:
           decrementIndent();
@@ -878,6 +989,7 @@ public class TemplateSourceBuilder
   {
     private LinkedList<VirtualChainContext> virtualChainContextStack = new LinkedList<VirtualChainContext>();
     private StringBuilder methodBuilder = new StringBuilder();
+    private List<String> methodSourceList = new ArrayList<String>();
     private int commandCount = 0;
     private int elementCount = 0;
     private StringBuilder headerBuilder = new StringBuilder();
@@ -889,6 +1001,9 @@ public class TemplateSourceBuilder
     private Set<String> transitionExcludeResultPrefixSet;
     private boolean excludeResultPrefixBoundary = false;
     private LinkedList<Integer> elementIndexStack = new LinkedList<Integer>();
+    private LinkedList<StaticElement> staticElementStack = new LinkedList<StaticElement>();
+    private List<StaticMarkup> staticMarkupList = new ArrayList<StaticMarkup>();
+    private AttributesImpl staticAttributes = new AttributesImpl();
 
     /** Returns the stack of virtual chain contexts. */
     public LinkedList<VirtualChainContext> getVirtualChainContextStack() { return virtualChainContextStack; }
@@ -896,6 +1011,9 @@ public class TemplateSourceBuilder
     /** Returns the string builder used to store completed methods. */
     public StringBuilder getMethodBuilder() { return methodBuilder; }
 
+    /** Returns the source of each completed method, in the order that the methods were completed. */
+    public List<String> getMethodSourceList() { return methodSourceList; }
+
     public void setCommandCount( int commandCount ) { this.commandCount = commandCount; }
     public int getCommandCount() { return this.commandCount; }
 
@@ -925,6 +1043,52 @@ public class TemplateSourceBuilder
     public void setExcludeResultPrefixBoundary( boolean excludeResultPrefixBoundary ) { this.excludeResultPrefixBoundary = excludeResultPrefixBoundary; }
 
     public LinkedList<Integer> getElementIndexStack() { return elementIndexStack; }
+
+    /** Returns the stack of elements that are open and could still be output as static markup. */
+    public LinkedList<StaticElement> getStaticElementStack() { return staticElementStack; }
+
+    /** Returns the static markup blocks output by this source, in the order of their indices. */
+    public List<StaticMarkup> getStaticMarkupList() { return staticMarkupList; }
+
+    /** Returns the static attributes of the next element. */
+    public AttributesImpl getStaticAttributes() { return staticAttributes; }
+  }
+
+  /**
+   * An open element that will be output as static markup, unless something dynamic is found before the element ends.  Holds the state of
+   * the source from before the element started, so that the code generated for the element can be removed.
+   */
+  public static class StaticElement
+  {
+    private VirtualChainContext virtualChainContext;
+    private int bodyOffset;
+    private int indent;
+    private int elementCount;
+    private int elementIndexCount;
+    private int staticMarkupCount;
+    private StaticMarkup staticMarkup = new StaticMarkup();
+    private boolean dynamic = false;
+
+    public StaticElement( VirtualChainContext virtualChainContext, int indent, int elementCount, int elementIndexCount, int staticMarkupCount )
+    {
+      this.virtualChainContext = virtualChainContext;
+      this.bodyOffset = virtualChainContext.getBodyBuilder().length();
+      this.indent = indent;
+      this.elementCount = elementCount;
+      this.elementIndexCount = elementIndexCount;
+      this.staticMarkupCount = staticMarkupCount;
+    }
+
+    public VirtualChainContext getVirtualChainContext() { return virtualChainContext; }
+    public int getBodyOffset() { return bodyOffset; }
+    public int getIndent() { return indent; }
+    public int getElementCount() { return elementCount; }
+    public int getElementIndexCount() { return elementIndexCount; }
+    public int getStaticMarkupCount() { return staticMarkupCount; }
+    public StaticMarkup getStaticMarkup() { return staticMarkup; }
+
+    public void setDynamic( boolean dynamic ) { this.dynamic = dynamic; }
+    public boolean isDynamic() { return dynamic; }
   }
 
   public static enum BodyMode
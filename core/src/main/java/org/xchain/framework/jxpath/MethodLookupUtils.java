@@ -19,10 +19,14 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
+import java.util.Collection;
 
 import org.apache.commons.jxpath.ExpressionContext;
 import org.apache.commons.jxpath.JXPathException;
+import org.apache.commons.jxpath.NodeSet;
+import org.apache.commons.jxpath.Pointer;
 import org.apache.commons.jxpath.util.TypeUtils;
+import org.xchain.framework.util.ConcurrentLruCache;
 
 /**
  * Almost an exact copy of <code>org.apache.commons.jxpath.util.MethodLookupUtils</code> implementation
@@ -30,6 +34,11 @@ import org.apache.commons.jxpath.util.TypeUtils;
  * bridge methods which can cause counter-intuitive <code>JXPathException</code>s due to ambiguous 
  * method lookups. 
  *
+ * Lookups are cached by the target class, the name and the classes of the parameters, including lookups that did not find
+ * anything.  The matching done by this class only depends on the classes of the parameters, unless a parameter is a pointer, node
+ * set, collection or array, so lookups with those parameters are not cached.  The lookupJXPath... methods cache the lookups of
+ * the JXPath implementation the same way, for callers that need JXPath's resolution of overloaded and bridge methods.
+ *
  * @author Dmitri Plotnikov
  * @author John Trimble
  */
@@ -39,6 +48,25 @@ public class MethodLookupUtils {
     private static final int APPROXIMATE_MATCH = 1;
     private static final int EXACT_MATCH = 2;
 
+    private static final int CONSTRUCTOR = 0;
+    private static final int STATIC_METHOD = 1;
+    private static final int METHOD = 2;
+    private static final int JXPATH_CONSTRUCTOR = 3;
+    private static final int JXPATH_METHOD = 4;
+
+    /** The value cached for lookups that did not find anything. */
+    private static final Object NOT_FOUND = new Object();
+
+    /** The results of previous lookups. */
+    private static final ConcurrentLruCache<LookupKey, Object> lookupCache = new ConcurrentLruCache<LookupKey, Object>(2000);
+
+    /**
+     * Clears the cached lookups.  The cache should be cleared when the type conversions available to JXPath change.
+     */
+    public static void clearCache() {
+        lookupCache.clear();
+    }
+
     /**
      * Look up a constructor.
      * @param targetClass the class constructed
@@ -46,6 +74,44 @@ public class MethodLookupUtils {
      * @return Constructor found if any.
      */
     public static Constructor lookupConstructor(
+        Class targetClass,
+        Object[] parameters) {
+        LookupKey key = LookupKey.create(CONSTRUCTOR, targetClass, null, parameters);
+        if (key == null) {
+            return findConstructor(targetClass, parameters);
+        }
+        Object cached = lookupCache.get(key);
+        if (cached == null) {
+            Constructor constructor = findConstructor(targetClass, parameters);
+            lookupCache.putIfAbsent(key, constructor != null ? constructor : NOT_FOUND);
+            return constructor;
+        }
+        return cached != NOT_FOUND ? (Constructor) cached : null;
+    }
+
+    /**
+     * Look up a constructor with the JXPath implementation, caching the result.
+     * @param targetClass the class constructed
+     * @param parameters arguments
+     * @return Constructor found if any.
+     */
+    public static Constructor lookupJXPathConstructor(
+        Class targetClass,
+        Object[] parameters) {
+        LookupKey key = LookupKey.create(JXPATH_CONSTRUCTOR, targetClass, null, parameters);
+        if (key == null) {
+            return org.apache.commons.jxpath.util.MethodLookupUtils.lookupConstructor(targetClass, parameters);
+        }
+        Object cached = lookupCache.get(key);
+        if (cached == null) {
+            Constructor constructor = org.apache.commons.jxpath.util.MethodLookupUtils.lookupConstructor(targetClass, parameters);
+            lookupCache.putIfAbsent(key, constructor != null ? constructor : NOT_FOUND);
+            return constructor;
+        }
+        return cached != NOT_FOUND ? (Constructor) cached : null;
+    }
+
+    private static Constructor findConstructor(
         Class targetClass,
         Object[] parameters) {
         boolean tryExact = true;
@@ -116,7 +182,17 @@ public class MethodLookupUtils {
         Class targetClass,
         String name,
         Object[] parameters) {
-      return org.apache.commons.jxpath.util.MethodLookupUtils.lookupStaticMethod(targetClass, name, parameters);
+        LookupKey key = LookupKey.create(STATIC_METHOD, targetClass, name, parameters);
+        if (key == null) {
+            return org.apache.commons.jxpath.util.MethodLookupUtils.lookupStaticMethod(targetClass, name, parameters);
+        }
+        Object cached = lookupCache.get(key);
+        if (cached == null) {
+            Method method = org.apache.commons.jxpath.util.MethodLookupUtils.lookupStaticMethod(targetClass, name, parameters);
+            lookupCache.putIfAbsent(key, method != null ? method : NOT_FOUND);
+            return method;
+        }
+        return cached != NOT_FOUND ? (Method) cached : null;
     }
 
     /**
@@ -127,6 +203,48 @@ public class MethodLookupUtils {
      * @return Method found if any
      */
     public static Method lookupMethod(
+        Class targetClass,
+        String name,
+        Object[] parameters) {
+        LookupKey key = LookupKey.create(METHOD, targetClass, name, parameters);
+        if (key == null) {
+            return findMethod(targetClass, name, parameters);
+        }
+        Object cached = lookupCache.get(key);
+        if (cached == null) {
+            Method method = findMethod(targetClass, name, parameters);
+            lookupCache.putIfAbsent(key, method != null ? method : NOT_FOUND);
+            return method;
+        }
+        return cached != NOT_FOUND ? (Method) cached : null;
+    }
+
+    /**
+     * Look up a method with the JXPath implementation, caching the result.  Unlike lookupMethod(...), bridge methods are
+     * considered, so a method overridden with a more specific parameter type is ambiguous.
+     * @param targetClass owning class
+     * @param name method name
+     * @param parameters method parameters
+     * @return Method found if any
+     */
+    public static Method lookupJXPathMethod(
+        Class targetClass,
+        String name,
+        Object[] parameters) {
+        LookupKey key = LookupKey.create(JXPATH_METHOD, targetClass, name, parameters);
+        if (key == null) {
+            return org.apache.commons.jxpath.util.MethodLookupUtils.lookupMethod(targetClass, name, parameters);
+        }
+        Object cached = lookupCache.get(key);
+        if (cached == null) {
+            Method method = org.apache.commons.jxpath.util.MethodLookupUtils.lookupMethod(targetClass, name, parameters);
+            lookupCache.putIfAbsent(key, method != null ? method : NOT_FOUND);
+            return method;
+        }
+        return cached != NOT_FOUND ? (Method) cached : null;
+    }
+
+    private static Method findMethod(
         Class targetClass,
         String name,
         Object[] parameters) {
@@ -265,4 +383,63 @@ public class MethodLookupUtils {
 
         return NO_MATCH;
     }
+
+    /**
+     * The key of a cached lookup.
+     */
+    private static final class LookupKey {
+        private final int kind;
+        private final Class targetClass;
+        private final String name;
+        private final Class[] parameterTypes;
+        private final int hashCode;
+
+        private LookupKey(int kind, Class targetClass, String name, Class[] parameterTypes) {
+            this.kind = kind;
+            this.targetClass = targetClass;
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+            int hash = kind;
+            hash = 31 * hash + targetClass.hashCode();
+            hash = 31 * hash + (name != null ? name.hashCode() : 0);
+            hash = 31 * hash + Arrays.hashCode(parameterTypes);
+            this.hashCode = hash;
+        }
+
+        /**
+         * Creates the key for a lookup, or returns null if the result of the lookup depends on the values of the parameters.
+         */
+        static LookupKey create(int kind, Class targetClass, String name, Object[] parameters) {
+            int count = parameters == null ? 0 : parameters.length;
+            Class[] parameterTypes = new Class[count];
+            for (int i = 0; i < count; i++) {
+                if (parameters[i] != null) {
+                    Class type = parameters[i].getClass();
+                    if (type.isArray()
+                        || Collection.class.isAssignableFrom(type)
+                        || Pointer.class.isAssignableFrom(type)
+                        || NodeSet.class.isAssignableFrom(type)) {
+                        return null;
+                    }
+                    parameterTypes[i] = type;
+                }
+            }
+            return new LookupKey(kind, targetClass, name, parameterTypes);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey key = (LookupKey) o;
+            return kind == key.kind
+                && targetClass == key.targetClass
+                && (name == null ? key.name == null : name.equals(key.name))
+                && Arrays.equals(parameterTypes, key.parameterTypes);
+        }
+    }
 }
@@ -22,7 +22,8 @@ import org.apache.commons.jxpath.JXPathContext;
 import static org.xchain.framework.util.JXPathContextUtil.*;
 
 /**
- * An implementation of the Variables interface that properly resolves namespace prefixes.
+ * An implementation of the Variables interface that properly resolves namespace prefixes.  The variable map is not created until
+ * the first variable is declared, so contexts that never declare a variable do not pay for one.
  *
  * @author Christian Trimble
  */
@@ -37,7 +38,6 @@ public class QNameVariablesImpl
    */
   public QNameVariablesImpl()
   {
-    this.variableMap = new HashMap<QName, Object>();
   }
 
   /**
@@ -46,7 +46,6 @@ public class QNameVariablesImpl
   public QNameVariablesImpl( JXPathContext context )
   {
     this.context = context;
-    this.variableMap = new HashMap<QName, Object>();
   }
 
   /**
@@ -63,7 +62,18 @@ public class QNameVariablesImpl
    */
   public QNameVariables createSharedVariables( JXPathContext newContext )
   {
-    return new QNameVariablesImpl( newContext, variableMap );
+    return new QNameVariablesImpl( newContext, variableMap() );
+  }
+
+  /**
+   * Returns the variable map, creating it if it does not exist yet.
+   */
+  protected Map<QName, Object> variableMap()
+  {
+    if( variableMap == null ) {
+      variableMap = new HashMap<QName, Object>(8);
+    }
+    return variableMap;
   }
 
   /**
@@ -96,7 +106,7 @@ public class QNameVariablesImpl
    */
   public void declareVariable( String varName, Object value )
   {
-    variableMap.put(stringToQName(context,varName), value);
+    variableMap().put(stringToQName(context,varName), value);
   }
 
   /**
@@ -104,43 +114,47 @@ public class QNameVariablesImpl
    */
   public void declareVariable( QName varName, Object value )
   {
-    variableMap.put(varName, value);
+    variableMap().put(varName, value);
   }
 
   public Object getVariable( String varName )
   {
-    return variableMap.get(stringToQName(context,varName));
+    return variableMap != null ? variableMap.get(stringToQName(context,varName)) : null;
   }
 
   public Object getVariable( QName varName )
   {
-    return variableMap.get(varName);
+    return variableMap != null ? variableMap.get(varName) : null;
   }
 
   public boolean isDeclaredVariable( String varName )
   {
-    return variableMap.containsKey(stringToQName(context,varName));
+    return variableMap != null && variableMap.containsKey(stringToQName(context,varName));
   }
 
   public boolean isDeclaredVariable( QName varName )
   {
-    return variableMap.containsKey(varName);
+    return variableMap != null && variableMap.containsKey(varName);
   }
 
   public void undeclareVariable( String varName )
   {
-    variableMap.remove(stringToQName(context,varName));
+    if( variableMap != null ) {
+      variableMap.remove(stringToQName(context,varName));
+    }
   }
 
   public void undeclareVariable( QName varName )
   {
-    variableMap.remove(varName);
+    if( variableMap != null ) {
+      variableMap.remove(varName);
+    }
   }
 
   public Map<QName, Object> getVariableMap()
   {
-    return variableMap;
+    return variableMap();
   }
 
-  public String toString() { return variableMap.toString(); }
+  public String toString() { return variableMap != null ? variableMap.toString() : "{}"; }
 }
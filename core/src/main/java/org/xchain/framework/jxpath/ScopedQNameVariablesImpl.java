@@ -29,14 +29,14 @@ import org.xchain.annotations.PrefixMapping;
 import org.xchain.framework.lifecycle.ComponentAnalysis;
 import org.xchain.framework.lifecycle.Lifecycle;
 import org.xchain.framework.lifecycle.LifecycleContext;
-import org.xchain.framework.lifecycle.NamespaceContext;
 import org.xchain.framework.util.ComponentUtil;
 import org.xchain.framework.util.DependencyInjectionException;
 
 import static org.xchain.framework.util.JXPathContextUtil.*;
 
 /**
- * An implementation of the ScopedQNameVariables interface.
+ * An implementation of the ScopedQNameVariables interface.  Components are found in the component index of the lifecycle context,
+ * and the map of created components is not allocated until the first component is created in this scope.
  *
  * @author Christian Trimble
  * @author Devon Tackett
@@ -46,7 +46,7 @@ public class ScopedQNameVariablesImpl
   implements ScopedQNameVariables
 {
   protected ScopedQNameVariables parentVariables = null;
-  protected Map<QName, Object> componentMap = new HashMap<QName, Object>();
+  protected Map<QName, Object> componentMap = null;
   protected Scope scope = null;
 
   /**
@@ -128,7 +128,7 @@ public class ScopedQNameVariablesImpl
         }
       } else {
         // Get the component at the current scope.
-        variable = getComponent(varName);
+        variable = getComponent(varName, componentAnalysis);
       }
     }
     
@@ -217,6 +217,10 @@ public class ScopedQNameVariablesImpl
    * Release all components that were declared.  Any methods annotated with End will be called on the Compoent instance.
    */
   public void releaseComponents() {
+    if (componentMap == null || componentMap.isEmpty()) {
+      return;
+    }
+
     for (Object component : componentMap.values()) {
       try {
         // Run the end method (if present)
@@ -236,39 +240,38 @@ public class ScopedQNameVariablesImpl
    * Get an instance of a component with the given QName.
    * 
    * @param componentName The QName of the component to load.
+   * @param analysis The analysis of the component.
    * 
-   * @return An instance of the component for the given QName.  Null if there is no component
-   * for the given QName.
+   * @return An instance of the component for the given QName.
    */
-  private Object getComponent(QName componentName) {
-    if (componentMap.containsKey(componentName)) {
+  private Object getComponent(QName componentName, ComponentAnalysis analysis) {
+    if (componentMap != null && componentMap.containsKey(componentName)) {
       // Component already instantiated.
       return componentMap.get(componentName);
     } else {
       Object component = null;
       
-      // Attempt to find the component class
-      ComponentAnalysis analysis = getComponentAnalysis(componentName);      
-      if (analysis != null) {
-        try {
-          // Create the component
-          component = ComponentUtil.createComponent(analysis);
-          // Perform dependency injection
-          ComponentUtil.doInjection(component, analysis, context);
-          // Run the begin method (if present)
-          ComponentUtil.doBegin(component);
-          
-          // Add the component to the component map.
-          componentMap.put(componentName, component);
-        } catch (DependencyInjectionException ex) {
-          throw ex;
-        } catch (Exception ex) {          
-          if (log.isErrorEnabled()) {
-            log.error("Error creating component: " + componentName, ex);
-          }
-          
-          throw new IllegalArgumentException("Error creating component: " + componentName, ex);
+      try {
+        // Create the component
+        component = ComponentUtil.createComponent(analysis);
+        // Perform dependency injection
+        ComponentUtil.doInjection(component, analysis, context);
+        // Run the begin method (if present)
+        ComponentUtil.doBegin(component);
+        
+        // Add the component to the component map.
+        if (componentMap == null) {
+          componentMap = new HashMap<QName, Object>(4);
+        }
+        componentMap.put(componentName, component);
+      } catch (DependencyInjectionException ex) {
+        throw ex;
+      } catch (Exception ex) {          
+        if (log.isErrorEnabled()) {
+          log.error("Error creating component: " + componentName, ex);
         }
+        
+        throw new IllegalArgumentException("Error creating component: " + componentName, ex);
       }
       
       return component;
@@ -283,27 +286,20 @@ public class ScopedQNameVariablesImpl
    * @return The component class for the given QName.  Null if the QName does not reference a known component.
    */
   private ComponentAnalysis getComponentAnalysis(QName componentName) {
-    NamespaceContext namespaceContext = null;
-
     // Get the lifecycle context
     LifecycleContext lifecycleContext = Lifecycle.getLifecycleContext();
     if (lifecycleContext != null) {
-      // Get the namespace context.
-      namespaceContext = lifecycleContext.getNamespaceContextMap().get(componentName.getNamespaceURI());
-    }
-    
-    if (namespaceContext != null) {
-      // Get the component from the namespace context.
-      return namespaceContext.getComponentMap().get(componentName.getLocalPart());
+      // Get the component from the component index.
+      return lifecycleContext.getComponentAnalysis(componentName);
     } else {
-      // Namespace is not defined.  No component could exist.
+      // No lifecycle.  No component could exist.
       return null;
     }
   }
 
   @Override
   protected void finalize() throws Throwable {
-    if (componentMap.size() != 0) {
+    if (componentMap != null && componentMap.size() != 0) {
       if (log.isWarnEnabled()) {
         log.warn("Components at scope: " + scope + " were not properly released.");
       }
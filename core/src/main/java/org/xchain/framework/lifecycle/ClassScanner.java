@@ -15,6 +15,7 @@
  */
 package org.xchain.framework.lifecycle;
 
+import org.xchain.framework.util.BytecodeCache;
 import org.xchain.framework.util.EngineeringUtil;
 import org.xchain.annotations.Component;
 import org.xchain.annotations.Element;
@@ -28,8 +29,23 @@ import org.xchain.framework.scanner.MarkerResourceLocator;
 import org.xchain.framework.scanner.ScanException;
 import org.xchain.framework.scanner.ScanNode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import javassist.ClassPool;
@@ -56,162 +72,419 @@ public class ClassScanner
   public static Logger log = LoggerFactory.getLogger(ClassScanner.class);
 
   protected LifecycleContext context = null;
-  protected ClassPool classPool = null;
-  protected CtClass catalogCtClass = null;
-  protected CtClass commandCtClass = null;
+  /** The number of threads that analyze classes, or zero for one thread per processor. */
+  private int threadCount = 0;
+  /** The names of the class files found while scanning. */
+  private List<String> classNameList = null;
 
   public ClassScanner( LifecycleContext context )
+  {
+    this( context, 0 );
+  }
+
+  /**
+   * Creates a scanner that analyzes classes with the given number of threads.  A thread count of zero uses one thread per processor.
+   */
+  ClassScanner( LifecycleContext context, int threadCount )
   {
     super( new MarkerResourceLocator("META-INF/xchain.xml"),  context.getClassLoader() );
     this.context = context;
+    this.threadCount = threadCount;
   }
 
   /**
-   * Starts the scanning of the lifecycle context.
+   * Starts the scanning of the lifecycle context.  Scanning is done in three phases.  First, the names of the class files under the
+   * xchain roots are collected.  Then, the classes are analyzed and the commands and catalogs are engineered in parallel, with each
+   * worker thread using its own class pool.  Finally, the engineered classes are defined and the namespaces are populated on the
+   * calling thread, in the order that the classes were found.  The time taken by each phase is logged.
    */
   public void scan()
   {
+    classNameList = new ArrayList<String>();
     try {
-      classPool = EngineeringUtil.createClassPool(classLoader);
-      catalogCtClass = classPool.get("org.xchain.Catalog");
-      commandCtClass = classPool.get("org.xchain.Command");
-
+      long start = System.currentTimeMillis();
       super.scan();
+      long scanned = System.currentTimeMillis();
+      if( log.isInfoEnabled() ) {
+        log.info("Found "+classNameList.size()+" class files in "+(scanned-start)+"ms.");
+      }
+
+      int threadCount = Math.max(1, Math.min(this.threadCount > 0 ? this.threadCount : Runtime.getRuntime().availableProcessors(), classNameList.size()));
+      List<ClassAnalysis> analysisList = analyzeClasses(classNameList, threadCount);
+      long analyzed = System.currentTimeMillis();
+      if( log.isInfoEnabled() ) {
+        log.info("Analyzed and engineered "+analysisList.size()+" classes in "+(analyzed-scanned)+"ms using "+threadCount+" threads.");
+      }
+
+      for( ClassAnalysis analysis : analysisList ) {
+        defineClasses(analysis);
+      }
+      if( log.isInfoEnabled() ) {
+        log.info("Defined engineered classes in "+(System.currentTimeMillis()-analyzed)+"ms.");
+      }
     }
     catch( Exception e ) {
       e.printStackTrace();
       log.warn("Unexpected Exception", e);
     }
     finally {
-      classPool = null;
+      classNameList = null;
     }
   }
 
+  /**
+   * Records the name of each loadable class file.  The classes are analyzed once all of the nodes have been scanned.
+   */
   @Override
   public void scanNode(ScanNode node)
     throws ScanException
+  {
+    if( isLoadableClassFile(node.getResourceName()) ) {
+      classNameList.add(toClassName(node));
+    }
+  }
+
+  /**
+   * Analyzes and engineers the named classes.  The analysis of each class is returned in the order of the class names.
+   */
+  private List<ClassAnalysis> analyzeClasses( List<String> classNames, int threadCount )
+    throws Exception
+  {
+    final ThreadLocal<ScanPool> scanPoolTl = new ThreadLocal<ScanPool>();
+    List<ClassAnalysis> analysisList = new ArrayList<ClassAnalysis>(classNames.size());
+
+    if( threadCount <= 1 ) {
+      for( String className : classNames ) {
+        ClassAnalysis analysis = analyzeClass(scanPool(scanPoolTl), className);
+        if( analysis != null ) {
+          analysisList.add(analysis);
+        }
+      }
+      return analysisList;
+    }
+
+    final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread(runnable, "xchain-class-scanner-"+threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        thread.setContextClassLoader(contextClassLoader);
+        return thread;
+      }
+    });
+    try {
+      List<Future<ClassAnalysis>> futureList = new ArrayList<Future<ClassAnalysis>>(classNames.size());
+      for( final String className : classNames ) {
+        futureList.add(executor.submit(new Callable<ClassAnalysis>() {
+          public ClassAnalysis call() throws Exception {
+            return analyzeClass(scanPool(scanPoolTl), className);
+          }
+        }));
+      }
+      for( Future<ClassAnalysis> future : futureList ) {
+        ClassAnalysis analysis = null;
+        try {
+          analysis = future.get();
+        }
+        catch( ExecutionException ee ) {
+          if( ee.getCause() instanceof Error ) {
+            throw (Error)ee.getCause();
+          }
+          throw (Exception)ee.getCause();
+        }
+        if( analysis != null ) {
+          analysisList.add(analysis);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    return analysisList;
+  }
+
+  /**
+   * Returns the class pool for the current thread, creating it if needed.  Javassist class pools are not safe to share between
+   * threads, so each thread that engineers classes gets its own pool.
+   */
+  private ScanPool scanPool( ThreadLocal<ScanPool> scanPoolTl )
+    throws Exception
+  {
+    ScanPool scanPool = scanPoolTl.get();
+    if( scanPool == null ) {
+      scanPool = new ScanPool(EngineeringUtil.createClassPool(classLoader));
+      scanPoolTl.set(scanPool);
+    }
+    return scanPool;
+  }
+
+  /**
+   * Analyzes a single class, engineering it if it is a command or catalog.
+   *
+   * @return the analysis of the class, or null if the class is not part of an xchain namespace.
+   */
+  private ClassAnalysis analyzeClass( ScanPool scanPool, String className )
   {
     try {
-      // Handle all class files.
-      if( isLoadableClassFile(node.getResourceName()) ) {
-        // Get the name of the class.
-        String className = toClassName(node);
+      ClassPool classPool = scanPool.classPool;
 
-        // Get the class from teh class pool 
-        CtClass scannedCtClass = classPool.get(className);
+      // Get the class from teh class pool 
+      CtClass scannedCtClass = classPool.get(className);
 
-        // Check whether the class has an Element annotation.
-        if( AnnotationUtil.hasAnnotation(scannedCtClass, Element.class) || AnnotationUtil.hasAnnotation(scannedCtClass, Component.class) || hasFunctionsAnnotation(scannedCtClass) ) {
+      boolean hasFunctions = hasFunctionsAnnotation(scannedCtClass);
 
-          String namespaceUri = null;
+      // Check whether the class has an Element annotation.
+      if( !(AnnotationUtil.hasAnnotation(scannedCtClass, Element.class) || AnnotationUtil.hasAnnotation(scannedCtClass, Component.class) || hasFunctions) ) {
+        return null;
+      }
+
+      String namespaceUri = null;
+
+      if( AnnotationUtil.hasAnnotation(scannedCtClass, LifecycleClass.class) ) {
+        namespaceUri = (String)AnnotationUtil.getAnnotationValue(scannedCtClass.getClassFile(), LifecycleClass.class, "uri");
+      }
+      else {
+        try {
+          // figure out what namespace we are in.
+          String packageName = scannedCtClass.getPackageName();
 
-          if( AnnotationUtil.hasAnnotation(scannedCtClass, LifecycleClass.class) ) {
-            namespaceUri = (String)AnnotationUtil.getAnnotationValue(scannedCtClass.getClassFile(), LifecycleClass.class, "uri");
+          // Get the package level information for the class.
+          CtClass packageCtClass = classPool.get(packageName+".package-info");
+          namespaceUri = (String)AnnotationUtil.getAnnotationValue(packageCtClass.getClassFile(), Namespace.class, "uri");
+        }
+        catch( Exception e ) {
+          if( log.isDebugEnabled() ) {
+            log.debug("Could not load package-info.class for "+scannedCtClass.getName()+".");
           }
-          else {
-            try {
-              // figure out what namespace we are in.
-              String packageName = scannedCtClass.getPackageName();
-
-              // Get the package level information for the class.
-              CtClass packageCtClass = classPool.get(packageName+".package-info");
-              namespaceUri = (String)AnnotationUtil.getAnnotationValue(packageCtClass.getClassFile(), Namespace.class, "uri");
-            }
-            catch( Exception e ) {
-              if( log.isDebugEnabled() ) {
-                log.debug("Could not load package-info.class for "+scannedCtClass.getName()+".");
-              }
-            }
+        }
+      }
+
+      if( namespaceUri == null ) {
+        if( log.isWarnEnabled() ) {
+          log.warn("Skipping class '"+scannedCtClass.getName()+"' because its package does not specify a namespace uri.");
+        }
+        return null;
+      }
+
+      ClassAnalysis analysis = new ClassAnalysis(className, namespaceUri);
+      analysis.hasFunctions = hasFunctions;
+      // Check whether the scanned class is optional.
+      analysis.optional = AnnotationUtil.hasAnnotation(scannedCtClass, Optional.class);
+
+      try {
+        if( scannedCtClass.subtypeOf(scanPool.catalogCtClass) ) {
+          // The class is a catalog, engineer as such.
+          analysis.kind = ClassKind.CATALOG;
+          if( !readCachedClasses(classPool, analysis) ) {
+            analysis.engineeredCtClass = EngineeringUtil.engineerCatalog(classPool, scannedCtClass);
+            analysis.nestedCtClasses = analysis.engineeredCtClass.getNestedClasses();
+            writeCachedClasses(analysis);
           }
-          if( namespaceUri != null ) {
-            // Try to find the namespace context in the current context.
-            NamespaceContext namespaceContext = context.getNamespaceContextMap().get(namespaceUri);
-
-            if( namespaceUri != null && namespaceContext == null ) {
-              // Namespace not found, create a new namespace context.
-              namespaceContext = new NamespaceContext(namespaceUri);
-              context.getNamespaceContextMap().put(namespaceUri, namespaceContext);
-
-              if( log.isInfoEnabled() ) {
-                log.info("Found xchain uri '"+namespaceUri+"'.");
-              }
-            }
-
-            if( namespaceContext != null ) {
-              // Check if the scanned class is optional.
-              boolean isOptional = AnnotationUtil.hasAnnotation(scannedCtClass, Optional.class);
-              
-              try {
-                if( scannedCtClass.subtypeOf(catalogCtClass) ) {
-                  // The class is a catalog, engineer as such.
-                  CtClass engineeredCtClass = EngineeringUtil.engineerCatalog(classPool, scannedCtClass);
-                  // scan the class for static methods with Function annotations.
-                  namespaceContext.getCatalogList().add(classPool.toClass(engineeredCtClass, context.getClassLoader()));
-                  if( hasFunctionsAnnotation(scannedCtClass) ) {
-                    Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
-                    scanStaticFunctions(namespaceContext, scannedClass);
-                  }
-                  for( CtClass nestedCtClass : engineeredCtClass.getNestedClasses() ) {
-                    classPool.toClass( nestedCtClass, context.getClassLoader() );
-                    // TODO: What are the class loading implications of this?
-                    // scan the class for static methods with Function annotations.
-                    //scanStaticFunctions(namespaceContext, nestedCtClass);
-                    //scanInstanceFunctions(namespaceContext, nestedCtClass);
-                  }
-                }
-                else if( scannedCtClass.subtypeOf(commandCtClass) ) {
-                  // The class is a command, engineer as such.                
-                  CtClass engineeredCtClass = EngineeringUtil.engineerCommand(classPool, scannedCtClass);
-                  namespaceContext.getCommandList().add(classPool.toClass(engineeredCtClass, context.getClassLoader()));
-                  // scan the class for static methods with Function annotations.
-                  if( hasFunctionsAnnotation(scannedCtClass) ) {
-                    Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
-                    scanStaticFunctions(namespaceContext, scannedClass);
-                  }
-                  for( CtClass nestedCtClass : engineeredCtClass.getNestedClasses() ) {
-                    if( log.isDebugEnabled() ) log.debug("Adding class "+nestedCtClass.getName());
-                    classPool.toClass( nestedCtClass, context.getClassLoader() );
-                    // TODO: what are the class loading implications of this?
-                    //scanStaticFunctions(namespaceContext, nestedCtClass);
-                    //scanInstanceFunctions(namespaceContext, nestedCtClass);
-                  }
-                }
-                else if ( AnnotationUtil.hasAnnotation(scannedCtClass, Component.class)) {
-                  // The class is an component.
-                  // TODO
-                  namespaceContext.getComponentMap().put(AnnotationUtil.getAnnotationValue(scannedCtClass.getClassFile(), Component.class, "localName").toString(),
-                      ComponentUtil.createAnalysis(Thread.currentThread().getContextClassLoader().loadClass(className)));
-                  // scan the class for static and instance methods with Function annotations.
-                  if( hasFunctionsAnnotation(scannedCtClass) ) {
-                    Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
-                    scanStaticFunctions(namespaceContext, scannedClass);
-                    scanInstanceFunctions(namespaceContext, scannedClass);
-                  }
-                }
-                else {
-                  // scan the class for static and instance methods with Function annotations/
-                  if( hasFunctionsAnnotation(scannedCtClass) ) {
-                    Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
-                    scanStaticFunctions(namespaceContext, scannedClass);
-                    scanInstanceFunctions(namespaceContext, scannedClass);
-                    scanConstructorFunctions(namespaceContext, scannedClass);
-                  }
-                }
-              } catch (NoClassDefFoundError error) {
-                if (isOptional)
-                  log.info("Class {} has missing dependencies but is marked optional.", scannedCtClass.getName());
-                else
-                  throw error;
-              }
-              // load any inner classes from the source file.
-            }
+        }
+        else if( scannedCtClass.subtypeOf(scanPool.commandCtClass) ) {
+          // The class is a command, engineer as such.
+          analysis.kind = ClassKind.COMMAND;
+          if( !readCachedClasses(classPool, analysis) ) {
+            analysis.engineeredCtClass = EngineeringUtil.engineerCommand(classPool, scannedCtClass);
+            analysis.nestedCtClasses = analysis.engineeredCtClass.getNestedClasses();
+            writeCachedClasses(analysis);
           }
-          else {
-            if( log.isWarnEnabled() ) {
-              log.warn("Skipping class '"+scannedCtClass.getName()+"' because its package does not specify a namespace uri.");
-            }
-          }          
         }
+        else if ( AnnotationUtil.hasAnnotation(scannedCtClass, Component.class)) {
+          // The class is an component.
+          analysis.kind = ClassKind.COMPONENT;
+          analysis.componentLocalName = AnnotationUtil.getAnnotationValue(scannedCtClass.getClassFile(), Component.class, "localName").toString();
+        }
+        else {
+          analysis.kind = ClassKind.FUNCTIONS;
+        }
+      }
+      catch( NoClassDefFoundError error ) {
+        // this is reported when the class is defined, so that optional classes are handled in order.
+        analysis.error = error;
+      }
+      return analysis;
+    }
+    catch( Exception e ) {
+      log.error("Unhandled Exception", e);
+      return null;
+    }
+  }
+
+  /**
+   * Reads the engineered classes for an analyzed class from the bytecode cache.  The cache key is computed from the class file of the
+   * scanned class and stored on the analysis, so that the classes can be written to the cache if they are not found.
+   *
+   * @return true if the engineered classes were found in the cache.
+   */
+  private boolean readCachedClasses( ClassPool classPool, ClassAnalysis analysis )
+    throws Exception
+  {
+    BytecodeCache bytecodeCache = context.getBytecodeCache();
+    if( bytecodeCache == null ) {
+      return false;
+    }
+
+    byte[] scannedClassBytes = readClassFile(analysis.className);
+    if( scannedClassBytes == null ) {
+      return false;
+    }
+
+    analysis.cacheKey = bytecodeCache.key(analysis.kind.name(), analysis.className, scannedClassBytes);
+    Map<String, byte[]> classMap = bytecodeCache.get(analysis.cacheKey);
+    if( classMap == null || classMap.isEmpty() ) {
+      return false;
+    }
+
+    // the first class in the entry is the engineered class, the rest are its nested classes.
+    List<CtClass> ctClassList = new ArrayList<CtClass>(classMap.size());
+    for( byte[] classBytes : classMap.values() ) {
+      ctClassList.add(classPool.makeClass(new ByteArrayInputStream(classBytes)));
+    }
+    analysis.engineeredCtClass = ctClassList.get(0);
+    analysis.nestedCtClasses = ctClassList.subList(1, ctClassList.size()).toArray(new CtClass[ctClassList.size()-1]);
+    return true;
+  }
+
+  /**
+   * Writes the engineered classes for an analyzed class to the bytecode cache, if the cache is open.  The classes are kept from being
+   * pruned, so that they can still be defined after their bytecode has been written.
+   */
+  private void writeCachedClasses( ClassAnalysis analysis )
+    throws Exception
+  {
+    BytecodeCache bytecodeCache = context.getBytecodeCache();
+    if( bytecodeCache == null || analysis.cacheKey == null ) {
+      return;
+    }
+
+    Map<String, byte[]> classMap = new LinkedHashMap<String, byte[]>();
+    analysis.engineeredCtClass.stopPruning(true);
+    classMap.put(analysis.engineeredCtClass.getName(), analysis.engineeredCtClass.toBytecode());
+    for( CtClass nestedCtClass : analysis.nestedCtClasses ) {
+      nestedCtClass.stopPruning(true);
+      classMap.put(nestedCtClass.getName(), nestedCtClass.toBytecode());
+    }
+    bytecodeCache.put(analysis.cacheKey, classMap);
+  }
+
+  /**
+   * Returns the bytes of the class file for the named class, or null if the class file could not be read.
+   */
+  private byte[] readClassFile( String className )
+  {
+    InputStream in = classLoader.getResourceAsStream(className.replace('.', '/')+".class");
+    if( in == null ) {
+      return null;
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read = 0;
+      while( (read = in.read(buffer)) != -1 ) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+    catch( IOException ioe ) {
+      if( log.isDebugEnabled() ) {
+        log.debug("Could not read the class file for '"+className+"'.", ioe);
+      }
+      return null;
+    }
+    finally {
+      try {
+        in.close();
+      }
+      catch( IOException ioe ) {
+        // ignore.
+      }
+    }
+  }
+
+  /**
+   * Defines the engineered classes for an analyzed class and adds the class to its namespace.
+   */
+  private void defineClasses( ClassAnalysis analysis )
+  {
+    try {
+      String className = analysis.className;
+      String namespaceUri = analysis.namespaceUri;
+
+      // Try to find the namespace context in the current context.
+      NamespaceContext namespaceContext = context.getNamespaceContextMap().get(namespaceUri);
+
+      if( namespaceContext == null ) {
+        // Namespace not found, create a new namespace context.
+        namespaceContext = new NamespaceContext(namespaceUri);
+        context.getNamespaceContextMap().put(namespaceUri, namespaceContext);
+
+        if( log.isInfoEnabled() ) {
+          log.info("Found xchain uri '"+namespaceUri+"'.");
+        }
+      }
+
+      try {
+        if( analysis.error != null ) {
+          throw analysis.error;
+        }
+        if( analysis.kind == ClassKind.CATALOG ) {
+          namespaceContext.getCatalogList().add(toClass(analysis.engineeredCtClass));
+          // scan the class for static methods with Function annotations.
+          if( analysis.hasFunctions ) {
+            Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            scanStaticFunctions(namespaceContext, scannedClass);
+          }
+          for( CtClass nestedCtClass : analysis.nestedCtClasses ) {
+            toClass( nestedCtClass );
+            // TODO: What are the class loading implications of this?
+            // scan the class for static methods with Function annotations.
+            //scanStaticFunctions(namespaceContext, nestedCtClass);
+            //scanInstanceFunctions(namespaceContext, nestedCtClass);
+          }
+        }
+        else if( analysis.kind == ClassKind.COMMAND ) {
+          namespaceContext.getCommandList().add(toClass(analysis.engineeredCtClass));
+          // scan the class for static methods with Function annotations.
+          if( analysis.hasFunctions ) {
+            Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            scanStaticFunctions(namespaceContext, scannedClass);
+          }
+          for( CtClass nestedCtClass : analysis.nestedCtClasses ) {
+            if( log.isDebugEnabled() ) log.debug("Adding class "+nestedCtClass.getName());
+            toClass( nestedCtClass );
+            // TODO: what are the class loading implications of this?
+            //scanStaticFunctions(namespaceContext, nestedCtClass);
+            //scanInstanceFunctions(namespaceContext, nestedCtClass);
+          }
+        }
+        else if( analysis.kind == ClassKind.COMPONENT ) {
+          // TODO
+          namespaceContext.getComponentMap().put(analysis.componentLocalName,
+              ComponentUtil.createAnalysis(Thread.currentThread().getContextClassLoader().loadClass(className)));
+          context.resetComponentAnalysisMap();
+          // scan the class for static and instance methods with Function annotations.
+          if( analysis.hasFunctions ) {
+            Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            scanStaticFunctions(namespaceContext, scannedClass);
+            scanInstanceFunctions(namespaceContext, scannedClass);
+          }
+        }
+        else {
+          // scan the class for static and instance methods with Function annotations/
+          if( analysis.hasFunctions ) {
+            Class scannedClass = Thread.currentThread().getContextClassLoader().loadClass(className);
+            scanStaticFunctions(namespaceContext, scannedClass);
+            scanInstanceFunctions(namespaceContext, scannedClass);
+            scanConstructorFunctions(namespaceContext, scannedClass);
+          }
+        }
+      } catch (NoClassDefFoundError error) {
+        if (analysis.optional)
+          log.info("Class {} has missing dependencies but is marked optional.", className);
+        else
+          throw error;
       }
     }
     catch( Exception e ) {
@@ -219,7 +492,16 @@ public class ClassScanner
       log.error("Unhandled Exception", e);
     }
   }
-  
+
+  /**
+   * Defines an engineered class in the lifecycle class loader, using the class pool that engineered it.
+   */
+  private Class toClass( CtClass ctClass )
+    throws Exception
+  {
+    return ctClass.getClassPool().toClass(ctClass, context.getClassLoader());
+  }
+
   public boolean hasFunctionsAnnotation( CtClass ctClass )
     throws Exception
   {
@@ -324,5 +606,50 @@ public class ClassScanner
       }
     }
   }
-}
 
+  /**
+   * The kinds of classes found by the scanner.
+   */
+  private static enum ClassKind { CATALOG, COMMAND, COMPONENT, FUNCTIONS }
+
+  /**
+   * The javassist class pool used by one scanning thread.
+   */
+  private static class ScanPool
+  {
+    final ClassPool classPool;
+    final CtClass catalogCtClass;
+    final CtClass commandCtClass;
+
+    ScanPool( ClassPool classPool )
+      throws Exception
+    {
+      this.classPool = classPool;
+      this.catalogCtClass = classPool.get("org.xchain.Catalog");
+      this.commandCtClass = classPool.get("org.xchain.Command");
+    }
+  }
+
+  /**
+   * The result of analyzing a class that belongs to an xchain namespace.
+   */
+  private static class ClassAnalysis
+  {
+    final String className;
+    final String namespaceUri;
+    ClassKind kind = null;
+    boolean optional = false;
+    boolean hasFunctions = false;
+    CtClass engineeredCtClass = null;
+    CtClass[] nestedCtClasses = null;
+    String componentLocalName = null;
+    NoClassDefFoundError error = null;
+    String cacheKey = null;
+
+    ClassAnalysis( String className, String namespaceUri )
+    {
+      this.className = className;
+      this.namespaceUri = namespaceUri;
+    }
+  }
+}
@@ -15,10 +15,13 @@
  */
 package org.xchain.framework.lifecycle;
 
+import java.io.File;
 import java.net.URL;
 import java.util.List;
 import java.util.ArrayList;
 
+import org.xchain.framework.jsl.TemplateCompiler;
+
 /**
  *
  * @author Mike Moulton
@@ -33,6 +36,20 @@ public class ConfigContext
   protected int templatesCacheSize = 200;
   /** Whether cached files should have their sources monitored for changes. */
   protected boolean monitored = false;
+  /** The number of milliseconds between background checks of monitored files.  If zero, files are checked when they are requested. */
+  protected long monitorInterval = 0;
+  /** The number of threads used to compile the jsl templates of a catalog. */
+  protected int templateCompilerThreads = 1;
+  /** The backend used to compile jsl templates, either "eclipse" or "javassist". */
+  protected String templateCompiler = TemplateCompiler.ECLIPSE_BACKEND;
+  /** The directory where generated classes are cached between restarts, or null if generated classes are not cached. */
+  protected File bytecodeCacheDirectory = null;
+  /** The system ids of the catalogs that are loaded when the lifecycle starts. */
+  protected List<String> preloadCatalogList = new ArrayList<String>();
+  /** The patterns for the resource names of the catalogs that are loaded when the lifecycle starts. */
+  protected List<String> preloadCatalogPatternList = new ArrayList<String>();
+  /** The number of threads used to load catalogs when the lifecycle starts. */
+  protected int catalogPreloadThreads = Runtime.getRuntime().availableProcessors();
   protected List<URL> resourceUrlList = new ArrayList<URL>();
   protected List<URL> sourceUrlList = new ArrayList<URL>();
   protected List<URL> webappUrlList = new ArrayList<URL>();
@@ -46,6 +63,24 @@ public class ConfigContext
   public boolean isMonitored() { return this.monitored; }
   public void setMonitored(boolean monitor) { this.monitored = monitor; }
 
+  public long getMonitorInterval() { return this.monitorInterval; }
+  public void setMonitorInterval(long monitorInterval) { this.monitorInterval = monitorInterval; }
+
+  public int getTemplateCompilerThreads() { return this.templateCompilerThreads; }
+  public void setTemplateCompilerThreads(int templateCompilerThreads) { this.templateCompilerThreads = templateCompilerThreads; }
+
+  public String getTemplateCompiler() { return this.templateCompiler; }
+  public void setTemplateCompiler(String templateCompiler) { this.templateCompiler = templateCompiler; }
+
+  public File getBytecodeCacheDirectory() { return this.bytecodeCacheDirectory; }
+  public void setBytecodeCacheDirectory(File bytecodeCacheDirectory) { this.bytecodeCacheDirectory = bytecodeCacheDirectory; }
+
+  public List<String> getPreloadCatalogList() { return this.preloadCatalogList; }
+  public List<String> getPreloadCatalogPatternList() { return this.preloadCatalogPatternList; }
+
+  public int getCatalogPreloadThreads() { return this.catalogPreloadThreads; }
+  public void setCatalogPreloadThreads(int catalogPreloadThreads) { this.catalogPreloadThreads = catalogPreloadThreads; }
+
   public List<URL> getResourceUrlList() { return this.resourceUrlList; }
   public List<URL> getSourceUrlList() { return this.sourceUrlList; }
   public List<URL> getWebappUrlList() { return this.webappUrlList; }
@@ -15,10 +15,11 @@
  */
 package org.xchain.framework.lifecycle;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import javax.xml.namespace.QName;
 
@@ -35,7 +36,6 @@ import org.xchain.Command;
 import org.xchain.Filter;
 import org.xchain.framework.jxpath.Scope;
 import org.xchain.framework.jxpath.ScopedJXPathContextImpl;
-import org.xchain.framework.util.ThreadLocalStack;
 
 import org.xml.sax.Locator;
 import org.xml.sax.helpers.LocatorImpl;
@@ -51,34 +51,20 @@ public final class Execution
 {
   private static Logger log = LoggerFactory.getLogger(Execution.class);
 
-  /** A thread local stack of the commands being executed. */
-  private static ThreadLocalStack<ExecutionContext> executionContextStack = new ThreadLocalStack<ExecutionContext>();
+  /** The location used for commands that do not know their location. */
+  private static final Locator UNKNOWN_LOCATOR = createUnknownLocator();
 
-  /** A thread local stack of the commands currently suspended. */
-  private static ThreadLocalStack<ExecutionContext> suspendedExecutionContextStack = new ThreadLocalStack<ExecutionContext>();
-
-  /** A thread local of the current execution level context. */
-  private static ThreadLocal<JXPathContext> executionContextTl = new ThreadLocal<JXPathContext>();
-
-  /** A thread local stack of execution trace elements. */
-  private static ThreadLocalStack<ExecutionTraceElement> executionTraceStack = new ThreadLocalStack<ExecutionTraceElement>();
-
-  /** A thread local stack of suspended execution trace elements. */
-  private static ThreadLocalStack<ExecutionTraceElement> suspendedExecutionTraceStack = new ThreadLocalStack<ExecutionTraceElement>();
-
-  /** A thread local stack of chain level contexts. */
-  private static ThreadLocalStack<JXPathContext> chainContextStack = new ThreadLocalStack<JXPathContext>();
-
-  /** A thread local stack of suspended chain level contexts. */
-  private static ThreadLocalStack<JXPathContext> suspendedChainContextStack = new ThreadLocalStack<JXPathContext>();
-
-  /** A stack of prefixes defined for the life of a given command. */
-  private static ThreadLocal<LinkedList<PrefixMappingContext>> prefixMappingStack = new ThreadLocal<LinkedList<PrefixMappingContext>>()
+  /**
+   * The execution state for each thread.  The state is created the first time a thread executes a command and is reused by every
+   * later execution on that thread, so the stacks and the command execution and prefix mapping contexts on them are not allocated
+   * again.  A new local context and execution trace element are still created each time a chain boundary is entered.
+   */
+  private static ThreadLocal<ExecutionState> executionStateTl = new ThreadLocal<ExecutionState>()
   {
-    protected LinkedList<PrefixMappingContext> initialValue() {
-      return new LinkedList<PrefixMappingContext>();
+    protected ExecutionState initialValue() {
+      return new ExecutionState();
     }
-  };  
+  };
 
   /**
    * Start an execution stack on the current thread.
@@ -87,9 +73,11 @@ public final class Execution
    */
   public static void startExecution(JXPathContext globalContext)
   {
+    ExecutionState state = executionStateTl.get();
+
     // Wrap the incoming context in a global context
-    executionContextTl.set(new ScopedJXPathContextImpl(globalContext, globalContext.getContextBean(), Scope.execution));
-    executionContextStack.push(new GlobalExecutionContext());
+    state.executionContext = new ScopedJXPathContextImpl(globalContext, globalContext.getContextBean(), Scope.execution);
+    state.executionContextStack.push(new GlobalExecutionContext());
   }
 
   /**
@@ -100,23 +88,26 @@ public final class Execution
   public static void endExecution()
     throws ExecutionException
   {
+    ExecutionState state = executionStateTl.get();
+
     ExecutionException executionException = null;
     // Check if an exception was encountered during execution.
-    if( executionContextStack.peek().exceptionContext != null ) {
+    ExceptionContext exceptionContext = state.executionContextStack.peek().exceptionContext;
+    if( exceptionContext != null ) {
       // An exception was found.  Create a new ExecutionException with a trace to the source of the exception.
-      executionException = new ExecutionException("An exception was thrown during the execution.", executionContextStack.peek().exceptionContext.trace, executionContextStack.peek().exceptionContext.exception);
+      executionException = new ExecutionException("An exception was thrown during the execution.", exceptionContext.trace, exceptionContext.exception);
     }
     // Clear all stacks.
-    executionContextStack.clear();
-    suspendedExecutionContextStack.clear();
-    executionTraceStack.clear();
-    suspendedExecutionTraceStack.clear();
-    chainContextStack.clear();
-    suspendedChainContextStack.clear();
+    state.executionContextStack.clear();
+    state.suspendedExecutionContextStack.clear();
+    state.executionTraceStack.clear();
+    state.suspendedExecutionTraceStack.clear();
+    state.chainContextStack.clear();
+    state.suspendedChainContextStack.clear();
     
     // End the execution context.
-    endContext(executionContextTl.get());
-    executionContextTl.set(null);
+    endContext(state.executionContext);
+    state.executionContext = null;
     if( executionException != null ) {
       // Throw the ExecutionException if one was created.
       throw executionException;
@@ -128,23 +119,25 @@ public final class Execution
    */
   private static String stateString()
   {
+    ExecutionState state = executionStateTl.get();
     StringBuilder builder = new StringBuilder();
-    builder.append("Execution Context Stacks:").append(executionContextStack.size()).append("/").append(suspendedExecutionContextStack.size());
-    builder.append(" Execution Trace Stacks:").append(executionTraceStack.size()).append("/").append(suspendedExecutionTraceStack.size());
-    builder.append(" Local Context Stacks:").append(chainContextStack.size()).append("/").append(suspendedChainContextStack.size());
-    builder.append(" Global Context:").append(executionContextTl.get()!=null);
+    builder.append("Execution Context Stacks:").append(state.executionContextStack.size()).append("/").append(state.suspendedExecutionContextStack.size());
+    builder.append(" Execution Trace Stacks:").append(state.executionTraceStack.size()).append("/").append(state.suspendedExecutionTraceStack.size());
+    builder.append(" Local Context Stacks:").append(state.chainContextStack.size()).append("/").append(state.suspendedChainContextStack.size());
+    builder.append(" Global Context:").append(state.executionContext!=null);
     return builder.toString();
   }
 
   private static String detailedStateString()
   {
+    ExecutionState state = executionStateTl.get();
     StringBuilder builder = new StringBuilder();
     builder.append("Execution Context Stack:\n");
-    for( ExecutionContext executionContext : executionContextStack.toList() ) {
+    for( ExecutionContext executionContext : state.executionContextStack.toList() ) {
       builder.append("  ").append(executionContext.toString()).append("\n");
     }
     builder.append("Suspended Execution Context Stack:\n");
-    for( ExecutionContext executionContext : suspendedExecutionContextStack.toList() ) {
+    for( ExecutionContext executionContext : state.suspendedExecutionContextStack.toList() ) {
       builder.append("  ").append(executionContext.toString()).append("\n");
     }
     return builder.toString();
@@ -155,7 +148,7 @@ public final class Execution
    */
   public static boolean inExecution()
   {
-    return executionContextStack.size() > 0;
+    return !executionStateTl.get().executionContextStack.isEmpty();
   }
   
   /**
@@ -172,31 +165,32 @@ public final class Execution
    */
   public static JXPathContext startCommandExecute( Command command, JXPathContext context )
   {
+    ExecutionState state = executionStateTl.get();
     JXPathContext localContext = null;
 
     // push this command onto the stack.
-    executionContextStack.push(new CommandExecutionContext(command));
+    state.executionContextStack.push(state.borrowCommandExecutionContext(command));
 
     if( isLocalContextBoundary(command) ) {
       // create the new local context.
-      localContext = new ScopedJXPathContextImpl( executionContextTl.get(), context.getContextBean(), context.getContextPointer(), Scope.chain );
+      localContext = new ScopedJXPathContextImpl( state.executionContext, context.getContextBean(), context.getContextPointer(), Scope.chain );
 
       // push the local context.
-      chainContextStack.push(localContext);
+      state.chainContextStack.push(localContext);
 
-      startExecutionTrace(command);
+      startExecutionTrace(state, command);
     }
     else if( !(context instanceof ScopedJXPathContextImpl ) ) {
       throw new IllegalStateException("Initial call to command that is not registered with a catalog.");
     }
 
-    updateExecutionTraceLocation();
+    updateExecutionTraceLocation(state);
     
     // get the local context.
-    context = getCurrentContext();
+    context = getCurrentContext(state);
     if (command instanceof EngineeredCommand) {
       // Define prefix mappings for engineered commands.
-      definePrefixMappings(context, (EngineeredCommand)command);
+      definePrefixMappings(state, context, (EngineeredCommand)command);
     }    
 
     // return the context.
@@ -232,14 +226,16 @@ public final class Execution
    */
   public static JXPathContext startContextPointer( JXPathContext context, Pointer contextPointer )
   {
+    ExecutionState state = executionStateTl.get();
+
     // make sure that this is the current local context.
-    testCurrentLocalContext(context);
+    testCurrentLocalContext(state, context);
 
     // create the relative context.
     JXPathContext localContext = context.getRelativeContext( contextPointer );
 
     // push the context onto the stack.
-    chainContextStack.push(localContext);
+    state.chainContextStack.push(localContext);
 
     // return the new local context.
     return localContext;
@@ -258,44 +254,46 @@ public final class Execution
    */
   public static JXPathContext endCommandExecute(Command command, JXPathContext context)
   {
+    ExecutionState state = executionStateTl.get();
+
     if (command instanceof EngineeredCommand) {
       // Undefine prefix mappings for engineered commands.
-      undefinePrefixMappings(context, (EngineeredCommand)command);
+      undefinePrefixMappings(state, context, (EngineeredCommand)command);
     }
     
     // make sure that we are managing the stacks correctly.
-    testCurrentLocalContext(context);
-    testCurrentCommand(command);
+    testCurrentLocalContext(state, context);
+    testCurrentCommand(state, command);
 
     boolean isFilter = command instanceof Filter;
 
     // if we are in a filter, the suspend everything.
     if( isFilter ) {
-      suspendedExecutionContextStack.push(executionContextStack.pop());
+      state.suspendedExecutionContextStack.push(state.executionContextStack.pop());
 
       // if this is a local context boundary, then suspend the context.
       if( isLocalContextBoundary( command ) ) {
-        suspendedChainContextStack.push(chainContextStack.pop());
-        suspendExecutionTrace();
+        state.suspendedChainContextStack.push(state.chainContextStack.pop());
+        suspendExecutionTrace(state);
       }
     }
     // otherwise, this is a just a command, so pop it's state off of the stacks.
     else {
       // remove the command from the stack.
-      executionContextStack.pop();
+      state.releaseCommandExecutionContext(state.executionContextStack.pop());
 
       // if this was a context boundary, then update the execution trace and the local context stack.
       if( isLocalContextBoundary( command ) ) {
-        endContext(chainContextStack.pop());
-        stopExecutionTrace();
+        endContext(state.chainContextStack.pop());
+        stopExecutionTrace(state);
       }
     }
 
     // update the current location of the execution trace.
-    updateExecutionTraceLocation();
+    updateExecutionTraceLocation(state);
 
     // return the current context.
-    return getCurrentContext();
+    return getCurrentContext(state);
   }
 
   /**
@@ -306,9 +304,10 @@ public final class Execution
    */
   public static JXPathContext stopContextPointer( JXPathContext context )
   {
-    testCurrentLocalContext(context);
-    endContext(chainContextStack.pop());
-    return getCurrentContext();
+    ExecutionState state = executionStateTl.get();
+    testCurrentLocalContext(state, context);
+    endContext(state.chainContextStack.pop());
+    return getCurrentContext(state);
   }
 
   /**
@@ -321,29 +320,31 @@ public final class Execution
    */
   public static JXPathContext endCommandPostProcess(Command command, JXPathContext context)
   {    
+    ExecutionState state = executionStateTl.get();
+
     if (command instanceof EngineeredCommand) {
       // Undefine prefix mappings for engineered commands.
-      undefinePrefixMappings(context, (EngineeredCommand)command);
+      undefinePrefixMappings(state, context, (EngineeredCommand)command);
     }    
     
     // make sure that we are managing the stacks correctly.
-    testCurrentLocalContext(context);
-    testCurrentCommand(command);
+    testCurrentLocalContext(state, context);
+    testCurrentCommand(state, command);
 
     // move the command to the top of the suspended command stack.
-    executionContextStack.pop();
+    state.releaseCommandExecutionContext(state.executionContextStack.pop());
 
     // otherwise, this is a just a command, so pop it's state off of the stacks.
     if( isLocalContextBoundary( command ) ) {
-      endContext(chainContextStack.pop());
-      stopExecutionTrace();
+      endContext(state.chainContextStack.pop());
+      stopExecutionTrace(state);
     }
 
     // update the current location of the execution trace.
-    updateExecutionTraceLocation();
+    updateExecutionTraceLocation(state);
 
     // return the current context.
-    return getCurrentContext();
+    return getCurrentContext(state);
   }
 
   /**
@@ -354,9 +355,10 @@ public final class Execution
    */
   public static JXPathContext suspendContextPointer(JXPathContext context)
   {
-    testCurrentLocalContext(context);
-    suspendedChainContextStack.push(chainContextStack.pop());
-    return getCurrentContext();
+    ExecutionState state = executionStateTl.get();
+    testCurrentLocalContext(state, context);
+    state.suspendedChainContextStack.push(state.chainContextStack.pop());
+    return getCurrentContext(state);
   }
 
   /**
@@ -370,22 +372,24 @@ public final class Execution
    */
   public static JXPathContext startCommandPostProcess(Command command, JXPathContext context)
   {
+    ExecutionState state = executionStateTl.get();
+
     try {
     // make sure that we are managing the stacks correctly.
-    testCurrentLocalContext(context);
+    testCurrentLocalContext(state, context);
 
     // move the top of the suspended command stack to the top of the command stack.
-    executionContextStack.push(suspendedExecutionContextStack.pop());
-    testCurrentCommand(command);
+    state.executionContextStack.push(state.suspendedExecutionContextStack.pop());
+    testCurrentCommand(state, command);
 
     // move the top of the 
     if( isLocalContextBoundary( command ) ) {
-      chainContextStack.push(suspendedChainContextStack.pop());
-      resumeExecutionTrace();
+      state.chainContextStack.push(state.suspendedChainContextStack.pop());
+      resumeExecutionTrace(state);
     }
 
     // update the current location of the execution trace.
-    updateExecutionTraceLocation();
+    updateExecutionTraceLocation(state);
     }
     catch( Exception e ) {
       e.printStackTrace();
@@ -393,10 +397,10 @@ public final class Execution
     }
     
     // Get the current context.
-    context = getCurrentContext();
+    context = getCurrentContext(state);
     if (command instanceof EngineeredCommand) {
       // Define prefix mappings for engineered commands.
-      definePrefixMappings(context, (EngineeredCommand)command);
+      definePrefixMappings(state, context, (EngineeredCommand)command);
     }
 
     // return the current context.
@@ -412,28 +416,36 @@ public final class Execution
    * @param command The command whose custom prefixes are to be used.
    */
   public static void definePrefixMappings( JXPathContext context, EngineeredCommand command )
+  {
+    definePrefixMappings(executionStateTl.get(), context, command);
+  }
+
+  private static void definePrefixMappings( ExecutionState state, JXPathContext context, EngineeredCommand command )
   {
     PrefixMappingContext prefixContext = null;
     // get the first prefix mapping.
-    if( prefixMappingStack.get().size() > 0 && prefixMappingStack.get().getFirst().isContextFor( context, command ) ) {
-      prefixContext = prefixMappingStack.get().getFirst();
+    if( !state.prefixMappingStack.isEmpty() && state.prefixMappingStack.peek().isContextFor( context, command ) ) {
+      prefixContext = state.prefixMappingStack.peek();
       prefixContext.setCallCount(prefixContext.getCallCount()+1);
     }
     else {
-      // create a new prefix context.
-      prefixContext = new PrefixMappingContext(context, command);
+      // reuse a prefix context, or create one if this thread has not gone this deep before.
+      prefixContext = state.borrowPrefixMappingContext(context, command);
 
       // place the prefix on the top of the prefix context stack.
-      prefixMappingStack.get().addFirst(prefixContext);
+      state.prefixMappingStack.push(prefixContext);
 
       // iterate over the mappings defined in the command, storing the old values.
-      for( Map.Entry<String, String> entry : command.getPrefixMap().entrySet() ) {
-        prefixContext.getOriginalPrefixMap().put(entry.getKey(), context.getNamespaceURI(entry.getKey()));
-      }
-
-      // set the new values into the context.
-      for( Map.Entry<String, String>entry : command.getPrefixMap().entrySet() ) {
-        context.registerNamespace( entry.getKey(), entry.getValue() );
+      Map<String, String> prefixMap = command.getPrefixMap();
+      if( !prefixMap.isEmpty() ) {
+        for( Map.Entry<String, String> entry : prefixMap.entrySet() ) {
+          prefixContext.getOriginalPrefixMap().put(entry.getKey(), context.getNamespaceURI(entry.getKey()));
+        }
+
+        // set the new values into the context.
+        for( Map.Entry<String, String>entry : prefixMap.entrySet() ) {
+          context.registerNamespace( entry.getKey(), entry.getValue() );
+        }
       }
     }
   }
@@ -447,9 +459,14 @@ public final class Execution
    * @param command The command whose custom prefixes are to be undefined.
    */
   public static void undefinePrefixMappings( JXPathContext context,  EngineeredCommand command )
+  {
+    undefinePrefixMappings(executionStateTl.get(), context, command);
+  }
+
+  private static void undefinePrefixMappings( ExecutionState state, JXPathContext context,  EngineeredCommand command )
   {
     // get the first item from the stack.
-    PrefixMappingContext prefixContext = prefixMappingStack.get().getFirst();
+    PrefixMappingContext prefixContext = state.prefixMappingStack.peek();
 
     if( !prefixContext.isContextFor( context, command ) ) {
       throw new RuntimeException("CommandUtil.undefinePrefixMapping called on wrong context and command.");
@@ -464,17 +481,14 @@ public final class Execution
     else {
 
       // set the original values into the context.
-      for( Map.Entry<String, String> entry : prefixContext.getOriginalPrefixMap().entrySet() ) {
-        context.registerNamespace( entry.getKey(), entry.getValue() );
+      if( !prefixContext.getOriginalPrefixMap().isEmpty() ) {
+        for( Map.Entry<String, String> entry : prefixContext.getOriginalPrefixMap().entrySet() ) {
+          context.registerNamespace( entry.getKey(), entry.getValue() );
+        }
       }
 
       // remove the prefix mapping from the context stack.
-      prefixMappingStack.get().removeFirst();
-
-      // if the stack is empty, then remove the stack for this thread.
-      if( prefixMappingStack.get().size() == 0 ) {
-        prefixMappingStack.remove();
-      }
+      state.releasePrefixMappingContext(state.prefixMappingStack.pop());
     }
   }  
 
@@ -486,9 +500,10 @@ public final class Execution
    */
   public static JXPathContext resumeContextPointer(JXPathContext context)
   {
-    testCurrentLocalContext(context);
-    chainContextStack.push(suspendedChainContextStack.pop());
-    return chainContextStack.peek();
+    ExecutionState state = executionStateTl.get();
+    testCurrentLocalContext(state, context);
+    state.chainContextStack.push(state.suspendedChainContextStack.pop());
+    return state.chainContextStack.peek();
   }
 
   /**
@@ -496,7 +511,7 @@ public final class Execution
    *
    * @param command the command to start an execution trace for.
    */
-  private static void startExecutionTrace( Command command )
+  private static void startExecutionTrace( ExecutionState state, Command command )
   {
     String systemId = null;
     QName qName = null;
@@ -510,66 +525,62 @@ public final class Execution
     }
 
     // add a new locator for this systemId and qName to the top of the stack.
-    executionTraceStack.push(new ExecutionTraceElement(systemId, qName, null));
+    state.executionTraceStack.push(new ExecutionTraceElement(systemId, qName, null));
   }
 
   /**
    * <p>Removes the top execution trace from the execution trace stack.</p>
    */
-  private static void stopExecutionTrace()
+  private static void stopExecutionTrace( ExecutionState state )
   {
-    executionTraceStack.pop();
+    state.executionTraceStack.pop();
   }
 
   /**
    * <p>Moves the execution trace on the top of the execution trace stack to the top of the suspended execution
    * trace stack.</p>
    */
-  private static void suspendExecutionTrace()
+  private static void suspendExecutionTrace( ExecutionState state )
   {
-    suspendedExecutionTraceStack.push(executionTraceStack.pop());
+    state.suspendedExecutionTraceStack.push(state.executionTraceStack.pop());
   }
 
   /**
    * <p>Moves the execution trace on the top of the suspended exection trace stack to the top of the execution trace stack.</p>
    */
-  private static void resumeExecutionTrace()
+  private static void resumeExecutionTrace( ExecutionState state )
   {
-    executionTraceStack.push(suspendedExecutionTraceStack.pop());
+    state.executionTraceStack.push(state.suspendedExecutionTraceStack.pop());
   }
 
   /**
    * Updates the current location of the top entry of the execution trace stack.
    */
-  private static void updateExecutionTraceLocation()
+  private static void updateExecutionTraceLocation( ExecutionState state )
   {
-    if( !executionTraceStack.isEmpty() ) {
-    Command command = ((CommandExecutionContext)executionContextStack.peek()).command;
+    if( !state.executionTraceStack.isEmpty() ) {
+    Command command = ((CommandExecutionContext)state.executionContextStack.peek()).command;
     Locator locator = null;
 
     if( command instanceof Locatable ) {
       locator = ((Locatable)command).getLocator();
     }
     else {
-      LocatorImpl locatorImpl = new LocatorImpl();
-      locatorImpl.setLineNumber(0);
-      locatorImpl.setColumnNumber(0);
-      locatorImpl.setSystemId("UNKNOWN_LOCATION");
-      locator = locatorImpl;
+      locator = UNKNOWN_LOCATOR;
     }
 
-    executionTraceStack.peek().setLocator(locator);
+    state.executionTraceStack.peek().setLocator(locator);
     }
   }
 
-  private static JXPathContext getCurrentContext()
+  private static JXPathContext getCurrentContext( ExecutionState state )
   {
     JXPathContext currentContext = null;
-    if( chainContextStack.isEmpty() ) {
-      currentContext = executionContextTl.get();
+    if( state.chainContextStack.isEmpty() ) {
+      currentContext = state.executionContext;
     }
     else {
-      currentContext = chainContextStack.peek();
+      currentContext = state.chainContextStack.peek();
     }
     
     return currentContext;
@@ -580,12 +591,14 @@ public final class Execution
    */
   public static void exceptionThrown( Command command, Exception exception )
   {
+    ExecutionState state = executionStateTl.get();
+
     // make sure that we are in the current command.
-    testCurrentCommand(command);
+    testCurrentCommand(state, command);
 
     // get the parent context.
-    ExecutionContext parentExecutionContext = executionContextStack.peek(1);
-    ExecutionContext executionContext = executionContextStack.peek();
+    ExecutionContext parentExecutionContext = state.executionContextStack.peek(1);
+    ExecutionContext executionContext = state.executionContextStack.peek();
     ExceptionContext exceptionContext = executionContext.exceptionContext;
 
     // if the exception thrown is the same exception on the current node, then move it to the parent.
@@ -595,22 +608,24 @@ public final class Execution
 
     // if the exception is different, but one of the filters claimed to handle it, then we need to create a new context with no cause.
     else if( exceptionContext == null || exceptionContext.handled ) {
-      parentExecutionContext.exceptionContext = new ExceptionContext(exception, getExecutionTrace(), null);
+      parentExecutionContext.exceptionContext = new ExceptionContext(exception, getExecutionTrace(state), null);
     }
 
     // if the exception thrown is different and it was not handled, then it must be a cause.
     else {
-      parentExecutionContext.exceptionContext = new ExceptionContext(exception, getExecutionTrace(), exceptionContext);
+      parentExecutionContext.exceptionContext = new ExceptionContext(exception, getExecutionTrace(state), exceptionContext);
     }
   }
 
   public static void exceptionHandled( Command command, Exception exception )
   {
+    ExecutionState state = executionStateTl.get();
+
     // make sure that we are in the current command.
-    testCurrentCommand(command);
+    testCurrentCommand(state, command);
 
     // mark the exception as handled.
-    executionContextStack.peek(1).exceptionContext.handled = true;
+    state.executionContextStack.peek(1).exceptionContext.handled = true;
   }
 
   /**
@@ -618,7 +633,7 @@ public final class Execution
    */
   public static JXPathContext getLocalContext()
   {
-    return chainContextStack.peek();
+    return executionStateTl.get().chainContextStack.peek();
   }
 
   /**
@@ -626,7 +641,7 @@ public final class Execution
    */
   public static JXPathContext getGlobalContext()
   {
-    return executionContextTl.get();
+    return executionStateTl.get().executionContext;
   }
 
   /**
@@ -634,10 +649,11 @@ public final class Execution
    */
   public static String getSystemId()
   {
-    if( executionTraceStack.isEmpty() ) {
+    ExecutionState state = executionStateTl.get();
+    if( state.executionTraceStack.isEmpty() ) {
       throw new IllegalStateException("The getCurrentSystemId() function must only be called during an execution.");
     }
-    return executionTraceStack.peek().getSystemId();
+    return state.executionTraceStack.peek().getSystemId();
   }
 
   /**
@@ -645,10 +661,15 @@ public final class Execution
    * xchains starting with the current chain and anding with the first chain that was called.
    */
   public static List<ExecutionTraceElement> getExecutionTrace()
+  {
+    return getExecutionTrace(executionStateTl.get());
+  }
+
+  private static List<ExecutionTraceElement> getExecutionTrace( ExecutionState state )
   {
     // we need clone the entries in this list, since the locations are changing.
     // we will reuse the list, since toList() creates a new list.
-    List<ExecutionTraceElement> executionTrace = executionTraceStack.toList();
+    List<ExecutionTraceElement> executionTrace = state.executionTraceStack.toList();
     for( int i = 0; i < executionTrace.size(); i++ ) {
       executionTrace.set(i, new ExecutionTraceElement(executionTrace.get(i)));
     }
@@ -658,12 +679,12 @@ public final class Execution
   /**
    * Tests that the context passed in is the current local context.
    */
-  private static void testCurrentLocalContext( JXPathContext context )
+  private static void testCurrentLocalContext( ExecutionState state, JXPathContext context )
   {
-    if( (chainContextStack.isEmpty() && executionContextTl.get() != context) ) {
+    if( (state.chainContextStack.isEmpty() && state.executionContext != context) ) {
       throw new IllegalStateException("The global context should have been passed to Execution.startCommandPostProcess().");
     }
-    else if (!chainContextStack.isEmpty() && chainContextStack.peek() != context ) {
+    else if (!state.chainContextStack.isEmpty() && state.chainContextStack.peek() != context ) {
       throw new IllegalStateException("The local context passed to Execution.XXXLocalContext() was not the current local context.");
     }
   }
@@ -671,9 +692,9 @@ public final class Execution
   /**
    * Tests that the command passed in is the current command.
    */
-  private static void testCurrentCommand( Command command )
+  private static void testCurrentCommand( ExecutionState state, Command command )
   {
-    if( ((CommandExecutionContext)executionContextStack.peek()).command != command ) {
+    if( ((CommandExecutionContext)state.executionContextStack.peek()).command != command ) {
       throw new IllegalStateException("The command passed to Execution.XXXCommand() was not the current command.");
     }
   }
@@ -684,7 +705,157 @@ public final class Execution
    */
   private static boolean representsLocalScopeStart( JXPathContext context )
   {
-    return context.getParentContext() != null && context.getParentContext() == executionContextTl.get();
+    return context.getParentContext() != null && context.getParentContext() == executionStateTl.get().executionContext;
+  }
+
+  private static Locator createUnknownLocator()
+  {
+    LocatorImpl locatorImpl = new LocatorImpl();
+    locatorImpl.setLineNumber(0);
+    locatorImpl.setColumnNumber(0);
+    locatorImpl.setSystemId("UNKNOWN_LOCATION");
+    return locatorImpl;
+  }
+
+  /**
+   * The execution state of a single thread.  Command execution contexts and prefix mapping contexts are recycled when they are
+   * popped, so a thread only allocates them when its stacks grow deeper than they have been before.
+   */
+  private static final class ExecutionState
+  {
+    /** The current execution level context. */
+    public JXPathContext executionContext = null;
+    /** The stack of the commands being executed. */
+    public final ArrayStack<ExecutionContext> executionContextStack = new ArrayStack<ExecutionContext>();
+    /** The stack of the commands currently suspended. */
+    public final ArrayStack<ExecutionContext> suspendedExecutionContextStack = new ArrayStack<ExecutionContext>();
+    /** The stack of execution trace elements. */
+    public final ArrayStack<ExecutionTraceElement> executionTraceStack = new ArrayStack<ExecutionTraceElement>();
+    /** The stack of suspended execution trace elements. */
+    public final ArrayStack<ExecutionTraceElement> suspendedExecutionTraceStack = new ArrayStack<ExecutionTraceElement>();
+    /** The stack of chain level contexts. */
+    public final ArrayStack<JXPathContext> chainContextStack = new ArrayStack<JXPathContext>();
+    /** The stack of suspended chain level contexts. */
+    public final ArrayStack<JXPathContext> suspendedChainContextStack = new ArrayStack<JXPathContext>();
+    /** The stack of prefixes defined for the life of a given command. */
+    public final ArrayStack<PrefixMappingContext> prefixMappingStack = new ArrayStack<PrefixMappingContext>();
+    /** Command execution contexts that can be reused. */
+    private final ArrayStack<CommandExecutionContext> freeCommandExecutionContexts = new ArrayStack<CommandExecutionContext>();
+    /** Prefix mapping contexts that can be reused. */
+    private final ArrayStack<PrefixMappingContext> freePrefixMappingContexts = new ArrayStack<PrefixMappingContext>();
+
+    public CommandExecutionContext borrowCommandExecutionContext( Command command )
+    {
+      if( freeCommandExecutionContexts.isEmpty() ) {
+        return new CommandExecutionContext(command);
+      }
+      CommandExecutionContext executionContext = freeCommandExecutionContexts.pop();
+      executionContext.command = command;
+      return executionContext;
+    }
+
+    public void releaseCommandExecutionContext( ExecutionContext executionContext )
+    {
+      // the global context is never released, since it is never popped by a command.
+      if( executionContext instanceof CommandExecutionContext ) {
+        CommandExecutionContext commandExecutionContext = (CommandExecutionContext)executionContext;
+        commandExecutionContext.command = null;
+        commandExecutionContext.exceptionContext = null;
+        freeCommandExecutionContexts.push(commandExecutionContext);
+      }
+    }
+
+    public PrefixMappingContext borrowPrefixMappingContext( JXPathContext context, EngineeredCommand command )
+    {
+      if( freePrefixMappingContexts.isEmpty() ) {
+        return new PrefixMappingContext(context, command);
+      }
+      PrefixMappingContext prefixContext = freePrefixMappingContexts.pop();
+      prefixContext.setContext(context);
+      prefixContext.setCommand(command);
+      return prefixContext;
+    }
+
+    public void releasePrefixMappingContext( PrefixMappingContext prefixContext )
+    {
+      prefixContext.setContext(null);
+      prefixContext.setCommand(null);
+      prefixContext.setCallCount(0);
+      if( !prefixContext.getOriginalPrefixMap().isEmpty() ) {
+        prefixContext.getOriginalPrefixMap().clear();
+      }
+      freePrefixMappingContexts.push(prefixContext);
+    }
+  }
+
+  /**
+   * An array backed stack that keeps its array between uses.  Popped slots are cleared, so the stack does not hold on to the
+   * objects that were on it.
+   */
+  private static final class ArrayStack<E>
+  {
+    private Object[] elements = new Object[16];
+    private int size = 0;
+
+    public void push( E element )
+    {
+      if( size == elements.length ) {
+        Object[] newElements = new Object[elements.length*2];
+        System.arraycopy(elements, 0, newElements, 0, size);
+        elements = newElements;
+      }
+      elements[size++] = element;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E pop()
+    {
+      if( size == 0 ) {
+        throw new NoSuchElementException("pop() called on an empty stack.");
+      }
+      E element = (E)elements[--size];
+      elements[size] = null;
+      return element;
+    }
+
+    public E peek()
+    {
+      return peek(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek( int depth )
+    {
+      if( depth >= size ) {
+        throw new NoSuchElementException("peek() called on element that is not in the stack.");
+      }
+      return (E)elements[size-1-depth];
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public void clear()
+    {
+      for( int i = 0; i < size; i++ ) {
+        elements[i] = null;
+      }
+      size = 0;
+    }
+
+    /**
+     * Returns a copy of the stack as a list, with the top of the stack at index 0.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> toList()
+    {
+      List<E> list = new ArrayList<E>(size);
+      for( int i = size-1; i >= 0; i-- ) {
+        list.add((E)elements[i]);
+      }
+      return list;
+    }
   }
 
   /**
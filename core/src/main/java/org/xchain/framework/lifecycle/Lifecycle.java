@@ -36,12 +36,15 @@ import static org.xchain.framework.lifecycle.XmlFactoryLifecycle.removeSaxParser
 import static org.xchain.framework.lifecycle.XmlFactoryLifecycle.removeTransformerFactoryFactory;
 import static org.xchain.framework.lifecycle.XmlFactoryLifecycle.removeDocumentBuilderFactoryFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
@@ -56,12 +59,16 @@ import org.apache.commons.beanutils.Converter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.xchain.framework.factory.CatalogPreloader;
+import org.xchain.framework.jxpath.MethodLookupUtils;
 import org.xchain.framework.jxpath.Scope;
 import org.xchain.framework.net.UrlSourceUtil;
 import org.xchain.framework.net.protocol.resource.ContextClassLoaderUrlTranslationStrategy;
 import org.xchain.framework.net.protocol.resource.ResourceUrlConnection;
 import org.xchain.framework.net.strategy.BaseUrlUrlTranslationStrategy;
 import org.xchain.framework.net.strategy.CompositeUrlTranslationStrategy;
+import org.xchain.framework.strategy.CacheMonitor;
+import org.xchain.framework.util.BytecodeCache;
 import org.xchain.framework.util.QNameConverter;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -122,9 +129,13 @@ public final class Lifecycle
         context.setClassLoader(new LifecycleClassLoader(Thread.currentThread().getContextClassLoader()));
 
         // scan for the lifecycle listeners.
+        long start = System.currentTimeMillis();
         startLifecycleSteps();
         // Clear the scanner cache now that all the lifecycles are done using it.
         ScannerLifecycle.getInstance().clearCache();
+        if( log.isInfoEnabled() ) {
+          log.info("Started the lifecycle in "+(System.currentTimeMillis()-start)+"ms.");
+        }
       }
       catch( LifecycleException le ) {
         context = null;
@@ -225,9 +236,10 @@ public final class Lifecycle
         if( log.isInfoEnabled() ) {
           log.info("Starting Lifecycle Step '"+lifecycleStep.getQName()+"'.");
         }
+        long stepStart = System.currentTimeMillis();
         lifecycleStep.startLifecycle(context, Lifecycle.configDocumentContext);
         if( log.isInfoEnabled() ) {
-          log.info("Finished Lifecycle Step '"+lifecycleStep.getQName()+"'.");
+          log.info("Finished Lifecycle Step '"+lifecycleStep.getQName()+"' in "+(System.currentTimeMillis()-stepStart)+"ms.");
         }
       }
     }
@@ -312,10 +324,22 @@ public final class Lifecycle
     ConfigContext configContext = Lifecycle.getLifecycleContext().getConfigContext();
     Boolean monitor = (Boolean)configDocContext.getValue("/config:config/config:monitor", Boolean.class);
     if( monitor != null ) configContext.setMonitored(monitor);
+    Long monitorInterval = (Long)configDocContext.getValue("/config:config/config:monitor-interval", Long.class);
+    if( monitorInterval != null ) configContext.setMonitorInterval(monitorInterval);
     Integer catalogCacheSize = (Integer)configDocContext.getValue("/config:config/config:catalog-cache-size", Integer.class);
     if( catalogCacheSize != null ) configContext.setCatalogCacheSize(catalogCacheSize);
     Integer templateCacheSize = (Integer)configDocContext.getValue("/config:config/config:templates-cache-size", Integer.class);
     if( templateCacheSize != null ) configContext.setTemplatesCacheSize(templateCacheSize);
+    Integer templateCompilerThreads = (Integer)configDocContext.getValue("/config:config/config:template-compiler-threads", Integer.class);
+    if( templateCompilerThreads != null ) configContext.setTemplateCompilerThreads(templateCompilerThreads);
+    String templateCompiler = (String)configDocContext.getValue("/config:config/config:template-compiler", String.class);
+    if( templateCompiler != null && !"".equals(templateCompiler.trim()) ) configContext.setTemplateCompiler(templateCompiler.trim());
+    String bytecodeCacheDirectory = (String)configDocContext.getValue("/config:config/config:bytecode-cache-directory", String.class);
+    if( bytecodeCacheDirectory != null && !"".equals(bytecodeCacheDirectory.trim()) ) configContext.setBytecodeCacheDirectory(new File(bytecodeCacheDirectory.trim()));
+    Integer catalogPreloadThreads = (Integer)configDocContext.getValue("/config:config/config:catalog-preload-threads", Integer.class);
+    if( catalogPreloadThreads != null ) configContext.setCatalogPreloadThreads(catalogPreloadThreads);
+    addStrings(configDocContext, "/config:config/config:preload-catalog/@config:system-id", configContext.getPreloadCatalogList());
+    addStrings(configDocContext, "/config:config/config:preload-catalog/@config:pattern", configContext.getPreloadCatalogPatternList());
     
     addUrls(configDocContext, "/config:config/config:resource-base-url/@config:system-id", configContext.getResourceUrlList());
     addUrls(configDocContext, "/config:config/config:source-base-url/@config:system-id", configContext.getSourceUrlList());
@@ -353,6 +377,67 @@ public final class Lifecycle
     }
   }
   
+  /**
+   * Lifecycle step that starts checking cached catalogs and templates for changes in the background.  The monitor is only started if
+   * monitoring is enabled and a monitor interval is configured.
+   *
+   * @see org.xchain.framework.strategy.CacheMonitor
+   */
+  @StartStep(localName="cache-monitor", after={"config"})
+  public static void startCacheMonitor(LifecycleContext context)
+  {
+    ConfigContext configContext = context.getConfigContext();
+    if( configContext.isMonitored() && configContext.getMonitorInterval() > 0 ) {
+      CacheMonitor.start(configContext.getMonitorInterval(), Thread.currentThread().getContextClassLoader());
+    }
+  }
+
+  /**
+   * Stops the cache monitor, if it was started.
+   */
+  @StopStep(localName="cache-monitor")
+  public static void stopCacheMonitor(LifecycleContext context)
+  {
+    CacheMonitor.stop();
+  }
+
+  /**
+   * Lifecycle step that opens the cache of generated classes, if a bytecode cache directory is configured.  When the cache is open,
+   * engineered commands and compiled templates are read from the cache instead of being generated again.
+   *
+   * @see org.xchain.framework.util.BytecodeCache
+   */
+  @StartStep(localName="bytecode-cache", after={"config"}, before={"command-engineering"})
+  public static void startBytecodeCache(LifecycleContext context)
+  {
+    File directory = context.getConfigContext().getBytecodeCacheDirectory();
+    if( directory != null ) {
+      try {
+        context.setBytecodeCache(new BytecodeCache(directory, context.getClassLoader()));
+      }
+      catch( IOException ioe ) {
+        if( log.isWarnEnabled() ) {
+          log.warn("Generated classes will not be cached, the bytecode cache could not be opened.", ioe);
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes the cache of generated classes.
+   */
+  @StopStep(localName="bytecode-cache")
+  public static void stopBytecodeCache(LifecycleContext context)
+  {
+    BytecodeCache bytecodeCache = context.getBytecodeCache();
+    if( bytecodeCache != null ) {
+      if( log.isInfoEnabled() ) {
+        log.info("Bytecode cache hits: "+bytecodeCache.getHitCount()+", misses: "+bytecodeCache.getMissCount()+".");
+      }
+      context.setBytecodeCache(null);
+    }
+  }
+
   /**
    * The lifecycle step that engineers command classes.  This step creates a ClassScanner for the context's class loader and
    * calls its scan method.
@@ -367,6 +452,71 @@ public final class Lifecycle
     classScanner.scan();
   }
   
+  /**
+   * Lifecycle step that loads the configured catalogs, so that the first request for each catalog does not pay for loading it.  The
+   * catalogs are listed by system id or found by pattern and are loaded concurrently.  A catalog that fails to load is reported, but does
+   * not stop the lifecycle from starting.
+   *
+   * @see org.xchain.framework.factory.CatalogPreloader
+   */
+  @StartStep(localName="catalog-preload", after={"config", "command-engineering", "bytecode-cache", "cache-monitor", "servlet"})
+  public static void startCatalogPreload(LifecycleContext context)
+  {
+    ConfigContext configContext = context.getConfigContext();
+    if( configContext.getPreloadCatalogList().isEmpty() && configContext.getPreloadCatalogPatternList().isEmpty() ) {
+      return;
+    }
+
+    CatalogPreloader preloader = new CatalogPreloader(context.getClassLoader());
+    for( String systemId : configContext.getPreloadCatalogList() ) {
+      preloader.addSystemId(systemId);
+    }
+    for( String pattern : configContext.getPreloadCatalogPatternList() ) {
+      try {
+        preloader.addPattern(Pattern.compile(pattern));
+      }
+      catch( PatternSyntaxException pse ) {
+        if( log.isWarnEnabled() ) {
+          log.warn("Ignoring the catalog preload pattern '"+pattern+"', it is not a valid regular expression.", pse);
+        }
+      }
+    }
+
+    long start = System.currentTimeMillis();
+    List<CatalogPreloader.Result> resultList = null;
+    try {
+      resultList = preloader.preload(configContext.getCatalogPreloadThreads());
+    }
+    catch( ScanException se ) {
+      if( log.isWarnEnabled() ) {
+        log.warn("Catalogs were not preloaded, due to an exception.", se);
+      }
+      return;
+    }
+
+    int failureCount = 0;
+    for( CatalogPreloader.Result result : resultList ) {
+      if( result.isLoaded() ) {
+        if( log.isInfoEnabled() ) {
+          log.info("Preloaded catalog '"+result.getSystemId()+"' in "+result.getLoadTime()+"ms.");
+        }
+      }
+      else {
+        failureCount++;
+        if( log.isWarnEnabled() ) {
+          log.warn("Could not preload catalog '"+result.getSystemId()+"' after "+result.getLoadTime()+"ms.", result.getFailure());
+        }
+      }
+    }
+    if( log.isInfoEnabled() ) {
+      log.info("Preloaded "+(resultList.size()-failureCount)+" of "+resultList.size()+" catalogs in "+(System.currentTimeMillis()-start)+
+        "ms using "+configContext.getCatalogPreloadThreads()+" threads.");
+    }
+    if( resultList.size() > configContext.getCatalogCacheSize() && log.isWarnEnabled() ) {
+      log.warn("More catalogs were preloaded than the catalog cache holds, some of the preloaded catalogs will be loaded again.");
+    }
+  }
+
   /**
    * Calls XmlFactoryLifecycle.startLifecycle( ... ).
    * 
@@ -516,6 +666,9 @@ public final class Lifecycle
       ConvertUtils.deregister(QName.class);
     }
     oldQNameConverter = null;
+
+    // the conversions decide which functions match, so forget the functions that were found with them.
+    MethodLookupUtils.clearCache();
   }
   
   
@@ -572,6 +725,17 @@ public final class Lifecycle
     }
   }
   
+  private static void addStrings(ConfigDocumentContext configDocContext, String xpath, List<String> stringList)
+  {
+    Iterator<?> stringIterator = configDocContext.iterate(xpath);
+    while( stringIterator.hasNext() ) {
+      String string = stringIterator.next().toString().trim();
+      if( !"".equals(string) ) {
+        stringList.add(string);
+      }
+    }
+  }
+
   private static boolean factoryClassExists( QName factoryName, String className )
   {
     boolean result = false;
@@ -17,7 +17,11 @@ package org.xchain.framework.lifecycle;
 
 import java.util.HashMap;
 import java.util.Map;
+
+import javax.xml.namespace.QName;
+
 import org.apache.commons.jxpath.Functions;
+import org.xchain.framework.util.BytecodeCache;
 
 /**
  * The lifecycle context for the xchain framework.  This class holds the class loader that is used to load commands,
@@ -33,6 +37,10 @@ public class LifecycleContext
   protected ConfigContext configContext = new ConfigContext();
   protected Map<String, NamespaceContext> namespaceContextMap = new HashMap<String, NamespaceContext>();
   protected Functions functionLibrary = new LifecycleFunctionLibrary(this); 
+  /** The cache of generated classes, or null if generated classes are not cached. */
+  protected BytecodeCache bytecodeCache = null;
+  /** The components of every namespace, by qualified name.  This index is built the first time it is needed after the components change. */
+  private volatile Map<QName, ComponentAnalysis> componentAnalysisMap = null;
 
   /**
    * Sets the class loader that engineered commands are loaded into. 
@@ -61,4 +69,39 @@ public class LifecycleContext
 
   public Functions getFunctionLibrary() { return this.functionLibrary; }
 
+  /**
+   * Returns the cache of generated classes, or null if generated classes are not cached.
+   */
+  public BytecodeCache getBytecodeCache() { return this.bytecodeCache; }
+  void setBytecodeCache( BytecodeCache bytecodeCache ) { this.bytecodeCache = bytecodeCache; }
+
+  /**
+   * Returns the analysis of the component with the given name, or null if there is no component with the name.
+   *
+   * @param componentName the qualified name of the component.
+   * @return the analysis of the component, or null if there is no component with the name.
+   */
+  public ComponentAnalysis getComponentAnalysis( QName componentName )
+  {
+    Map<QName, ComponentAnalysis> analysisMap = componentAnalysisMap;
+    if( analysisMap == null ) {
+      analysisMap = new HashMap<QName, ComponentAnalysis>();
+      for( NamespaceContext namespaceContext : namespaceContextMap.values() ) {
+        for( Map.Entry<String, ComponentAnalysis> entry : namespaceContext.getComponentMap().entrySet() ) {
+          analysisMap.put(new QName(namespaceContext.getNamespaceUri(), entry.getKey()), entry.getValue());
+        }
+      }
+      componentAnalysisMap = analysisMap;
+    }
+    return analysisMap.get(componentName);
+  }
+
+  /**
+   * Discards the component index, so that it is rebuilt with the current components the next time it is needed.
+   */
+  void resetComponentAnalysisMap()
+  {
+    componentAnalysisMap = null;
+  }
+
 }
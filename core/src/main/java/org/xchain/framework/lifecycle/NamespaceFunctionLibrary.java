@@ -29,7 +29,7 @@ import org.apache.commons.jxpath.Function;
 import org.apache.commons.jxpath.Functions;
 import org.apache.commons.jxpath.functions.MethodFunction;
 import org.apache.commons.jxpath.functions.ConstructorFunction;
-import org.apache.commons.jxpath.util.MethodLookupUtils;
+import org.xchain.framework.jxpath.MethodLookupUtils;
 import org.apache.commons.jxpath.ExpressionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -117,7 +117,7 @@ public class NamespaceFunctionLibrary
     Constructor constructor;
     if( constructorClassSet != null ) {
       for( Class constructorClass : constructorClassSet ) {
-        constructor = MethodLookupUtils.lookupConstructor( constructorClass, parameters );
+        constructor = MethodLookupUtils.lookupJXPathConstructor( constructorClass, parameters );
         if( constructor != null ) {
           return new ConstructorFunction(constructor);
         }
@@ -150,7 +150,7 @@ public class NamespaceFunctionLibrary
             for( int i = 0; i < parameters.length; i++ ) {
               instanceParameters[i+1] = parameters[i];
             }
-          method = MethodLookupUtils.lookupMethod(methodInfo.getMethodClass(), methodInfo.getMethodName(), instanceParameters);
+          method = MethodLookupUtils.lookupJXPathMethod(methodInfo.getMethodClass(), methodInfo.getMethodName(), instanceParameters);
           if (method != null) {
             return new SingletonMethodFunction(method, singleton);
           }
@@ -162,7 +162,7 @@ public class NamespaceFunctionLibrary
           }
         }
         else {
-          method = MethodLookupUtils.lookupMethod(methodInfo.getMethodClass(), methodInfo.getMethodName(), instanceParameters);
+          method = MethodLookupUtils.lookupJXPathMethod(methodInfo.getMethodClass(), methodInfo.getMethodName(), instanceParameters);
           if (method != null) {
             return new MethodFunction(method);
           }
@@ -17,6 +17,7 @@ package org.xchain.framework.lifecycle;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
@@ -106,6 +107,12 @@ public class XmlFactoryLifecycle
   private static Map<QName, Factory<SAXTransformerFactory>> transformerFactoryMap = new HashMap<QName, Factory<SAXTransformerFactory>>();
   /** We should provide a factory for validators. */
 
+  /**
+   * The pool of sax parsers for the current thread.  This is replaced when the lifecycle starts or stops, so that threads drop parsers
+   * created by factories from an earlier run and the pools of other threads stop referencing this class loader.
+   */
+  private static volatile ThreadLocal<SaxParserPool> saxParserPool = new ThreadLocal<SaxParserPool>();
+
   public static boolean isStarted()
   {
     return started;
@@ -116,6 +123,7 @@ public class XmlFactoryLifecycle
   {
     synchronized( XmlFactoryLifecycle.class ) {
       started = true;
+      resetSaxParserPool();
 
       // log all of the factories that have been added to this lifecycle.
       if( log.isInfoEnabled() ) {
@@ -146,7 +154,20 @@ public class XmlFactoryLifecycle
 
   public static void stopLifecycle( LifecycleContext context )
   {
-    started = false;
+    synchronized( XmlFactoryLifecycle.class ) {
+      started = false;
+      resetSaxParserPool();
+    }
+  }
+
+  /**
+   * Drops the sax parser pool of the current thread and replaces the thread local that holds the pools, so that the pools of other
+   * threads become unreachable.
+   */
+  private static void resetSaxParserPool()
+  {
+    saxParserPool.remove();
+    saxParserPool = new ThreadLocal<SaxParserPool>();
   }
 
   /**
@@ -228,6 +249,106 @@ public class XmlFactoryLifecycle
     return newSaxParser( name ).getXMLReader();
   }
 
+  public static XMLReader borrowXmlReader()
+    throws ParserConfigurationException, SAXException
+  {
+    return borrowXmlReader(DEFAULT_SAX_PARSER_FACTORY_NAME);
+  }
+
+  /**
+   * Returns an XMLReader for the specified SAXParserFactory factory name from the current thread's pool.  The reader must be passed
+   * to releaseXmlReader( XMLReader ) when the parse is done, so that it can be reset and used again.  If the thread's pooled reader
+   * is already in use, then a new reader is created.
+   */
+  public static XMLReader borrowXmlReader( QName name )
+    throws ParserConfigurationException, SAXException
+  {
+    return currentSaxParserPool().borrow( name ).getXMLReader();
+  }
+
+  /**
+   * Returns a reader from borrowXmlReader( QName ) to the current thread's pool.  Readers that were not borrowed from the pool, or
+   * whose parsers cannot be reset, are dropped.
+   */
+  public static void releaseXmlReader( XMLReader reader )
+  {
+    if( reader != null ) {
+      currentSaxParserPool().release( reader );
+    }
+  }
+
+  /**
+   * Returns the sax parser pool for the current thread, creating it if needed.
+   */
+  private static SaxParserPool currentSaxParserPool()
+  {
+    ThreadLocal<SaxParserPool> threadLocal = saxParserPool;
+    SaxParserPool pool = threadLocal.get();
+    if( pool == null ) {
+      pool = new SaxParserPool();
+      threadLocal.set( pool );
+    }
+    return pool;
+  }
+
+  /**
+   * A per thread pool of sax parsers.  The pool keeps one SAXParserFactory and one idle SAXParser for each factory name.
+   */
+  private static class SaxParserPool
+  {
+    private final Map<QName, SAXParserFactory> factoryMap = new HashMap<QName, SAXParserFactory>();
+    private final Map<QName, SAXParser> idleParserMap = new HashMap<QName, SAXParser>();
+    private final Map<XMLReader, QName> borrowedNameMap = new IdentityHashMap<XMLReader, QName>();
+    private final Map<XMLReader, SAXParser> borrowedParserMap = new IdentityHashMap<XMLReader, SAXParser>();
+
+    public SAXParser borrow( QName name )
+      throws ParserConfigurationException, SAXException
+    {
+      SAXParser parser = idleParserMap.remove( name );
+      if( parser == null ) {
+        SAXParserFactory factory = factoryMap.get( name );
+        if( factory == null ) {
+          factory = newSaxParserFactory( name );
+          factoryMap.put( name, factory );
+        }
+        parser = factory.newSAXParser();
+      }
+      borrowedNameMap.put( parser.getXMLReader(), name );
+      borrowedParserMap.put( parser.getXMLReader(), parser );
+      return parser;
+    }
+
+    public void release( XMLReader reader )
+    {
+      QName name = borrowedNameMap.remove( reader );
+      SAXParser parser = borrowedParserMap.remove( reader );
+      if( parser == null || idleParserMap.containsKey( name ) ) {
+        return;
+      }
+      try {
+        // restore the features, properties and handlers of the parser to the state it had when the factory created it.
+        parser.reset();
+        parser.getXMLReader().setContentHandler( null );
+        parser.getXMLReader().setDTDHandler( null );
+        parser.getXMLReader().setErrorHandler( null );
+        parser.getXMLReader().setEntityResolver( null );
+        try {
+          parser.getXMLReader().setProperty( "http://xml.org/sax/properties/lexical-handler", null );
+        }
+        catch( SAXException se ) {
+          // the reader does not support lexical handlers.
+        }
+        idleParserMap.put( name, parser );
+      }
+      catch( Exception e ) {
+        // this parser cannot be reset, so it will not be reused.
+        if( log.isDebugEnabled() ) {
+          log.debug("Could not reset sax parser for factory '"+name+"', the parser will not be reused.", e);
+        }
+      }
+    }
+  }
+
   public static void putTransformerFactoryFactory( QName name, Factory<SAXTransformerFactory> factory )
   {
     synchronized( XmlFactoryLifecycle.class ) {
@@ -35,9 +35,13 @@ import java.util.LinkedList;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.Properties;
 import java.util.Set;
 
 import javax.xml.namespace.QName;
+import javax.xml.transform.Result;
+
+import org.apache.xml.serializer.SerializationHandler;
 
 import org.xchain.framework.sax.util.NamespaceContext;
 
@@ -78,6 +82,16 @@ public abstract class CommandHandler
 {
   public static Logger log = LoggerFactory.getLogger(CommandHandler.class);
 
+  /** The maximum number of released elements that each thread keeps for reuse. */
+  private static final int ELEMENT_POOL_SIZE = 64;
+
+  /** The released elements of each thread.  Elements are released when they end and are reused by later start element events. */
+  private static final ThreadLocal<ArrayList<Element>> elementPoolTL = new ThreadLocal<ArrayList<Element>>() {
+    protected ArrayList<Element> initialValue() {
+      return new ArrayList<Element>(ELEMENT_POOL_SIZE);
+    }
+  };
+
   /** The buffer used to redirect character events. */
   protected StringBuilder redirectBuilder = new StringBuilder();
 
@@ -102,6 +116,21 @@ public abstract class CommandHandler
   /** The map of prefix mappings for the next startElement event. */
   protected HashMap<String, String> nextPrefixMapping = new HashMap<String, String>();
 
+  /** The prefix mappings required by the next element, reused for each element. */
+  private Map<String, String> requiredPrefixMappings = new HashMap<String, String>();
+
+  /** The attributes of the next element, reused for each element. */
+  private AttributesImpl nextAttributes = new AttributesImpl();
+
+  /** The content handler that the static markup output format key was computed for. */
+  private ContentHandler staticMarkupHandler = null;
+
+  /** The output format of the static markup handler, or null if it is not a serializer. */
+  private Properties staticMarkupFormat = null;
+
+  /** The output format key of the static markup handler, or null if static markup cannot be written to it as characters. */
+  private String staticMarkupKey = null;
+
   public abstract ContentHandler contentHandler();
   public abstract DTDHandler dtdHandler();
   public abstract LexicalHandler lexicalHandler();
@@ -221,7 +250,7 @@ public abstract class CommandHandler
         inputNamespaceContext.startPrefixMapping(prefixMapping.getKey(), prefixMapping.getValue());
       }
 
-      nextElement = new Element(namespace, localName, qName);
+      nextElement = acquireElement(namespace, localName, qName);
 
       // copy all of the prefix mappings that were found for this element.
       nextElement.getPrefixMappings().putAll(nextPrefixMapping);
@@ -259,6 +288,34 @@ public abstract class CommandHandler
         contentHandler().endPrefixMapping(prefix);
         outputNamespaceContext.endPrefixMapping(prefix);
       }
+
+      releaseElement(element);
+    }
+  }
+
+  /**
+   * Returns an element from the pool of the current thread, or a new element if the pool is empty.
+   */
+  private static Element acquireElement( String namespace, String localName, String qName )
+  {
+    ArrayList<Element> elementPool = elementPoolTL.get();
+    if( elementPool.isEmpty() ) {
+      return new Element(namespace, localName, qName);
+    }
+    Element element = elementPool.remove(elementPool.size()-1);
+    element.reset(namespace, localName, qName);
+    return element;
+  }
+
+  /**
+   * Returns an element that has ended to the pool of the current thread.
+   */
+  private static void releaseElement( Element element )
+  {
+    ArrayList<Element> elementPool = elementPoolTL.get();
+    if( elementPool.size() < ELEMENT_POOL_SIZE ) {
+      element.reset(null, null, null);
+      elementPool.add(element);
     }
   }
 
@@ -318,6 +375,59 @@ public abstract class CommandHandler
     endAttribute( inputNamespaceContext.lookUpNamespaceUri(prefix), localName, qName );
   }
 
+  /**
+   * Sends a fully static block of markup to the content handler.  When the content handler is a serializer and all of the prefixes
+   * used by the markup are already mapped in the output document, the markup is written as pre-serialized characters with output escaping
+   * disabled.  Otherwise, the events of the markup are sent through this handler.
+   */
+  public void staticMarkup( StaticMarkup markup )
+    throws SAXException
+  {
+    if( !redirectCharacters() ) {
+      // fire any events that are waiting.
+      fireOutstandingEvents();
+
+      char[] serialized = serializedStaticMarkup(markup);
+      if( serialized != null ) {
+        contentHandler().processingInstruction(Result.PI_DISABLE_OUTPUT_ESCAPING, "");
+        contentHandler().characters(serialized, 0, serialized.length);
+        contentHandler().processingInstruction(Result.PI_ENABLE_OUTPUT_ESCAPING, "");
+        return;
+      }
+    }
+
+    markup.replay(this);
+  }
+
+  /**
+   * Returns the markup serialized for the content handler, or null if the markup cannot be written to the content handler as characters.
+   */
+  private char[] serializedStaticMarkup( StaticMarkup markup )
+    throws SAXException
+  {
+    ContentHandler handler = contentHandler();
+
+    // compute the output format key once for each content handler.
+    if( handler != staticMarkupHandler ) {
+      staticMarkupHandler = handler;
+      staticMarkupFormat = handler instanceof SerializationHandler ? ((SerializationHandler)handler).getOutputFormat() : null;
+      staticMarkupKey = staticMarkupFormat != null ? StaticMarkup.outputFormatKey(staticMarkupFormat) : null;
+    }
+
+    if( staticMarkupKey == null || !nextPrefixMapping.isEmpty() ) {
+      return null;
+    }
+
+    // the markup does not declare any namespaces, so all of its prefixes must already be mapped.
+    for( Map.Entry<String, String> prefixMapping : markup.getPrefixMapping().entrySet() ) {
+      if( !outputNamespaceContext.contains(prefixMapping.getKey(), prefixMapping.getValue()) ) {
+        return null;
+      }
+    }
+
+    return markup.getSerializedMarkup(staticMarkupKey, staticMarkupFormat);
+  }
+
   /**
    * Starts a new context for removing result prefixes. 
    */
@@ -543,11 +653,12 @@ public abstract class CommandHandler
     if( nextElement != null ) {
 
       // the set of all of the namespaces that are required by this element.
-      Map<String, String> requiredPrefixMappings = new HashMap<String, String>();
+      requiredPrefixMappings.clear();
       requiredPrefixMappings.put(parsePrefix(nextElement.getQName()), nextElement.getNamespace());
 
       // create the set of attributes for this element.
-      AttributesImpl attributes = new AttributesImpl();
+      AttributesImpl attributes = nextAttributes;
+      attributes.clear();
       Iterator<Attribute> attributeIterator = nextElement.getAttributeMap().values().iterator();
       while( attributeIterator.hasNext() ) {
         Attribute attribute = (Attribute)attributeIterator.next();
@@ -654,6 +765,13 @@ public abstract class CommandHandler
       this.namespace = namespace;
       this.localName = localName;
     }
+
+    protected void reset( String namespace, String localName, String qName )
+    {
+      this.qName = qName;
+      this.namespace = namespace;
+      this.localName = localName;
+    }
  
     public String getQName() { return this.qName; }
     public String getNamespace() { return this.namespace; }
@@ -665,15 +783,36 @@ public abstract class CommandHandler
   {
     protected Map<String, String> prefixMapping = new HashMap<String, String>();
     protected Map<QName, Attribute> attributeMap = new LinkedHashMap<QName, Attribute>();
+    /** Attributes that were removed when this element was reset, reused by addAttribute. */
+    protected List<Attribute> spareAttributeList = new ArrayList<Attribute>();
 
     public Element( String namespace, String localName, String qName ) {
       super(namespace, localName, qName);
     }
 
+    /**
+     * Resets this element so that it can be reused.  The prefix mappings and attributes are cleared, but the maps keep their capacity.
+     */
+    protected void reset( String namespace, String localName, String qName )
+    {
+      super.reset(namespace, localName, qName);
+      prefixMapping.clear();
+      spareAttributeList.addAll(attributeMap.values());
+      attributeMap.clear();
+    }
+
     public Map<QName, Attribute> getAttributeMap() { return this.attributeMap; }
     public void addAttribute( String namespace, String localName, String qName, String value )
     {
-      attributeMap.put(new QName(namespace, localName), new Attribute(namespace, localName, qName, value));
+      Attribute attribute = null;
+      if( spareAttributeList.isEmpty() ) {
+        attribute = new Attribute(namespace, localName, qName, value);
+      }
+      else {
+        attribute = spareAttributeList.remove(spareAttributeList.size()-1);
+        attribute.reset(namespace, localName, qName, value);
+      }
+      attributeMap.put(new QName(namespace, localName), attribute);
     }
     public Map<String, String> getPrefixMappings() { return this.prefixMapping; }
   }
@@ -689,6 +828,12 @@ public abstract class CommandHandler
       this.value = value;
     }
 
+    protected void reset( String namespace, String localName, String qName, String value )
+    {
+      super.reset(namespace, localName, qName);
+      this.value = value;
+    }
+
     public String getValue() { return this.value; }
   }
 }
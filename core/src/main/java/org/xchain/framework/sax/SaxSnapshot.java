@@ -0,0 +1,553 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * A compact binary form of the SAX events produced by parsing a document.  A Recorder is placed between an XMLReader and the rest of
+ * a filter chain and records the events as they pass through it.  A Replayer takes the place of the XMLReader in a later parse and
+ * sends the recorded events, with their locations, to the filter chain without parsing the document again.
+ *
+ * Strings are written once and then referenced by their index in a string table, so the element names, namespace uris and attribute
+ * names that repeat through a document only cost a few bytes after their first use.  Adjacent character events are combined.
+ */
+public final class SaxSnapshot
+{
+  /** The version of the snapshot format.  This must be changed when the format changes. */
+  public static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x78637373;
+
+  private static final byte START_DOCUMENT = 1;
+  private static final byte END_DOCUMENT = 2;
+  private static final byte START_PREFIX_MAPPING = 3;
+  private static final byte END_PREFIX_MAPPING = 4;
+  private static final byte START_ELEMENT = 5;
+  private static final byte END_ELEMENT = 6;
+  private static final byte CHARACTERS = 7;
+  private static final byte IGNORABLE_WHITESPACE = 8;
+  private static final byte PROCESSING_INSTRUCTION = 9;
+  private static final byte SKIPPED_ENTITY = 10;
+  private static final byte NOTATION_DECL = 11;
+  private static final byte UNPARSED_ENTITY_DECL = 12;
+  private static final byte END_OF_SNAPSHOT = 0;
+
+  private SaxSnapshot() { }
+
+  /**
+   * Thrown when a snapshot cannot be read.  Nothing has been sent to the content handler when this is thrown for a snapshot with the
+   * wrong magic number or version, but a truncated snapshot may be detected part way through the events.
+   */
+  public static class FormatException
+    extends SAXException
+  {
+    public FormatException( String message )
+    {
+      super(message);
+    }
+  }
+
+  /**
+   * Records the events that pass through it.  The snapshot is only complete after the end document event has passed.  If the parser
+   * resolved an external entity, such as an external dtd, the document depends on more than its own content and isSnapshotComplete()
+   * returns false.
+   */
+  public static class Recorder
+    extends XMLFilterImpl
+  {
+    private ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+    private Map<String, Integer> stringTable = new HashMap<String, Integer>();
+    private StringBuilder characters = new StringBuilder();
+    private byte charactersType = 0;
+    private int charactersLine = -1;
+    private int charactersColumn = -1;
+    private Locator locator = null;
+    private boolean externalEntityResolved = false;
+    private boolean ended = false;
+
+    public Recorder()
+    {
+      writeFixedInt(MAGIC);
+      writeFixedInt(FORMAT_VERSION);
+    }
+
+    /**
+     * Returns true if a whole document passed through this recorder and the document did not depend on external entities.
+     */
+    public boolean isSnapshotComplete()
+    {
+      return ended && !externalEntityResolved;
+    }
+
+    /**
+     * Returns the snapshot.
+     *
+     * @throws IllegalStateException if the snapshot is not complete.
+     */
+    public byte[] toByteArray()
+    {
+      if( !isSnapshotComplete() ) {
+        throw new IllegalStateException("The snapshot is not complete.");
+      }
+      return bytes.toByteArray();
+    }
+
+    public void setDocumentLocator( Locator locator )
+    {
+      this.locator = locator;
+      super.setDocumentLocator(locator);
+    }
+
+    public InputSource resolveEntity( String publicId, String systemId )
+      throws SAXException, IOException
+    {
+      externalEntityResolved = true;
+      return super.resolveEntity(publicId, systemId);
+    }
+
+    public void startDocument()
+      throws SAXException
+    {
+      writeEvent(START_DOCUMENT);
+      super.startDocument();
+    }
+
+    public void endDocument()
+      throws SAXException
+    {
+      writeEvent(END_DOCUMENT);
+      bytes.write(END_OF_SNAPSHOT);
+      ended = true;
+      super.endDocument();
+    }
+
+    public void startPrefixMapping( String prefix, String uri )
+      throws SAXException
+    {
+      writeEvent(START_PREFIX_MAPPING);
+      writeString(prefix);
+      writeString(uri);
+      super.startPrefixMapping(prefix, uri);
+    }
+
+    public void endPrefixMapping( String prefix )
+      throws SAXException
+    {
+      writeEvent(END_PREFIX_MAPPING);
+      writeString(prefix);
+      super.endPrefixMapping(prefix);
+    }
+
+    public void startElement( String uri, String localName, String qName, Attributes attributes )
+      throws SAXException
+    {
+      writeEvent(START_ELEMENT);
+      writeString(uri);
+      writeString(localName);
+      writeString(qName);
+      writeInt(attributes.getLength());
+      for( int i = 0; i < attributes.getLength(); i++ ) {
+        writeString(attributes.getURI(i));
+        writeString(attributes.getLocalName(i));
+        writeString(attributes.getQName(i));
+        writeString(attributes.getType(i));
+        writeText(attributes.getValue(i));
+      }
+      super.startElement(uri, localName, qName, attributes);
+    }
+
+    public void endElement( String uri, String localName, String qName )
+      throws SAXException
+    {
+      writeEvent(END_ELEMENT);
+      writeString(uri);
+      writeString(localName);
+      writeString(qName);
+      super.endElement(uri, localName, qName);
+    }
+
+    public void characters( char[] ch, int start, int length )
+      throws SAXException
+    {
+      appendCharacters(CHARACTERS, ch, start, length);
+      super.characters(ch, start, length);
+    }
+
+    public void ignorableWhitespace( char[] ch, int start, int length )
+      throws SAXException
+    {
+      appendCharacters(IGNORABLE_WHITESPACE, ch, start, length);
+      super.ignorableWhitespace(ch, start, length);
+    }
+
+    public void processingInstruction( String target, String data )
+      throws SAXException
+    {
+      writeEvent(PROCESSING_INSTRUCTION);
+      writeString(target);
+      writeText(data);
+      super.processingInstruction(target, data);
+    }
+
+    public void skippedEntity( String name )
+      throws SAXException
+    {
+      writeEvent(SKIPPED_ENTITY);
+      writeString(name);
+      super.skippedEntity(name);
+    }
+
+    public void notationDecl( String name, String publicId, String systemId )
+      throws SAXException
+    {
+      writeEvent(NOTATION_DECL);
+      writeString(name);
+      writeString(publicId);
+      writeString(systemId);
+      super.notationDecl(name, publicId, systemId);
+    }
+
+    public void unparsedEntityDecl( String name, String publicId, String systemId, String notationName )
+      throws SAXException
+    {
+      writeEvent(UNPARSED_ENTITY_DECL);
+      writeString(name);
+      writeString(publicId);
+      writeString(systemId);
+      writeString(notationName);
+      super.unparsedEntityDecl(name, publicId, systemId, notationName);
+    }
+
+    /**
+     * Adds characters to the pending character event, writing the pending event first if it is of a different type.
+     */
+    private void appendCharacters( byte type, char[] ch, int start, int length )
+    {
+      if( charactersType != type ) {
+        flushCharacters();
+        charactersType = type;
+        charactersLine = locator != null ? locator.getLineNumber() : -1;
+        charactersColumn = locator != null ? locator.getColumnNumber() : -1;
+      }
+      characters.append(ch, start, length);
+    }
+
+    private void flushCharacters()
+    {
+      if( charactersType != 0 ) {
+        bytes.write(charactersType);
+        writeInt(charactersLine + 1);
+        writeInt(charactersColumn + 1);
+        writeText(characters.toString());
+        characters.setLength(0);
+        charactersType = 0;
+      }
+    }
+
+    /**
+     * Writes the type of an event and the current location.  Locations are offset by one, so that the unknown location of -1 is
+     * written as zero.
+     */
+    private void writeEvent( byte type )
+    {
+      flushCharacters();
+      bytes.write(type);
+      writeInt(locator != null ? locator.getLineNumber() + 1 : 0);
+      writeInt(locator != null ? locator.getColumnNumber() + 1 : 0);
+    }
+
+    /**
+     * Writes a string through the string table.  Zero is null, other values are one more than the index of the string in the table,
+     * and the first use of a string is followed by its text.
+     */
+    private void writeString( String value )
+    {
+      if( value == null ) {
+        writeInt(0);
+        return;
+      }
+      Integer index = stringTable.get(value);
+      if( index != null ) {
+        writeInt(index.intValue() + 1);
+        return;
+      }
+      index = Integer.valueOf(stringTable.size());
+      stringTable.put(value, index);
+      writeInt(index.intValue() + 1);
+      writeText(value);
+    }
+
+    /**
+     * Writes a string that is not added to the string table.
+     */
+    private void writeText( String value )
+    {
+      if( value == null ) {
+        writeInt(0);
+        return;
+      }
+      byte[] utf8 = utf8(value);
+      writeInt(utf8.length + 1);
+      bytes.write(utf8, 0, utf8.length);
+    }
+
+    private void writeFixedInt( int value )
+    {
+      for( int shift = 24; shift >= 0; shift -= 8 ) {
+        bytes.write((value >>> shift) & 0xff);
+      }
+    }
+
+    /**
+     * Writes a non negative int with seven bits in each byte.
+     */
+    private void writeInt( int value )
+    {
+      while( (value & ~0x7f) != 0 ) {
+        bytes.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      bytes.write(value);
+    }
+  }
+
+  /**
+   * Sends the events of a snapshot to its handlers when it is parsed.  The input source passed to parse only provides the system id
+   * reported by the locator, the content comes from the snapshot.
+   */
+  public static class Replayer
+    extends XMLFilterImpl
+  {
+    private byte[] snapshot;
+    private int position;
+    private List<String> stringTable = new ArrayList<String>();
+    private AttributesImpl attributes = new AttributesImpl();
+    private ReplayLocator locator = new ReplayLocator();
+
+    public Replayer( byte[] snapshot )
+    {
+      this.snapshot = snapshot;
+    }
+
+    public void parse( String systemId )
+      throws SAXException, IOException
+    {
+      parse(new InputSource(systemId));
+    }
+
+    public void parse( InputSource input )
+      throws SAXException, IOException
+    {
+      position = 0;
+      stringTable.clear();
+      if( readFixedInt() != MAGIC ) {
+        throw new FormatException("The data is not a sax snapshot.");
+      }
+      if( readFixedInt() != FORMAT_VERSION ) {
+        throw new FormatException("The sax snapshot was written in a different format version.");
+      }
+
+      locator.publicId = input.getPublicId();
+      locator.systemId = input.getSystemId();
+      ContentHandler contentHandler = getContentHandler();
+      DTDHandler dtdHandler = getDTDHandler();
+      contentHandler.setDocumentLocator(locator);
+
+      byte type;
+      while( (type = readByte()) != END_OF_SNAPSHOT ) {
+        locator.lineNumber = readInt() - 1;
+        locator.columnNumber = readInt() - 1;
+        switch( type ) {
+          case START_DOCUMENT:
+            contentHandler.startDocument();
+            break;
+          case END_DOCUMENT:
+            contentHandler.endDocument();
+            break;
+          case START_PREFIX_MAPPING:
+            contentHandler.startPrefixMapping(readString(), readString());
+            break;
+          case END_PREFIX_MAPPING:
+            contentHandler.endPrefixMapping(readString());
+            break;
+          case START_ELEMENT: {
+            String uri = readString();
+            String localName = readString();
+            String qName = readString();
+            attributes.clear();
+            int attributeCount = readInt();
+            for( int i = 0; i < attributeCount; i++ ) {
+              attributes.addAttribute(readString(), readString(), readString(), readString(), readText());
+            }
+            contentHandler.startElement(uri, localName, qName, attributes);
+            break;
+          }
+          case END_ELEMENT:
+            contentHandler.endElement(readString(), readString(), readString());
+            break;
+          case CHARACTERS: {
+            char[] ch = readText().toCharArray();
+            contentHandler.characters(ch, 0, ch.length);
+            break;
+          }
+          case IGNORABLE_WHITESPACE: {
+            char[] ch = readText().toCharArray();
+            contentHandler.ignorableWhitespace(ch, 0, ch.length);
+            break;
+          }
+          case PROCESSING_INSTRUCTION:
+            contentHandler.processingInstruction(readString(), readText());
+            break;
+          case SKIPPED_ENTITY:
+            contentHandler.skippedEntity(readString());
+            break;
+          case NOTATION_DECL:
+            if( dtdHandler != null ) {
+              dtdHandler.notationDecl(readString(), readString(), readString());
+            }
+            else {
+              readString(); readString(); readString();
+            }
+            break;
+          case UNPARSED_ENTITY_DECL:
+            if( dtdHandler != null ) {
+              dtdHandler.unparsedEntityDecl(readString(), readString(), readString(), readString());
+            }
+            else {
+              readString(); readString(); readString(); readString();
+            }
+            break;
+          default:
+            throw new FormatException("Unknown event type "+type+" in sax snapshot.");
+        }
+      }
+    }
+
+    private byte readByte()
+      throws FormatException
+    {
+      if( position >= snapshot.length ) {
+        throw new FormatException("The sax snapshot is truncated.");
+      }
+      return snapshot[position++];
+    }
+
+    private int readFixedInt()
+      throws FormatException
+    {
+      int value = 0;
+      for( int i = 0; i < 4; i++ ) {
+        value = (value << 8) | (readByte() & 0xff);
+      }
+      return value;
+    }
+
+    private int readInt()
+      throws FormatException
+    {
+      int value = 0;
+      for( int shift = 0; shift < 35; shift += 7 ) {
+        byte b = readByte();
+        value |= (b & 0x7f) << shift;
+        if( (b & 0x80) == 0 ) {
+          return value;
+        }
+      }
+      throw new FormatException("The sax snapshot contains a malformed number.");
+    }
+
+    private String readString()
+      throws FormatException
+    {
+      int index = readInt();
+      if( index == 0 ) {
+        return null;
+      }
+      if( index <= stringTable.size() ) {
+        return stringTable.get(index - 1);
+      }
+      if( index != stringTable.size() + 1 ) {
+        throw new FormatException("The sax snapshot references a string that is not defined.");
+      }
+      String value = readText();
+      stringTable.add(value);
+      return value;
+    }
+
+    private String readText()
+      throws FormatException
+    {
+      int length = readInt() - 1;
+      if( length < 0 ) {
+        return null;
+      }
+      if( length > snapshot.length - position ) {
+        throw new FormatException("The sax snapshot is truncated.");
+      }
+      try {
+        String value = new String(snapshot, position, length, "UTF-8");
+        position += length;
+        return value;
+      }
+      catch( UnsupportedEncodingException uee ) {
+        throw new IllegalStateException("The UTF-8 encoding is not available.", uee);
+      }
+    }
+  }
+
+  /**
+   * The locator reported while a snapshot is replayed.
+   */
+  private static class ReplayLocator
+    implements Locator
+  {
+    private String publicId;
+    private String systemId;
+    private int lineNumber = -1;
+    private int columnNumber = -1;
+
+    public String getPublicId() { return publicId; }
+    public String getSystemId() { return systemId; }
+    public int getLineNumber() { return lineNumber; }
+    public int getColumnNumber() { return columnNumber; }
+  }
+
+  private static byte[] utf8( String value )
+  {
+    try {
+      return value.getBytes("UTF-8");
+    }
+    catch( UnsupportedEncodingException uee ) {
+      throw new IllegalStateException("The UTF-8 encoding is not available.", uee);
+    }
+  }
+}
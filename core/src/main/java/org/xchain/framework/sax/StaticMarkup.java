@@ -0,0 +1,293 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.sax;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.transform.OutputKeys;
+
+import org.apache.xml.serializer.OutputPropertiesFactory;
+import org.apache.xml.serializer.Serializer;
+import org.apache.xml.serializer.SerializerFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * A fully static subtree of a jsl template, made up of element and character events.  The markup does not declare any namespaces,
+ * so the prefixes that it uses must already be mapped when it is output.
+ *
+ * When the markup is sent to a serializer, the markup is serialized once for each output format and then written as a single block of
+ * characters with output escaping disabled.  Otherwise, the events of the markup are replayed.
+ */
+public class StaticMarkup
+{
+  /** The local name of the element that wraps the markup while it is serialized. */
+  private static final String WRAPPER_NAME = "xchain-static-markup";
+
+  /** The output properties that do not change how the body of a document is serialized. */
+  private static final String[] DOCUMENT_OUTPUT_KEYS = { OutputKeys.DOCTYPE_PUBLIC, OutputKeys.DOCTYPE_SYSTEM, OutputKeys.OMIT_XML_DECLARATION, OutputKeys.STANDALONE, OutputKeys.MEDIA_TYPE };
+
+  private static enum EventType { START_ELEMENT, END_ELEMENT, CHARACTERS, IGNORABLE_WHITESPACE };
+
+  /** The events in this markup. */
+  private List<Event> eventList = new ArrayList<Event>();
+
+  /** The prefixes used by the elements and attributes of this markup, mapped to their namespaces. */
+  private Map<String, String> prefixMapping = new HashMap<String, String>();
+
+  /** The serialized form of this markup, keyed by the output format that it was serialized with. */
+  private ConcurrentMap<String, char[]> serializedMap = new ConcurrentHashMap<String, char[]>();
+
+  /**
+   * Adds a start element event to the markup.
+   *
+   * @return false if the prefix of the element or one of its attributes is already used for a different namespace in this markup.
+   */
+  public boolean startElement( String uri, String localName, String qName, Attributes attributes )
+  {
+    if( !usePrefix(parsePrefix(qName), uri) ) {
+      return false;
+    }
+    for( int i = 0; i < attributes.getLength(); i++ ) {
+      if( attributes.getURI(i) != null && !"".equals(attributes.getURI(i)) && !usePrefix(parsePrefix(attributes.getQName(i)), attributes.getURI(i)) ) {
+        return false;
+      }
+    }
+    eventList.add(new Event(EventType.START_ELEMENT, uri, localName, qName, new AttributesImpl(attributes), null));
+    return true;
+  }
+
+  /**
+   * Adds an end element event to the markup.
+   */
+  public void endElement( String uri, String localName, String qName )
+  {
+    eventList.add(new Event(EventType.END_ELEMENT, uri, localName, qName, null, null));
+  }
+
+  /**
+   * Adds a characters event to the markup.
+   */
+  public void characters( String characters )
+  {
+    eventList.add(new Event(EventType.CHARACTERS, null, null, null, null, characters.toCharArray()));
+  }
+
+  /**
+   * Adds an ignorable whitespace event to the markup.
+   */
+  public void ignorableWhitespace( String ignorableWhitespace )
+  {
+    eventList.add(new Event(EventType.IGNORABLE_WHITESPACE, null, null, null, null, ignorableWhitespace.toCharArray()));
+  }
+
+  /**
+   * Returns the prefixes used by the elements and attributes of this markup, mapped to their namespaces.
+   */
+  public Map<String, String> getPrefixMapping()
+  {
+    return Collections.unmodifiableMap(prefixMapping);
+  }
+
+  /**
+   * Sends the events of this markup to the handler.
+   */
+  public void replay( ContentHandler handler )
+    throws SAXException
+  {
+    for( Event event : eventList ) {
+      switch( event.type ) {
+        case START_ELEMENT:
+          handler.startElement(event.uri, event.localName, event.qName, event.attributes);
+          break;
+        case END_ELEMENT:
+          handler.endElement(event.uri, event.localName, event.qName);
+          break;
+        case CHARACTERS:
+          handler.characters(event.characters, 0, event.characters.length);
+          break;
+        case IGNORABLE_WHITESPACE:
+          handler.ignorableWhitespace(event.characters, 0, event.characters.length);
+          break;
+      }
+    }
+  }
+
+  /**
+   * Returns this markup serialized with the output format.  The markup is only serialized the first time that an output format is used.
+   *
+   * @param outputFormatKey the key for the output format, as returned by outputFormatKey(Properties).
+   * @param outputFormat the output properties of the serializer that the markup will be written to.
+   */
+  public char[] getSerializedMarkup( String outputFormatKey, Properties outputFormat )
+    throws SAXException
+  {
+    char[] serialized = serializedMap.get(outputFormatKey);
+    if( serialized == null ) {
+      serialized = serialize(outputFormat);
+      serializedMap.putIfAbsent(outputFormatKey, serialized);
+    }
+    return serialized;
+  }
+
+  /**
+   * Serializes the markup inside of a wrapper element that maps all of the prefixes used by the markup, then strips the wrapper element.
+   */
+  private char[] serialize( Properties outputFormat )
+    throws SAXException
+  {
+    // only the properties that differ from the defaults of the output method are set, the serializer loads resources for some properties
+    // differently when they are set explicitly.
+    Properties properties = new Properties(OutputPropertiesFactory.getDefaultMethodProperties(outputFormat.getProperty(OutputKeys.METHOD)));
+    for( Enumeration<?> names = outputFormat.propertyNames(); names.hasMoreElements(); ) {
+      String name = (String)names.nextElement();
+      String value = outputFormat.getProperty(name);
+      if( !value.equals(properties.getProperty(name)) ) {
+        properties.setProperty(name, value);
+      }
+    }
+    for( String documentOutputKey : DOCUMENT_OUTPUT_KEYS ) {
+      properties.remove(documentOutputKey);
+    }
+    properties.setProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+
+    StringWriter writer = new StringWriter();
+    Serializer serializer = SerializerFactory.getSerializer(properties);
+    serializer.setWriter(writer);
+    ContentHandler handler = null;
+    try {
+      handler = serializer.asContentHandler();
+    }
+    catch( IOException ioe ) {
+      throw new SAXException("Could not create a serializer for static markup.", ioe);
+    }
+
+    // the wrapper is in the default namespace, so that it does not change the namespace of unprefixed elements.
+    String wrapperNamespace = prefixMapping.containsKey("") ? prefixMapping.get("") : "";
+
+    handler.startDocument();
+    for( Map.Entry<String, String> mapping : prefixMapping.entrySet() ) {
+      handler.startPrefixMapping(mapping.getKey(), mapping.getValue());
+    }
+    handler.startElement(wrapperNamespace, WRAPPER_NAME, WRAPPER_NAME, new AttributesImpl());
+    replay(handler);
+    handler.endElement(wrapperNamespace, WRAPPER_NAME, WRAPPER_NAME);
+    for( String prefix : prefixMapping.keySet() ) {
+      handler.endPrefixMapping(prefix);
+    }
+    handler.endDocument();
+
+    String markup = writer.toString();
+    int start = markup.indexOf('>') + 1;
+    int end = markup.lastIndexOf("</");
+    if( start == 0 || end < start ) {
+      throw new SAXException("Could not find the wrapper element in the serialized static markup '"+markup+"'.");
+    }
+    return markup.substring(start, end).toCharArray();
+  }
+
+  /**
+   * Returns the number of output formats that this markup has been serialized with.
+   */
+  int getSerializedFormatCount()
+  {
+    return serializedMap.size();
+  }
+
+  /**
+   * Returns a key for the output properties of a serializer, or null if static markup cannot be written to the serializer as characters.
+   * Markup can only be written as characters to xml and html serializers, other output methods such as text do not write the elements
+   * of the markup.  Markup cannot be written as characters when the serializer indents its output, since the indentation depends on
+   * where the markup is written.
+   */
+  public static String outputFormatKey( Properties outputFormat )
+  {
+    String method = outputFormat.getProperty(OutputKeys.METHOD);
+    if( !"xml".equals(method) && !"html".equals(method) ) {
+      return null;
+    }
+    if( "yes".equals(outputFormat.getProperty(OutputKeys.INDENT)) ) {
+      return null;
+    }
+
+    Map<String, String> sortedProperties = new TreeMap<String, String>();
+    for( Enumeration<?> names = outputFormat.propertyNames(); names.hasMoreElements(); ) {
+      String name = (String)names.nextElement();
+      sortedProperties.put(name, outputFormat.getProperty(name));
+    }
+    for( String documentOutputKey : DOCUMENT_OUTPUT_KEYS ) {
+      sortedProperties.remove(documentOutputKey);
+    }
+    return sortedProperties.toString();
+  }
+
+  /**
+   * Records that the prefix is used for the namespace.
+   *
+   * @return false if the prefix is already used for a different namespace.
+   */
+  private boolean usePrefix( String prefix, String namespace )
+  {
+    String currentNamespace = prefixMapping.get(prefix);
+    if( currentNamespace == null ) {
+      prefixMapping.put(prefix, namespace);
+      return true;
+    }
+    return currentNamespace.equals(namespace);
+  }
+
+  /**
+   * Parses a prefix from a QName.  If the qName does not have a prefix, then "" is returned.
+   */
+  private static String parsePrefix( String qName )
+  {
+    int index = qName.indexOf(':');
+    return index < 0 ? "" : qName.substring(0, index);
+  }
+
+  private static class Event
+  {
+    private final EventType type;
+    private final String uri;
+    private final String localName;
+    private final String qName;
+    private final Attributes attributes;
+    private final char[] characters;
+
+    public Event( EventType type, String uri, String localName, String qName, Attributes attributes, char[] characters )
+    {
+      this.type = type;
+      this.uri = uri;
+      this.localName = localName;
+      this.qName = qName;
+      this.attributes = attributes;
+      this.characters = characters;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.strategy;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the objects held by caching load strategies for changes on a background thread.  While the monitor is running, caching load
+ * strategies do not check their sources when objects are requested.  Instead, the monitor periodically checks the source and dependencies
+ * of every cached object, marks the objects that have changed as stale and reloads them.  Each url is only checked once per pass, so
+ * dependencies that are shared by many cached objects do not cost more than one lookup.
+ *
+ * The monitor is started and stopped by the lifecycle when monitoring is enabled and a monitor interval is configured.
+ *
+ * @see org.xchain.framework.lifecycle.ConfigContext#getMonitorInterval()
+ */
+public final class CacheMonitor
+{
+  public static Logger log = LoggerFactory.getLogger( CacheMonitor.class );
+
+  /** The caching load strategies that have been created.  The strategies are weakly referenced, so they can be collected. */
+  private static final Map<CachingLoadStrategy<?, ?>, Boolean> strategyMap = new WeakHashMap<CachingLoadStrategy<?, ?>, Boolean>();
+
+  /** The executor running the checks, or null if the monitor is not running. */
+  private static volatile ScheduledExecutorService executor = null;
+
+  private CacheMonitor() {}
+
+  /**
+   * Returns true if the monitor is checking caches in the background.
+   */
+  public static boolean isRunning()
+  {
+    return executor != null;
+  }
+
+  /**
+   * Starts checking the registered caches.
+   *
+   * @param interval the number of milliseconds between checks.
+   * @param classLoader the context class loader for the monitor thread.  Objects are reloaded with this class loader.
+   */
+  public static synchronized void start( long interval, final ClassLoader classLoader )
+  {
+    if( executor != null ) {
+      throw new IllegalStateException("The cache monitor is already running.");
+    }
+
+    ScheduledExecutorService newExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread( Runnable runnable ) {
+        Thread thread = new Thread(runnable, "xchain-cache-monitor");
+        thread.setDaemon(true);
+        thread.setContextClassLoader(classLoader);
+        return thread;
+      }
+    });
+
+    newExecutor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        checkCaches();
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+
+    executor = newExecutor;
+
+    if( log.isInfoEnabled() ) {
+      log.info("Checking cached objects for changes every "+interval+"ms.");
+    }
+  }
+
+  /**
+   * Stops checking the registered caches.  Caching load strategies go back to checking their sources when objects are requested.
+   */
+  public static synchronized void stop()
+  {
+    if( executor != null ) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Registers a caching load strategy with the monitor.
+   */
+  static void register( CachingLoadStrategy<?, ?> strategy )
+  {
+    synchronized( strategyMap ) {
+      strategyMap.put(strategy, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * Makes one pass over all of the registered caches.
+   */
+  static void checkCaches()
+  {
+    List<CachingLoadStrategy<?, ?>> strategyList = null;
+    synchronized( strategyMap ) {
+      strategyList = new ArrayList<CachingLoadStrategy<?, ?>>(strategyMap.keySet());
+    }
+
+    // the last modified times of the urls checked during this pass.
+    Map<URL, Long> lastModifiedMap = new HashMap<URL, Long>();
+
+    for( CachingLoadStrategy<?, ?> strategy : strategyList ) {
+      try {
+        strategy.checkCache(lastModifiedMap);
+      }
+      catch( Throwable t ) {
+        if( log.isWarnEnabled() ) {
+          log.warn("An exception was thrown while checking a cache for changes.", t);
+        }
+      }
+    }
+  }
+}
@@ -16,18 +16,21 @@
 package org.xchain.framework.strategy;
 
 import java.net.URL;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xchain.framework.net.DependencyTracker;
 import org.xchain.framework.net.UrlFactory;
 import org.xchain.framework.net.UrlUtil;
-import org.xchain.framework.util.LruCacheMap;
+import org.xchain.framework.util.ConcurrentLruCache;
 import org.xchain.framework.lifecycle.Lifecycle;
 
 /**
- * A LoadStrategy implementation that performs caching.
+ * A LoadStrategy implementation that performs caching.  Cached objects are looked up without taking a global lock.  Loading
+ * is synchronized on the cache entry, so only one thread loads an object for a given system id.
  *
  * @param <T> The class being cached.
  * @param <S> The source type for the objects.
@@ -39,50 +42,101 @@ import org.xchain.framework.lifecycle.Lifecycle;
  */
 public class CachingLoadStrategy<T, S> implements LoadStrategy<T, S> {
 	public static Logger log = LoggerFactory.getLogger( CachingLoadStrategy.class );	
-	private LruCacheMap<String, CachedObject<T>> objectCache;
+	private ConcurrentLruCache<String, CachedObject<T>> objectCache;
+	// The source of entry generations.  Every load and every change found by the monitor gives the entry a new generation.
+	private final AtomicLong generation = new AtomicLong();
 	
 	/**
-	 * @param size The maximum size for the LruMap.
+	 * @param size The maximum number of objects in the cache.
 	 */
 	public CachingLoadStrategy(int size) {
 		super();
-		this.objectCache = new LruCacheMap<String, CachedObject<T>>(size);
+		this.objectCache = new ConcurrentLruCache<String, CachedObject<T>>(size);
+		CacheMonitor.register(this);
+	}
+
+	/**
+	 * Returns true if an object returned by getCachedResult(...) with the given generation is still the current object for its system
+	 * id.  Only the entry for the system id is checked, so loading or evicting other objects does not affect the result.  This is never
+	 * true when sources are checked for changes on each request, since the cache only learns about those changes when the object is
+	 * requested.  When the cache monitor finds a change, the entry gets a new generation before the object is reloaded, so this is false
+	 * for objects that are stale, even if their reload failed.  It is also false once the entry has been evicted.
+	 * 
+	 * @param systemId The system id of the object.
+	 * @param generation The generation returned with the object.
+	 * 
+	 * @return True if the object can be used without asking the cache for it again.
+	 */
+	public boolean isCurrent(String systemId, long generation) {
+		CachedObject<T> cachedObject = objectCache.get(systemId);
+		if (cachedObject == null || cachedObject.getGeneration() != generation || cachedObject.isStale()) {
+			return false;
+		}
+		return !Lifecycle.getLifecycleContext().getConfigContext().isMonitored() || CacheMonitor.isRunning();
 	}
 
 	public T getObject(String systemId, SourceStrategy<S> sourceStrategy,
 			ConsumerStrategy<T, S> consumerStrategy)
 		throws Exception
 	{
+		return getLoadedEntry(systemId, sourceStrategy, consumerStrategy).getObject();
+	}
+
+	/**
+	 * Returns the object for the system id along with the generation of its cache entry, so that the caller can hold on to the object
+	 * and check it with isCurrent(String, long).
+	 */
+	public CachedResult<T> getCachedResult(String systemId, SourceStrategy<S> sourceStrategy,
+			ConsumerStrategy<T, S> consumerStrategy)
+		throws Exception
+	{
+		CachedObject<T> cachedObject = getLoadedEntry(systemId, sourceStrategy, consumerStrategy);
+		// read the generation before the object, so that a reload between the reads leaves the result out of date, not the object.
+		long entryGeneration = cachedObject.getGeneration();
+		return new CachedResult<T>(cachedObject.getObject(), entryGeneration);
+	}
+
+	/**
+	 * Returns the cache entry for the system id, loading its object if it is missing or stale.
+	 */
+	private CachedObject<T> getLoadedEntry(String systemId, SourceStrategy<S> sourceStrategy,
+			ConsumerStrategy<T, S> consumerStrategy)
+		throws Exception
+	{
 		
-		CachedObject<T> cachedObject = null;
+		CachedObject<T> cachedObject = objectCache.get(systemId);
 		
-		// Synchronize on the objectCache to only allow one lookup at a time.
-		synchronized(objectCache) {
-			cachedObject = objectCache.get(systemId);
-			
+		if (cachedObject == null) {
+			// The request object was not found in the cache.
+			// Create a new entry for the cache, unless another thread beat us to it.
+			CachedObject<T> newObject = new CachedObject<T>();
+			newObject.setSystemId(systemId);
+			cachedObject = objectCache.putIfAbsent(systemId, newObject);
 			if (cachedObject == null) {
-				// The request object was not found in the cache.
-				// Create a new entry for the cache.
-				cachedObject = new CachedObject<T>();
-				cachedObject.setSystemId(systemId);
-				objectCache.put(systemId, cachedObject);
+				cachedObject = newObject;
 			}
 		}
 		
+		// If the object is loaded and current, then return it without locking.
+		if (cachedObject.getObject() != null && !isStale(cachedObject)) {
+			return cachedObject;
+		}
+		
 		// Synchronize on the cachedObject to only allow one loading of the requested object.
 		synchronized(cachedObject) {
 			if (cachedObject.getObject() == null || isStale(cachedObject)) {
 				// Either the object could not be found or it should be reloaded
 				loadObject(cachedObject, sourceStrategy, consumerStrategy);
 			}
+			
+			// Return the loaded entry.
+			return cachedObject;
 		}
-		
-		// Return the loaded object.
-		return cachedObject.getObject();
 	}
 	
 	/**
-	 * Check if the given CachedObject should be reloaded.
+	 * Check if the given CachedObject should be reloaded.  If the cache monitor is running, then this returns the staleness recorded
+	 * by the monitor, otherwise the source and dependencies of the object are checked.
 	 * 
 	 * @param cachedObject The cachedObject entry to check.
 	 *  
@@ -92,6 +146,11 @@ public class CachingLoadStrategy<T, S> implements LoadStrategy<T, S> {
 		throws Exception
 	{
 		if ( Lifecycle.getLifecycleContext().getConfigContext().isMonitored() ) {
+			if ( CacheMonitor.isRunning() ) {
+				// The monitor checks the sources in the background.
+				return cachedObject.isStale();
+			}
+
 		    // get an instance of the url util.
 		    UrlUtil urlUtil = UrlUtil.getInstance();
 		    
@@ -106,6 +165,86 @@ public class CachingLoadStrategy<T, S> implements LoadStrategy<T, S> {
 		}
 	}
 	
+	/**
+	 * Checks every loaded object in this cache for changes and reloads the objects that have changed.  This is called by the
+	 * CacheMonitor on its own thread.  An object is marked stale, and the generation of the cache is advanced, before it is reloaded, so
+	 * holders of the object stop using it even if the reload fails.  If a reload fails, then the object stays stale, the next request for
+	 * it will try the load again and the next pass of the monitor will also try the load again.
+	 * 
+	 * @param lastModifiedMap The last modified times of the urls that have already been checked during this pass.
+	 */
+	void checkCache(Map<URL, Long> lastModifiedMap)
+	{
+		for (CachedObject<T> cachedObject : objectCache.values()) {
+			if (cachedObject.getObject() == null) {
+				continue;
+			}
+			try {
+				if (cachedObject.isStale() || isModified(cachedObject, lastModifiedMap)) {
+					markStale(cachedObject);
+					synchronized(cachedObject) {
+						// a request may have reloaded the object while we waited for the lock.
+						if (cachedObject.isStale()) {
+							loadObject(cachedObject, cachedObject.getSourceStrategy(), cachedObject.getConsumerStrategy());
+						}
+					}
+				}
+			} catch (Exception e) {
+				if (log.isWarnEnabled()) {
+					log.warn("Could not reload the object for system id '" + cachedObject.getSystemId() + "'.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the object stale and gives its entry a new generation, so that isCurrent(String, long) fails for anyone holding the object.
+	 */
+	private void markStale(CachedObject<T> cachedObject)
+	{
+		if (!cachedObject.isStale()) {
+			cachedObject.setStale(true);
+			cachedObject.setGeneration(generation.incrementAndGet());
+		}
+	}
+
+	/**
+	 * Check if the source or any dependency of the given object was modified after the object was loaded.
+	 * 
+	 * @param cachedObject The cachedObject entry to check.
+	 * @param lastModifiedMap The last modified times of the urls that have already been checked.  Urls checked by this method are added.
+	 * 
+	 * @return Whether the object has been modified.
+	 */
+	private boolean isModified(CachedObject<T> cachedObject, Map<URL, Long> lastModifiedMap)
+		throws Exception
+	{
+		long loaded = cachedObject.getLastModified();
+		if (lastModified(UrlFactory.getInstance().newUrl(cachedObject.getSystemId()), lastModifiedMap) > loaded) {
+			return true;
+		}
+		Set<URL> dependencySet = cachedObject.getDependencySet();
+		if (dependencySet != null) {
+			for (URL dependency : dependencySet) {
+				if (lastModified(dependency, lastModifiedMap) > loaded) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static long lastModified(URL url, Map<URL, Long> lastModifiedMap)
+		throws Exception
+	{
+		Long lastModified = lastModifiedMap.get(url);
+		if (lastModified == null) {
+			lastModified = UrlUtil.getInstance().lastModified(url);
+			lastModifiedMap.put(url, lastModified);
+		}
+		return lastModified;
+	}
+	
 	/**
 	 * Load the object from the using the given source strategy and consumer strategy.
 	 * 
@@ -134,26 +273,62 @@ public class CachingLoadStrategy<T, S> implements LoadStrategy<T, S> {
 			dependencySet = tracker.stopTracking();
 		}
 		
-		cachedObject.setObject(object);
+		// set the object after the dependencies and before the generation, so that threads that read the generation without locking
+		// see the new object, and clear the stale flag last, so that the old generation is never current for the new object.
+		cachedObject.setSourceStrategy(sourceStrategy);
+		cachedObject.setConsumerStrategy(consumerStrategy);
 		cachedObject.setDependencySet(dependencySet);
-		cachedObject.setLastModified(lastModified);		
+		cachedObject.setLastModified(lastModified);
+		cachedObject.setObject(object);
+		cachedObject.setGeneration(generation.incrementAndGet());
+		cachedObject.setStale(false);
+	}
+
+	/**
+	 * An object returned by the cache along with the generation of its cache entry.
+	 *
+	 * @param <OBJ> The type of the cached object.
+	 */
+	public static class CachedResult<OBJ> {
+		private final OBJ object;
+		private final long generation;
+
+		public CachedResult(OBJ object, long generation) {
+			this.object = object;
+			this.generation = generation;
+		}
+
+		public OBJ getObject() {
+			return object;
+		}
+
+		public long getGeneration() {
+			return generation;
+		}
 	}
 	
 	/**
-	 * This keeps track of when the object was last modified, the system id of the object and the dependency set
-	 * for the object.
+	 * This keeps track of when the object was last modified, the system id of the object, the dependency set
+	 * for the object and the strategies that loaded it.  The fields are volatile, since the object is read without locking.
 	 *
 	 * @param <OBJ> The type of object to cache.
 	 */
 	private class CachedObject<OBJ> {
 		// Timestamp of when the object was last modified.
-		private long lastModified = 0;
+		private volatile long lastModified = 0;
 		// The system identifier for the object.
-		private String systemId = null;
+		private volatile String systemId = null;
 		// A set of dependencies for the object.
-		private Set<URL> dependencySet = null;
+		private volatile Set<URL> dependencySet = null;
 		// The object itself.
-		private OBJ object;
+		private volatile OBJ object;
+		// True if the cache monitor found a change that has not been reloaded.
+		private volatile boolean stale = false;
+		// The generation of this entry, changed whenever the object is loaded or marked stale.
+		private volatile long generation = 0;
+		// The strategies used to load the object, so that the cache monitor can reload it.
+		private volatile SourceStrategy<S> sourceStrategy;
+		private volatile ConsumerStrategy<OBJ, S> consumerStrategy;
 		
 		public long getLastModified() {
 			return lastModified;
@@ -186,5 +361,37 @@ public class CachingLoadStrategy<T, S> implements LoadStrategy<T, S> {
 		public void setObject(OBJ object) {
 			this.object = object;
 		}
+		
+		public boolean isStale() {
+			return stale;
+		}
+		
+		public long getGeneration() {
+			return generation;
+		}
+		
+		public void setGeneration(long generation) {
+			this.generation = generation;
+		}
+		
+		public void setStale(boolean stale) {
+			this.stale = stale;
+		}
+		
+		public SourceStrategy<S> getSourceStrategy() {
+			return sourceStrategy;
+		}
+		
+		public void setSourceStrategy(SourceStrategy<S> sourceStrategy) {
+			this.sourceStrategy = sourceStrategy;
+		}
+		
+		public ConsumerStrategy<OBJ, S> getConsumerStrategy() {
+			return consumerStrategy;
+		}
+		
+		public void setConsumerStrategy(ConsumerStrategy<OBJ, S> consumerStrategy) {
+			this.consumerStrategy = consumerStrategy;
+		}
 	}	
 }
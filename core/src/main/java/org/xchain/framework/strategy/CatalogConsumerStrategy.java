@@ -15,21 +15,31 @@
  */
 package org.xchain.framework.strategy;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
 import org.apache.commons.digester.Digester;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xchain.Catalog;
 import org.xchain.framework.digester.AnnotationRuleSet;
+import org.xchain.framework.sax.SaxSnapshot;
 import org.xchain.framework.sax.XChainDeclFilter;
 import org.xchain.framework.jsl.SaxTemplateHandler;
 import org.xchain.framework.net.DependencyTracker;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.lifecycle.LifecycleContext;
 import org.xchain.framework.lifecycle.XmlFactoryLifecycle;
+import org.xchain.framework.util.BytecodeCache;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.XMLReaderFactory;
 
 /**
  * ConsumerStrategy implementation for Catalogs.
@@ -43,52 +53,147 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class CatalogConsumerStrategy implements ConsumerStrategy<Catalog, InputSource> {
 	public static Logger log = LoggerFactory.getLogger( CatalogConsumerStrategy.class );
 
+	/** The kind of bytecode cache entry that holds catalog snapshots. */
+	public static final String SNAPSHOT_KIND = "catalog-snapshot-"+SaxSnapshot.FORMAT_VERSION;
+
 	public Catalog consume(String systemId, SourceStrategy<InputSource> sourceStrategy, DependencyTracker tracker)
 		throws Exception
 	{
 		// Get the input source
 		InputSource inputSource = sourceStrategy.getSource(systemId);
-		
-	    // create the XMLReader.
-	    XMLReader reader = XmlFactoryLifecycle.newXmlReader();
 
-            reader.setErrorHandler( new FailingErrorHandler() );
+		// without a bytecode cache there is no place to keep snapshots, so just parse the source.
+		LifecycleContext lifecycleContext = Lifecycle.getLifecycleContext();
+		BytecodeCache bytecodeCache = lifecycleContext != null ? lifecycleContext.getBytecodeCache() : null;
+		if( bytecodeCache == null || inputSource.getByteStream() == null ) {
+			return parse(systemId, inputSource, null);
+		}
+
+		// read the source, so that the snapshot can be keyed by its content.
+		byte[] content = readFully(inputSource.getByteStream());
+		inputSource.setByteStream(new ByteArrayInputStream(content));
+		String snapshotKey = bytecodeCache.key(SNAPSHOT_KIND, systemId, content);
+
+		Map<String, byte[]> snapshotEntry = bytecodeCache.get(snapshotKey);
+		byte[] snapshot = snapshotEntry != null ? snapshotEntry.get(systemId) : null;
+		if( snapshot != null ) {
+			try {
+				return replay(systemId, inputSource, snapshot);
+			}
+			catch( SaxSnapshot.FormatException fe ) {
+				if( log.isWarnEnabled() ) {
+					log.warn("Could not read the snapshot of the catalog '"+systemId+"', parsing the catalog instead.", fe);
+				}
+				inputSource.setByteStream(new ByteArrayInputStream(content));
+			}
+		}
+
+		SaxSnapshot.Recorder recorder = new SaxSnapshot.Recorder();
+		Catalog catalog = parse(systemId, inputSource, recorder);
+		if( recorder.isSnapshotComplete() ) {
+			bytecodeCache.put(snapshotKey, Collections.singletonMap(systemId, recorder.toByteArray()));
+		}
+		else if( log.isDebugEnabled() ) {
+			log.debug("A snapshot of the catalog '"+systemId+"' was not stored, because the catalog depends on external entities.");
+		}
+		return catalog;
+	}
 
+  /**
+   * Parses the catalog with an XMLReader from the pool.  If a recorder is passed, it is placed between the reader and the filters, so that
+   * it sees the events of the source document.
+   */
+  private Catalog parse( String systemId, InputSource inputSource, SaxSnapshot.Recorder recorder )
+    throws Exception
+  {
+    // borrow an XMLReader from the pool, it is released when the catalog has been parsed.
+    XMLReader reader = XmlFactoryLifecycle.borrowXmlReader();
+    try {
+      reader.setErrorHandler( new FailingErrorHandler() );
+
+      XMLReader source = reader;
+      if( recorder != null ) {
+        recorder.setParent(reader);
+        source = recorder;
+      }
+      return digest(systemId, inputSource, source);
+    }
+    finally {
+      XmlFactoryLifecycle.releaseXmlReader( reader );
+    }
+  }
+
+  /**
+   * Loads the catalog from a snapshot of its source document.  The events of the snapshot still go through the filters and the digester,
+   * but the source is not parsed.
+   */
+  private Catalog replay( String systemId, InputSource inputSource, byte[] snapshot )
+    throws Exception
+  {
+    if( log.isDebugEnabled() ) {
+      log.debug("Loading the catalog '"+systemId+"' from a snapshot.");
+    }
+    SaxSnapshot.Replayer replayer = new SaxSnapshot.Replayer(snapshot);
+    replayer.setErrorHandler( new FailingErrorHandler() );
+    return digest(systemId, inputSource, replayer);
+  }
+
+  /**
+   * Builds the filter chain and the digester on top of the source of events and creates the catalog.
+   */
+  private Catalog digest( String systemId, InputSource inputSource, XMLReader source )
+    throws Exception
+  {
     XChainDeclFilter sourceFilter = new XChainDeclFilter();
-    sourceFilter.setParent(reader);
+    sourceFilter.setParent(source);
     sourceFilter.setErrorHandler( new FailingErrorHandler() );
 
-	    // create the jsl filter.
-	    SaxTemplateHandler xmlFilter = new SaxTemplateHandler();
-	    xmlFilter.setParent(sourceFilter);
-            xmlFilter.setErrorHandler( new FailingErrorHandler() );
-
-	    // create the digester, passing the jsl filter.
-	    Digester digester = new Digester(xmlFilter);
-
-	    // set the digester onto the xml filter.
-	    xmlFilter.setDigester(digester);
-
-	    // add the annotation rule set to the digester.
-	    digester.addRuleSet(new AnnotationRuleSet(systemId));
-
-	    digester.setErrorHandler( new FailingErrorHandler() );
-	    
-	    // get the catalog object.
-	    Catalog catalog = null;
-
-            try {
-              catalog = (Catalog)digester.parse( inputSource );
-            }
-            catch( Exception e ) {
-              if( log.isErrorEnabled() ) {
-                log.error("Could not create catalog for system id '"+inputSource.getSystemId()+"'.", e);
-              }
-              throw e;
-            }
-		
-		return catalog;
-	}
+    // create the jsl filter.
+    SaxTemplateHandler xmlFilter = new SaxTemplateHandler();
+    xmlFilter.setParent(sourceFilter);
+    xmlFilter.setErrorHandler( new FailingErrorHandler() );
+
+    // create the digester, passing the jsl filter.
+    Digester digester = new Digester(xmlFilter);
+
+    // set the digester onto the xml filter.
+    xmlFilter.setDigester(digester);
+
+    // add the annotation rule set to the digester.
+    digester.addRuleSet(new AnnotationRuleSet(systemId));
+
+    digester.setErrorHandler( new FailingErrorHandler() );
+
+    try {
+      return (Catalog)digester.parse( inputSource );
+    }
+    catch( SaxSnapshot.FormatException fe ) {
+      throw fe;
+    }
+    catch( Exception e ) {
+      if( log.isErrorEnabled() ) {
+        log.error("Could not create catalog for system id '"+inputSource.getSystemId()+"'.", e);
+      }
+      throw e;
+    }
+  }
+
+  private static byte[] readFully( InputStream in )
+    throws IOException
+  {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+      byte[] buffer = new byte[8192];
+      int read;
+      while( (read = in.read(buffer)) != -1 ) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+    finally {
+      in.close();
+    }
+  }
 
   public static class FailingErrorHandler
     implements ErrorHandler
@@ -49,16 +49,22 @@ public class TemplatesConsumerStrategy implements ConsumerStrategy<SaxTemplates,
             // get the source.
 	    InputSource source = sourceStrategy.getSource(systemId);
 
-            // create the xml reader.
+            // borrow an xml reader from the pool.
             // NOTE: config option needed here to pick the xml parser used to load templates.
-            XMLReader reader = XmlFactoryLifecycle.newXmlReader();
+            XMLReader reader = XmlFactoryLifecycle.borrowXmlReader();
 
             // create a templates handler.
             SaxTemplatesHandler templatesHandler = XmlFactoryLifecycle.newTemplatesHandler();
-            reader.setContentHandler(templatesHandler);
 
-            // parser the source.
-            reader.parse(source);
+            try {
+              reader.setContentHandler(templatesHandler);
+
+              // parser the source.
+              reader.parse(source);
+            }
+            finally {
+              XmlFactoryLifecycle.releaseXmlReader(reader);
+            }
 
             // return the templats object.
             return templatesHandler.getTemplates();
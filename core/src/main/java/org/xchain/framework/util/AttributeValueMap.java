@@ -0,0 +1,73 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The attribute map of an engineered command.  When an attribute value is put into or removed from this map, the compiled
+ * expression for the attribute is dropped from the command's compiled expression map, so that the engineered attribute methods
+ * compile the new value instead of evaluating the expression compiled from the old one.  Values must be changed through put(),
+ * putAll(), remove() or clear().
+ *
+ * @param <K> The attribute name type.
+ * @param <V> The attribute value type.
+ */
+public class AttributeValueMap<K, V>
+  extends HashMap<K, V>
+{
+  private final Map<K, ?> compiledExpressionMap;
+
+  /**
+   * @param compiledExpressionMap The compiled expressions for the attributes in this map.
+   */
+  public AttributeValueMap( Map<K, ?> compiledExpressionMap )
+  {
+    this.compiledExpressionMap = compiledExpressionMap;
+  }
+
+  public V put( K key, V value )
+  {
+    V oldValue = super.put(key, value);
+    if( key != null ) {
+      compiledExpressionMap.remove(key);
+    }
+    return oldValue;
+  }
+
+  public void putAll( Map<? extends K, ? extends V> map )
+  {
+    for( Map.Entry<? extends K, ? extends V> entry : map.entrySet() ) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  public V remove( Object key )
+  {
+    V oldValue = super.remove(key);
+    if( key != null ) {
+      compiledExpressionMap.remove(key);
+    }
+    return oldValue;
+  }
+
+  public void clear()
+  {
+    super.clear();
+    compiledExpressionMap.clear();
+  }
+}
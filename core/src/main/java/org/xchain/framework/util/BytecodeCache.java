@@ -0,0 +1,370 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory of generated class files that survives restarts.  Each entry holds the classes generated from one input, such as the
+ * source of a jsl template or the class file of a command, and is keyed by a hash of the input, the kind of generator and
+ * GENERATOR_VERSION.  Other data derived from an input, such as the sax snapshot of a catalog, is stored the same way.  Entries are
+ * stored under a directory named for a fingerprint of the class path, so entries built against a different class path are never
+ * read.  Changing an input, the generator version or the class path makes the old entries unreachable, and entries that have not
+ * been read for PRUNE_AGE milliseconds are deleted when the cache is opened.
+ */
+public class BytecodeCache
+{
+  public static Logger log = LoggerFactory.getLogger( BytecodeCache.class );
+
+  /** The version of the class generators.  This must be changed when the code generated by TemplateSourceBuilder or EngineeringUtil changes. */
+  public static final String GENERATOR_VERSION = "2";
+
+  /** The number of milliseconds that an entry or class path directory is kept after it was last used. */
+  public static final long PRUNE_AGE = 7L * 24L * 60L * 60L * 1000L;
+
+  /** The largest number of files below a class path directory that are checked for the class path fingerprint. */
+  public static final int MAX_DIRECTORY_FILES = 10000;
+
+  private static final int MAGIC = 0x78636263;
+  private static final String ENTRY_SUFFIX = ".classes";
+
+  /** The directory holding the entries for the current class path. */
+  private final File directory;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * Opens the cache in the base directory for the class path of the class loader, creating the directory if needed.
+   */
+  public BytecodeCache( File baseDirectory, ClassLoader classLoader )
+    throws IOException
+  {
+    this.directory = new File(baseDirectory, classPathFingerprint(classLoader));
+    if( !directory.isDirectory() && !directory.mkdirs() ) {
+      throw new IOException("Could not create the bytecode cache directory '"+directory+"'.");
+    }
+    directory.setLastModified(System.currentTimeMillis());
+    prune(baseDirectory);
+
+    if( log.isInfoEnabled() ) {
+      log.info("Using the bytecode cache in '"+directory+"'.");
+    }
+  }
+
+  /**
+   * Returns the directory holding the entries for the current class path.
+   */
+  public File getDirectory() { return this.directory; }
+
+  /**
+   * Returns the number of lookups that found an entry.
+   */
+  public long getHitCount() { return this.hitCount.get(); }
+
+  /**
+   * Returns the number of lookups that did not find an entry.
+   */
+  public long getMissCount() { return this.missCount.get(); }
+
+  /**
+   * Returns the key for the classes generated from the input.
+   *
+   * @param kind the kind of generator, such as "template" or "command".
+   * @param name the name of the input.
+   * @param content the content of the input.
+   */
+  public String key( String kind, String name, byte[] content )
+  {
+    MessageDigest digest = newDigest();
+    update(digest, GENERATOR_VERSION);
+    update(digest, kind);
+    update(digest, name);
+    digest.update(content);
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Returns the classes stored for the key, by class name, or null if there is not a readable entry for the key.
+   */
+  public Map<String, byte[]> get( String key )
+  {
+    File entryFile = new File(directory, key+ENTRY_SUFFIX);
+    if( !entryFile.isFile() ) {
+      missCount.incrementAndGet();
+      return null;
+    }
+
+    DataInputStream in = null;
+    Map<String, byte[]> classMap = null;
+    try {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+      if( in.readInt() != MAGIC ) {
+        throw new IOException("The entry does not start with the bytecode cache magic number.");
+      }
+      int classCount = in.readInt();
+      classMap = new LinkedHashMap<String, byte[]>(classCount * 2);
+      for( int i = 0; i < classCount; i++ ) {
+        String className = in.readUTF();
+        byte[] classBytes = new byte[in.readInt()];
+        in.readFully(classBytes);
+        classMap.put(className, classBytes);
+      }
+    }
+    catch( IOException ioe ) {
+      if( log.isWarnEnabled() ) {
+        log.warn("Removing the unreadable bytecode cache entry '"+entryFile+"'.", ioe);
+      }
+      classMap = null;
+    }
+    finally {
+      close(in);
+    }
+
+    if( classMap == null ) {
+      entryFile.delete();
+      missCount.incrementAndGet();
+      return null;
+    }
+
+    hitCount.incrementAndGet();
+    entryFile.setLastModified(System.currentTimeMillis());
+    return classMap;
+  }
+
+  /**
+   * Stores the classes for the key.  The entry is written to a temporary file and then renamed, so readers never see a partial
+   * entry.  Failures are logged and otherwise ignored, since the classes can always be generated again.
+   */
+  public void put( String key, Map<String, byte[]> classMap )
+  {
+    File entryFile = new File(directory, key+ENTRY_SUFFIX);
+    File tempFile = null;
+    DataOutputStream out = null;
+    try {
+      tempFile = File.createTempFile(key, ".tmp", directory);
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      out.writeInt(MAGIC);
+      out.writeInt(classMap.size());
+      for( Map.Entry<String, byte[]> entry : classMap.entrySet() ) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue().length);
+        out.write(entry.getValue());
+      }
+      out.close();
+      out = null;
+      if( !tempFile.renameTo(entryFile) ) {
+        // another thread or process may have stored the same entry.
+        tempFile.delete();
+      }
+    }
+    catch( IOException ioe ) {
+      if( log.isWarnEnabled() ) {
+        log.warn("Could not write the bytecode cache entry '"+entryFile+"'.", ioe);
+      }
+      close(out);
+      if( tempFile != null ) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  /**
+   * Deletes the class path directories and entries that have not been used for PRUNE_AGE milliseconds.
+   */
+  private void prune( File baseDirectory )
+  {
+    long cutoff = System.currentTimeMillis() - PRUNE_AGE;
+    File[] classPathDirectories = baseDirectory.listFiles();
+    if( classPathDirectories == null ) {
+      return;
+    }
+    for( File classPathDirectory : classPathDirectories ) {
+      if( !classPathDirectory.isDirectory() ) {
+        continue;
+      }
+      boolean stale = !classPathDirectory.equals(directory) && classPathDirectory.lastModified() < cutoff;
+      File[] entryFiles = classPathDirectory.listFiles();
+      if( entryFiles != null ) {
+        for( File entryFile : entryFiles ) {
+          if( stale || entryFile.lastModified() < cutoff ) {
+            entryFile.delete();
+          }
+        }
+      }
+      if( stale && classPathDirectory.delete() && log.isDebugEnabled() ) {
+        log.debug("Removed the stale bytecode cache directory '"+classPathDirectory+"'.");
+      }
+    }
+  }
+
+  /**
+   * Returns a fingerprint of the class path of the class loader and its parents.  Jar files contribute their location, size and
+   * modification time.  Directories contribute their location and the newest modification time of the files below them.  When the
+   * system class loader is not a URLClassLoader, as on Java 9 and later, the entries of the java.class.path property are used for it.
+   * The parents of the system class loader only load the classes of the JVM, so they are not part of the fingerprint.
+   *
+   * @throws IOException if a class path directory has more than MAX_DIRECTORY_FILES files below it, or if a class loader other than
+   * the system class loader is not a URLClassLoader.  The class path of such a class loader cannot be fingerprinted, so its classes
+   * must not be cached.
+   */
+  static String classPathFingerprint( ClassLoader classLoader )
+    throws IOException
+  {
+    MessageDigest digest = newDigest();
+    update(digest, GENERATOR_VERSION);
+    ClassLoader systemClassLoader = ClassLoader.getSystemClassLoader();
+    for( ClassLoader current = classLoader; current != null; current = current.getParent() ) {
+      if( current instanceof URLClassLoader ) {
+        for( URL url : ((URLClassLoader)current).getURLs() ) {
+          update(digest, url.toExternalForm());
+          if( "file".equals(url.getProtocol()) ) {
+            update(digest, toFile(url));
+          }
+        }
+      }
+      else if( current == systemClassLoader ) {
+        for( String entry : System.getProperty("java.class.path", "").split(File.pathSeparator) ) {
+          if( entry.length() > 0 ) {
+            File file = new File(entry).getAbsoluteFile();
+            update(digest, file.getPath());
+            update(digest, file);
+          }
+        }
+      }
+      else {
+        throw new IOException("The class loader '"+current.getClass().getName()+"' is not a URLClassLoader, so its class path cannot be fingerprinted.");
+      }
+      if( current == systemClassLoader ) {
+        break;
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Adds a class path file to the fingerprint.  Jar files contribute their size and modification time, directories contribute the
+   * newest modification time of the files below them.
+   */
+  private static void update( MessageDigest digest, File file )
+    throws IOException
+  {
+    if( file.isDirectory() ) {
+      long[] newest = { file.lastModified() };
+      int[] remaining = { MAX_DIRECTORY_FILES };
+      if( !newestModification(file, newest, remaining) ) {
+        throw new IOException("The class path directory '"+file+"' has more than "+MAX_DIRECTORY_FILES+" files below it, package it as a jar to cache the classes generated from it.");
+      }
+      update(digest, Long.toString(newest[0]));
+    }
+    else {
+      update(digest, file.length()+":"+file.lastModified());
+    }
+  }
+
+  private static File toFile( URL url )
+  {
+    try {
+      return new File(url.toURI());
+    }
+    catch( Exception e ) {
+      return new File(url.getPath());
+    }
+  }
+
+  /**
+   * Finds the newest modification time of the files below the directory, visiting at most remaining[0] files.
+   *
+   * @return false if there were more files below the directory than were left to visit.
+   */
+  private static boolean newestModification( File directory, long[] newest, int[] remaining )
+  {
+    File[] children = directory.listFiles();
+    if( children == null ) {
+      return true;
+    }
+    for( File child : children ) {
+      if( --remaining[0] < 0 ) {
+        return false;
+      }
+      newest[0] = Math.max(newest[0], child.lastModified());
+      if( child.isDirectory() && !newestModification(child, newest, remaining) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static MessageDigest newDigest()
+  {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch( NoSuchAlgorithmException nsae ) {
+      throw new IllegalStateException("The SHA-1 message digest is not available.", nsae);
+    }
+  }
+
+  private static void update( MessageDigest digest, String value )
+  {
+    try {
+      digest.update(value.getBytes("UTF-8"));
+      digest.update((byte)0);
+    }
+    catch( UnsupportedEncodingException uee ) {
+      throw new IllegalStateException("The UTF-8 encoding is not available.", uee);
+    }
+  }
+
+  private static String toHex( byte[] bytes )
+  {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for( byte b : bytes ) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+
+  private static void close( Closeable closeable )
+  {
+    if( closeable != null ) {
+      try {
+        closeable.close();
+      }
+      catch( IOException ioe ) {
+        // ignore.
+      }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, least recently used cache that can be read without locking.  Lookups are served from a ConcurrentHashMap and only
+ * record an access stamp on the entry.  An entry that already holds the newest stamp is not written again, so repeated lookups of
+ * the same hot entry do not contend on the shared clock.  When an insert pushes the cache over its maximum size, the entries with
+ * the oldest access stamps are dropped.  Eviction is done by a single thread at a time, so the cache may briefly hold
+ * more than its maximum size while another thread is inserting.
+ *
+ * @param <K> The class to key upon.
+ * @param <V> The data class.
+ */
+public class ConcurrentLruCache<K, V>
+{
+  public static Logger log = LoggerFactory.getLogger( ConcurrentLruCache.class );
+
+  /** The entries in this cache. */
+  private final ConcurrentMap<K, Entry<V>> entryMap;
+  /** The source of access stamps. */
+  private final AtomicLong clock = new AtomicLong();
+  /** The lock held by the thread that is evicting entries. */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  /** The maximum number of entries in the cache. */
+  protected int cacheSize;
+
+  /**
+   * @param cacheSize The maximum number of entries in the cache.
+   */
+  public ConcurrentLruCache( int cacheSize )
+  {
+    this.cacheSize = cacheSize;
+    this.entryMap = new ConcurrentHashMap<K, Entry<V>>( cacheSize+1 );
+  }
+
+  /**
+   * Returns the value for the given key, or null if the key is not in the cache.
+   */
+  public V get( K key )
+  {
+    Entry<V> entry = entryMap.get(key);
+    if( entry == null ) {
+      return null;
+    }
+    touch(entry);
+    return entry.value;
+  }
+
+  /**
+   * Adds the value to the cache, if there is not already a value for the given key.
+   *
+   * @return the value that was already in the cache for the key, or null if the given value was added.
+   */
+  public V putIfAbsent( K key, V value )
+  {
+    Entry<V> existing = entryMap.putIfAbsent(key, new Entry<V>(value, clock.incrementAndGet()));
+    if( existing != null ) {
+      touch(existing);
+      return existing.value;
+    }
+    evict();
+    return null;
+  }
+
+  /**
+   * Removes the value for the given key from the cache.
+   *
+   * @return the value that was removed, or null if the key was not in the cache.
+   */
+  public V remove( K key )
+  {
+    Entry<V> entry = entryMap.remove(key);
+    return entry == null ? null : entry.value;
+  }
+
+  /**
+   * Removes all of the entries from the cache.
+   */
+  public void clear()
+  {
+    entryMap.clear();
+  }
+
+  /**
+   * Returns a snapshot of the values in the cache.  Reading the values does not count as an access.
+   */
+  public List<V> values()
+  {
+    List<V> values = new ArrayList<V>(entryMap.size());
+    for( Entry<V> entry : entryMap.values() ) {
+      values.add(entry.value);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   */
+  public int size()
+  {
+    return entryMap.size();
+  }
+
+  /**
+   * Records an access of the given entry.  The clock is only advanced if the entry is not already the most recently used entry.
+   */
+  private void touch( Entry<V> entry )
+  {
+    if( entry.accessed != clock.get() ) {
+      entry.accessed = clock.incrementAndGet();
+    }
+  }
+
+  /**
+   * Drops the least recently used entries until the cache is back to its maximum size.  If another thread is already evicting
+   * entries, then this method returns without doing anything.
+   */
+  protected void evict()
+  {
+    if( entryMap.size() <= cacheSize || !evictionLock.tryLock() ) {
+      return;
+    }
+    try {
+      while( entryMap.size() > cacheSize ) {
+        Map.Entry<K, Entry<V>> eldest = null;
+        for( Map.Entry<K, Entry<V>> candidate : entryMap.entrySet() ) {
+          if( eldest == null || candidate.getValue().accessed < eldest.getValue().accessed ) {
+            eldest = candidate;
+          }
+        }
+        if( eldest == null ) {
+          return;
+        }
+        if( entryMap.remove(eldest.getKey(), eldest.getValue()) ) {
+          if( log.isDebugEnabled() ) {
+            log.debug("Removing cache entry for '"+eldest.getKey()+"'.");
+          }
+          evicted(eldest.getKey(), eldest.getValue().value);
+        }
+      }
+    }
+    finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Called after an entry has been evicted from the cache.  Subclasses can override this method to release the value.
+   *
+   * @param key the key of the evicted entry.
+   * @param value the value of the evicted entry.
+   */
+  protected void evicted( K key, V value )
+  {
+  }
+
+  /**
+   * A value in the cache along with the stamp of its last access.
+   */
+  private static class Entry<V>
+  {
+    private final V value;
+    private volatile long accessed;
+
+    public Entry( V value, long accessed )
+    {
+      this.value = value;
+      this.accessed = accessed;
+    }
+  }
+}
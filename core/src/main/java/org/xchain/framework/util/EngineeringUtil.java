@@ -34,6 +34,11 @@ import java.util.regex.Matcher;
 
 import javax.xml.namespace.QName;
 
+import org.apache.commons.jxpath.CompiledExpression;
+import org.apache.commons.jxpath.JXPathContext;
+
+import org.xchain.AttributeDetail;
+import org.xchain.EngineeredCommand;
 import org.xchain.annotations.Attribute;
 import org.xchain.annotations.AttributeType;
 import org.xchain.annotations.PrefixMapping;
@@ -113,7 +118,12 @@ public class EngineeringUtil
       CtMethod prefixMappingGetterMethod = CtNewMethod.make("public java.util.Map getPrefixMap() { return prefixMap; }", engineeredClass);
       engineeredClass.addMethod(prefixMappingGetterMethod);
 
-      engineeredClass.addField(CtField.make("protected java.util.Map attributeMap = new java.util.HashMap();", engineeredClass));
+      // add a map of compiled jxpath expressions, so that attribute values are only parsed once per command.
+      engineeredClass.addField(CtField.make("protected java.util.Map compiledExpressionMap = new java.util.concurrent.ConcurrentHashMap();", engineeredClass));
+      engineeredClass.addMethod(CtNewMethod.make("public java.util.Map getCompiledExpressionMap() { return compiledExpressionMap; }", engineeredClass));
+
+      // the attribute map drops the compiled expression for an attribute when its value changes, so it is created after the compiled expression map.
+      engineeredClass.addField(CtField.make("protected java.util.Map attributeMap = new org.xchain.framework.util.AttributeValueMap(compiledExpressionMap);", engineeredClass));
       engineeredClass.addMethod(CtNewMethod.make("public java.util.Map getAttributeMap() { return attributeMap; }", engineeredClass));
 
       engineeredClass.addField(CtField.make("protected javax.xml.namespace.QName qName = null;", engineeredClass));
@@ -345,42 +355,54 @@ public class EngineeringUtil
 
           // ASSERT: The top of the method definition is now done.  The value of the attribute has now been looked up, defaulted, or the method would have caused an exception.
 
+          // JXPath attributes are evaluated with the compiled expression for this attribute.  The expression is normally compiled
+          // when the catalog is loaded, but attributes that fall back to their default value are compiled on first use.
+          if( isCompiledAttributeType( attributeType ) ) {
+            methodBody.append("    // get the compiled expression for this attribute.\n");
+            methodBody.append("    org.apache.commons.jxpath.CompiledExpression compiledExpression = (org.apache.commons.jxpath.CompiledExpression)compiledExpressionMap.get(attributeName);\n");
+            methodBody.append("    if( compiledExpression == null ) {\n");
+            methodBody.append("      compiledExpression = org.apache.commons.jxpath.JXPathContext.compile(attributeValue);\n");
+            methodBody.append("      compiledExpressionMap.put(attributeName, compiledExpression);\n");
+            methodBody.append("    }\n");
+            methodBody.append("\n");
+          }
+
           // It is now time to add the logic for the AttriuteType.
           switch( attributeType ) {
             // 
             // AttributeType.JXPATH_VALUE attributes follow one of two patterns... 
             // For methods that start with "iterate" and have a type of java.util.Iterator, the following code is used:
-            //   result = ($r)$1.iterate(attributeValue);
+            //   result = ($r)compiledExpression.iterate($1);
             //
             // For all other methods, the following code is used:
             //   if( !TYPE.isAssignableFrom(REQUESTED_TYPE) {
             //     throw new IllegalArgumentException("Can not cast REQUESTED_TYPE into TYPE.");
             //   }
-            //   result = ($r)$1.getValue(attributeValue, TYPE);
+            //   result = ($r)compiledExpression.getValue($1, TYPE);
             case JXPATH_VALUE:
               if( isIterateMethod ) {
-                methodBody.append("    result = ($r)$1.iterate(attributeValue);\n");
+                methodBody.append("    result = ($r)compiledExpression.iterate($1);\n");
               }
               else {
-                methodBody.append("    result = ($r)$1.getValue(attributeValue, ").append(typeExpression).append(");\n");
+                methodBody.append("    result = ($r)compiledExpression.getValue($1, ").append(typeExpression).append(");\n");
               }
               break;
             case JXPATH_SELECT_NODES:
               if( isIterateMethod ) {
-                methodBody.append("    result = ($r)$1.selectNodes(attributeValue).iterator();\n");
+                methodBody.append("    result = ($r)org.xchain.framework.util.JXPathContextUtil.selectNodes($1, compiledExpression).iterator();\n");
               }
               else {
-                methodBody.append("    return ($r)$1.selectNodes(attributeValue);\n");
+                methodBody.append("    return ($r)org.xchain.framework.util.JXPathContextUtil.selectNodes($1, compiledExpression);\n");
               }
               break;
             case JXPATH_SELECT_SINGLE_NODE:
-              methodBody.append("    return ($r)$1.selectSingleNode(attributeValue);\n");
+              methodBody.append("    return ($r)org.xchain.framework.util.JXPathContextUtil.selectSingleNode($1, compiledExpression);\n");
               break;
             case JXPATH_POINTER:
-              methodBody.append("    result = ($r)$1.getPointer(attributeValue);\n");
+              methodBody.append("    result = ($r)compiledExpression.getPointer($1);\n");
               break;
             case JXPATH_ITERATE_POINTERS:
-              methodBody.append("    result = ($r)$1.iteratePointers(attributeValue);\n");
+              methodBody.append("    result = ($r)compiledExpression.iteratePointers($1);\n");
               break;
             case QNAME:
               if( engineeredMethod.getReturnType().subtypeOf(qNameClass) ) {
@@ -597,6 +619,43 @@ public class EngineeringUtil
     return engineeredClass;
   }
 
+  /**
+   * Returns true if attributes of the given type are evaluated with a compiled JXPath expression.
+   * @param attributeType The attribute type to test.
+   * @return True if the attribute type is one of the JXPath attribute types.
+   */
+  public static boolean isCompiledAttributeType( AttributeType attributeType )
+  {
+    switch( attributeType ) {
+      case JXPATH_VALUE:
+      case JXPATH_SELECT_NODES:
+      case JXPATH_SELECT_SINGLE_NODE:
+      case JXPATH_POINTER:
+      case JXPATH_ITERATE_POINTERS:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Compiles the JXPath attributes defined on the given command and stores the results in the command's compiled expression map.  This
+   * is called when the command is loaded, so that the engineered attribute getters do not parse their expressions during execution.
+   *
+   * @param command The engineered command to compile the attributes for.
+   */
+  public static void compileAttributes( EngineeredCommand command )
+  {
+    Map<QName, String> attributeMap = command.getAttributeMap();
+    Map<QName, CompiledExpression> compiledExpressionMap = command.getCompiledExpressionMap();
+    for( Map.Entry<QName, AttributeDetail> entry : command.getAttributeDetailMap().entrySet() ) {
+      String attributeValue = attributeMap.get(entry.getKey());
+      if( attributeValue != null && isCompiledAttributeType( entry.getValue().getType() ) ) {
+        compiledExpressionMap.put(entry.getKey(), JXPathContext.compile(attributeValue));
+      }
+    }
+  }
+
   /**
    * Build a unique engineered command name from the given CtClass.
    * @param originalClass The class to build a unique engineered command name from.
@@ -18,10 +18,15 @@ package org.xchain.framework.util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.regex.PatternSyntaxException;
+import org.apache.commons.jxpath.CompiledExpression;
 import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.Pointer;
 import org.apache.commons.jxpath.JXPathException;
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
@@ -152,4 +157,34 @@ public class JXPathContextUtil
 
     throw new JXPathException("There is a syntax error in the qname '"+value+"'.");
   }
+
+  /**
+   * Selects the nodes for a compiled expression.  This is the compiled expression equivalent of JXPathContext.selectNodes(String xpath).
+   *
+   * @param context the context to evaluate the expression against.
+   * @param expression the compiled expression.
+   * @return the list of nodes selected by the expression.
+   */
+  public static List selectNodes( JXPathContext context, CompiledExpression expression )
+  {
+    List<Object> nodes = new ArrayList<Object>();
+    Iterator pointerIterator = expression.iteratePointers(context);
+    while( pointerIterator.hasNext() ) {
+      nodes.add(((Pointer)pointerIterator.next()).getNode());
+    }
+    return nodes;
+  }
+
+  /**
+   * Selects a single node for a compiled expression.  This is the compiled expression equivalent of JXPathContext.selectSingleNode(String xpath).
+   *
+   * @param context the context to evaluate the expression against.
+   * @param expression the compiled expression.
+   * @return the node selected by the expression, or null if no node was selected.
+   */
+  public static Object selectSingleNode( JXPathContext context, CompiledExpression expression )
+  {
+    Pointer pointer = expression.getPointer(context);
+    return pointer == null ? null : pointer.getNode();
+  }
 }
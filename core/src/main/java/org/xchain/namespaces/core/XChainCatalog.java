@@ -24,16 +24,22 @@ import javax.xml.XMLConstants;
 
 import org.xchain.framework.util.CompositeMap;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.WeakHashMap;
 
 /**
  * The default implementation of Catalog for the XChains package.
  *
+ * Commands are looked up in a flattened index of this catalog's commands and the commands of its imports.  The index is built the first
+ * time a command is looked up and is not changed after that, so lookups do not walk the imported catalogs.  When a command is added to
+ * this catalog, or to a catalog that it imports, the index is dropped and a new index is built by the next lookup.
+ *
  * @author Christian Trimble
  * @author Devon Tackett
  */
@@ -47,6 +53,18 @@ public class XChainCatalog
   /** A list of all command maps attached to this catalog through import.  The command maps are sorted by precedent. */
   protected LinkedList<Map<QName, Command>> commandMapList = new LinkedList<Map<QName, Command>>();
 
+  /** The catalogs imported by this catalog, in the order of their precedence. */
+  protected List<Catalog> importList = new ArrayList<Catalog>();
+
+  /** The catalogs that import this catalog.  The catalogs are weakly referenced, so they can be collected. */
+  private final Map<XChainCatalog, Boolean> importerMap = new WeakHashMap<XChainCatalog, Boolean>();
+
+  /** The flattened index of the commands in this catalog and its imports, or null if the index needs to be built. */
+  private volatile CommandIndex commandIndex = null;
+
+  /** The number of times the commands of this catalog have changed. */
+  private volatile int version = 0;
+
   public XChainCatalog()
   {
     commandMapList.add(commandMap);
@@ -60,13 +78,21 @@ public class XChainCatalog
     public List<Map<QName, Command>> mapList() { return commandMapList; }
   };
 
+  /** The read only view of the composite command map returned by getCommandMap(). */
+  private final Map<QName, Command> unmodifiableCommandMap = Collections.unmodifiableMap(compositeCommandMap);
+
   /**
    * Gets the command for the name specified in the default namespace, or null if the command was not found.
    */
   public Command getCommand( String name )
     throws CommandNotFoundException
   {
-    return getCommand(new QName(XMLConstants.NULL_NS_URI, name));
+    Command command = getCommandIndex().localNameMap.get(name);
+
+    if (command == null)
+      throw new CommandNotFoundException("Could not find command '" + new QName(XMLConstants.NULL_NS_URI, name) + "'");
+
+    return command;
   }
 
   /**
@@ -75,7 +101,7 @@ public class XChainCatalog
   public Command getCommand( QName name )
     throws CommandNotFoundException
   {
-    Command command = compositeCommandMap.get(name);
+    Command command = getCommandIndex().qNameMap.get(name);
     
     if (command == null)
       throw new CommandNotFoundException("Could not find command '" + name + "'");
@@ -89,20 +115,129 @@ public class XChainCatalog
   public void addCommand( String name, Command command )
   {
     commandMap.put(new QName(XMLConstants.NULL_NS_URI, name), command);
+    invalidateIndex();
   }
 
   public void addCommand( QName qName, Command command )
   {
     commandMap.put(qName, command);
+    invalidateIndex();
   }
 
+  /**
+   * Returns a read only view of the commands in this catalog and its imports.  Commands are added with addCommand(...), so that the
+   * command index is dropped when the commands change.
+   */
   public Map<QName, Command> getCommandMap()
   {
-    return compositeCommandMap;
+    return unmodifiableCommandMap;
   }
 
   public void addImport( Catalog catalog )
   {
     commandMapList.add(Collections.unmodifiableMap(catalog.getCommandMap()));
+    importList.add(catalog);
+    if( catalog instanceof XChainCatalog ) {
+      ((XChainCatalog)catalog).addImporter(this);
+    }
+    invalidateIndex();
+  }
+
+  /**
+   * Returns the number of times the commands of this catalog, or of the catalogs that it imports, have changed.  Callers that hold on to
+   * a command from this catalog can compare versions to find out if they need to look the command up again.
+   */
+  public int getVersion()
+  {
+    return version;
+  }
+
+  /**
+   * Returns the flattened command index, building it if it has been dropped.
+   */
+  private CommandIndex getCommandIndex()
+  {
+    CommandIndex index = commandIndex;
+    if( index == null ) {
+      index = buildCommandIndex();
+    }
+    return index;
+  }
+
+  /**
+   * Builds the flattened command index.  The index is built while holding the lock of this catalog, so a change to the commands cannot
+   * be lost while the index is being built.
+   */
+  private synchronized CommandIndex buildCommandIndex()
+  {
+    if( commandIndex != null ) {
+      return commandIndex;
+    }
+
+    // add the commands from the lowest precedence to the highest, so that commands with higher precedence replace the others.
+    Map<QName, Command> qNameMap = new HashMap<QName, Command>();
+    for( int i = importList.size() - 1; i >= 0; i-- ) {
+      Catalog catalog = importList.get(i);
+      if( catalog instanceof XChainCatalog ) {
+        qNameMap.putAll(((XChainCatalog)catalog).getCommandIndex().qNameMap);
+      }
+      else {
+        qNameMap.putAll(catalog.getCommandMap());
+      }
+    }
+    qNameMap.putAll(commandMap);
+
+    Map<String, Command> localNameMap = new HashMap<String, Command>();
+    for( Map.Entry<QName, Command> entry : qNameMap.entrySet() ) {
+      if( XMLConstants.NULL_NS_URI.equals(entry.getKey().getNamespaceURI()) ) {
+        localNameMap.put(entry.getKey().getLocalPart(), entry.getValue());
+      }
+    }
+
+    commandIndex = new CommandIndex(qNameMap, localNameMap);
+    return commandIndex;
+  }
+
+  /**
+   * Drops the command index of this catalog and of the catalogs that import it.
+   */
+  protected void invalidateIndex()
+  {
+    List<XChainCatalog> importerList = null;
+    synchronized( this ) {
+      version++;
+      commandIndex = null;
+    }
+    synchronized( importerMap ) {
+      importerList = new ArrayList<XChainCatalog>(importerMap.keySet());
+    }
+    for( XChainCatalog importer : importerList ) {
+      importer.invalidateIndex();
+    }
+  }
+
+  /**
+   * Registers a catalog that imports this catalog.
+   */
+  private void addImporter( XChainCatalog importer )
+  {
+    synchronized( importerMap ) {
+      importerMap.put(importer, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * The flattened commands of a catalog.
+   */
+  private static class CommandIndex
+  {
+    private final Map<QName, Command> qNameMap;
+    private final Map<String, Command> localNameMap;
+
+    public CommandIndex( Map<QName, Command> qNameMap, Map<String, Command> localNameMap )
+    {
+      this.qNameMap = qNameMap;
+      this.localNameMap = localNameMap;
+    }
   }
 }
@@ -24,6 +24,7 @@ import org.xchain.Registerable;
 import org.xchain.framework.lifecycle.Execution;
 import org.xchain.framework.sax.CommandXmlReader;
 import org.xchain.framework.sax.CommandHandler;
+import org.xchain.framework.sax.StaticMarkup;
 import org.xchain.impl.ChainImpl;
 import static org.xchain.namespaces.jsl.CommandExecutionState.*;
 import org.xchain.namespaces.sax.PipelineCommand;
@@ -47,12 +48,6 @@ public abstract class AbstractTemplateCommand
   extends ChainImpl
   implements Locatable, Registerable
 {
-  /** The thread local stack of command execution state arrays. */
-  public static final ThreadLocal<LinkedList<CommandExecutionState[]>> commandExecutionStateStackTL = new ThreadLocal<LinkedList<CommandExecutionState[]>>();
-
-  /** The thread local stack of element output state arrays. */
-  public static final ThreadLocal<LinkedList<ElementOutputState[]>> elementOutputStateStackTL = new ThreadLocal<LinkedList<ElementOutputState[]>>();
-
   public static final ThreadLocal<LinkedList<QName>> dynamicElementStackTL = new ThreadLocal<LinkedList<QName>>();
 
   public static final ThreadLocal<SAXException> saxExceptionTl = new ThreadLocal<SAXException>();
@@ -64,24 +59,15 @@ public abstract class AbstractTemplateCommand
    */
   protected static CommandExecutionState[] getCommandExecutionState()
   {
-    LinkedList<CommandExecutionState[]> stack = commandExecutionStateStackTL.get();
-
-    if( stack == null || stack.isEmpty() ) {
-      throw new IllegalStateException("getCommandExecutionState() called outside of execute method.");
-    }
-
-    return stack.getFirst();
+    return TemplateStateArena.getInstance().getCommandExecutionState();
   }
 
+  /**
+   * Returns the element output state array for the current thread.
+   */
   protected static ElementOutputState[] getElementOutputState()
   {
-    LinkedList<ElementOutputState[]> stack = elementOutputStateStackTL.get();
-
-    if( stack == null || stack.isEmpty() ) {
-      throw new IllegalStateException("getElementOutputState() called outside of execute method.");
-    }
-
-    return stack.getFirst();
+    return TemplateStateArena.getInstance().getElementOutputState();
   }
 
   protected static LinkedList<QName> getDynamicElementStack()
@@ -98,6 +84,7 @@ public abstract class AbstractTemplateCommand
   protected String systemId = null;
   protected QName qName = null;
   protected int templateDepth = 0;
+  private StaticMarkup[] staticMarkup = new StaticMarkup[0];
 
   public AbstractTemplateCommand( int elementCount )
   {
@@ -111,87 +98,21 @@ public abstract class AbstractTemplateCommand
   public String getSystemId() { return this.systemId; }
 
   /**
-   * Pushes a new command execution state array onto the stack.  The new state array has its values initialized to PRE_EXECUTE.
+   * Pushes new command execution and element output state arrays for this template.  The arrays come from the template state arena of
+   * the current thread, so they are only allocated when this template needs larger arrays than the arena already holds.  The command
+   * execution states are initialized to PRE_EXECUTE and the element output states are initialized to PRE_START.
    */
-  private final void pushCommandExecutionState()
+  private final void pushTemplateState()
   {
-    // create the state array.
-    int childCount = getCommandList().size();
-    CommandExecutionState[] state = new CommandExecutionState[childCount];
-    for( int i = 0; i < childCount; i++ ) {
-      state[i] = PRE_EXECUTE;
-    }
-
-    // get the stack, creating it if it is missing.
-    LinkedList<CommandExecutionState[]> stack = commandExecutionStateStackTL.get();
-    if( stack == null ) {
-      stack = new LinkedList<CommandExecutionState[]>();
-      commandExecutionStateStackTL.set(stack);
-    }
-
-    // push the state array.
-    stack.addFirst(state);
+    TemplateStateArena.getInstance().push(getCommandList().size(), elementCount);
   }
 
   /**
-   * Pops the current command execution state array from the stack.
+   * Pops the current command execution and element output state arrays.
    */
-  private final void popCommandExecutionState()
+  private final void popTemplateState()
   {
-    // get the stack for the current thread.
-    LinkedList<CommandExecutionState[]> stack = commandExecutionStateStackTL.get();
-
-    // if there was not a stack, then we are in an illegal state.
-    if( stack == null ) {
-      throw new IllegalStateException("popCommandExecutionState() called when there was not a current stack.");
-    }
-
-    // remove the state array from the stack.
-    stack.removeFirst();
-
-    // if the stack is now empty, clean the thread local up.
-    if( stack.isEmpty() ) {
-      commandExecutionStateStackTL.remove();
-    }
-  }
-
-  private final void pushElementOutputState()
-  {
-    // create the state array.
-    ElementOutputState[] state = new ElementOutputState[elementCount];
-    for( int i = 0; i < elementCount; i++ ) {
-      state[i] = ElementOutputState.PRE_START;
-    }
-
-    // get the stack, creating it if it is missing.
-    LinkedList<ElementOutputState[]> stack = elementOutputStateStackTL.get();
-    if( stack == null ) {
-      stack = new LinkedList<ElementOutputState[]>();
-      elementOutputStateStackTL.set(stack);
-    }
-
-    // push the state array.
-    stack.addFirst(state);
-  }
-
-  private final void popElementOutputState()
-  {
-    // get the stack for the current thread.
-    LinkedList<ElementOutputState[]> stack = elementOutputStateStackTL.get();
-
-    // if there was not a stack, then we are in an illegal state.
-    if( stack == null ) {
-      throw new IllegalStateException("popElementOutputState() called when there was not a current stack.");
-    }
-
-    // remove the state array from the stack.
-    stack.removeFirst();
-
-    // if the stack is now empty, clean the thread local up.
-    if( stack.isEmpty() ) {
-      elementOutputStateStackTL.remove();
-    }
-
+    TemplateStateArena.getInstance().pop();
   }
 
   private final void pushHandlerInfo( JXPathContext context )
@@ -282,6 +203,16 @@ public abstract class AbstractTemplateCommand
     return getElementOutputState()[elementIndex] == ElementOutputState.STARTED;
   }
 
+  /**
+   * Sets the static markup blocks output by this template.  Generated templates refer to the blocks by their index.
+   */
+  public void setStaticMarkup( StaticMarkup[] staticMarkup ) { this.staticMarkup = staticMarkup; }
+
+  protected StaticMarkup getStaticMarkup( int index )
+  {
+    return staticMarkup[index];
+  }
+
   public void setLocator( Locator locator ) { this.locator = locator; }
   public Locator getLocator() { return locator; }
 
@@ -309,9 +240,8 @@ public abstract class AbstractTemplateCommand
       if( createDynamicElementStack ) {
         dynamicElementStackTL.set(new LinkedList<QName>());
       }
-      // push a new command execution state array onto the stack.
-      pushCommandExecutionState();
-      pushElementOutputState();
+      // push the command execution state and element output state arrays.
+      pushTemplateState();
 
       // push the information about the current output document.
       pushHandlerInfo( context );
@@ -333,9 +263,8 @@ public abstract class AbstractTemplateCommand
       // pop the information about the current output document.
       popHandlerInfo();
 
-      popElementOutputState();
-      // pop the command execution state array off of the stack.
-      popCommandExecutionState();
+      // pop the command execution state and element output state arrays.
+      popTemplateState();
 
       if( createDynamicElementStack ) {
         dynamicElementStackTL.remove();
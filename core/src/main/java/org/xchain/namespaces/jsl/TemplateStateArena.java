@@ -0,0 +1,125 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.jsl;
+
+import java.util.Arrays;
+
+/**
+ * The per thread storage for the state arrays of executing templates.  There is one level in the arena for each template that is
+ * executing on the thread, the outer most template being level 0.  The arrays of a level are kept when the template at that level
+ * finishes and are reused by the next template executed at the same level, so arrays are only allocated when a template needs a
+ * larger array than any template that has executed at that level before.  Arrays can be longer than the template that is using them
+ * needs, templates only use the indices below their child count and element count.
+ */
+final class TemplateStateArena
+{
+  /** The number of levels that the arena starts with. */
+  private static final int INITIAL_DEPTH = 8;
+
+  private static final ThreadLocal<TemplateStateArena> arenaTL = new ThreadLocal<TemplateStateArena>() {
+    protected TemplateStateArena initialValue() {
+      return new TemplateStateArena();
+    }
+  };
+
+  /**
+   * Returns the arena for the current thread.
+   */
+  static TemplateStateArena getInstance()
+  {
+    return arenaTL.get();
+  }
+
+  private CommandExecutionState[][] commandExecutionStates = new CommandExecutionState[INITIAL_DEPTH][];
+  private ElementOutputState[][] elementOutputStates = new ElementOutputState[INITIAL_DEPTH][];
+
+  /** The number of levels that are in use. */
+  private int depth = 0;
+
+  private TemplateStateArena() {}
+
+  /**
+   * Starts a new level for a template.  The command execution states of the level are initialized to PRE_EXECUTE and the element
+   * output states are initialized to PRE_START.
+   *
+   * @param childCount the number of children of the template.
+   * @param elementCount the number of elements in the template.
+   */
+  void push( int childCount, int elementCount )
+  {
+    if( depth == commandExecutionStates.length ) {
+      CommandExecutionState[][] newCommandExecutionStates = new CommandExecutionState[depth*2][];
+      System.arraycopy(commandExecutionStates, 0, newCommandExecutionStates, 0, depth);
+      commandExecutionStates = newCommandExecutionStates;
+      ElementOutputState[][] newElementOutputStates = new ElementOutputState[depth*2][];
+      System.arraycopy(elementOutputStates, 0, newElementOutputStates, 0, depth);
+      elementOutputStates = newElementOutputStates;
+    }
+
+    if( commandExecutionStates[depth] == null || commandExecutionStates[depth].length < childCount ) {
+      commandExecutionStates[depth] = new CommandExecutionState[childCount];
+    }
+    Arrays.fill(commandExecutionStates[depth], 0, childCount, CommandExecutionState.PRE_EXECUTE);
+
+    if( elementOutputStates[depth] == null || elementOutputStates[depth].length < elementCount ) {
+      elementOutputStates[depth] = new ElementOutputState[elementCount];
+    }
+    Arrays.fill(elementOutputStates[depth], 0, elementCount, ElementOutputState.PRE_START);
+
+    depth++;
+  }
+
+  /**
+   * Ends the current level.  The arrays of the level are kept for the next template executed at this level.
+   */
+  void pop()
+  {
+    if( depth == 0 ) {
+      throw new IllegalStateException("pop() called when there was not a current template state.");
+    }
+    depth--;
+  }
+
+  /**
+   * Returns the number of levels that are in use.
+   */
+  int getDepth()
+  {
+    return depth;
+  }
+
+  /**
+   * Returns the command execution state array of the current level.
+   */
+  CommandExecutionState[] getCommandExecutionState()
+  {
+    if( depth == 0 ) {
+      throw new IllegalStateException("getCommandExecutionState() called outside of execute method.");
+    }
+    return commandExecutionStates[depth-1];
+  }
+
+  /**
+   * Returns the element output state array of the current level.
+   */
+  ElementOutputState[] getElementOutputState()
+  {
+    if( depth == 0 ) {
+      throw new IllegalStateException("getElementOutputState() called outside of execute method.");
+    }
+    return elementOutputStates[depth-1];
+  }
+}
@@ -17,6 +17,7 @@ package org.xchain.namespaces.jsl;
 
 import org.xchain.Locatable;
 import org.xchain.EngineeredCommand;
+import org.xchain.Registerable;
 import org.xchain.impl.ChainImpl;
 import org.apache.commons.jxpath.JXPathContext;
 import org.xchain.annotations.Element;
@@ -30,7 +31,7 @@ import org.xchain.annotations.Element;
 @Element(localName="temporary")
 public abstract class TemporaryCommand
   extends ChainImpl
-  implements Locatable, EngineeredCommand
+  implements Locatable, EngineeredCommand, Registerable
 {
   public boolean execute( JXPathContext context )
     throws Exception
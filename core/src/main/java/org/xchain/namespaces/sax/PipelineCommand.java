@@ -156,6 +156,9 @@ public abstract class PipelineCommand
   {
     PipelineConfig config = new PipelineConfig();
 
+    // the xml reader borrowed from the pool, if the pipeline did not configure its own reader.
+    XMLReader pooledReader = null;
+
     // create the dependency uri resolver.
 
     try {
@@ -207,8 +210,9 @@ public abstract class PipelineCommand
       pipeline.setCompositeStage(config.getCompositeStage());
 
       if( config.getXmlReader() == null ) {
-        // set the xml reader on the pipeline.
-        pipeline.setXmlReader(XmlFactoryLifecycle.newXmlReader());
+        // borrow an xml reader for the pipeline.
+        pooledReader = XmlFactoryLifecycle.borrowXmlReader();
+        pipeline.setXmlReader(pooledReader);
       }
       else {
         pipeline.setXmlReader(config.getXmlReader());
@@ -226,6 +230,9 @@ public abstract class PipelineCommand
 
     }
     finally {
+      // return the borrowed xml reader to the pool.
+      XmlFactoryLifecycle.releaseXmlReader(pooledReader);
+
       // reset the stage list.
       popPipelineConfig();
 
@@ -0,0 +1,80 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+
+public class TestCatalogPreloader
+{
+  public static String CATALOG_URI = "resource://context-class-loader/org/xchain/namespaces/test/annotation-default.xchain";
+  public static String MISSING_CATALOG_URI = "resource://context-class-loader/org/xchain/namespaces/test/missing.xchain";
+
+  @BeforeClass public static void setUpLifecycle()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+  }
+
+  @AfterClass public static void tearDownLifecycle()
+    throws Exception
+  {
+    Lifecycle.stopLifecycle();
+  }
+
+  @Test public void testSystemIds()
+    throws Exception
+  {
+    CatalogPreloader preloader = new CatalogPreloader(Thread.currentThread().getContextClassLoader());
+    preloader.addSystemId(CATALOG_URI);
+    preloader.addSystemId(MISSING_CATALOG_URI);
+
+    List<CatalogPreloader.Result> resultList = preloader.preload(2);
+
+    assertEquals("The wrong number of catalogs were preloaded.", 2, resultList.size());
+    assertEquals("The results are not in order.", CATALOG_URI, resultList.get(0).getSystemId());
+    assertTrue("The catalog was not loaded.", resultList.get(0).isLoaded());
+    assertFalse("The missing catalog was loaded.", resultList.get(1).isLoaded());
+    assertNotNull("The failure of the missing catalog was not recorded.", resultList.get(1).getFailure());
+  }
+
+  @Test public void testPattern()
+    throws Exception
+  {
+    CatalogPreloader preloader = new CatalogPreloader(Thread.currentThread().getContextClassLoader());
+    preloader.addPattern(Pattern.compile("org/xchain/namespaces/test/.*\\.xchain"));
+
+    Map<String, CatalogPreloader.Result> resultMap = new HashMap<String, CatalogPreloader.Result>();
+    for( CatalogPreloader.Result result : preloader.preload(4) ) {
+      resultMap.put(result.getSystemId(), result);
+    }
+
+    assertTrue("The catalog was not found by pattern.", resultMap.containsKey(CATALOG_URI));
+    assertTrue("The catalog found by pattern was not loaded.", resultMap.get(CATALOG_URI).isLoaded());
+  }
+}
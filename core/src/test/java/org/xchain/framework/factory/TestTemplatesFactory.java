@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.sax.SaxTemplates;
+import org.xchain.framework.strategy.CacheMonitor;
+import org.xchain.framework.strategy.InputSourceSourceStrategy;
+import org.xchain.framework.strategy.TemplatesConsumerStrategy;
+
+/**
+ * Tests the templates handles returned by the templates factory and the statistics they record.
+ */
+public class TestTemplatesFactory
+{
+  public static String STYLESHEET =
+    "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"+
+    "<xsl:template match=\"/\"><result/></xsl:template>"+
+    "</xsl:stylesheet>";
+
+  private File file;
+  private String systemId;
+
+  @BeforeClass public static void setUpLifecycle()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+  }
+
+  @AfterClass public static void tearDownLifecycle()
+    throws Exception
+  {
+    Lifecycle.stopLifecycle();
+  }
+
+  @Before public void setUp()
+    throws Exception
+  {
+    // each test uses its own stylesheet, so the statistics start at zero.
+    file = File.createTempFile("templates-factory", ".xsl");
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(STYLESHEET);
+    }
+    finally {
+      writer.close();
+    }
+    systemId = file.toURI().toString();
+  }
+
+  @After public void tearDown()
+    throws Exception
+  {
+    CacheMonitor.stop();
+    file.delete();
+  }
+
+  @Test public void testHandleHoldsResolvedTemplates()
+    throws Exception
+  {
+    CacheMonitor.start(60L*60L*1000L, Thread.currentThread().getContextClassLoader());
+
+    SaxTemplates templates = TemplatesFactory.getInstance().getTemplates(systemId);
+    assertSame("A new handle was returned for the same system id.", templates, TemplatesFactory.getInstance().getTemplates(systemId));
+
+    for( int i = 0; i < 3; i++ ) {
+      assertNotNull(templates.newTransformer());
+    }
+
+    TemplatesStatistics statistics = TemplatesFactory.getInstance().getStatistics(systemId);
+    assertNotNull("Statistics were not recorded for the stylesheet.", statistics);
+    assertEquals("The wrong number of misses were recorded.", 1, statistics.getMissCount());
+    assertEquals("The wrong number of hits were recorded.", 2, statistics.getHitCount());
+    assertEquals("The stylesheet was compiled more than once.", 1, statistics.getCompileCount());
+  }
+
+  @Test public void testHandleSharedAcrossStrategyRequests()
+    throws Exception
+  {
+    SaxTemplates templates = TemplatesFactory.getInstance().getTemplates(systemId, new InputSourceSourceStrategy(), new TemplatesConsumerStrategy());
+    assertSame("A new handle was returned for the same system id.", templates,
+      TemplatesFactory.getInstance().getTemplates(systemId, new InputSourceSourceStrategy(), new TemplatesConsumerStrategy()));
+    assertSame("A new handle was returned for the same system id.", templates, TemplatesFactory.getInstance().getTemplates(systemId));
+  }
+
+  @Test public void testOtherStylesheetsDoNotInvalidateHandle()
+    throws Exception
+  {
+    CacheMonitor.start(60L*60L*1000L, Thread.currentThread().getContextClassLoader());
+
+    SaxTemplates templates = TemplatesFactory.getInstance().getTemplates(systemId);
+    assertNotNull(templates.newTransformer());
+
+    // compiling another stylesheet changes a different cache entry, so the handle keeps its templates.
+    File otherFile = File.createTempFile("templates-factory", ".xsl");
+    try {
+      FileWriter writer = new FileWriter(otherFile);
+      try {
+        writer.write(STYLESHEET);
+      }
+      finally {
+        writer.close();
+      }
+      assertNotNull(TemplatesFactory.getInstance().getTemplates(otherFile.toURI().toString()).newTransformer());
+    }
+    finally {
+      otherFile.delete();
+    }
+    assertNotNull(templates.newTransformer());
+
+    TemplatesStatistics statistics = TemplatesFactory.getInstance().getStatistics(systemId);
+    assertEquals("The wrong number of misses were recorded.", 1, statistics.getMissCount());
+    assertEquals("The wrong number of hits were recorded.", 1, statistics.getHitCount());
+  }
+
+  @Test public void testHandleChecksCacheWithoutMonitor()
+    throws Exception
+  {
+    SaxTemplates templates = TemplatesFactory.getInstance().getTemplates(systemId);
+    for( int i = 0; i < 3; i++ ) {
+      assertNotNull(templates.newTransformer());
+    }
+
+    // without the monitor, the handle cannot know that its templates are current, so it asks the cache on every use.
+    TemplatesStatistics statistics = TemplatesFactory.getInstance().getStatistics(systemId);
+    assertEquals("The wrong number of misses were recorded.", 3, statistics.getMissCount());
+    assertEquals("The wrong number of hits were recorded.", 0, statistics.getHitCount());
+    assertEquals("The stylesheet was compiled more than once.", 1, statistics.getCompileCount());
+  }
+
+  @Test public void testStatisticsAreBounded()
+    throws Exception
+  {
+    for( int i = 0; i < 300; i++ ) {
+      TemplatesFactory.getInstance().getTemplates(systemId+"?"+i);
+    }
+    int cacheSize = Lifecycle.getLifecycleContext().getConfigContext().getTemplatesCacheSize();
+    assertTrue("The statistics grew past the size of the templates cache.", TemplatesFactory.getInstance().getStatistics().size() <= cacheSize);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.jsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.LocatorImpl;
+import org.xchain.namespaces.jsl.AbstractTemplateCommand;
+
+public class TemplateCompilerTest
+{
+  @Test public void testCompileTemplates()
+    throws Exception
+  {
+    compileAndVerify(1, 3);
+  }
+
+  @Test public void testCompileTemplatesOnThreads()
+    throws Exception
+  {
+    compileAndVerify(2, TemplateCompiler.MIN_BATCH_SIZE * 2 + 1);
+  }
+
+  @Test public void testCompileErrorHasTemplateLocation()
+    throws Exception
+  {
+    TemplateSourceBuilder sourceBuilder = new TemplateSourceBuilder();
+    List<SourceResult> sourceList = new ArrayList<SourceResult>();
+    for( int i = 0; i < 2; i++ ) {
+      sourceBuilder.startSource(new HashMap<String, String>(), new HashSet<String>(), false);
+      sourceBuilder.appendCharacters("template "+i);
+      SourceResult result = sourceBuilder.endSource();
+      LocatorImpl locator = new LocatorImpl();
+      locator.setSystemId("resource://context-class-loader/test.xchain");
+      locator.setLineNumber(10 + i);
+      locator.setColumnNumber(5);
+      result.setLocator(locator);
+      sourceList.add(result);
+    }
+
+    // break the second template.
+    sourceList.get(1).setSource(sourceList.get(1).getSource()+" not java");
+
+    TemplateCompiler compiler = new TemplateCompiler();
+    compiler.init(Thread.currentThread().getContextClassLoader());
+
+    try {
+      compiler.compileTemplates(sourceList);
+      fail("A template that does not compile was compiled.");
+    }
+    catch( SAXParseException spe ) {
+      assertEquals("The error has the wrong system id.", "resource://context-class-loader/test.xchain", spe.getSystemId());
+      assertEquals("The error is not located at the broken template.", 11, spe.getLineNumber());
+      assertEquals("The error is not located at the broken template.", 5, spe.getColumnNumber());
+    }
+  }
+
+  private void compileAndVerify( int threadCount, int templateCount )
+    throws Exception
+  {
+    TemplateSourceBuilder sourceBuilder = new TemplateSourceBuilder();
+    List<SourceResult> sourceList = new ArrayList<SourceResult>();
+    for( int i = 0; i < templateCount; i++ ) {
+      sourceBuilder.startSource(new HashMap<String, String>(), new HashSet<String>(), false);
+      sourceBuilder.appendCharacters("template "+i);
+      sourceList.add(sourceBuilder.endSource());
+    }
+
+    TemplateCompiler compiler = new TemplateCompiler();
+    compiler.init(Thread.currentThread().getContextClassLoader());
+    compiler.setThreadCount(threadCount);
+
+    List<Class> classList = compiler.compileTemplates(sourceList);
+
+    assertEquals("The wrong number of classes was compiled.", templateCount, classList.size());
+    for( int i = 0; i < templateCount; i++ ) {
+      assertEquals("The classes were returned in the wrong order.", sourceList.get(i).getClassName(), classList.get(i).getName());
+      assertTrue("A compiled class is not a template command.", AbstractTemplateCommand.class.isAssignableFrom(classList.get(i)));
+    }
+  }
+}
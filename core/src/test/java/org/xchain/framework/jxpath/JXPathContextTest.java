@@ -16,11 +16,15 @@
 package org.xchain.framework.jxpath;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.JXPathException;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -71,6 +75,40 @@ public class JXPathContextTest
     assertEquals("SubFoo", result);
   }
   
+  @Test public void testMethodLookupIsCached()
+    throws Exception
+  {
+    Object[] parameters = new Object[] { new SubFoo(), new SubBar() };
+
+    assertSame("The cached method was not returned.", MethodLookupUtils.lookupMethod(SubFoo.class, "take", parameters), MethodLookupUtils.lookupMethod(SubFoo.class, "take", parameters));
+    assertNull("A missing method was found.", MethodLookupUtils.lookupMethod(SubFoo.class, "give", parameters));
+    assertNull("A missing method was found after it was cached.", MethodLookupUtils.lookupMethod(SubFoo.class, "give", parameters));
+  }
+  
+  @Test public void testJXPathMethodLookupIsCached()
+    throws Exception
+  {
+    Object[] parameters = new Object[] { new Node("node") };
+    assertSame("The JXPath lookup was not used.", org.apache.commons.jxpath.util.MethodLookupUtils.lookupMethod(Node.class, "getName", parameters), MethodLookupUtils.lookupJXPathMethod(Node.class, "getName", parameters));
+    assertSame("The cached method was not returned.", MethodLookupUtils.lookupJXPathMethod(Node.class, "getName", parameters), MethodLookupUtils.lookupJXPathMethod(Node.class, "getName", parameters));
+  }
+
+  @Test public void testJXPathMethodLookupKeepsBridgeMethods()
+    throws Exception
+  {
+    // the JXPath lookup sees the bridge method of SubFoo.take(Bar), so the lookup is ambiguous, every time it is made.
+    Object[] parameters = new Object[] { new SubFoo(), new SubBar() };
+    for( int i = 0; i < 2; i++ ) {
+      try {
+        MethodLookupUtils.lookupJXPathMethod(SubFoo.class, "take", parameters);
+        fail("The JXPath lookup did not find the bridge method.");
+      }
+      catch( JXPathException jxpe ) {
+        // expected.
+      }
+    }
+  }
+
   public static class Foo<E> {
     public String take(E instance) { return "Foo"; }
   }
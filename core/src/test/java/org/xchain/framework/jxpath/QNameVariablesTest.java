@@ -0,0 +1,128 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.jxpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+/**
+ * Tests the variable maps of the qname variables, which are not created until the first variable is declared, and the isolation
+ * of the scoped variables.
+ */
+public class QNameVariablesTest
+{
+  public static String NAMESPACE_URI = "http://www.xchain.org/test/1.0";
+  public static QName VARIABLE = new QName(NAMESPACE_URI, "variable");
+  public static QName OTHER_VARIABLE = new QName(NAMESPACE_URI, "other-variable");
+
+  @Test public void testUndeclaredVariables()
+    throws Exception
+  {
+    QNameVariablesImpl variables = new QNameVariablesImpl();
+
+    assertNull("A variable was found before any were declared.", variables.getVariable(VARIABLE));
+    assertFalse("A variable was declared before any were declared.", variables.isDeclaredVariable(VARIABLE));
+    variables.undeclareVariable(VARIABLE);
+    assertEquals("{}", variables.toString());
+  }
+
+  @Test public void testFirstDeclaredVariable()
+    throws Exception
+  {
+    QNameVariablesImpl variables = new QNameVariablesImpl();
+    variables.declareVariable(VARIABLE, "value");
+
+    assertTrue("The first variable was not declared.", variables.isDeclaredVariable(VARIABLE));
+    assertEquals("value", variables.getVariable(VARIABLE));
+    assertEquals("value", variables.getVariableMap().get(VARIABLE));
+
+    variables.undeclareVariable(VARIABLE);
+    assertFalse("The variable was still declared after it was undeclared.", variables.isDeclaredVariable(VARIABLE));
+  }
+
+  @Test public void testVariableMapSeenBeforeFirstDeclare()
+    throws Exception
+  {
+    // the map returned before any variable is declared must be the map that the first declare puts the variable in.
+    QNameVariablesImpl variables = new QNameVariablesImpl();
+    assertTrue(variables.getVariableMap().isEmpty());
+    variables.declareVariable(VARIABLE, "value");
+
+    assertEquals("value", variables.getVariableMap().get(VARIABLE));
+  }
+
+  @Test public void testSharedVariablesCreatedBeforeFirstDeclare()
+    throws Exception
+  {
+    QNameVariablesImpl variables = new QNameVariablesImpl();
+    QNameVariables sharedVariables = variables.createSharedVariables(null);
+
+    variables.declareVariable(VARIABLE, "value");
+    assertEquals("A variable declared after the variables were shared was not seen.", "value", sharedVariables.getVariable(VARIABLE));
+
+    sharedVariables.declareVariable(OTHER_VARIABLE, "other-value");
+    assertEquals("A variable declared in the shared variables was not seen.", "other-value", variables.getVariable(OTHER_VARIABLE));
+  }
+
+  @Test public void testScopeIsolation()
+    throws Exception
+  {
+    ScopedQNameVariablesImpl requestVariables = new ScopedQNameVariablesImpl(null, Scope.request);
+    ScopedQNameVariablesImpl executionVariables = new ScopedQNameVariablesImpl(requestVariables, Scope.execution);
+    ScopedQNameVariablesImpl chainVariables = new ScopedQNameVariablesImpl(executionVariables, Scope.chain);
+    ScopedQNameVariablesImpl siblingChainVariables = new ScopedQNameVariablesImpl(executionVariables, Scope.chain);
+
+    chainVariables.declareVariable(VARIABLE, "chain");
+    assertEquals("chain", chainVariables.getVariable(VARIABLE, Scope.chain));
+    assertNull("A chain variable was seen at the execution scope.", chainVariables.getVariable(VARIABLE, Scope.execution));
+    assertNull("A chain variable was seen at the request scope.", chainVariables.getVariable(VARIABLE, Scope.request));
+    assertFalse("A chain variable was declared at the execution scope.", executionVariables.isDeclaredVariable(VARIABLE));
+    assertFalse("A chain variable was declared in another chain.", siblingChainVariables.isDeclaredVariable(VARIABLE));
+
+    // a variable declared at the request scope through the chain is placed in the request variables only.
+    chainVariables.declareVariable(OTHER_VARIABLE, "request", Scope.request);
+    assertEquals("request", requestVariables.getVariable(OTHER_VARIABLE));
+    assertEquals("request", siblingChainVariables.getVariable(OTHER_VARIABLE, Scope.request));
+    assertFalse("A request variable was declared at the chain scope.", chainVariables.isDeclaredVariable(OTHER_VARIABLE));
+    assertFalse("A request variable was declared at the execution scope.", executionVariables.isDeclaredVariable(OTHER_VARIABLE));
+
+    chainVariables.undeclareVariable(OTHER_VARIABLE, Scope.request);
+    assertFalse("The request variable was still declared after it was undeclared.", requestVariables.isDeclaredVariable(OTHER_VARIABLE));
+    assertEquals("Undeclaring a request variable changed the chain variables.", "chain", chainVariables.getVariable(VARIABLE));
+  }
+
+  @Test public void testUnknownScope()
+    throws Exception
+  {
+    ScopedQNameVariablesImpl chainVariables = new ScopedQNameVariablesImpl(null, Scope.chain);
+
+    try {
+      chainVariables.declareVariable(VARIABLE, "value", Scope.request);
+      fail("A variable was declared at a scope that does not exist.");
+    }
+    catch( IllegalStateException ise ) {
+      // expected.
+    }
+    assertFalse("A variable for a scope that does not exist was declared.", chainVariables.isDeclaredVariable(VARIABLE));
+  }
+}
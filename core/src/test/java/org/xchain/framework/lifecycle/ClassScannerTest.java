@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.lifecycle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Tests that the classes found by a parallel scan are the same as the classes found by a scan on a single thread.  Each scan loads
+ * its engineered classes into its own class loader, which hides the dependency of the optional test component.
+ */
+public class ClassScannerTest
+{
+  public static String COMPONENT_NAMESPACE_URI = "http://www.xchain.org/test/component";
+  public static String OPTIONAL_CLASS_NAME = "org.xchain.test.component.OptionalComponent";
+  public static String HIDDEN_CLASS_NAME = "org.xchain.test.component.OptionalDependency";
+  public static int PARALLEL_THREAD_COUNT = 4;
+
+  @Test public void testParallelScanMatchesSequentialScan()
+    throws Exception
+  {
+    LifecycleContext sequentialContext = scan(1);
+    LifecycleContext parallelContext = scan(PARALLEL_THREAD_COUNT);
+
+    assertFalse("No namespaces were found.", sequentialContext.getNamespaceContextMap().isEmpty());
+    assertEquals("The scans found different classes.", describe(sequentialContext), describe(parallelContext));
+  }
+
+  @Test public void testOptionalClassWithMissingDependency()
+    throws Exception
+  {
+    for( int threadCount : new int[] { 1, PARALLEL_THREAD_COUNT } ) {
+      NamespaceContext namespaceContext = scan(threadCount).getNamespaceContextMap().get(COMPONENT_NAMESPACE_URI);
+
+      // the optional component is skipped, without stopping the other components from being found.
+      assertNotNull("The component namespace was not found.", namespaceContext);
+      assertFalse("The optional component with a missing dependency was registered.", namespaceContext.getComponentMap().containsKey("optional-component"));
+      assertTrue("The other components were not registered.", namespaceContext.getComponentMap().containsKey("request-scope-component"));
+    }
+  }
+
+  /**
+   * Scans a new lifecycle context with the given number of threads.
+   */
+  private LifecycleContext scan( int threadCount )
+  {
+    Thread thread = Thread.currentThread();
+    ClassLoader contextClassLoader = thread.getContextClassLoader();
+    ClassLoader scanClassLoader = new HidingClassLoader(contextClassLoader);
+    LifecycleContext context = new LifecycleContext();
+    context.setClassLoader(scanClassLoader);
+
+    thread.setContextClassLoader(scanClassLoader);
+    try {
+      new ClassScanner(context, threadCount).scan();
+    }
+    finally {
+      thread.setContextClassLoader(contextClassLoader);
+    }
+    return context;
+  }
+
+  /**
+   * Returns the names of the catalogs, commands and components found in each namespace of the context.
+   */
+  private Map<String, String> describe( LifecycleContext context )
+  {
+    Map<String, String> descriptionMap = new TreeMap<String, String>();
+    for( NamespaceContext namespaceContext : context.getNamespaceContextMap().values() ) {
+      descriptionMap.put(namespaceContext.getNamespaceUri(),
+        "catalogs="+classNames(namespaceContext.getCatalogList())+
+        " commands="+classNames(namespaceContext.getCommandList())+
+        " components="+new TreeSet<String>(namespaceContext.getComponentMap().keySet()));
+    }
+    return descriptionMap;
+  }
+
+  private List<String> classNames( List<Class> classList )
+  {
+    List<String> classNameList = new ArrayList<String>(classList.size());
+    for( Class classObject : classList ) {
+      classNameList.add(classObject.getName());
+    }
+    return classNameList;
+  }
+
+  /**
+   * A class loader that defines the optional component itself and hides its dependency, so that the component has a missing dependency
+   * when it is loaded.  All other classes are loaded by the parent class loader.
+   */
+  private static class HidingClassLoader
+    extends ClassLoader
+  {
+    HidingClassLoader( ClassLoader parent )
+    {
+      super(parent);
+    }
+
+    protected synchronized Class<?> loadClass( String name, boolean resolve )
+      throws ClassNotFoundException
+    {
+      if( HIDDEN_CLASS_NAME.equals(name) ) {
+        throw new ClassNotFoundException(name);
+      }
+      if( OPTIONAL_CLASS_NAME.equals(name) ) {
+        Class<?> loadedClass = findLoadedClass(name);
+        if( loadedClass == null ) {
+          byte[] classBytes = readClassFile(name);
+          loadedClass = defineClass(name, classBytes, 0, classBytes.length);
+        }
+        if( resolve ) {
+          resolveClass(loadedClass);
+        }
+        return loadedClass;
+      }
+      return super.loadClass(name, resolve);
+    }
+
+    public URL getResource( String name )
+    {
+      if( toResourceName(HIDDEN_CLASS_NAME).equals(name) ) {
+        return null;
+      }
+      return super.getResource(name);
+    }
+
+    private byte[] readClassFile( String name )
+      throws ClassNotFoundException
+    {
+      InputStream in = getParent().getResourceAsStream(toResourceName(name));
+      if( in == null ) {
+        throw new ClassNotFoundException(name);
+      }
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for( int read = in.read(buffer); read != -1; read = in.read(buffer) ) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      }
+      catch( IOException ioe ) {
+        throw new ClassNotFoundException(name, ioe);
+      }
+      finally {
+        try {
+          in.close();
+        }
+        catch( IOException ioe ) {
+          // ignore.
+        }
+      }
+    }
+
+    private static String toResourceName( String className )
+    {
+      return className.replace('.', '/')+".class";
+    }
+  }
+}
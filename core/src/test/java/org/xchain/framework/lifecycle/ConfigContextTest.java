@@ -52,4 +52,10 @@ public class ConfigContextTest {
     boolean monitor = Lifecycle.getLifecycleContext().getConfigContext().isMonitored();
     assertEquals(true, monitor);
   }
+
+  @Test
+  public void testMonitorIntervalDefault() {
+    long monitorInterval = Lifecycle.getLifecycleContext().getConfigContext().getMonitorInterval();
+    assertEquals(0, monitorInterval);
+  }
 }
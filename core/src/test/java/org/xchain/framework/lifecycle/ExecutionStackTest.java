@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.lifecycle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xchain.Catalog;
+import org.xchain.Command;
+import org.xchain.framework.factory.CatalogFactory;
+
+/**
+ * Tests that the per thread execution stacks are balanced after nested and failing executions, so that the stacks kept between
+ * executions never carry state from one execution into the next.
+ */
+public class ExecutionStackTest
+{
+  public static int EXECUTION_COUNT = 5;
+
+  protected Catalog catalog = null;
+
+  @BeforeClass public static void setUpLifecycle()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+  }
+
+  @AfterClass public static void tearDownLifecycle()
+    throws Exception
+  {
+    Lifecycle.stopLifecycle();
+  }
+
+  @Before public void setUp()
+    throws Exception
+  {
+    catalog = CatalogFactory.getInstance().getCatalog(ExecutionTraceTest.CATALOG_URI);
+  }
+
+  @Test public void testNestedExecutionsBalanced()
+    throws Exception
+  {
+    Command command = catalog.getCommand(ExecutionTraceTest.TWO_ENTRIES_NESTED);
+
+    for( int i = 0; i < EXECUTION_COUNT; i++ ) {
+      assertExecutionTraceSize(command, 2);
+      assertExecutionEnded();
+    }
+  }
+
+  @Test public void testFailedExecutionsBalanced()
+    throws Exception
+  {
+    Command command = catalog.getCommand(ExecutionTraceTest.TWO_ENTRIES_THROWN_NESTED);
+
+    for( int i = 0; i < EXECUTION_COUNT; i++ ) {
+      try {
+        command.execute(JXPathContext.newContext(new Object()));
+        fail("An execution exception was not thrown.");
+      }
+      catch( ExecutionException ee ) {
+        // expected.
+        assertEquals("The wrong number of trace elements were found.", 2, ee.getExecutionTrace().size());
+      }
+      assertExecutionEnded();
+    }
+  }
+
+  @Test public void testFailedAndNestedExecutionsBalanced()
+    throws Exception
+  {
+    Command thrownCommand = catalog.getCommand(ExecutionTraceTest.ONE_ENTRY_THROWN_NESTED);
+    Command nestedCommand = catalog.getCommand(ExecutionTraceTest.TWO_ENTRIES_NESTED);
+
+    // an execution that fails part way down the stacks must not leave entries behind for the next execution.
+    for( int i = 0; i < EXECUTION_COUNT; i++ ) {
+      try {
+        thrownCommand.execute(JXPathContext.newContext(new Object()));
+        fail("An execution exception was not thrown.");
+      }
+      catch( ExecutionException ee ) {
+        // expected.
+      }
+      assertExecutionEnded();
+
+      assertExecutionTraceSize(nestedCommand, 2);
+      assertExecutionEnded();
+    }
+  }
+
+  @Test public void testStartAndEndExecution()
+    throws Exception
+  {
+    JXPathContext context = JXPathContext.newContext(new Object());
+
+    for( int i = 0; i < EXECUTION_COUNT; i++ ) {
+      Execution.startExecution(context);
+      assertTrue("An execution was not started.", Execution.inExecution());
+      assertSame("The global context does not wrap the context passed in.", context.getContextBean(), Execution.getGlobalContext().getContextBean());
+      assertTrue("The execution trace was not empty before any command was executed.", Execution.getExecutionTrace().isEmpty());
+      Execution.endExecution();
+      assertExecutionEnded();
+    }
+  }
+
+  private void assertExecutionTraceSize( Command command, int size )
+    throws Exception
+  {
+    JXPathContext context = JXPathContext.newContext(new Object());
+    command.execute(context);
+    List<ExecutionTraceElement> executionTrace = (List<ExecutionTraceElement>)context.getValue("$result", List.class);
+    assertEquals("The wrong number of trace elements were found.", size, executionTrace.size());
+  }
+
+  private void assertExecutionEnded()
+  {
+    assertFalse("The execution stack was not empty after the execution.", Execution.inExecution());
+    assertNull("The global context was not cleared after the execution.", Execution.getGlobalContext());
+    assertTrue("The execution trace was not empty after the execution.", Execution.getExecutionTrace().isEmpty());
+  }
+}
@@ -15,12 +15,17 @@
  */
 package org.xchain.framework.lifecycle;
 
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.List;
 import javax.xml.namespace.QName;
 import org.xml.sax.Locator;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import org.apache.commons.jxpath.JXPathContext;
 import org.junit.After;
@@ -68,4 +73,31 @@ public class TestXmlFactoryLifecycle
     assertTrue("The xalan transformer factory is not defined.", XmlFactoryLifecycle.newTransformerFactory(SAXON_FACTORY_NAME) != null);
   }
 
+  @Test public void testPooledXmlReader()
+    throws Exception
+  {
+    XMLReader reader = XmlFactoryLifecycle.borrowXmlReader();
+    reader.setContentHandler(new DefaultHandler());
+
+    // a reader borrowed while the first reader is out must be a different reader.
+    XMLReader nestedReader = XmlFactoryLifecycle.borrowXmlReader();
+    assertNotSame("The pool lent the same reader twice.", reader, nestedReader);
+    nestedReader.setContentHandler(new DefaultHandler());
+    nestedReader.setErrorHandler(new DefaultHandler());
+    nestedReader.setEntityResolver(new DefaultHandler());
+    XmlFactoryLifecycle.releaseXmlReader(nestedReader);
+    XmlFactoryLifecycle.releaseXmlReader(reader);
+
+    // the released reader should be reused with its handlers reset.
+    XMLReader reusedReader = XmlFactoryLifecycle.borrowXmlReader();
+    try {
+      assertSame("The pool did not reuse the released reader.", nestedReader, reusedReader);
+      assertNull("The content handler was not reset.", reusedReader.getContentHandler());
+      assertNull("The error handler was not reset.", reusedReader.getErrorHandler());
+      assertNull("The entity resolver was not reset.", reusedReader.getEntityResolver());
+    }
+    finally {
+      XmlFactoryLifecycle.releaseXmlReader(reusedReader);
+    }
+  }
 }
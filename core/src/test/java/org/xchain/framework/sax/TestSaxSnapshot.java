@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class TestSaxSnapshot
+{
+  public static String SYSTEM_ID = "test:snapshot.xml";
+  public static String DOCUMENT =
+    "<?xml version=\"1.0\"?>\n"+
+    "<?test-instruction some data?>\n"+
+    "<root xmlns=\"http://www.xchain.org/test\" xmlns:t=\"http://www.xchain.org/test/t\" t:attribute=\"value\">\n"+
+    "  <t:child name=\"first\">text &amp; more text</t:child>\n"+
+    "  <child name=\"second\" other=\"\u00e9\u4e2d\"/>\n"+
+    "  <child name=\"first\"><![CDATA[<not an element>]]></child>\n"+
+    "</root>\n";
+
+  @Test public void testReplayMatchesParse()
+    throws Exception
+  {
+    LocatingHandler parsed = new LocatingHandler();
+    SaxSnapshot.Recorder recorder = new SaxSnapshot.Recorder();
+    recorder.setParent(newXmlReader());
+    recorder.setContentHandler(parsed);
+    recorder.parse(newInputSource());
+
+    assertTrue("The snapshot is not complete.", recorder.isSnapshotComplete());
+
+    LocatingHandler replayed = new LocatingHandler();
+    SaxSnapshot.Replayer replayer = new SaxSnapshot.Replayer(recorder.toByteArray());
+    replayer.setContentHandler(replayed);
+    replayer.parse(new InputSource(SYSTEM_ID));
+
+    assertEquals("The replayed events do not match the parsed events.", parsed.getEventList(), replayed.getEventList());
+  }
+
+  @Test public void testSnapshotIsSmallerThanEvents()
+    throws Exception
+  {
+    SaxSnapshot.Recorder recorder = new SaxSnapshot.Recorder();
+    recorder.setParent(newXmlReader());
+    recorder.setContentHandler(new DefaultHandler());
+    recorder.parse(newInputSource());
+
+    assertTrue("The snapshot is larger than the source.", recorder.toByteArray().length < DOCUMENT.length() * 2);
+  }
+
+  @Test public void testExternalEntity()
+    throws Exception
+  {
+    SaxSnapshot.Recorder recorder = new SaxSnapshot.Recorder();
+    recorder.setParent(newXmlReader());
+    recorder.setContentHandler(new DefaultHandler());
+    recorder.setEntityResolver(new EntityResolver() {
+      public InputSource resolveEntity( String publicId, String systemId ) {
+        return new InputSource(new StringReader(""));
+      }
+    });
+    InputSource inputSource = new InputSource(new StringReader("<!DOCTYPE root SYSTEM \"root.dtd\"><root/>"));
+    inputSource.setSystemId(SYSTEM_ID);
+    recorder.parse(inputSource);
+
+    assertFalse("A document with an external dtd produced a complete snapshot.", recorder.isSnapshotComplete());
+  }
+
+  @Test(expected=SaxSnapshot.FormatException.class) public void testTruncatedSnapshot()
+    throws Exception
+  {
+    SaxSnapshot.Recorder recorder = new SaxSnapshot.Recorder();
+    recorder.setParent(newXmlReader());
+    recorder.setContentHandler(new DefaultHandler());
+    recorder.parse(newInputSource());
+
+    byte[] snapshot = recorder.toByteArray();
+    byte[] truncated = new byte[snapshot.length / 2];
+    System.arraycopy(snapshot, 0, truncated, 0, truncated.length);
+
+    SaxSnapshot.Replayer replayer = new SaxSnapshot.Replayer(truncated);
+    replayer.setContentHandler(new DefaultHandler());
+    replayer.parse(new InputSource(SYSTEM_ID));
+  }
+
+  private static XMLReader newXmlReader()
+    throws Exception
+  {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newSAXParser().getXMLReader();
+  }
+
+  private static InputSource newInputSource()
+  {
+    InputSource inputSource = new InputSource(new StringReader(DOCUMENT));
+    inputSource.setSystemId(SYSTEM_ID);
+    return inputSource;
+  }
+
+  /**
+   * Records the events that it receives, along with the location reported for each of them.  Adjacent character events are combined,
+   * since parsers are free to split text.
+   */
+  public static class LocatingHandler
+    extends DefaultHandler
+  {
+    private List<String> eventList = new ArrayList<String>();
+    private StringBuilder characters = new StringBuilder();
+    private Locator locator;
+
+    public List<String> getEventList() { return eventList; }
+
+    public void setDocumentLocator( Locator locator ) { this.locator = locator; }
+
+    public void startDocument() { add("startDocument "+locator.getSystemId()); }
+    public void endDocument() { add("endDocument"); }
+    public void startPrefixMapping( String prefix, String uri ) { add("startPrefixMapping "+prefix+"="+uri); }
+    public void endPrefixMapping( String prefix ) { add("endPrefixMapping "+prefix); }
+    public void processingInstruction( String target, String data ) { add("processingInstruction "+target+" "+data); }
+
+    public void startElement( String uri, String localName, String qName, Attributes attributes )
+    {
+      StringBuilder event = new StringBuilder();
+      event.append("startElement {").append(uri).append("}").append(localName).append(" ").append(qName);
+      for( int i = 0; i < attributes.getLength(); i++ ) {
+        event.append(" {").append(attributes.getURI(i)).append("}").append(attributes.getLocalName(i)).append(" ").append(attributes.getQName(i))
+             .append(" ").append(attributes.getType(i)).append("=").append(attributes.getValue(i));
+      }
+      add(event.toString());
+    }
+
+    public void endElement( String uri, String localName, String qName )
+    {
+      add("endElement {"+uri+"}"+localName+" "+qName);
+    }
+
+    public void characters( char[] ch, int start, int length )
+    {
+      if( characters.length() == 0 ) {
+        characters.append("characters@").append(locator.getLineNumber()).append(":").append(locator.getColumnNumber()).append(" ");
+      }
+      characters.append(ch, start, length);
+    }
+
+    private void add( String event )
+    {
+      if( characters.length() > 0 ) {
+        eventList.add(characters.toString());
+        characters.setLength(0);
+      }
+      eventList.add(event+" @"+locator.getLineNumber()+":"+locator.getColumnNumber());
+    }
+  }
+}
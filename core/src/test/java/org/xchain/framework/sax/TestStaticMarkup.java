@@ -0,0 +1,196 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.sax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Properties;
+
+import javax.xml.transform.OutputKeys;
+
+import org.apache.xml.serializer.OutputPropertiesFactory;
+import org.apache.xml.serializer.Serializer;
+import org.apache.xml.serializer.SerializerFactory;
+import org.apache.xml.serializer.SerializationHandler;
+import org.junit.Test;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.DTDHandler;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Tests that static markup written through a command handler produces the same output as the events that it was built from.
+ */
+public class TestStaticMarkup
+{
+  public static final String XHTML_NAMESPACE = "http://www.w3.org/1999/xhtml";
+  public static final String TEST_NAMESPACE = "http://www.xchain.org/test";
+
+  @Test public void testXmlSerializedMarkup()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    StaticMarkup markup = createMarkup();
+    assertEquals("The static markup was not serialized correctly.", writeEvents(outputFormat, markup, false), writeEvents(outputFormat, markup, true));
+    assertEquals("The static markup was not written as serialized characters.", 1, markup.getSerializedFormatCount());
+  }
+
+  @Test public void testHtmlSerializedMarkup()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("html");
+    outputFormat.setProperty(OutputKeys.INDENT, "no");
+    StaticMarkup markup = createMarkup();
+    assertEquals("The static markup was not serialized correctly.", writeEvents(outputFormat, markup, false), writeEvents(outputFormat, markup, true));
+    assertEquals("The static markup was not written as serialized characters.", 1, markup.getSerializedFormatCount());
+  }
+
+  @Test public void testSerializedMarkupReused()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    StaticMarkup markup = createMarkup();
+    String output = writeEvents(outputFormat, markup, true);
+    assertEquals("The static markup was not serialized correctly.", output, writeEvents(outputFormat, markup, true));
+    assertEquals("The static markup was serialized again for the same output format.", 1, markup.getSerializedFormatCount());
+  }
+
+  @Test public void testIndentedMarkup()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    outputFormat.setProperty(OutputKeys.INDENT, "yes");
+    StaticMarkup markup = createMarkup();
+    assertEquals("The static markup was not replayed correctly.", writeEvents(outputFormat, markup, false), writeEvents(outputFormat, markup, true));
+    assertEquals("Indented static markup was serialized.", 0, markup.getSerializedFormatCount());
+  }
+
+  @Test public void testTextMarkup()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("text");
+    StaticMarkup markup = createMarkup();
+    assertEquals("The static markup was not replayed correctly.", writeEvents(outputFormat, markup, false), writeEvents(outputFormat, markup, true));
+    assertEquals("Static markup was serialized for the text output method.", 0, markup.getSerializedFormatCount());
+  }
+
+  @Test public void testUnmappedPrefix()
+    throws Exception
+  {
+    StaticMarkup markup = new StaticMarkup();
+    markup.startElement(TEST_NAMESPACE, "element", "test:element", new AttributesImpl());
+    markup.endElement(TEST_NAMESPACE, "element", "test:element");
+
+    StringWriter writer = new StringWriter();
+    TestCommandHandler handler = new TestCommandHandler(OutputPropertiesFactory.getDefaultMethodProperties("xml"), writer);
+    handler.startDocument();
+    handler.startElement(XHTML_NAMESPACE, "html", "html", new AttributesImpl());
+    handler.staticMarkup(markup);
+    handler.endElement(XHTML_NAMESPACE, "html", "html");
+    handler.endDocument();
+
+    assertTrue("The prefix of the static markup was not declared.", writer.toString().indexOf("xmlns:test=\""+TEST_NAMESPACE+"\"") >= 0);
+  }
+
+  @Test public void testPrefixConflict()
+    throws Exception
+  {
+    StaticMarkup markup = new StaticMarkup();
+    assertTrue("The first use of a prefix was rejected.", markup.startElement(TEST_NAMESPACE, "element", "test:element", new AttributesImpl()));
+    assertFalse("A prefix bound to two namespaces was accepted.", markup.startElement(XHTML_NAMESPACE, "element", "test:element", new AttributesImpl()));
+  }
+
+  @Test public void testOutputFormatKey()
+    throws Exception
+  {
+    Properties outputFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    Properties doctypeFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    doctypeFormat.setProperty(OutputKeys.DOCTYPE_SYSTEM, "test.dtd");
+    Properties indentFormat = OutputPropertiesFactory.getDefaultMethodProperties("xml");
+    indentFormat.setProperty(OutputKeys.INDENT, "yes");
+
+    assertEquals("The doctype changed the output format key.", StaticMarkup.outputFormatKey(outputFormat), StaticMarkup.outputFormatKey(doctypeFormat));
+    assertEquals("An indenting output format has an output format key.", null, StaticMarkup.outputFormatKey(indentFormat));
+    assertEquals("A text output format has an output format key.", null, StaticMarkup.outputFormatKey(OutputPropertiesFactory.getDefaultMethodProperties("text")));
+  }
+
+  /**
+   * Creates the static markup for the body of a small xhtml document.
+   */
+  private StaticMarkup createMarkup()
+  {
+    AttributesImpl paragraphAttributes = new AttributesImpl();
+    paragraphAttributes.addAttribute("", "class", "class", "CDATA", "a&b\"c");
+
+    StaticMarkup markup = new StaticMarkup();
+    markup.startElement(XHTML_NAMESPACE, "p", "p", paragraphAttributes);
+    markup.characters("x < y é 中");
+    markup.startElement(XHTML_NAMESPACE, "br", "br", new AttributesImpl());
+    markup.endElement(XHTML_NAMESPACE, "br", "br");
+    markup.endElement(XHTML_NAMESPACE, "p", "p");
+    return markup;
+  }
+
+  /**
+   * Writes a small xhtml document to a serializer with the output format.  The body of the document is either sent as events or as static markup.
+   */
+  private String writeEvents( Properties outputFormat, StaticMarkup markup, boolean useStaticMarkup )
+    throws Exception
+  {
+    StringWriter writer = new StringWriter();
+    TestCommandHandler handler = new TestCommandHandler(outputFormat, writer);
+    handler.startDocument();
+    handler.startPrefixMapping("", XHTML_NAMESPACE);
+    handler.startElement(XHTML_NAMESPACE, "html", "html", new AttributesImpl());
+    handler.startElement(XHTML_NAMESPACE, "body", "body", new AttributesImpl());
+    if( useStaticMarkup ) {
+      handler.staticMarkup(markup);
+    }
+    else {
+      markup.replay(handler);
+    }
+    handler.endElement(XHTML_NAMESPACE, "body", "body");
+    handler.endElement(XHTML_NAMESPACE, "html", "html");
+    handler.endPrefixMapping("");
+    handler.endDocument();
+
+    return writer.toString();
+  }
+
+  /**
+   * A command handler that writes to a serializer.
+   */
+  private static class TestCommandHandler
+    extends CommandHandler
+  {
+    private SerializationHandler serializationHandler;
+
+    public TestCommandHandler( Properties outputFormat, StringWriter writer )
+      throws Exception
+    {
+      Serializer serializer = SerializerFactory.getSerializer(outputFormat);
+      serializer.setWriter(writer);
+      serializationHandler = (SerializationHandler)serializer.asContentHandler();
+    }
+
+    public ContentHandler contentHandler() { return serializationHandler; }
+    public DTDHandler dtdHandler() { return serializationHandler; }
+    public LexicalHandler lexicalHandler() { return serializationHandler; }
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+
+/**
+ * Tests the passes made by the cache monitor over the registered caches.  The monitor is started with an interval long enough that
+ * the background thread never runs during a test, the passes are made by calling checkCaches() directly.
+ */
+public class TestCacheMonitor
+{
+  private File file;
+  private String systemId;
+  private TestCachingLoadStrategy.CountingConsumerStrategy consumerStrategy;
+  private CachingLoadStrategy<String, Object> loadStrategy;
+
+  @Before public void setUp()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+    CacheMonitor.start(60L*60L*1000L, Thread.currentThread().getContextClassLoader());
+
+    file = File.createTempFile("cache-monitor", ".txt");
+    TestCachingLoadStrategy.writeFile(file, "original");
+    systemId = file.toURI().toString();
+    consumerStrategy = new TestCachingLoadStrategy.CountingConsumerStrategy();
+    loadStrategy = new CachingLoadStrategy<String, Object>(10);
+  }
+
+  @After public void tearDown()
+    throws Exception
+  {
+    CacheMonitor.stop();
+    Lifecycle.stopLifecycle();
+    file.delete();
+  }
+
+  @Test public void testModifiedObjectReloaded()
+    throws Exception
+  {
+    assertEquals("original", loadStrategy.getObject(systemId, null, consumerStrategy));
+
+    CacheMonitor.checkCaches();
+    assertEquals("An unmodified object was reloaded.", 1, consumerStrategy.loadCount.get());
+
+    modifyFile("modified");
+    CacheMonitor.checkCaches();
+    assertEquals("The modified object was not reloaded by the monitor.", 2, consumerStrategy.loadCount.get());
+
+    // the request is served from the cache, without loading the object again.
+    assertEquals("modified", loadStrategy.getObject(systemId, null, consumerStrategy));
+    assertEquals("The request loaded the object again.", 2, consumerStrategy.loadCount.get());
+  }
+
+  @Test public void testFailedReloadRetried()
+    throws Exception
+  {
+    long generation = loadStrategy.getCachedResult(systemId, null, consumerStrategy).getGeneration();
+    assertTrue("The loaded object was not current.", loadStrategy.isCurrent(systemId, generation));
+
+    consumerStrategy.failing = true;
+    modifyFile("modified");
+    CacheMonitor.checkCaches();
+    assertEquals("The modified object was not reloaded by the monitor.", 2, consumerStrategy.loadCount.get());
+    assertFalse("An object whose reload failed was still current.", loadStrategy.isCurrent(systemId, generation));
+
+    // the next pass tries the load again, even though the source has not changed since the last pass.
+    consumerStrategy.failing = false;
+    CacheMonitor.checkCaches();
+    assertEquals("The stale object was not retried by the monitor.", 3, consumerStrategy.loadCount.get());
+    CachingLoadStrategy.CachedResult<String> result = loadStrategy.getCachedResult(systemId, null, consumerStrategy);
+    assertEquals("modified", result.getObject());
+    assertEquals("The request loaded the object again.", 3, consumerStrategy.loadCount.get());
+    assertTrue("The reloaded object was not current.", loadStrategy.isCurrent(systemId, result.getGeneration()));
+  }
+
+  @Test public void testOtherObjectsDoNotChangeGeneration()
+    throws Exception
+  {
+    long generation = loadStrategy.getCachedResult(systemId, null, consumerStrategy).getGeneration();
+
+    File otherFile = File.createTempFile("cache-monitor", ".txt");
+    try {
+      TestCachingLoadStrategy.writeFile(otherFile, "other");
+      loadStrategy.getObject(otherFile.toURI().toString(), null, consumerStrategy);
+    }
+    finally {
+      otherFile.delete();
+    }
+    assertTrue("Loading another object changed the generation of the object.", loadStrategy.isCurrent(systemId, generation));
+  }
+
+  /**
+   * Writes new content to the file.  The modification time is moved past the load time of the object, since the file system may
+   * only record modification times to the second.
+   */
+  private void modifyFile( String content )
+    throws Exception
+  {
+    TestCachingLoadStrategy.writeFile(file, content);
+    file.setLastModified(System.currentTimeMillis() + 60000L);
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.strategy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.net.DependencyTracker;
+
+/**
+ * Tests the generation of the caching load strategy, which handles use to decide if the object they hold is still current.
+ */
+public class TestCachingLoadStrategy
+{
+  private File file;
+  private String systemId;
+  private CountingConsumerStrategy consumerStrategy;
+  private CachingLoadStrategy<String, Object> loadStrategy;
+
+  @Before public void setUp()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+    CacheMonitor.start(60L*60L*1000L, Thread.currentThread().getContextClassLoader());
+
+    file = File.createTempFile("caching-load-strategy", ".txt");
+    writeFile(file, "original");
+    systemId = file.toURI().toString();
+    consumerStrategy = new CountingConsumerStrategy();
+    loadStrategy = new CachingLoadStrategy<String, Object>(10);
+  }
+
+  @After public void tearDown()
+    throws Exception
+  {
+    CacheMonitor.stop();
+    Lifecycle.stopLifecycle();
+    file.delete();
+  }
+
+  @Test public void testLoadedObjectIsCurrent()
+    throws Exception
+  {
+    assertEquals("original", loadStrategy.getObject(systemId, null, consumerStrategy));
+    long generation = loadStrategy.getGeneration();
+
+    assertTrue("The loaded object was not current.", loadStrategy.isCurrent(generation));
+    loadStrategy.checkCache(new HashMap<URL, Long>());
+    assertTrue("An unmodified object stopped being current.", loadStrategy.isCurrent(generation));
+    assertEquals("An unmodified object was reloaded.", 1, consumerStrategy.loadCount.get());
+  }
+
+  @Test public void testObjectIsNotCurrentWithoutMonitor()
+    throws Exception
+  {
+    loadStrategy.getObject(systemId, null, consumerStrategy);
+    long generation = loadStrategy.getGeneration();
+
+    CacheMonitor.stop();
+    assertFalse("The object was current while nothing was checking its source.", loadStrategy.isCurrent(generation));
+  }
+
+  @Test public void testFailedReloadIsNotCurrent()
+    throws Exception
+  {
+    loadStrategy.getObject(systemId, null, consumerStrategy);
+    long generation = loadStrategy.getGeneration();
+
+    // modify the source so that the reload fails.
+    consumerStrategy.failing = true;
+    writeFile(file, "modified");
+    file.setLastModified(System.currentTimeMillis() + 60000L);
+    loadStrategy.checkCache(new HashMap<URL, Long>());
+
+    assertEquals("The modified object was not reloaded.", 2, consumerStrategy.loadCount.get());
+    assertFalse("An object whose reload failed was still current.", loadStrategy.isCurrent(generation));
+    try {
+      loadStrategy.getObject(systemId, null, consumerStrategy);
+      fail("A request for an object whose reload failed did not try the load again.");
+    }
+    catch( IllegalStateException ise ) {
+      // expected.
+    }
+
+    // the next request loads the object, once the source can be loaded.
+    consumerStrategy.failing = false;
+    assertEquals("modified", loadStrategy.getObject(systemId, null, consumerStrategy));
+    assertTrue("The reloaded object was not current.", loadStrategy.isCurrent(loadStrategy.getGeneration()));
+  }
+
+  static void writeFile( File file, String content )
+    throws IOException
+  {
+    FileWriter writer = new FileWriter(file);
+    try {
+      writer.write(content);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  static String readFile( File file )
+    throws IOException
+  {
+    FileReader reader = new FileReader(file);
+    try {
+      StringBuilder content = new StringBuilder();
+      char[] buffer = new char[256];
+      for( int read = reader.read(buffer); read != -1; read = reader.read(buffer) ) {
+        content.append(buffer, 0, read);
+      }
+      return content.toString();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Loads the content of a file url, counting the loads.  When failing is set, the loads throw an exception.
+   */
+  static class CountingConsumerStrategy
+    implements ConsumerStrategy<String, Object>
+  {
+    final AtomicInteger loadCount = new AtomicInteger();
+    volatile boolean failing = false;
+
+    public String consume( String systemId, SourceStrategy<Object> sourceStrategy, DependencyTracker tracker )
+      throws Exception
+    {
+      loadCount.incrementAndGet();
+      if( failing ) {
+        throw new IllegalStateException("Could not load '"+systemId+"'.");
+      }
+      return readFile(new File(new URI(systemId)));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBytecodeCache
+{
+  private File baseDirectory = null;
+
+  @Before public void setUp()
+    throws Exception
+  {
+    baseDirectory = File.createTempFile("bytecode-cache", "");
+    baseDirectory.delete();
+    baseDirectory.mkdirs();
+  }
+
+  @After public void tearDown()
+  {
+    delete(baseDirectory);
+  }
+
+  @Test public void testPutAndGet()
+    throws Exception
+  {
+    BytecodeCache cache = new BytecodeCache(baseDirectory, getClass().getClassLoader());
+    String key = cache.key("template", "Template0", new byte[] { 1, 2, 3 });
+
+    assertNull("An entry was found in an empty cache.", cache.get(key));
+
+    Map<String, byte[]> classMap = new LinkedHashMap<String, byte[]>();
+    classMap.put("Template0", new byte[] { 4, 5, 6 });
+    classMap.put("Template0$1", new byte[] { 7 });
+    cache.put(key, classMap);
+
+    // a new cache for the same class path finds the entry.
+    Map<String, byte[]> cachedClassMap = new BytecodeCache(baseDirectory, getClass().getClassLoader()).get(key);
+    assertEquals("The wrong number of classes was read.", 2, cachedClassMap.size());
+    assertEquals("The classes were read in the wrong order.", "Template0", cachedClassMap.keySet().iterator().next());
+    assertTrue("The wrong bytes were read.", Arrays.equals(new byte[] { 4, 5, 6 }, cachedClassMap.get("Template0")));
+    assertTrue("The wrong bytes were read.", Arrays.equals(new byte[] { 7 }, cachedClassMap.get("Template0$1")));
+  }
+
+  @Test public void testKeyDependsOnContent()
+    throws Exception
+  {
+    BytecodeCache cache = new BytecodeCache(baseDirectory, getClass().getClassLoader());
+
+    assertEquals("The key is not stable.", cache.key("command", "A", new byte[] { 1 }), cache.key("command", "A", new byte[] { 1 }));
+    assertFalse("The key does not depend on the content.", cache.key("command", "A", new byte[] { 1 }).equals(cache.key("command", "A", new byte[] { 2 })));
+    assertFalse("The key does not depend on the kind.", cache.key("command", "A", new byte[] { 1 }).equals(cache.key("catalog", "A", new byte[] { 1 })));
+  }
+
+  @Test public void testCorruptEntryIsRemoved()
+    throws Exception
+  {
+    BytecodeCache cache = new BytecodeCache(baseDirectory, getClass().getClassLoader());
+    String key = cache.key("template", "Template0", new byte[] { 1 });
+
+    File entryFile = new File(cache.getDirectory(), key+".classes");
+    FileOutputStream out = new FileOutputStream(entryFile);
+    out.write(new byte[] { 0, 1, 2 });
+    out.close();
+
+    assertNull("A corrupt entry was read.", cache.get(key));
+    assertFalse("The corrupt entry was not removed.", entryFile.exists());
+  }
+
+  @Test public void testFingerprintTracksClassPathProperty()
+    throws Exception
+  {
+    // the java.class.path property is only used when the system class loader does not list its urls.
+    Assume.assumeTrue(!(ClassLoader.getSystemClassLoader() instanceof URLClassLoader));
+
+    File jarFile = new File(baseDirectory, "library.jar");
+    FileOutputStream out = new FileOutputStream(jarFile);
+    out.write(new byte[] { 1 });
+    out.close();
+
+    String classPath = System.getProperty("java.class.path");
+    try {
+      System.setProperty("java.class.path", classPath+File.pathSeparator+jarFile.getPath());
+      String fingerprint = BytecodeCache.classPathFingerprint(ClassLoader.getSystemClassLoader());
+
+      out = new FileOutputStream(jarFile, true);
+      out.write(new byte[] { 2 });
+      out.close();
+      assertFalse("The fingerprint did not change when a class path entry changed.", fingerprint.equals(BytecodeCache.classPathFingerprint(ClassLoader.getSystemClassLoader())));
+    }
+    finally {
+      System.setProperty("java.class.path", classPath);
+    }
+  }
+
+  @Test public void testUnknownClassLoaderIsNotCached()
+    throws Exception
+  {
+    // a class loader that does not list its class path, such as a module or bundle class loader.
+    ClassLoader classLoader = new ClassLoader(getClass().getClassLoader()) {};
+
+    try {
+      new BytecodeCache(baseDirectory, classLoader);
+      fail("A cache was opened for a class loader whose class path cannot be fingerprinted.");
+    }
+    catch( IOException ioe ) {
+      // expected.
+    }
+    assertEquals("A class path directory was created for the class loader.", 0, baseDirectory.list().length);
+  }
+
+  private static void delete( File file )
+  {
+    File[] children = file.listFiles();
+    if( children != null ) {
+      for( File child : children ) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+}
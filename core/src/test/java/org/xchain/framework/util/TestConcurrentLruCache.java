@@ -0,0 +1,52 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TestConcurrentLruCache
+{
+  @Test public void testPutIfAbsent()
+    throws Exception
+  {
+    ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2);
+
+    assertNull("A new key was reported as present.", cache.putIfAbsent("a", "first"));
+    assertEquals("An existing key was replaced.", "first", cache.putIfAbsent("a", "second"));
+    assertEquals("The wrong value was returned.", "first", cache.get("a"));
+  }
+
+  @Test public void testEvictsLeastRecentlyUsed()
+    throws Exception
+  {
+    ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2);
+
+    cache.putIfAbsent("a", "a");
+    cache.putIfAbsent("b", "b");
+
+    // access a, so that b is the least recently used entry.
+    cache.get("a");
+    cache.putIfAbsent("c", "c");
+
+    assertEquals("The cache grew past its maximum size.", 2, cache.size());
+    assertEquals("The recently used entry was evicted.", "a", cache.get("a"));
+    assertNull("The least recently used entry was not evicted.", cache.get("b"));
+    assertEquals("The new entry was evicted.", "c", cache.get("c"));
+  }
+}
@@ -16,6 +16,8 @@
 package org.xchain.namespaces.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import javax.xml.namespace.QName;
 
@@ -27,8 +29,11 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.xchain.Catalog;
 import org.xchain.Command;
+import org.xchain.EngineeredCommand;
 import org.xchain.framework.factory.CatalogFactory;
 import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.util.EngineeringUtil;
+import org.xchain.impl.ChainImpl;
 
 /**
  * @author Christian Trimble
@@ -290,4 +295,35 @@ public class TestChooseCommand
     assertEquals("The second when clause did execute when it should not have.", Boolean.FALSE, secondWhenResult);
     assertEquals("The otherwise clause did execute when it should not have.", Boolean.TRUE, otherwiseResult);
   }
+
+  @Test public void testWhenTestIsCompiledOnLoad()
+    throws Exception
+  {
+    // get the first when clause of the top level choose command.
+    ChainImpl choose = (ChainImpl)catalog.getCommand(TOP_LEVEL_CHOOSE_COMMAND);
+    EngineeredCommand when = (EngineeredCommand)choose.getCommandList().get(0);
+
+    // the test attribute should have been compiled when the catalog was loaded.
+    assertNotNull("The test attribute was not compiled when the catalog was loaded.", when.getCompiledExpressionMap().get(new QName("test")));
+  }
+
+  @Test public void testChangedAttributeDropsCompiledExpression()
+    throws Exception
+  {
+    ChainImpl choose = (ChainImpl)catalog.getCommand(TOP_LEVEL_CHOOSE_COMMAND);
+    EngineeredCommand when = (EngineeredCommand)choose.getCommandList().get(0);
+    QName test = new QName("test");
+    String originalTest = when.getAttributeMap().get(test);
+
+    try {
+      // setting the attribute must drop the expression compiled from the old value.
+      when.getAttributeMap().put(test, "true()");
+      assertNull("The expression compiled from the old attribute value was kept.", when.getCompiledExpressionMap().get(test));
+    }
+    finally {
+      // the catalog is cached, so restore the original attribute for the other tests.
+      when.getAttributeMap().put(test, originalTest);
+      EngineeringUtil.compileAttributes(when);
+    }
+  }
 }
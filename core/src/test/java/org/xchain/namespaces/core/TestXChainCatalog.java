@@ -0,0 +1,135 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.core;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.xchain.Command;
+import org.xchain.CommandNotFoundException;
+
+/**
+ * Tests the command index of XChainCatalog.
+ */
+public class TestXChainCatalog
+{
+  public static final String NAMESPACE = "http://www.xchain.org/test";
+
+  private XChainCatalog catalog;
+  private XChainCatalog imported;
+  private XChainCatalog nestedImport;
+
+  @Before public void setUp()
+  {
+    catalog = new XChainCatalog();
+    imported = new XChainCatalog();
+    nestedImport = new XChainCatalog();
+    imported.addImport(nestedImport);
+    catalog.addImport(imported);
+  }
+
+  @Test public void testLocalCommand()
+    throws Exception
+  {
+    Command command = new TestCommand();
+    catalog.addCommand("command", command);
+    assertSame("The command was not found by local name.", command, catalog.getCommand("command"));
+    assertSame("The command was not found by qName.", command, catalog.getCommand(new QName("command")));
+  }
+
+  @Test public void testPrecedence()
+    throws Exception
+  {
+    Command command = new TestCommand();
+    Command importedCommand = new TestCommand();
+    Command nestedCommand = new TestCommand();
+    catalog.addCommand(new QName(NAMESPACE, "command"), command);
+    imported.addCommand(new QName(NAMESPACE, "command"), importedCommand);
+    imported.addCommand(new QName(NAMESPACE, "imported"), importedCommand);
+    nestedImport.addCommand(new QName(NAMESPACE, "imported"), nestedCommand);
+    nestedImport.addCommand(new QName(NAMESPACE, "nested"), nestedCommand);
+
+    assertSame("The local command did not take precedence.", command, catalog.getCommand(new QName(NAMESPACE, "command")));
+    assertSame("The imported command did not take precedence.", importedCommand, catalog.getCommand(new QName(NAMESPACE, "imported")));
+    assertSame("The nested import was not found.", nestedCommand, catalog.getCommand(new QName(NAMESPACE, "nested")));
+  }
+
+  @Test public void testImportChanged()
+    throws Exception
+  {
+    try {
+      catalog.getCommand(new QName(NAMESPACE, "late"));
+      throw new Exception("A command that was not added was found.");
+    }
+    catch( CommandNotFoundException cnfe ) {
+      // expected.
+    }
+
+    int version = catalog.getVersion();
+    Command lateCommand = new TestCommand();
+    nestedImport.addCommand(new QName(NAMESPACE, "late"), lateCommand);
+
+    assertTrue("The version did not change when an import changed.", version != catalog.getVersion());
+    assertSame("The index was not rebuilt when an import changed.", lateCommand, catalog.getCommand(new QName(NAMESPACE, "late")));
+  }
+
+  @Test public void testCommandMapIsReadOnly()
+    throws Exception
+  {
+    Command command = new TestCommand();
+    catalog.addCommand("command", command);
+    assertSame("The command map does not hold the command.", command, catalog.getCommandMap().get(new QName("command")));
+
+    try {
+      catalog.getCommandMap().remove(new QName("command"));
+      throw new Exception("A command was removed through the command map.");
+    }
+    catch( UnsupportedOperationException uoe ) {
+      // expected.
+    }
+
+    try {
+      catalog.getCommandMap().entrySet().iterator().next().setValue(new TestCommand());
+      throw new Exception("A command was replaced through an entry of the command map.");
+    }
+    catch( UnsupportedOperationException uoe ) {
+      // expected.
+    }
+
+    assertSame("The command map was changed.", command, catalog.getCommand("command"));
+  }
+
+  @Test(expected=CommandNotFoundException.class) public void testNamespacedCommandByLocalName()
+    throws Exception
+  {
+    catalog.addCommand(new QName(NAMESPACE, "command"), new TestCommand());
+    catalog.getCommand("command");
+  }
+
+  public static class TestCommand
+    implements Command
+  {
+    public boolean execute( JXPathContext context )
+    {
+      return false;
+    }
+  }
+}
@@ -35,7 +35,11 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.xchain.Catalog;
 import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.lifecycle.ConfigContext;
 import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.framework.net.DependencyTracker;
+import org.xchain.framework.strategy.CatalogConsumerStrategy;
+import org.xchain.framework.strategy.InputSourceSourceStrategy;
 import org.xchain.framework.sax.SaxEventRecorder;
 import org.xml.sax.Attributes;
 
@@ -46,6 +50,8 @@ import org.xml.sax.Attributes;
 public abstract class BaseTestSaxEvents
 {
   protected String catalogUri = null;
+  /** The template compiler backend that the catalog is loaded with.  If it is null, the configured backend is used. */
+  protected String templateCompiler = null;
   protected JXPathContext context = null;
   protected SAXResult result = null;
   protected SaxEventRecorder recorder = null;
@@ -76,7 +82,35 @@ public abstract class BaseTestSaxEvents
     result = new SAXResult(recorder);
     context.getVariables().declareVariable("result", result);
     context.getVariables().declareVariable("executed", Boolean.FALSE);
-    catalog = CatalogFactory.getInstance().getCatalog(catalogUri);
+    catalog = loadCatalog(catalogUri, templateCompiler);
+  }
+
+  public void setTemplateCompiler( String templateCompiler )
+  {
+    this.templateCompiler = templateCompiler;
+  }
+
+  /**
+   * Returns the catalog for the system id.  If a template compiler backend is given, the catalog is loaded with that backend,
+   * bypassing the catalog cache, so that the templates are always compiled by it.  The configured backend is restored once the
+   * catalog is loaded.
+   */
+  protected Catalog loadCatalog( String systemId, String templateCompiler )
+    throws Exception
+  {
+    if( templateCompiler == null ) {
+      return CatalogFactory.getInstance().getCatalog(systemId);
+    }
+
+    ConfigContext configContext = Lifecycle.getLifecycleContext().getConfigContext();
+    String configuredCompiler = configContext.getTemplateCompiler();
+    configContext.setTemplateCompiler(templateCompiler);
+    try {
+      return new CatalogConsumerStrategy().consume(systemId, new InputSourceSourceStrategy(), DependencyTracker.getInstance());
+    }
+    finally {
+      configContext.setTemplateCompiler(configuredCompiler);
+    }
   }
 
   @After public void tearDown()
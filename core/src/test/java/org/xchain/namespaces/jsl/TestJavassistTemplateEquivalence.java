@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.jsl;
+
+import org.junit.internal.runners.CompositeRunner;
+import org.junit.internal.runners.InitializationError;
+import org.junit.internal.runners.JUnit4ClassRunner;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite.SuiteClasses;
+import org.xchain.framework.jsl.TemplateCompiler;
+
+/**
+ * Runs the jsl sax event tests against templates compiled by the javassist backend, so that they must produce the same events as
+ * the templates compiled by the eclipse compiler.  The backend is handed to each test instance, so it does not leak into other tests.
+ */
+@RunWith(TestJavassistTemplateEquivalence.JavassistRunner.class)
+@SuiteClasses({
+  TestAttributeCommand.class,
+  TestChainContext.class,
+  TestCommentCommand.class,
+  TestElementCommand.class,
+  TestException.class,
+  TestExcludeResultPrefixes.class,
+  TestNamespace.class,
+  TestNestedFilter.class,
+  TestNestedXChain.class,
+  TestNullAttributeValueTemplate.class,
+  TestNullValueOf.class,
+  TestPrefixMapping.class,
+  TestReturnTrue.class,
+  TestSiblingXChain.class,
+  TestTemplateCommand.class,
+  TestXmlnsValueOf.class
+})
+public class TestJavassistTemplateEquivalence
+{
+  /**
+   * Runs each of the suite classes with the javassist backend set on its test instances.
+   */
+  public static class JavassistRunner
+    extends CompositeRunner
+  {
+    public JavassistRunner( Class<?> klass )
+      throws InitializationError
+    {
+      super(klass.getName());
+      SuiteClasses suiteClasses = klass.getAnnotation(SuiteClasses.class);
+      if( suiteClasses == null ) {
+        throw new InitializationError("The class "+klass.getName()+" does not have a @SuiteClasses annotation.");
+      }
+      for( Class<?> testClass : suiteClasses.value() ) {
+        add(new BackendClassRunner(testClass, TemplateCompiler.JAVASSIST_BACKEND));
+      }
+    }
+  }
+
+  /**
+   * Runs a sax event test class with the given template compiler backend.
+   */
+  public static class BackendClassRunner
+    extends JUnit4ClassRunner
+  {
+    private String templateCompiler;
+
+    public BackendClassRunner( Class<?> testClass, String templateCompiler )
+      throws InitializationError
+    {
+      super(testClass);
+      this.templateCompiler = templateCompiler;
+    }
+
+    protected Object createTest()
+      throws Exception
+    {
+      BaseTestSaxEvents test = (BaseTestSaxEvents)super.createTest();
+      test.setTemplateCompiler(templateCompiler);
+      return test;
+    }
+  }
+}
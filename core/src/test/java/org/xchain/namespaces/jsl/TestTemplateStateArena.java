@@ -0,0 +1,101 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.jsl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestTemplateStateArena
+{
+  @Test public void testInitialState()
+    throws Exception
+  {
+    TemplateStateArena arena = TemplateStateArena.getInstance();
+    arena.push(3, 2);
+    try {
+      for( int i = 0; i < 3; i++ ) {
+        assertEquals("The command execution state was not initialized.", CommandExecutionState.PRE_EXECUTE, arena.getCommandExecutionState()[i]);
+      }
+      for( int i = 0; i < 2; i++ ) {
+        assertEquals("The element output state was not initialized.", ElementOutputState.PRE_START, arena.getElementOutputState()[i]);
+      }
+    }
+    finally {
+      arena.pop();
+    }
+  }
+
+  @Test public void testArraysReused()
+    throws Exception
+  {
+    TemplateStateArena arena = TemplateStateArena.getInstance();
+    arena.push(4, 4);
+    CommandExecutionState[] commandExecutionState = arena.getCommandExecutionState();
+    ElementOutputState[] elementOutputState = arena.getElementOutputState();
+    commandExecutionState[1] = CommandExecutionState.EXECUTED;
+    elementOutputState[1] = ElementOutputState.ENDED;
+    arena.pop();
+
+    // a smaller template at the same level gets the same arrays, reset to their initial values.
+    arena.push(2, 2);
+    try {
+      assertSame("The command execution state array was not reused.", commandExecutionState, arena.getCommandExecutionState());
+      assertSame("The element output state array was not reused.", elementOutputState, arena.getElementOutputState());
+      assertEquals("The reused command execution state was not reset.", CommandExecutionState.PRE_EXECUTE, commandExecutionState[1]);
+      assertEquals("The reused element output state was not reset.", ElementOutputState.PRE_START, elementOutputState[1]);
+    }
+    finally {
+      arena.pop();
+    }
+  }
+
+  @Test public void testNestedLevels()
+    throws Exception
+  {
+    TemplateStateArena arena = TemplateStateArena.getInstance();
+    int depth = arena.getDepth();
+
+    // push more levels than the arena starts with.
+    CommandExecutionState[][] states = new CommandExecutionState[20][];
+    for( int i = 0; i < states.length; i++ ) {
+      arena.push(i+1, 1);
+      states[i] = arena.getCommandExecutionState();
+      assertTrue("The command execution state array is too small.", states[i].length >= i+1);
+    }
+    for( int i = 1; i < states.length; i++ ) {
+      assertNotSame("Two levels share a command execution state array.", states[i-1], states[i]);
+    }
+    for( int i = states.length - 1; i >= 0; i-- ) {
+      assertSame("The wrong level is current.", states[i], arena.getCommandExecutionState());
+      arena.pop();
+    }
+    assertEquals("The arena did not return to its starting depth.", depth, arena.getDepth());
+  }
+
+  @Test(expected=IllegalStateException.class) public void testStateOutsideOfExecute()
+    throws Exception
+  {
+    TemplateStateArena arena = TemplateStateArena.getInstance();
+    while( arena.getDepth() > 0 ) {
+      arena.pop();
+    }
+    arena.getCommandExecutionState();
+  }
+}
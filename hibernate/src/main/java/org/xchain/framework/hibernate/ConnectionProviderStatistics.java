@@ -0,0 +1,96 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connection statistics for the data source bound to one JNDI name.  The acquisition counts and times cover the connections handed out by the
+ * RebindingDataSourceConnectionProvider, including any time spent rebinding the data source.  A failure is a request for a connection that
+ * could not be satisfied, even after rebinding.
+ */
+public class ConnectionProviderStatistics
+{
+  private final String jndiName;
+  private final AtomicLong acquisitionCount = new AtomicLong();
+  private final AtomicLong acquisitionTime = new AtomicLong();
+  private final AtomicLong maxAcquisitionTime = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicLong rebindCount = new AtomicLong();
+  private final AtomicLong rebindFailureCount = new AtomicLong();
+
+  public ConnectionProviderStatistics( String jndiName )
+  {
+    this.jndiName = jndiName;
+  }
+
+  /**
+   * Returns the JNDI name of the data source.
+   */
+  public String getJndiName() { return this.jndiName; }
+
+  /**
+   * Returns the number of connections that have been acquired.
+   */
+  public long getAcquisitionCount() { return this.acquisitionCount.get(); }
+
+  /**
+   * Returns the total time spent waiting for connections, in nanoseconds.
+   */
+  public long getAcquisitionTime() { return this.acquisitionTime.get(); }
+
+  /**
+   * Returns the longest time spent waiting for a single connection, in nanoseconds.
+   */
+  public long getMaxAcquisitionTime() { return this.maxAcquisitionTime.get(); }
+
+  /**
+   * Returns the number of requests for a connection that failed.
+   */
+  public long getFailureCount() { return this.failureCount.get(); }
+
+  /**
+   * Returns the number of times the data source has been looked up again after a connection could not be acquired.
+   */
+  public long getRebindCount() { return this.rebindCount.get(); }
+
+  /**
+   * Returns the number of times looking up the data source again has failed.
+   */
+  public long getRebindFailureCount() { return this.rebindFailureCount.get(); }
+
+  void acquired( long time )
+  {
+    acquisitionCount.incrementAndGet();
+    acquisitionTime.addAndGet(time);
+    long max = maxAcquisitionTime.get();
+    while( time > max && !maxAcquisitionTime.compareAndSet(max, time) ) {
+      max = maxAcquisitionTime.get();
+    }
+  }
+
+  void failed() { failureCount.incrementAndGet(); }
+
+  void rebound() { rebindCount.incrementAndGet(); }
+
+  void rebindFailed() { rebindFailureCount.incrementAndGet(); }
+
+  public String toString()
+  {
+    return jndiName+" [acquisitions="+getAcquisitionCount()+", acquisition time="+(getAcquisitionTime()/1000000L)+"ms, max acquisition time="+(getMaxAcquisitionTime()/1000000L)+
+      "ms, failures="+getFailureCount()+", rebinds="+getRebindCount()+", rebind failures="+getRebindFailureCount()+"]";
+  }
+}
@@ -31,6 +31,7 @@ import org.xchain.framework.lifecycle.StopStep;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
@@ -41,6 +42,10 @@ import javax.xml.namespace.QName;
 /**
  * Manages Hibernate.
  *
+ * The named configurations and session factories are held in an immutable registry that is replaced, while holding the class lock,
+ * whenever a configuration is set or the lifecycle starts or stops.  The registry is published through a volatile field, so the lookup methods,
+ * including the current-session function, read it without taking a lock.
+ *
  * @author Mike Moulton
  * @author Devon Tackett
  * @author Christian Trimble
@@ -55,10 +60,7 @@ public class HibernateLifecycle
   private static Logger log = LoggerFactory.getLogger(HibernateLifecycle.class);
 
   private static boolean started = false;
-  private static Map<QName, SessionFactory> sessionFactoryMap = new HashMap<QName, SessionFactory>();
-  private static Map<QName, Configuration>  configurationMap  = new HashMap<QName, Configuration>();
-  private static Map<SessionFactory, QName> sessionFactoryToQName = new HashMap<SessionFactory, QName>();
-  private static Map<Configuration, QName> configurationToQName = new HashMap<Configuration, QName>();
+  private static volatile Registry registry = Registry.EMPTY;
   private static boolean cleanUp = false;
 
   /**
@@ -78,20 +80,25 @@ public class HibernateLifecycle
           log.debug("Starting HibernateLifecycle");
         }
   
+        Map<QName, SessionFactory> sessionFactoryMap = new HashMap<QName, SessionFactory>();
         try {
-          for( Map.Entry<QName, Configuration> entry : configurationMap.entrySet() ) {
+          for( Map.Entry<QName, Configuration> entry : registry.configurationMap.entrySet() ) {
             if( entry.getValue() != null ) {
               //setXChainDefaults(entry.getKey(), entry.getValue());
-              mapSessionFactory(entry.getKey(), entry.getValue().buildSessionFactory());
+              sessionFactoryMap.put(entry.getKey(), entry.getValue().buildSessionFactory());
             }
           }
     
+          registry = registry.withSessionFactories(sessionFactoryMap);
           started = true;
         }
         catch (RuntimeException ex) {
           if( log.isErrorEnabled() ) {
             log.error("Starting HibernateLifecycle failed", ex);
           }
+          for( SessionFactory sessionFactory : sessionFactoryMap.values() ) {
+            close(sessionFactory);
+          }
           throw ex;
         }
       }
@@ -111,15 +118,16 @@ public class HibernateLifecycle
     synchronized( HibernateLifecycle.class ) {
       if (started) {
         if ( log.isDebugEnabled() ) log.debug("Stopping HibernateLifecycle");
+        Registry stoppedRegistry = registry;
         try {
           started = false;
-          for( Map.Entry<QName, SessionFactory> entry : sessionFactoryMap.entrySet() ) {
-            close(entry.getValue());
-          }
+          registry = stoppedRegistry.withSessionFactories(Collections.<QName, SessionFactory>emptyMap());
         }
         finally {
-          sessionFactoryMap.clear();
-          sessionFactoryToQName.clear();
+          QueryPlan.clearCache();
+          for( Map.Entry<QName, SessionFactory> entry : stoppedRegistry.sessionFactoryMap.entrySet() ) {
+            close(entry.getValue());
+          }
         }
       }
     }
@@ -196,11 +204,10 @@ public class HibernateLifecycle
   {
     synchronized( HibernateLifecycle.class ) {
       if( name == null ) {
-        setConfiguration(configuration);
+        name = DEFAULT_NAME;
       } 
       if( !HibernateLifecycle.started ) {
-        HibernateLifecycle.configurationMap.put(name, configuration);
-        HibernateLifecycle.configurationToQName.put(configuration, name);
+        registry = registry.withConfiguration(name, configuration);
       }
       else {
         throw new IllegalStateException("A named hibernate configuration cannot be set while the lifecycle is running.");
@@ -221,14 +228,6 @@ public class HibernateLifecycle
     }
   }
 
-  private static void mapSessionFactory( QName name, SessionFactory sessionFactory )
-  {
-    synchronized( HibernateLifecycle.class ) {
-      HibernateLifecycle.sessionFactoryMap.put(name, sessionFactory);
-      HibernateLifecycle.sessionFactoryToQName.put(sessionFactory, name);
-    }
-  }
-
   /**
    * Returns the Hibernate configuration.
    *
@@ -240,12 +239,10 @@ public class HibernateLifecycle
 
   public static Configuration getConfiguration( QName name )
   {
-    synchronized( HibernateLifecycle.class ) {
-      if( name == null ) {
-        name = DEFAULT_NAME;
-      }
-      return HibernateLifecycle.configurationMap.get(name);
+    if( name == null ) {
+      name = DEFAULT_NAME;
     }
+    return registry.configurationMap.get(name);
   }
 
   /**
@@ -268,40 +265,31 @@ public class HibernateLifecycle
    */
   public static SessionFactory getSessionFactory( QName name )
   {
-    SessionFactory sessionFactory = null;
-    synchronized( HibernateLifecycle.class ) {
-      if( name == null ) {
-        name=DEFAULT_NAME;
-      }
-      sessionFactory = HibernateLifecycle.sessionFactoryMap.get(name);
-
-      if( sessionFactory == null ) {
-        throw new SessionFactoryNotFoundException(name);
-      }
+    if( name == null ) {
+      name=DEFAULT_NAME;
+    }
+    SessionFactory sessionFactory = registry.sessionFactoryMap.get(name);
 
-      return sessionFactory;
+    if( sessionFactory == null ) {
+      throw new SessionFactoryNotFoundException(name);
     }
+
+    return sessionFactory;
   }
 
   public static Set<QName> getSessionFactoryNames()
   {
-    synchronized( HibernateLifecycle.class ) {
-      return new HashSet<QName>(sessionFactoryMap.keySet());
-    }
+    return new HashSet<QName>(registry.sessionFactoryMap.keySet());
   }
 
   public static QName getQName( SessionFactory sessionFactory )
   {
-    synchronized( HibernateLifecycle.class ) {
-      return sessionFactoryToQName.get(sessionFactory);
-    }
+    return registry.sessionFactoryToQName.get(sessionFactory);
   }
 
   public static QName getQName( Configuration configuration )
   {
-    synchronized( HibernateLifecycle.class ) {
-      return configurationToQName.get(configuration);
-    }
+    return registry.configurationToQName.get(configuration);
   }
 
   /**
@@ -325,13 +313,7 @@ public class HibernateLifecycle
    */
   @Function(localName="current-session")
   public static Session getCurrentSession( QName name ) {
-    synchronized( HibernateLifecycle.class ) {
-      if( name == null ) {
-        name = DEFAULT_NAME;
-      }
-
-      return getSessionFactory(name).getCurrentSession();
-    }
+    return getSessionFactory(name).getCurrentSession();
   }
 
   private static void close( SessionFactory sessionFactory )
@@ -347,5 +329,47 @@ public class HibernateLifecycle
       }
     }
   }
-}
 
+  /**
+   * An immutable snapshot of the named configurations and session factories.  A registry is never modified once it has been published, changes
+   * create a new registry.
+   */
+  private static final class Registry
+  {
+    static final Registry EMPTY = new Registry(Collections.<QName, Configuration>emptyMap(), Collections.<QName, SessionFactory>emptyMap());
+
+    final Map<QName, Configuration> configurationMap;
+    final Map<Configuration, QName> configurationToQName;
+    final Map<QName, SessionFactory> sessionFactoryMap;
+    final Map<SessionFactory, QName> sessionFactoryToQName;
+
+    private Registry( Map<QName, Configuration> configurationMap, Map<QName, SessionFactory> sessionFactoryMap )
+    {
+      this.configurationMap = Collections.unmodifiableMap(new HashMap<QName, Configuration>(configurationMap));
+      this.configurationToQName = Collections.unmodifiableMap(invert(configurationMap));
+      this.sessionFactoryMap = Collections.unmodifiableMap(new HashMap<QName, SessionFactory>(sessionFactoryMap));
+      this.sessionFactoryToQName = Collections.unmodifiableMap(invert(sessionFactoryMap));
+    }
+
+    Registry withConfiguration( QName name, Configuration configuration )
+    {
+      Map<QName, Configuration> configurationMap = new HashMap<QName, Configuration>(this.configurationMap);
+      configurationMap.put(name, configuration);
+      return new Registry(configurationMap, sessionFactoryMap);
+    }
+
+    Registry withSessionFactories( Map<QName, SessionFactory> sessionFactoryMap )
+    {
+      return new Registry(configurationMap, sessionFactoryMap);
+    }
+
+    private static <K, V> Map<V, K> invert( Map<K, V> map )
+    {
+      Map<V, K> inverse = new HashMap<V, K>();
+      for( Map.Entry<K, V> entry : map.entrySet() ) {
+        inverse.put(entry.getValue(), entry.getKey());
+      }
+      return inverse;
+    }
+  }
+}
@@ -0,0 +1,298 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.engine.query.ParameterMetadata;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.type.SerializableType;
+import org.hibernate.type.Type;
+import org.hibernate.type.TypeFactory;
+import org.xchain.framework.util.ConcurrentLruCache;
+
+/**
+ * The parameter metadata of an HQL query, cached by session factory and query string.  Hibernate caches the translation of the query, but
+ * binding a parameter without a type makes the query look up the expected type of the parameter and, when the query does not imply one, guess
+ * the type from the class of the value.  A query plan keeps a Binder for each named parameter that remembers the expected type and the types
+ * guessed for each class of value, so parameters are bound with their type.
+ *
+ * Queries created with createQuery(Session) are associated with their plan while the plan is in use on the current thread, between calls
+ * to startUsing(Query) and stopUsing(), so the commands that bind parameters can find the plan with forQuery(Query).
+ */
+public class QueryPlan
+{
+  /** The maximum number of query plans that are cached. */
+  public static final int CACHE_SIZE = 1000;
+
+  private static ConcurrentLruCache<PlanKey, QueryPlan> planCache = new ConcurrentLruCache<PlanKey, QueryPlan>(CACHE_SIZE);
+
+  /** The queries whose plans are in use on this thread, innermost first. */
+  private static ThreadLocal<LinkedList<QueryPlanUse>> useStackTl = new ThreadLocal<LinkedList<QueryPlanUse>>() {
+    protected LinkedList<QueryPlanUse> initialValue() { return new LinkedList<QueryPlanUse>(); }
+  };
+
+  /**
+   * Returns the plan for the query string, creating it if it is not cached.
+   */
+  public static QueryPlan getQueryPlan( SessionFactory sessionFactory, String queryString )
+  {
+    PlanKey key = new PlanKey(sessionFactory, queryString);
+    QueryPlan plan = planCache.get(key);
+    if( plan == null ) {
+      plan = new QueryPlan(sessionFactory, queryString);
+      QueryPlan existingPlan = planCache.putIfAbsent(key, plan);
+      if( existingPlan != null ) {
+        plan = existingPlan;
+      }
+    }
+    return plan;
+  }
+
+  /**
+   * Returns the plan of a query that is in use on this thread, or null if the query was not created by a plan that is in use.
+   */
+  public static QueryPlan forQuery( Query query )
+  {
+    for( QueryPlanUse use : useStackTl.get() ) {
+      if( use.query == query ) {
+        return use.plan;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes all of the cached plans.  This is called when the session factories are closed.
+   */
+  public static void clearCache()
+  {
+    planCache.clear();
+  }
+
+  private final SessionFactory sessionFactory;
+  private final String queryString;
+  private final ConcurrentMap<String, Binder> binderMap = new ConcurrentHashMap<String, Binder>();
+  private volatile ParameterMetadata parameterMetadata = null;
+
+  private QueryPlan( SessionFactory sessionFactory, String queryString )
+  {
+    this.sessionFactory = sessionFactory;
+    this.queryString = queryString;
+  }
+
+  public String getQueryString() { return queryString; }
+
+  /**
+   * Creates a query for this plan with the session.
+   */
+  public Query createQuery( Session session )
+  {
+    return session.createQuery(queryString);
+  }
+
+  /**
+   * Associates the query with this plan on the current thread.  Every call to this method must be matched with a call to stopUsing().
+   */
+  public void startUsing( Query query )
+  {
+    useStackTl.get().addFirst(new QueryPlanUse(query, this));
+  }
+
+  /**
+   * Removes the association made by the last call to startUsing(Query) on the current thread.
+   */
+  public void stopUsing()
+  {
+    useStackTl.get().removeFirst();
+  }
+
+  /**
+   * Returns the binder for the named parameter.
+   */
+  public Binder getBinder( String name )
+  {
+    Binder binder = binderMap.get(name);
+    if( binder == null ) {
+      binder = new Binder(name, expectedType(name));
+      Binder existingBinder = binderMap.putIfAbsent(name, binder);
+      if( existingBinder != null ) {
+        binder = existingBinder;
+      }
+    }
+    return binder;
+  }
+
+  /**
+   * Returns the type that the query expects for the named parameter, or null if the query does not imply a type or the name is not a parameter
+   * of the query.
+   */
+  private Type expectedType( String name )
+  {
+    if( !(sessionFactory instanceof SessionFactoryImplementor) ) {
+      return null;
+    }
+    try {
+      if( parameterMetadata == null ) {
+        parameterMetadata = ((SessionFactoryImplementor)sessionFactory).getQueryPlanCache().getHQLQueryPlan(queryString, false, Collections.EMPTY_MAP).getParameterMetadata();
+      }
+      return parameterMetadata.getNamedParameterExpectedType(name);
+    }
+    catch( HibernateException he ) {
+      // the query will report the problem when the parameter is bound.
+      return null;
+    }
+  }
+
+  /**
+   * Guesses the type of a value that is not implied by the query, in the same way that a query does when a parameter is bound without a type.
+   * Returns null if a type cannot be determined.
+   */
+  private Type guessType( Class<?> type )
+  {
+    Type guessedType = TypeFactory.heuristicType(type.getName());
+    boolean serializable = guessedType instanceof SerializableType;
+    if( guessedType == null || serializable ) {
+      if( !(sessionFactory instanceof SessionFactoryImplementor) ) {
+        return guessedType;
+      }
+      try {
+        ((SessionFactoryImplementor)sessionFactory).getEntityPersister(type.getName());
+      }
+      catch( MappingException me ) {
+        return guessedType;
+      }
+      return Hibernate.entity(type);
+    }
+    return guessedType;
+  }
+
+  /**
+   * Binds values to one named parameter of the query.
+   */
+  public class Binder
+  {
+    private final String name;
+    private final Type expectedType;
+    private final ConcurrentMap<Class<?>, Type> guessedTypeMap = new ConcurrentHashMap<Class<?>, Type>();
+
+    Binder( String name, Type expectedType )
+    {
+      this.name = name;
+      this.expectedType = expectedType;
+    }
+
+    public String getName() { return name; }
+
+    /**
+     * Binds the value to the parameter of the query.  Collections and arrays of references are bound as parameter lists.
+     *
+     * @throws IllegalArgumentException if the value is an array of primitives.
+     */
+    public void bind( Query query, Object value )
+    {
+      if( value instanceof Collection ) {
+        query.setParameterList(name, (Collection)value);
+      }
+      else if( value instanceof Object[] ) {
+        query.setParameterList(name, (Object[])value);
+      }
+      else if( value != null && value.getClass().isArray() ) {
+        throw new IllegalArgumentException(String.format("The array type (%s) must be an array of references.", value.getClass().getName()));
+      }
+      else {
+        Type type = expectedType != null ? expectedType : typeOf(value);
+        if( type != null ) {
+          query.setParameter(name, value, type);
+        }
+        else {
+          query.setParameter(name, value);
+        }
+      }
+    }
+
+    private Type typeOf( Object value )
+    {
+      if( value == null ) {
+        return null;
+      }
+      Class<?> valueClass = HibernateProxyHelper.getClassWithoutInitializingProxy(value);
+      Type type = guessedTypeMap.get(valueClass);
+      if( type == null ) {
+        type = guessType(valueClass);
+        if( type != null ) {
+          guessedTypeMap.putIfAbsent(valueClass, type);
+        }
+      }
+      return type;
+    }
+  }
+
+  /**
+   * The key of a cached plan.  Session factories are compared by identity.
+   */
+  private static final class PlanKey
+  {
+    private final SessionFactory sessionFactory;
+    private final String queryString;
+
+    PlanKey( SessionFactory sessionFactory, String queryString )
+    {
+      this.sessionFactory = sessionFactory;
+      this.queryString = queryString;
+    }
+
+    public boolean equals( Object object )
+    {
+      if( !(object instanceof PlanKey) ) {
+        return false;
+      }
+      PlanKey other = (PlanKey)object;
+      return sessionFactory == other.sessionFactory && queryString.equals(other.queryString);
+    }
+
+    public int hashCode()
+    {
+      return System.identityHashCode(sessionFactory) * 31 + queryString.hashCode();
+    }
+  }
+
+  /**
+   * A query that was created by a plan that is in use.
+   */
+  private static final class QueryPlanUse
+  {
+    final Query query;
+    final QueryPlan plan;
+
+    QueryPlanUse( Query query, QueryPlan plan )
+    {
+      this.query = query;
+      this.plan = plan;
+    }
+  }
+}
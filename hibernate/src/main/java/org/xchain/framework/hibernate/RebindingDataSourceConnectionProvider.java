@@ -15,7 +15,11 @@
  */
 package org.xchain.framework.hibernate;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
@@ -32,6 +36,10 @@ import java.sql.SQLException;
  * A data source connection provider that will rebind the data source if it fails to create a connection.  When using the 'hibernate.connection.datasource' property, XChains will use this
  * connection provider, unless the property 'hibernate.connection.provider_class' has been specified in the configuration.
  *
+ * Connections are checked out without locking, since the data source is expected to be thread safe.  When a checkout fails, the first thread to
+ * notice looks the data source up again while the other threads that failed against the same data source wait for it and then retry.  Connection
+ * statistics are kept for each JNDI name and are available from getStatistics(String).
+ *
  * @author Christian Trimble
  * @author Josh Kennedy
  */
@@ -41,6 +49,9 @@ public class RebindingDataSourceConnectionProvider
   /** The log for this data source provider. */
   private static Logger log = LoggerFactory.getLogger(RebindingDataSourceConnectionProvider.class);
 
+  /** The connection statistics, keyed by the jndi name of the data source. */
+  private static final ConcurrentMap<String, ConnectionProviderStatistics> statisticsMap = new ConcurrentHashMap<String, ConnectionProviderStatistics>();
+
   /** The jndi name of the data source. */
   private String jndiName = null;
 
@@ -53,8 +64,31 @@ public class RebindingDataSourceConnectionProvider
   /** The initial context for looking up data sources. */
   private InitialContext initialContext = null;
 
-  /** The current data source for creating connections. */
-  private DataSource dataSource = null;
+  /** The current binding of the data source for creating connections.  A new binding is created each time the data source is looked up. */
+  private volatile Binding binding = new Binding(null);
+
+  /** The lock held while the data source is rebound. */
+  private final Object rebindLock = new Object();
+
+  /** The connection statistics for the data source. */
+  private ConnectionProviderStatistics statistics = null;
+
+  /**
+   * Returns the connection statistics for the data source bound to the jndi name, or null if a connection provider has not been configured
+   * with that name.
+   */
+  public static ConnectionProviderStatistics getStatistics( String jndiName )
+  {
+    return statisticsMap.get(jndiName);
+  }
+
+  /**
+   * Returns the connection statistics for all of the data sources that connection providers have been configured with.
+   */
+  public static Collection<ConnectionProviderStatistics> getStatistics()
+  {
+    return Collections.unmodifiableCollection(statisticsMap.values());
+  }
 
   /**
    * Configures this connection provider with the specified properties.  This method will only fail with a hibernate exception if the 'hibernate.connection.datasource' property is not specified,
@@ -84,6 +118,15 @@ public class RebindingDataSourceConnectionProvider
       log.warn("A JDBC user name and password will not be used because the hibernate property '"+Environment.USER+"' is not set.");
     }
 
+    statistics = statisticsMap.get(jndiName);
+    if( statistics == null ) {
+      ConnectionProviderStatistics newStatistics = new ConnectionProviderStatistics(jndiName);
+      statistics = statisticsMap.putIfAbsent(jndiName, newStatistics);
+      if( statistics == null ) {
+        statistics = newStatistics;
+      }
+    }
+
     try {
       initialContext = NamingHelper.getInitialContext(properties);
     }
@@ -138,7 +181,7 @@ public class RebindingDataSourceConnectionProvider
     }
 
     // We are ready to set this data source.
-    dataSource = (DataSource)jndiObject;
+    binding = new Binding((DataSource)jndiObject);
   }
 
   /**
@@ -147,7 +190,7 @@ public class RebindingDataSourceConnectionProvider
    * @throws SQLException if the data source is null, or if the data source throws an exception while creating the connection.
    * @return a connection from the currently configured JDBC data source.
    */
-  private Connection getConnectionFromDataSource()
+  private Connection getConnectionFromDataSource( DataSource dataSource )
     throws SQLException
   {
     if( dataSource == null ) {
@@ -164,24 +207,66 @@ public class RebindingDataSourceConnectionProvider
 
   /**
    * Gets a connection from the datasource bound to jndi.  If getting the connection fails, this method will attempt to rebind the datasource once, then fail if rebinding fails or the newly bound
-   * DataSource fails.  This method is synchronized, so that not more than one thread attempts to rebind the datasource at a time.  This should not cause a major performance hit, since the datasource
-   * pool will most likely be synchronized as well.
+   * DataSource fails.  Getting a connection does not lock, but only one thread rebinds the data source at a time.  Threads that failed against a data source that has since been rebound
+   * retry with the new data source instead of rebinding it again.
    *
    * @throws SQLException if a fresh copy of the datasource from JNDI caused an exception to be thrown.
    * @return a connection to the data source, creating a new data source if required.
    */
-  public synchronized Connection getConnection()
+  public Connection getConnection()
     throws SQLException
   {
+    long start = System.nanoTime();
+    Binding currentBinding = binding;
+    Connection connection = null;
     try {
-      return getConnectionFromDataSource();
+      connection = getConnectionFromDataSource(currentBinding.dataSource);
     }
     catch( Exception exception ) { 
+      try {
+        connection = getConnectionFromDataSource(rebindDataSource(currentBinding, exception).dataSource);
+      }
+      catch( SQLException sqle ) {
+        statistics.failed();
+        throw sqle;
+      }
+      catch( RuntimeException re ) {
+        statistics.failed();
+        throw re;
+      }
+    }
+    statistics.acquired(System.nanoTime() - start);
+    return connection;
+  }
+
+  /**
+   * Rebinds the data source, unless another thread has already replaced the binding that failed.
+   *
+   * @param failedBinding the binding of the data source that could not provide a connection.
+   * @param exception the exception thrown by the failed data source.
+   * @return the binding to retry with.
+   * @throws SQLException if the data source could not be loaded from JNDI.
+   */
+  private Binding rebindDataSource( Binding failedBinding, Exception exception )
+    throws SQLException
+  {
+    synchronized( rebindLock ) {
+      if( binding != failedBinding ) {
+        return binding;
+      }
+
       if( log.isWarnEnabled() ) {
         log.warn("Attempting to rebind to the jndi datasource due to an exception.", exception);
       }
-      initializeDataSource();
-      return getConnectionFromDataSource();
+      statistics.rebound();
+      try {
+        initializeDataSource();
+      }
+      catch( SQLException sqle ) {
+        statistics.rebindFailed();
+        throw sqle;
+      }
+      return binding;
     }
   }
 
@@ -203,7 +288,7 @@ public class RebindingDataSourceConnectionProvider
   public void close()
   {
     initialContext = null;
-    dataSource = null;
+    binding = new Binding(null);
     jndiName = null;
     userName = null;
     password = null;
@@ -213,4 +298,17 @@ public class RebindingDataSourceConnectionProvider
   {
     return true;
   }
+
+  /**
+   * A data source looked up from JNDI.
+   */
+  private static final class Binding
+  {
+    final DataSource dataSource;
+
+    Binding( DataSource dataSource )
+    {
+      this.dataSource = dataSource;
+    }
+  }
 }
@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
+/**
+ * An iterator over the rows of a forward only ScrollableResults.  Rows with a single column are returned as the value of that column, other
+ * rows are returned as an Object[], matching Query.list().  When a clear interval is given, the session is flushed and cleared each time that many
+ * rows have been returned, so the entities loaded for earlier rows can be garbage collected without losing the changes made to them.  Entities
+ * returned before a clear are detached.
+ *
+ * The results are closed when the last row has been returned, or when close() is called.
+ */
+public class ScrollIterator
+  implements Iterator<Object>
+{
+  private ScrollableResults results;
+  private Session session;
+  private int clearInterval;
+  private long rowCount = 0;
+  private boolean advanced = false;
+  private boolean hasNext = false;
+
+  /**
+   * Creates an iterator for the results.
+   *
+   * @param results the forward only results to iterate.
+   * @param session the session that the results were loaded with, or null if the session should not be cleared.
+   * @param clearInterval the number of rows returned between flushes and clears of the session, zero or less to never clear the session.
+   */
+  public ScrollIterator( ScrollableResults results, Session session, int clearInterval )
+  {
+    this.results = results;
+    this.session = session;
+    this.clearInterval = clearInterval;
+  }
+
+  /**
+   * Returns the number of rows that have been returned.
+   */
+  public long getRowCount() { return rowCount; }
+
+  public boolean hasNext()
+  {
+    if( !advanced ) {
+      if( results == null ) {
+        return false;
+      }
+      if( session != null && clearInterval > 0 && rowCount > 0 && rowCount % clearInterval == 0 ) {
+        session.flush();
+        session.clear();
+      }
+      hasNext = results.next();
+      advanced = true;
+      if( !hasNext ) {
+        close();
+      }
+    }
+    return hasNext;
+  }
+
+  public Object next()
+  {
+    if( !hasNext() ) {
+      throw new NoSuchElementException();
+    }
+    advanced = false;
+    rowCount++;
+    Object[] row = results.get();
+    return row.length == 1 ? row[0] : row;
+  }
+
+  public void remove()
+  {
+    throw new UnsupportedOperationException("Rows cannot be removed from scrollable results.");
+  }
+
+  /**
+   * Closes the results.  This method can be called more than once.
+   */
+  public void close()
+  {
+    if( results != null ) {
+      try {
+        results.close();
+      }
+      finally {
+        results = null;
+        session = null;
+        hasNext = false;
+        advanced = true;
+      }
+    }
+  }
+}
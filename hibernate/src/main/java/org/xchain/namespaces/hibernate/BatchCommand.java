@@ -0,0 +1,195 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.hibernate;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xchain.annotations.Attribute;
+import org.xchain.annotations.AttributeType;
+import org.xchain.annotations.Element;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.jxpath.Scope;
+import org.xchain.framework.jxpath.ScopedQNameVariables;
+
+/**
+ * <p>The <code>batch</code> command groups the writes made by its children.  The <code>save</code>, <code>persist</code> and <code>delete</code>
+ * commands count each entity that they write for the batch.  Each time the count reaches
+ * the size of the batch, the session is flushed and cleared, so the session does not grow with the number of entities written and the inserts
+ * are sent to the database in JDBC batches.  The session is flushed again when the children complete, and the number of rows processed is stored
+ * in the variable.</p>
+ *
+ * <p>JDBC batching is configured on the session factory, so the hibernate property 'hibernate.jdbc.batch_size' should be set to the size of
+ * the batch.  Entities written before a clear are detached, so they should not be modified after they are written.</p>
+ *
+ * <p>This must reference an active <code>session</code>.</p>
+ * 
+ * <code class="source">
+ * &lt;xchain:session xmlns:xchain="http://www.xchain.org/hibernate/1.0"&gt;
+ *  &lt;xchain:transaction&gt;
+ *    &lt;xchain:batch size="50" variable="count"&gt;
+ *      ...
+ *      &lt;xchain:persist entity="$myEntity"/&gt;
+ *      ...
+ *    &lt;/xchain:batch&gt;
+ *  &lt;/xchain:transaction&gt;
+ * &lt;/xchain:session&gt;
+ * </code>
+ *
+ * @see SaveCommand
+ * @see PersistCommand
+ * @see DeleteCommand
+ */
+@Element(localName="batch")
+public abstract class BatchCommand
+  extends AbstractSessionCommand
+{
+  public static Logger log = LoggerFactory.getLogger(BatchCommand.class);
+
+  /** The batches that are executing on this thread, innermost first. */
+  private static ThreadLocal<LinkedList<Batch>> batchStackTl = new ThreadLocal<LinkedList<Batch>>() {
+    protected LinkedList<Batch> initialValue() { return new LinkedList<Batch>(); }
+  };
+
+  /** The session factories that have already been reported as not batching JDBC statements. */
+  private static ConcurrentMap<SessionFactory, Boolean> unbatchedSessionFactoryMap = new ConcurrentHashMap<SessionFactory, Boolean>();
+
+  /**
+   * The number of rows to process between flushes of the session.
+   */
+  @Attribute(localName="size", type=AttributeType.JXPATH_VALUE, defaultValue="50")
+  public abstract Integer getSize( JXPathContext context );
+
+  /**
+   * The variable that the number of rows processed is stored in.
+   */
+  @Attribute(localName="variable", type=AttributeType.QNAME)
+  public abstract QName getVariable( JXPathContext context );
+  public abstract boolean hasVariable();
+
+  /**
+   * The scope of the variable.
+   * @see Scope
+   */
+  @Attribute(localName="scope", type=AttributeType.LITERAL, defaultValue="request")
+  public abstract Scope getScope( JXPathContext context );
+
+  public boolean execute( JXPathContext context )
+    throws Exception
+  {
+    Session session = HibernateLifecycle.getCurrentSession(getName(context));
+
+    if( session == null ) {
+      throw new IllegalStateException("Session not found.");
+    }
+
+    int size = getSize(context).intValue();
+    if( size <= 0 ) {
+      throw new IllegalArgumentException("The size of a batch must be greater than zero.");
+    }
+
+    warnIfUnbatched(session.getSessionFactory());
+
+    Batch batch = new Batch(session, size);
+    LinkedList<Batch> batchStack = batchStackTl.get();
+    batchStack.addFirst(batch);
+    boolean result = false;
+    try {
+      result = super.execute(context);
+      session.flush();
+    }
+    finally {
+      batchStack.removeFirst();
+    }
+
+    if( log.isDebugEnabled() ) {
+      log.debug("Batch processed "+batch.getRowCount()+" rows with "+batch.getFlushCount()+" flushes.");
+    }
+
+    if( hasVariable() ) {
+      ((ScopedQNameVariables)context.getVariables()).declareVariable(getVariable(context), Long.valueOf(batch.getRowCount()), getScope(context));
+    }
+
+    return result;
+  }
+
+  /**
+   * Records rows written with the session.  If a batch for the session is executing on this thread, the rows are counted by the innermost
+   * batch, which flushes and clears the session when it is full.  Otherwise this method does nothing.
+   *
+   * @param session the session that wrote the rows.
+   * @param rowCount the number of rows written.
+   */
+  static void rowsProcessed( Session session, int rowCount )
+  {
+    for( Batch batch : batchStackTl.get() ) {
+      if( batch.session == session ) {
+        batch.rowsProcessed(rowCount);
+        return;
+      }
+    }
+  }
+
+  private static void warnIfUnbatched( SessionFactory sessionFactory )
+  {
+    if( sessionFactory instanceof SessionFactoryImplementor && ((SessionFactoryImplementor)sessionFactory).getSettings().getJdbcBatchSize() <= 1 &&
+        unbatchedSessionFactoryMap.putIfAbsent(sessionFactory, Boolean.TRUE) == null && log.isWarnEnabled() ) {
+      log.warn("A batch command is using a session factory that does not batch JDBC statements.  Set the hibernate property 'hibernate.jdbc.batch_size' to enable JDBC batching.");
+    }
+  }
+
+  /**
+   * The state of one execution of a batch command.
+   */
+  private static class Batch
+  {
+    private final Session session;
+    private final int size;
+    private long rowCount = 0;
+    private long flushCount = 0;
+    private int pendingCount = 0;
+
+    Batch( Session session, int size )
+    {
+      this.session = session;
+      this.size = size;
+    }
+
+    long getRowCount() { return rowCount; }
+    long getFlushCount() { return flushCount; }
+
+    void rowsProcessed( int count )
+    {
+      rowCount += count;
+      pendingCount += count;
+      if( pendingCount >= size ) {
+        session.flush();
+        session.clear();
+        flushCount++;
+        pendingCount = 0;
+      }
+    }
+  }
+}
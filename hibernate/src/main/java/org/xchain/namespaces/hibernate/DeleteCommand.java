@@ -79,13 +79,16 @@ public abstract class DeleteCommand
       
 		  if (hasSelect()) {
 		    session.delete(getSelect(context));
+		    BatchCommand.rowsProcessed(session, 1);
 		  } else if (hasSelectNodes()) {
 		    List nodeList = getSelectNodes(context);
 		    for (Object entity : nodeList) {
 		      session.delete(entity);
+		      BatchCommand.rowsProcessed(session, 1);
 		    }
 		  } else if (hasSelectSingleNode()) {
-		    session.delete(getSelectNodes(context));
+		    session.delete(getSelectSingleNode(context));
+		    BatchCommand.rowsProcessed(session, 1);
 		  }
 	    
 	    // The delete is executed.
@@ -15,12 +15,24 @@
  */
 package org.xchain.namespaces.hibernate;
 
+import javax.xml.namespace.QName;
+
 import org.apache.commons.jxpath.JXPathContext;
 import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.xchain.annotations.Attribute;
+import org.xchain.annotations.AttributeType;
 import org.xchain.annotations.Element;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.hibernate.ScrollIterator;
 
 /**
  * <p>The <code>iterate</code> evaluates the Query as an iterator.</p>
+ *
+ * <p>By default, the iterator is created with Query.iterate(), which selects the identifiers of the results and then loads each entity that
+ * is not already in the session with its own select.  When a fetch-size is given, the iterator reads complete rows from a forward only cursor
+ * instead, fetch-size rows at a time, and flushes and clears the session every clear-interval rows.  The cursor is closed when the iterator is exhausted or
+ * the session is closed.</p>
  * 
  * <p>This must reference a <code>query</code>.</p>
  * 
@@ -43,11 +55,33 @@ import org.xchain.annotations.Element;
  * 
  * @see QueryCommand
  * @see org.hibernate.Query#iterate()
+ * @see org.hibernate.Query#scroll(ScrollMode)
  */
 @Element(localName="iterate")
 public abstract class IterateCommand
 	extends AbstractQueryResultCommand
 {  
+  /**
+   * The name of the session factory that created the query.  The session of this factory is flushed and cleared every clear-interval rows.
+   */
+  @Attribute(localName="name",
+             type=AttributeType.QNAME,
+             defaultValue= "{http://www.xchain.org/hibernate}session-factory")
+  public abstract QName getName( JXPathContext context );
+
+  /**
+   * The number of rows that the JDBC driver should fetch from the database at a time.  When set, the results are read from a forward only cursor.
+   */
+  @Attribute(localName="fetch-size", type=AttributeType.JXPATH_VALUE)
+  public abstract Integer getFetchSize( JXPathContext context );
+  public abstract boolean hasFetchSize();
+
+  /**
+   * The number of rows between flushes and clears of the session when a fetch-size is set.  Zero disables clearing.
+   */
+  @Attribute(localName="clear-interval", type=AttributeType.JXPATH_VALUE, defaultValue="0")
+  public abstract Integer getClearInterval( JXPathContext context );
+
 	  /**
 	   * Evaluates the Query as an iterator.
 	   */
@@ -60,7 +94,13 @@ public abstract class IterateCommand
 			  throw new Exception("An iterate command must have a query.");
 		  
 		  // Get the iterator and store the result.
-		  storeValue(context, query.iterate());
+		  if( hasFetchSize() ) {
+		    query.setFetchSize(getFetchSize(context));
+		    storeValue(context, new ScrollIterator(query.scroll(ScrollMode.FORWARD_ONLY), HibernateLifecycle.getCurrentSession(getName(context)), getClearInterval(context)));
+		  }
+		  else {
+		    storeValue(context, query.iterate());
+		  }
 	    
 	    // The query is built and executed.
 	    return false;
@@ -22,11 +22,15 @@ import org.hibernate.Query;
 import org.xchain.annotations.Attribute;
 import org.xchain.annotations.AttributeType;
 import org.xchain.annotations.Element;
+import org.xchain.framework.hibernate.QueryPlan;
 
 /**
  * <p>The <code>parameter</code> command will specify a parameter for a query.</p>
  *
  * <p>This must reference a <code>query</code>.</p>
+ *
+ * <p>When the query was created by a <code>query</code> command, the value is bound with the type that the query expects for the parameter,
+ * or the type cached for the class of the value.</p>
  * 
  * <code class="source">
  * &lt;xchain:session xmlns:xchain="http://www.xchain.org/hibernate/1.0"&gt;
@@ -90,7 +94,10 @@ public abstract class ParameterCommand
 	    
 	    parameterValue = getValue(context);
 	    
-	    if( parameterValue instanceof Collection ) {
+	    QueryPlan plan = QueryPlan.forQuery(query);
+	    if( plan != null ) {
+	      plan.getBinder(parameterName).bind(query, parameterValue);
+	    } else if( parameterValue instanceof Collection ) {
 	      query.setParameterList(parameterName, (Collection) parameterValue);
 	    } else if( parameterValue.getClass().isArray() ) {
 	      if( Object[].class.isAssignableFrom(parameterValue.getClass()) ) {
@@ -76,6 +76,7 @@ public abstract class PersistCommand
 	    
 	    // Perform the persist.
 	    session.persist(entity);
+	    BatchCommand.rowsProcessed(session, 1);
 	    
 	    // The persist is executed.
 	    return false;
@@ -28,11 +28,16 @@ import org.xchain.annotations.Element;
 import org.xchain.framework.jxpath.ScopedQNameVariables;
 import org.xchain.framework.jxpath.Scope;
 import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.hibernate.QueryPlan;
 
 /**
  * <p>The <code>query</code> command starts a new query.</p>
  * 
  * <p>This must reference an active <code>session</code>.</p>
+ *
+ * <p>The parameter metadata of each query string is cached for the session factory, so the <code>parameter</code> commands under the query bind
+ * their values with a known type.  When cacheable is true, the results of the query are stored in the second-level query cache, in the
+ * cache-region if one is given.  The query cache must be enabled with the hibernate property 'hibernate.cache.use_query_cache'.</p>
  * 
  * <code class="source">
  * &lt;xchain:session xmlns:xchain="http://www.xchain.org/hibernate/1.0"&gt;
@@ -72,6 +77,19 @@ public abstract class QueryCommand
   @Attribute(localName="query", type=AttributeType.JXPATH_VALUE)
   public abstract String getQuery( JXPathContext context );
   public abstract boolean hasQuery();  
+
+  /**
+   * Whether the results of the query are stored in the query cache.
+   */
+  @Attribute(localName="cacheable", type=AttributeType.JXPATH_VALUE, defaultValue="'false'")
+  public abstract Boolean getCacheable( JXPathContext context );
+
+  /**
+   * The region of the query cache that the results are stored in.  The default query cache region is used if this is not set.
+   */
+  @Attribute(localName="cache-region", type=AttributeType.JXPATH_VALUE)
+  public abstract String getCacheRegion( JXPathContext context );
+  public abstract boolean hasCacheRegion();
   
   public boolean execute( JXPathContext context )
     throws Exception
@@ -88,13 +106,27 @@ public abstract class QueryCommand
   
     variable = getResult( context );
 
-    query = session.createQuery(getQuery(context));
+    QueryPlan plan = QueryPlan.getQueryPlan(session.getSessionFactory(), getQuery(context));
+    query = plan.createQuery(session);
+
+    if( getCacheable(context).booleanValue() ) {
+      query.setCacheable(true);
+      if( hasCacheRegion() ) {
+        query.setCacheRegion(getCacheRegion(context));
+      }
+    }
 
     // put the query into the context.
     ((ScopedQNameVariables)context.getVariables()).declareVariable( variable, query, Scope.chain );
 
     // execute the chain 
-    return super.execute( context );
+    plan.startUsing(query);
+    try {
+      return super.execute( context );
+    }
+    finally {
+      plan.stopUsing();
+    }
 
   }  
 }
@@ -77,6 +77,7 @@ public abstract class SaveCommand
 	    
 	    // Perform the save.
 	    session.save(entity);
+	    BatchCommand.rowsProcessed(session, 1);
 	    
 	    // The save is executed.
 	    return false;
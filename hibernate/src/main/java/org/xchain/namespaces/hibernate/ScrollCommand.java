@@ -0,0 +1,140 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.hibernate;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xchain.annotations.Attribute;
+import org.xchain.annotations.AttributeType;
+import org.xchain.annotations.Element;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.hibernate.ScrollIterator;
+import org.xchain.framework.jxpath.Scope;
+import org.xchain.framework.jxpath.ScopedQNameVariables;
+
+/**
+ * <p>The <code>scroll</code> command executes the Query with a forward only cursor and executes its children once for each row, with the row
+ * stored in the variable.  Rows are read from the database as they are needed, fetch-size rows at a time, and the session is flushed and cleared
+ * every clear-interval rows, so the memory used does not grow with the size of the result.  This makes the command suitable for large exports, such
+ * as writing each row with a <code>csv:row</code> command.  Changes made by the children are flushed before the session is cleared.  Entities
+ * from earlier rows are detached by the clear, so changes made to them after their rows have passed are not saved.</p>
+ * 
+ * <p>This must reference a <code>query</code>.</p>
+ * 
+ * <code class="source">
+ * &lt;xchain:session xmlns:xchain="http://www.xchain.org/hibernate/1.0"&gt;
+ *  &lt;xchain:transaction&gt;
+ *    ...
+ *    &lt;xchain:query query="'from Entity'"&gt;
+ *      ...
+ *      &lt;xchain:scroll variable="entity" fetch-size="500"&gt;
+ *        ...
+ *      &lt;/xchain:scroll&gt;
+ *      ...
+ *    &lt;/xchain:query&gt;
+ *    ...
+ *  &lt;/xchain:transaction&gt;
+ * &lt;/xchain:session&gt;
+ * </code> 
+ *
+ * @see QueryCommand
+ * @see org.hibernate.Query#scroll(ScrollMode)
+ */
+@Element(localName="scroll")
+public abstract class ScrollCommand
+  extends AbstractQueryCommand
+{
+  public static Logger log = LoggerFactory.getLogger(ScrollCommand.class);
+
+  /**
+   * The name of the session factory that created the query.  The session of this factory is flushed and cleared every clear-interval rows.
+   */
+  @Attribute(localName="name",
+             type=AttributeType.QNAME,
+             defaultValue= "{http://www.xchain.org/hibernate}session-factory")
+  public abstract QName getName( JXPathContext context );
+
+  /**
+   * The variable that each row is stored in.
+   */
+  @Attribute(localName="variable", type=AttributeType.QNAME)
+  public abstract QName getVariable( JXPathContext context );
+  public abstract boolean hasVariable();
+
+  /**
+   * The scope of the variable.
+   * @see Scope
+   */
+  @Attribute(localName="scope", type=AttributeType.LITERAL, defaultValue="request")
+  public abstract Scope getScope( JXPathContext context );
+
+  /**
+   * The number of rows that the JDBC driver should fetch from the database at a time.
+   */
+  @Attribute(localName="fetch-size", type=AttributeType.JXPATH_VALUE, defaultValue="500")
+  public abstract Integer getFetchSize( JXPathContext context );
+
+  /**
+   * The number of rows between flushes and clears of the session.  Zero disables clearing.
+   */
+  @Attribute(localName="clear-interval", type=AttributeType.JXPATH_VALUE, defaultValue="500")
+  public abstract Integer getClearInterval( JXPathContext context );
+
+  public boolean execute( JXPathContext context )
+    throws Exception
+  {
+    if( !hasVariable() ) {
+      throw new Exception("A scroll command must have a variable.");
+    }
+
+    Query query = getQuery(context);
+
+    if( query == null ) {
+      throw new Exception("A scroll command must have a query.");
+    }
+
+    QName variable = getVariable(context);
+    Scope scope = getScope(context);
+    Session session = HibernateLifecycle.getCurrentSession(getName(context));
+    ScopedQNameVariables variables = (ScopedQNameVariables)context.getVariables();
+
+    query.setFetchSize(getFetchSize(context));
+    ScrollIterator iterator = new ScrollIterator(query.scroll(ScrollMode.FORWARD_ONLY), session, getClearInterval(context));
+
+    boolean result = false;
+    try {
+      while( !result && iterator.hasNext() ) {
+        variables.declareVariable(variable, iterator.next(), scope);
+        result = super.execute(context);
+      }
+    }
+    finally {
+      iterator.close();
+    }
+
+    if( log.isDebugEnabled() ) {
+      log.debug("Scrolled over "+iterator.getRowCount()+" rows.");
+    }
+
+    return result;
+  }
+}
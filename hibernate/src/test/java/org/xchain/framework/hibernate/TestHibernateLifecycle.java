@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+
+public class TestHibernateLifecycle
+{
+  public static final int THREAD_COUNT = 8;
+  public static final int LOOKUP_COUNT = 10000;
+
+  protected ExecutorService executor = null;
+
+  @Before public void setUp()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+    executor = Executors.newFixedThreadPool(THREAD_COUNT);
+  }
+
+  @After public void tearDown()
+    throws Exception
+  {
+    executor.shutdownNow();
+    executor = null;
+    Lifecycle.stopLifecycle();
+  }
+
+  /**
+   * Holds the class lock of the hibernate lifecycle on another thread and makes sure that lookups still complete.
+   */
+  @Test public void testLookupsDoNotTakeLock()
+    throws Exception
+  {
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread lockHolder = new Thread() {
+      public void run() {
+        synchronized( HibernateLifecycle.class ) {
+          locked.countDown();
+          try {
+            release.await();
+          }
+          catch( InterruptedException e ) {
+            // fall through and release the lock.
+          }
+        }
+      }
+    };
+    lockHolder.start();
+    try {
+      locked.await();
+
+      Future<SessionFactory> lookup = executor.submit(new Callable<SessionFactory>() {
+        public SessionFactory call() {
+          Session session = HibernateLifecycle.getCurrentSession(HibernateLifecycle.DEFAULT_NAME);
+          assertNotNull("There was not a current session.", session);
+          session.close();
+          SessionFactory sessionFactory = HibernateLifecycle.getSessionFactory();
+          assertEquals("The session factory was not mapped to its name.", HibernateLifecycle.DEFAULT_NAME, HibernateLifecycle.getQName(sessionFactory));
+          assertNotNull("The configuration was not found.", HibernateLifecycle.getConfiguration());
+          return sessionFactory;
+        }
+      });
+
+      assertNotNull("The session factory was not found.", lookup.get(10, TimeUnit.SECONDS));
+    }
+    finally {
+      release.countDown();
+      lockHolder.join();
+    }
+  }
+
+  @Test public void testConcurrentLookups()
+    throws Exception
+  {
+    final SessionFactory expected = HibernateLifecycle.getSessionFactory();
+    final CountDownLatch start = new CountDownLatch(1);
+
+    List<Future<Integer>> futureList = new ArrayList<Future<Integer>>();
+    for( int i = 0; i < THREAD_COUNT; i++ ) {
+      futureList.add(executor.submit(new Callable<Integer>() {
+        public Integer call() throws Exception {
+          start.await();
+          int found = 0;
+          for( int j = 0; j < LOOKUP_COUNT; j++ ) {
+            if( HibernateLifecycle.getSessionFactory(null) == expected ) {
+              found++;
+            }
+          }
+          return found;
+        }
+      }));
+    }
+    start.countDown();
+
+    for( Future<Integer> future : futureList ) {
+      assertEquals("A lookup returned the wrong session factory.", Integer.valueOf(LOOKUP_COUNT), future.get(30, TimeUnit.SECONDS));
+    }
+    assertSame("The session factory changed while it was being looked up.", expected, HibernateLifecycle.getSessionFactory());
+  }
+
+  @Test(expected=SessionFactoryNotFoundException.class) public void testStoppedLookup()
+    throws Exception
+  {
+    Lifecycle.stopLifecycle();
+    try {
+      HibernateLifecycle.getSessionFactory();
+    }
+    finally {
+      Lifecycle.startLifecycle();
+    }
+  }
+}
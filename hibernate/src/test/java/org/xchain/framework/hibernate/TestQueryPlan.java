@@ -0,0 +1,94 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.namespaces.hibernate.test.om.Person;
+
+public class TestQueryPlan
+{
+  public static final String QUERY = "from Person where name = :name";
+
+  @Before public void setUp()
+    throws Exception
+  {
+    Lifecycle.startLifecycle();
+  }
+
+  @After public void tearDown()
+    throws Exception
+  {
+    Lifecycle.stopLifecycle();
+  }
+
+  @Test public void testPlanCache()
+    throws Exception
+  {
+    SessionFactory sessionFactory = HibernateLifecycle.getSessionFactory();
+    QueryPlan plan = QueryPlan.getQueryPlan(sessionFactory, QUERY);
+
+    assertSame("The plan was not cached.", plan, QueryPlan.getQueryPlan(sessionFactory, QUERY));
+    assertSame("The binder was not cached.", plan.getBinder("name"), plan.getBinder("name"));
+    assertNotSame("A plan was shared between query strings.", plan, QueryPlan.getQueryPlan(sessionFactory, "from Person"));
+
+    QueryPlan.clearCache();
+    assertNotSame("The plan was not removed from the cache.", plan, QueryPlan.getQueryPlan(sessionFactory, QUERY));
+  }
+
+  @Test public void testBind()
+    throws Exception
+  {
+    Session session = HibernateLifecycle.getSessionFactory().openSession();
+    try {
+      session.beginTransaction();
+      Person person = new Person();
+      person.setName("Plan");
+      session.persist(person);
+      session.flush();
+
+      QueryPlan plan = QueryPlan.getQueryPlan(HibernateLifecycle.getSessionFactory(), QUERY);
+      Query query = plan.createQuery(session);
+      assertNull("A query was associated with a plan before it was used.", QueryPlan.forQuery(query));
+
+      plan.startUsing(query);
+      try {
+        assertSame("The query was not associated with its plan.", plan, QueryPlan.forQuery(query));
+        plan.getBinder("name").bind(query, "Plan");
+      }
+      finally {
+        plan.stopUsing();
+      }
+
+      assertNull("The query was associated with its plan after it was used.", QueryPlan.forQuery(query));
+      assertEquals("The bound query did not find the entity.", 1, query.list().size());
+      session.getTransaction().rollback();
+    }
+    finally {
+      session.close();
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.framework.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.Context;
+import javax.naming.spi.InitialContextFactory;
+import javax.sql.DataSource;
+
+import org.hibernate.cfg.Environment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRebindingDataSourceConnectionProvider
+{
+  public static final int THREAD_COUNT = 8;
+
+  /** The object returned by every jndi lookup. */
+  private static volatile Object boundObject = null;
+
+  /** The number of jndi lookups that have been made. */
+  private static final AtomicInteger lookupCount = new AtomicInteger();
+
+  protected RebindingDataSourceConnectionProvider provider = null;
+
+  @Before public void setUp()
+  {
+    boundObject = null;
+    lookupCount.set(0);
+    provider = new RebindingDataSourceConnectionProvider();
+  }
+
+  @After public void tearDown()
+  {
+    provider.close();
+    provider = null;
+  }
+
+  @Test public void testConnection()
+    throws Exception
+  {
+    boundObject = newDataSource(false);
+    configure("test-connection");
+
+    assertNotNull("A connection was not returned.", provider.getConnection());
+
+    ConnectionProviderStatistics statistics = RebindingDataSourceConnectionProvider.getStatistics("test-connection");
+    assertEquals("The acquisition was not counted.", 1, statistics.getAcquisitionCount());
+    assertEquals("The data source was rebound.", 0, statistics.getRebindCount());
+  }
+
+  @Test public void testRebind()
+    throws Exception
+  {
+    boundObject = newDataSource(true);
+    configure("test-rebind");
+    boundObject = newDataSource(false);
+
+    assertNotNull("A connection was not returned after rebinding.", provider.getConnection());
+
+    ConnectionProviderStatistics statistics = RebindingDataSourceConnectionProvider.getStatistics("test-rebind");
+    assertEquals("The data source was not rebound once.", 1, statistics.getRebindCount());
+    assertEquals("The acquisition was not counted.", 1, statistics.getAcquisitionCount());
+    assertEquals("A failure was counted.", 0, statistics.getFailureCount());
+  }
+
+  @Test public void testConcurrentRebind()
+    throws Exception
+  {
+    boundObject = newDataSource(true);
+    configure("test-concurrent-rebind");
+    lookupCount.set(0);
+    boundObject = newDataSource(false);
+
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<Connection>> futureList = new ArrayList<Future<Connection>>();
+      for( int i = 0; i < THREAD_COUNT; i++ ) {
+        futureList.add(executor.submit(new Callable<Connection>() {
+          public Connection call() throws Exception {
+            start.await();
+            return provider.getConnection();
+          }
+        }));
+      }
+      start.countDown();
+
+      for( Future<Connection> future : futureList ) {
+        assertNotNull("A connection was not returned.", future.get(30, TimeUnit.SECONDS));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    ConnectionProviderStatistics statistics = RebindingDataSourceConnectionProvider.getStatistics("test-concurrent-rebind");
+    assertEquals("The data source was looked up more than once.", 1, lookupCount.get());
+    assertEquals("The data source was rebound more than once.", 1, statistics.getRebindCount());
+    assertEquals("The acquisitions were not counted.", THREAD_COUNT, statistics.getAcquisitionCount());
+  }
+
+  @Test public void testFailure()
+    throws Exception
+  {
+    boundObject = newDataSource(true);
+    configure("test-failure");
+
+    try {
+      provider.getConnection();
+      fail("A connection was returned by a failing data source.");
+    }
+    catch( SQLException sqle ) {
+      // expected.
+    }
+
+    ConnectionProviderStatistics statistics = RebindingDataSourceConnectionProvider.getStatistics("test-failure");
+    assertEquals("The failure was not counted.", 1, statistics.getFailureCount());
+    assertEquals("The data source was not rebound.", 1, statistics.getRebindCount());
+    assertEquals("An acquisition was counted.", 0, statistics.getAcquisitionCount());
+  }
+
+  private void configure( String jndiName )
+  {
+    Properties properties = new Properties();
+    properties.setProperty(Environment.DATASOURCE, jndiName);
+    properties.setProperty(Environment.JNDI_CLASS, TestContextFactory.class.getName());
+    provider.configure(properties);
+  }
+
+  private static DataSource newDataSource( final boolean failing )
+  {
+    return (DataSource)Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class[] { DataSource.class }, new InvocationHandler() {
+      public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+        if( "getConnection".equals(method.getName()) ) {
+          if( failing ) {
+            throw new SQLException("The data source is failing.");
+          }
+          return newProxy(Connection.class);
+        }
+        return defaultResult(proxy, method, args);
+      }
+    });
+  }
+
+  private static Object newProxy( Class<?> type )
+  {
+    return Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, new InvocationHandler() {
+      public Object invoke( Object proxy, Method method, Object[] args ) {
+        return defaultResult(proxy, method, args);
+      }
+    });
+  }
+
+  private static Object defaultResult( Object proxy, Method method, Object[] args )
+  {
+    if( "equals".equals(method.getName()) ) {
+      return Boolean.valueOf(proxy == args[0]);
+    }
+    if( "hashCode".equals(method.getName()) ) {
+      return Integer.valueOf(System.identityHashCode(proxy));
+    }
+    if( "toString".equals(method.getName()) ) {
+      return proxy.getClass().getName();
+    }
+    return null;
+  }
+
+  /**
+   * An initial context factory for contexts that return the bound object from every lookup.
+   */
+  public static class TestContextFactory
+    implements InitialContextFactory
+  {
+    public Context getInitialContext( Hashtable<?, ?> environment )
+    {
+      return (Context)Proxy.newProxyInstance(Context.class.getClassLoader(), new Class[] { Context.class }, new InvocationHandler() {
+        public Object invoke( Object proxy, Method method, Object[] args ) {
+          if( "lookup".equals(method.getName()) ) {
+            lookupCount.incrementAndGet();
+            return boundObject;
+          }
+          return defaultResult(proxy, method, args);
+        }
+      });
+    }
+  }
+}
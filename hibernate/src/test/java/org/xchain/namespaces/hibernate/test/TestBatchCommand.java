@@ -0,0 +1,182 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.hibernate.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xchain.Catalog;
+import org.xchain.Command;
+import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.lifecycle.ExecutionException;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.namespaces.hibernate.test.om.Person;
+
+public class TestBatchCommand
+	extends BaseDatabaseTest
+{
+	private static final String catalogName = "resource://context-class-loader/org/xchain/namespaces/hibernate/test-batch-command.xchain";
+	protected JXPathContext context = null;
+	protected Catalog catalog = null;	
+
+	@BeforeClass public static void setupCommand()
+	throws Exception
+	{
+		Lifecycle.startLifecycle();
+	}
+
+	@AfterClass public static void teardownCommand()
+	throws Exception
+	{
+		Lifecycle.stopLifecycle();
+	}
+
+	@Before public void setupTest()
+	throws Exception
+	{
+		// get the catalog.
+		catalog = CatalogFactory.getInstance().getCatalog(catalogName);
+
+		// create the context.
+		context = JXPathContext.newContext(new Object());
+	}
+
+	@After public void teardownTest() {
+		context = null;
+		catalog = null;
+	}
+
+	@Test public void testBatchCommand()
+	throws Exception
+	{
+		context.getVariables().declareVariable("people", createPeople("Batch", 5));
+
+		Statistics statistics = HibernateLifecycle.getSessionFactory().getStatistics();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		try {
+			Command command = catalog.getCommand("test-batch-command");
+			command.execute(context);
+
+			// the batch flushes after the second and fourth rows and again when its children complete.
+			assertTrue("The batch did not flush the session every size rows.", statistics.getFlushCount() >= 3);
+		}
+		finally {
+			statistics.setStatisticsEnabled(false);
+		}
+
+		assertEquals("The batch did not report the rows processed.", Long.valueOf(5), context.getValue("$count", Long.class));
+		assertEquals("The batch did not persist every entity.", Long.valueOf(5), context.getValue("$found", Long.class));
+
+		// with a size of 2, the session is flushed and cleared after the second and fourth rows, so only the last entity is still attached.
+		List<Boolean> contained = (List<Boolean>)context.getValue("$contained", List.class);
+		assertEquals("The wrong number of entities were checked.", 5, contained.size());
+		for( int i = 0; i < 4; i++ ) {
+			assertEquals("An entity was not cleared from the session by the batch.", Boolean.FALSE, contained.get(i));
+		}
+		assertEquals("An entity written after the last clear was detached.", Boolean.TRUE, contained.get(4));
+	}
+
+	@Test public void testBatchCommandDelete()
+	throws Exception
+	{
+		persistList(createPeople("Delete", 5));
+
+		Statistics statistics = HibernateLifecycle.getSessionFactory().getStatistics();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		try {
+			Command command = catalog.getCommand("test-batch-command-delete");
+			command.execute(context);
+
+			// the deletes are queued until the session is flushed, so they are sent to the database in JDBC batches of the batch size.
+			assertEquals("The batch did not delete every entity.", 5, statistics.getEntityDeleteCount());
+			assertTrue("The batch did not flush the session every size rows.", statistics.getFlushCount() >= 3);
+		}
+		finally {
+			statistics.setStatisticsEnabled(false);
+		}
+
+		assertEquals("The batch did not report the rows processed.", Long.valueOf(5), context.getValue("$count", Long.class));
+		assertEquals("The batch did not delete every entity.", Long.valueOf(0), context.getValue("$found", Long.class));
+	}
+
+	@Test public void testBatchSizeMustBePositive()
+	throws Exception
+	{
+		context.getVariables().declareVariable("people", createPeople("ZeroSize", 1));
+
+		Command command = catalog.getCommand("test-batch-command-zero-size");
+		try {
+			command.execute(context);
+			fail("A batch with a size of zero was executed.");
+		} catch (ExecutionException ee) {
+			// expected.
+			assertTrue("The wrong exception was thrown.", ee.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	@Test public void testBatchCommandRollback()
+	throws Exception
+	{
+		context.getVariables().declareVariable("people", createPeople("Rollback", 5));
+
+		Command command = catalog.getCommand("test-batch-command-rollback");
+		try {
+			command.execute(context);
+			fail("The batch did not throw the expected exception.");
+		} catch (ExecutionException ignore) {
+			// Ignore the ExcpectedException and continue on.
+		}
+
+		// Ensure that the flushed entities were rolled back.
+		Session session = HibernateLifecycle.getSessionFactory().openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			Number found = (Number)session.createQuery("select count(p) from Person p where p.name like :name").setParameter("name", "Rollback%").uniqueResult();
+			transaction.commit();
+			assertEquals("Entities flushed by the batch were not rolled back.", 0, found.intValue());
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private static List<Person> createPeople( String prefix, int count )
+	{
+		List<Person> people = new ArrayList<Person>();
+		for( int i = 0; i < count; i++ ) {
+			Person person = new Person();
+			person.setName(prefix+i);
+			people.add(person);
+		}
+		return people;
+	}
+}
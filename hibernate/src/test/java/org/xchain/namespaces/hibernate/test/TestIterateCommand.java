@@ -79,6 +79,18 @@ public class TestIterateCommand
 		assertTrue("The iterators were not equal.", result);
 	}
 	
+	@Test public void testIterateCommandScroll()
+		throws Exception
+	{
+		context.getVariables().declareVariable("source-iterator", personList.iterator());
+		Command command = catalog.getCommand("test-iterate-command-scroll");
+		command.execute(context);
+		
+		Boolean result = (Boolean)context.getValue("$result", Boolean.class);
+		
+		assertTrue("The scrolled iterators were not equal.", result);
+	}
+	
 	@Test public void testIterateCommandEmpty()
 		throws Exception
 	{
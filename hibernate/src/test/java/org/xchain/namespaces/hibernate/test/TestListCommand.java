@@ -16,11 +16,14 @@
 package org.xchain.namespaces.hibernate.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.stat.Statistics;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -29,6 +32,7 @@ import org.junit.Test;
 import org.xchain.Catalog;
 import org.xchain.Command;
 import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.hibernate.HibernateLifecycle;
 import org.xchain.framework.lifecycle.Lifecycle;
 import org.xchain.namespaces.hibernate.test.om.Person;
 
@@ -143,5 +147,34 @@ public class TestListCommand
 		List<Person> resultList = (List<Person>)context.getValue("$" + RESULT, List.class);
 		
 		assertEquals("First result was not as expected.", "John", resultList.get(0).getName());
-	}	
+	}
+
+	@Test public void testListCommandCacheable()
+	throws Exception
+	{
+		context.getVariables().declareVariable("queryNames", Arrays.asList("Mary", "Bob"));
+
+		Statistics statistics = HibernateLifecycle.getSessionFactory().getStatistics();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		try {
+			for( int i = 0; i < 2; i++ ) {
+				Command command = catalog.getCommand("test-list-command-cacheable");
+				command.execute(context);
+
+				// Get the result.
+				String resultString = (String)context.getValue("$" + RESULT, String.class);
+
+				assertEquals("First cached result wasn't as expected.", "Bob", resultString);
+			}
+
+			// the first execution puts the result in the query cache and the second execution reads it back.
+			assertEquals("The query result was not put in the query cache.", 1, statistics.getQueryCachePutCount());
+			assertEquals("The query result was not read from the query cache.", 1, statistics.getQueryCacheHitCount());
+			assertTrue("The query was not cached in its cache region.", Arrays.asList(statistics.getSecondLevelCacheRegionNames()).contains("people"));
+		}
+		finally {
+			statistics.setStatisticsEnabled(false);
+		}
+	}
 }
@@ -0,0 +1,137 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.hibernate.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xchain.Catalog;
+import org.xchain.Command;
+import org.xchain.framework.factory.CatalogFactory;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.lifecycle.Lifecycle;
+import org.xchain.namespaces.hibernate.test.om.Person;
+
+public class TestScrollCommand
+	extends BaseDatabaseTest
+{
+	private static final String catalogName = "resource://context-class-loader/org/xchain/namespaces/hibernate/test-scroll-command.xchain";
+	protected JXPathContext context = null;
+	protected Catalog catalog = null;	
+
+	@BeforeClass public static void setupCommand()
+	throws Exception
+	{
+		Lifecycle.startLifecycle();
+		populatePersonData();
+		populateAlphabetData();
+	}
+
+	@AfterClass public static void teardownCommand()
+	throws Exception
+	{
+		Lifecycle.stopLifecycle();
+	}
+
+	@Before public void setupTest()
+	throws Exception
+	{
+		// get the catalog.
+		catalog = CatalogFactory.getInstance().getCatalog(catalogName);
+
+		// create the context.
+		context = JXPathContext.newContext(new Object());
+	}
+
+	@After public void teardownTest() {
+		context = null;
+		catalog = null;
+	}
+
+	@Test public void testScrollCommand()
+		throws Exception
+	{
+		Command command = catalog.getCommand("test-scroll-command");
+		command.execute(context);
+
+		assertEquals("The scrolled entities were not correct.", expectedNames(), context.getValue("$names", String.class));
+	}
+
+	@Test public void testScrollCommandScalar()
+		throws Exception
+	{
+		Command command = catalog.getCommand("test-scroll-command-scalar");
+		command.execute(context);
+
+		assertEquals("The scrolled values were not correct.", expectedNames(), context.getValue("$names", String.class));
+	}
+
+	@Test public void testScrollCommandEmpty()
+		throws Exception
+	{
+		Command command = catalog.getCommand("test-scroll-command-empty");
+		command.execute(context);
+
+		assertEquals("Rows were scrolled for an empty result.", "", context.getValue("$names", String.class));
+	}
+
+	/**
+	 * Deletes each row while scrolling past more rows than the clear interval, to make sure that the writes are flushed before the session is cleared.
+	 */
+	@Test public void testScrollCommandWrite()
+		throws Exception
+	{
+		Command command = catalog.getCommand("test-scroll-command-write");
+		command.execute(context);
+
+		Session session = HibernateLifecycle.getSessionFactory().openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			Number remaining = (Number)session.createQuery("select count(a) from Alphabet a").uniqueResult();
+			transaction.commit();
+			assertEquals("Deletes made before the session was cleared were lost.", 0, remaining.intValue());
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	private static String expectedNames()
+	{
+		List<String> nameList = new ArrayList<String>();
+		for( Person person : personList ) {
+			nameList.add(person.getName());
+		}
+		Collections.sort(nameList);
+
+		StringBuilder names = new StringBuilder();
+		for( String name : nameList ) {
+			names.append(name).append(",");
+		}
+		return names.toString();
+	}
+}
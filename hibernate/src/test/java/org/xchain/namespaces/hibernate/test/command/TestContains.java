@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2011 meltmedia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.xchain.namespaces.hibernate.test.command;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.jxpath.JXPathContext;
+import org.hibernate.Session;
+import org.xchain.annotations.Attribute;
+import org.xchain.annotations.AttributeType;
+import org.xchain.annotations.Element;
+import org.xchain.framework.hibernate.HibernateLifecycle;
+import org.xchain.framework.jxpath.Scope;
+import org.xchain.framework.jxpath.ScopedQNameVariables;
+import org.xchain.namespaces.hibernate.AbstractSessionCommand;
+
+/**
+ * Records whether each of the entities is in the current session, as a list of booleans in the request scope.
+ */
+@Element(localName="contains")
+public abstract class TestContains
+  extends AbstractSessionCommand
+{
+  @Attribute(localName="entities", type=AttributeType.JXPATH_VALUE)
+  public abstract List getEntities( JXPathContext context );
+
+  @Attribute(localName="variable", type=AttributeType.QNAME)
+  public abstract QName getVariable( JXPathContext context );
+
+  public boolean execute( JXPathContext context )
+    throws Exception
+  {
+    Session session = HibernateLifecycle.getCurrentSession(getName(context));
+
+    List<Boolean> contained = new ArrayList<Boolean>();
+    for( Object entity : getEntities(context) ) {
+      contained.add(Boolean.valueOf(session.contains(entity)));
+    }
+    ((ScopedQNameVariables)context.getVariables()).declareVariable(getVariable(context), contained, Scope.request);
+
+    return super.execute(context);
+  }
+}
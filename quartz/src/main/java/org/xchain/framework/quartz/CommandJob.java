@@ -169,7 +169,7 @@ public class CommandJob
     Command command = null;
 
     try {
-      command = CatalogFactory.getInstance().getCatalog(catalogName).getCommand(commandName);
+      command = CatalogFactory.getInstance().getCommandHandle(catalogName, commandName).getCommand();
     }
     catch( CatalogNotFoundException catalogNotFound ) {
       throw new JobExecutionException("The catalog '"+catalogName+"' could not be found.", catalogNotFound );